@@ -484,6 +484,36 @@ public final class CarbonCommonConstants {
    */
   public static final String PRIMARY_KEY_COLUMNS = "primary_key_columns";
 
+  /**
+   * Max number of primary key ranges of a split merged in parallel. Blocks are partitioned on
+   * their primary key min and max, so the ranges do not overlap.
+   */
+  @CarbonProperty
+  public static final String CARBON_PRIMARY_KEY_MERGE_PARALLELISM =
+      "carbon.primarykey.merge.parallelism";
+
+  public static final String CARBON_PRIMARY_KEY_MERGE_PARALLELISM_DEFAULT = "4";
+
+  /**
+   * Versions of a primary key newer than this many milliseconds are kept as they are by
+   * compaction, older versions are collapsed to one row. 0 collapses all the versions.
+   */
+  @CarbonProperty
+  public static final String CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS =
+      "carbon.primarykey.version.retention.ms";
+
+  public static final String CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS_DEFAULT = "0";
+
+  /**
+   * Max number of rows of a stream block sorted in memory by a primary key read, the rows beyond
+   * it are sorted in runs spilled to local disk and merged.
+   */
+  @CarbonProperty
+  public static final String CARBON_PRIMARY_KEY_STREAM_SORT_ROWS =
+      "carbon.primarykey.stream.sort.inmemory.rows";
+
+  public static final String CARBON_PRIMARY_KEY_STREAM_SORT_ROWS_DEFAULT = "500000";
+
   //////////////////////////////////////////////////////////////////////////////////////////
   // Data loading parameter start here
   //////////////////////////////////////////////////////////////////////////////////////////
@@ -1107,6 +1137,45 @@ public final class CarbonCommonConstants {
 
   public static final String ENABLE_AUTO_HANDOFF_DEFAULT = "true";
 
+  /**
+   * enable auto handoff of the finished streaming segments by the sdk row format writer, which
+   * converts them to columnar format in a background thread of the writer process
+   */
+  @CarbonProperty
+  public static final String ENABLE_SDK_AUTO_HANDOFF =
+      "carbon.sdk.streaming.auto.handoff.enabled";
+
+  public static final String ENABLE_SDK_AUTO_HANDOFF_DEFAULT = "false";
+
+  /**
+   * a finished streaming segment is handed off by the sdk writer only after this many
+   * milliseconds, so the other writers of the segment see that it is finished first
+   */
+  @CarbonProperty
+  public static final String CARBON_STREAMING_HANDOFF_DELAY_MILLIS =
+      "carbon.streaming.handoff.delay.ms";
+
+  public static final String CARBON_STREAMING_HANDOFF_DELAY_MILLIS_DEFAULT = "60000";
+
+  /**
+   * the sdk stream writers hold their stream segment for this many milliseconds without reading
+   * the table status, it should be shorter than the handoff delay
+   */
+  @CarbonProperty
+  public static final String CARBON_STREAMING_SEGMENT_LEASE_MILLIS =
+      "carbon.streaming.segment.lease.ms";
+
+  public static final String CARBON_STREAMING_SEGMENT_LEASE_MILLIS_DEFAULT = "30000";
+
+  /**
+   * number of threads which delete and truncate the stream files of a segment in its recovery
+   */
+  @CarbonProperty
+  public static final String CARBON_STREAMING_RECOVERY_THREADS =
+      "carbon.streaming.recovery.threads";
+
+  public static final String CARBON_STREAMING_RECOVERY_THREADS_DEFAULT = "8";
+
   /**
    * Enabling page level reader for compaction reduces the memory usage while compacting more
    * number of segments. It allows reading only page by page instead of reaing whole blocklet to
@@ -24,4 +24,10 @@ public interface CarbonCommonConstantsInternal {
 
   String QUERY_ON_PRE_AGG_STREAMING = "carbon.query.on.preagg.streaming.";
 
+  /**
+   * local directories of the task in which a primary key read spills the sorted runs of the
+   * stream blocks
+   */
+  String PRIMARY_KEY_SORT_TEMP_LOCATIONS = "carbon.primarykey.sort.temp.locations";
+
 }
@@ -22,7 +22,8 @@ import org.apache.carbondata.common.logging.LogServiceFactory;
 import org.apache.log4j.Logger;
 
 /**
- * Holds the pointers for rows.
+ * Holds the pointers for rows, and optionally a long sort key prefix next to each pointer
+ * which is kept only till the rows are sorted.
  */
 public class IntPointerBuffer {
 
@@ -35,20 +36,32 @@ public class IntPointerBuffer {
 
   private int[] pointerBlock;
 
+  private long[] prefixBlock;
+
   private MemoryBlock pointerMemoryBlock;
 
   private String taskId;
 
   public IntPointerBuffer(String taskId) {
+    this(taskId, false);
+  }
+
+  public IntPointerBuffer(String taskId, boolean withPrefix) {
     // TODO can be configurable, it is initial size and it can grow automatically.
-    this.length = 100000;
-    pointerBlock = new int[length];
+    this(100000, withPrefix);
     this.taskId = taskId;
   }
 
   public IntPointerBuffer(int length) {
+    this(length, false);
+  }
+
+  public IntPointerBuffer(int length, boolean withPrefix) {
     this.length = length;
     pointerBlock = new int[length];
+    if (withPrefix) {
+      prefixBlock = new long[length];
+    }
   }
 
   public void set(int rowId, int value) {
@@ -61,6 +74,32 @@ public class IntPointerBuffer {
     actualSize++;
   }
 
+  public void set(int value, long prefix) {
+    ensureMemory();
+    pointerBlock[actualSize] = value;
+    prefixBlock[actualSize] = prefix;
+    actualSize++;
+  }
+
+  public void setPrefix(int rowId, long prefix) {
+    prefixBlock[rowId] = prefix;
+  }
+
+  /**
+   * Returns the sort key prefix at position {@code rowId}.
+   */
+  public long getPrefix(int rowId) {
+    return prefixBlock[rowId];
+  }
+
+  public boolean hasPrefix() {
+    return prefixBlock != null;
+  }
+
+  public long[] getPrefixBlock() {
+    return prefixBlock;
+  }
+
   /**
    * Returns the value at position {@code rowId}.
    */
@@ -75,6 +114,8 @@ public class IntPointerBuffer {
   }
 
   public void loadToUnsafe() {
+    // rows are sorted already, the prefixes are not needed anymore
+    prefixBlock = null;
     pointerMemoryBlock =
         UnsafeSortMemoryManager.INSTANCE.allocateMemory(this.taskId, pointerBlock.length * 4);
     // pointerMemoryBlock it means sort storage memory manager does not have space to loaf pointer
@@ -104,12 +145,18 @@ public class IntPointerBuffer {
       int[] memoryAddress = new int[localLength];
       System.arraycopy(pointerBlock, 0, memoryAddress, 0, length);
       pointerBlock = memoryAddress;
+      if (prefixBlock != null) {
+        long[] prefixes = new long[localLength];
+        System.arraycopy(prefixBlock, 0, prefixes, 0, length);
+        prefixBlock = prefixes;
+      }
       length = localLength;
     }
   }
 
   public void freeMemory() {
     pointerBlock = null;
+    prefixBlock = null;
     if (pointerMemoryBlock != null) {
       UnsafeSortMemoryManager.INSTANCE.freeMemory(this.taskId, pointerMemoryBlock);
     }
@@ -110,28 +110,43 @@ public class UnsafeMemoryManager {
   private synchronized MemoryBlock allocateMemory(MemoryType memoryType, String taskId,
       long memoryRequested) {
     MemoryBlock memoryBlock;
-    if (memoryUsed + memoryRequested <= totalMemory && memoryType == MemoryType.OFFHEAP) {
-      memoryBlock = MemoryAllocator.UNSAFE.allocate(memoryRequested);
-      memoryUsed += memoryBlock.size();
-      Set<MemoryBlock> listOfMemoryBlock = taskIdToOffheapMemoryBlockMap.get(taskId);
-      if (null == listOfMemoryBlock) {
-        listOfMemoryBlock = new HashSet<>();
-        taskIdToOffheapMemoryBlockMap.put(taskId, listOfMemoryBlock);
-      }
-      listOfMemoryBlock.add(memoryBlock);
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(String.format("Creating Offheap working Memory block (%s) with size %d."
-                + " Total memory used %d Bytes, left %d Bytes.",
-            memoryBlock.toString(), memoryBlock.size(), memoryUsed, totalMemory - memoryUsed));
-      }
-    } else {
-      // not adding on heap memory block to map as JVM will take care of freeing the memory
-      memoryBlock = MemoryAllocator.HEAP.allocate(memoryRequested);
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(String
-            .format("Creating onheap working Memory block with size: (%d)", memoryBlock.size()));
+    if (memoryType == MemoryType.OFFHEAP) {
+      memoryBlock = allocateOffHeapIfAvailable(taskId, memoryRequested);
+      if (memoryBlock != null) {
+        return memoryBlock;
       }
     }
+    // not adding on heap memory block to map as JVM will take care of freeing the memory
+    memoryBlock = MemoryAllocator.HEAP.allocate(memoryRequested);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String
+          .format("Creating onheap working Memory block with size: (%d)", memoryBlock.size()));
+    }
+    return memoryBlock;
+  }
+
+  /**
+   * Allocates an off-heap block of the working memory, or returns null if the working memory
+   * has no space for it, so the caller may allocate its own on-heap buffer
+   */
+  public synchronized MemoryBlock allocateOffHeapIfAvailable(String taskId,
+      long memoryRequested) {
+    if (memoryUsed + memoryRequested > totalMemory) {
+      return null;
+    }
+    MemoryBlock memoryBlock = MemoryAllocator.UNSAFE.allocate(memoryRequested);
+    memoryUsed += memoryBlock.size();
+    Set<MemoryBlock> listOfMemoryBlock = taskIdToOffheapMemoryBlockMap.get(taskId);
+    if (null == listOfMemoryBlock) {
+      listOfMemoryBlock = new HashSet<>();
+      taskIdToOffheapMemoryBlockMap.put(taskId, listOfMemoryBlock);
+    }
+    listOfMemoryBlock.add(memoryBlock);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Creating Offheap working Memory block (%s) with size %d."
+              + " Total memory used %d Bytes, left %d Bytes.",
+          memoryBlock.toString(), memoryBlock.size(), memoryUsed, totalMemory - memoryUsed));
+    }
     return memoryBlock;
   }
 
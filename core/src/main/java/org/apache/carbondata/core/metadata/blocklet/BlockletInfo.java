@@ -298,6 +298,9 @@ public class BlockletInfo implements Serializable, Writable {
     final boolean isSortedPresent = input.readBoolean();
     if (isSortedPresent) {
       this.isSorted = input.readBoolean();
+    } else {
+      // not recorded in the file footer
+      this.isSorted = null;
     }
   }
 
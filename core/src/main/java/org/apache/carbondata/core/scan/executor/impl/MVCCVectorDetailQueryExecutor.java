@@ -20,20 +20,22 @@ import java.io.IOException;
 import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.concurrent.Executors;
 
 import org.apache.carbondata.common.CarbonIterator;
 import org.apache.carbondata.common.logging.LogServiceFactory;
 import org.apache.carbondata.core.constants.CarbonCommonConstants;
 import org.apache.carbondata.core.constants.CarbonV3DataFormatConstants;
+import org.apache.carbondata.core.datastore.DataRefNode;
+import org.apache.carbondata.core.datastore.block.SegmentProperties;
 import org.apache.carbondata.core.datastore.block.TableBlockInfo;
+import org.apache.carbondata.core.indexstore.blockletindex.BlockletDataRefNode;
 import org.apache.carbondata.core.metadata.ColumnarFormatVersion;
 import org.apache.carbondata.core.metadata.datatype.DataType;
 import org.apache.carbondata.core.metadata.datatype.DataTypes;
 import org.apache.carbondata.core.metadata.datatype.StructField;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
 import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
 import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
 import org.apache.carbondata.core.metadata.schema.table.column.CarbonMeasure;
@@ -45,18 +47,28 @@ import org.apache.carbondata.core.scan.model.QueryModel;
 import org.apache.carbondata.core.scan.primarykey.IteratorHolder;
 import org.apache.carbondata.core.scan.primarykey.IteratorRowHolder;
 import org.apache.carbondata.core.scan.primarykey.IteratorVectorHolder;
+import org.apache.carbondata.core.scan.primarykey.LoserTreeQueue;
 import org.apache.carbondata.core.scan.primarykey.PrimaryKeyDataTypeConverterImpl;
 import org.apache.carbondata.core.scan.primarykey.PrimaryKeyDeleteVectorDetailQueryResultIterator;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyDirectVectorDetailQueryResultIterator;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyExternalSorter;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyGroupBatchIterator;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyRangeBatchIterator;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyRangePartitioner;
 import org.apache.carbondata.core.scan.primarykey.PrimaryKeyRowComparator;
 import org.apache.carbondata.core.scan.primarykey.PrimaryKeyVectorComparator;
 import org.apache.carbondata.core.scan.primarykey.PrimaryKeyVectorDetailQueryResultIterator;
 import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
 import org.apache.carbondata.core.scan.result.iterator.ChunkRowIterator;
 import org.apache.carbondata.core.scan.result.iterator.DetailQueryResultIterator;
 import org.apache.carbondata.core.scan.result.iterator.VectorDetailQueryResultIterator;
 import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
 import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
 import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+import org.apache.carbondata.core.util.CarbonProperties;
+import org.apache.carbondata.core.util.DataTypeUtil;
+import org.apache.carbondata.core.util.comparator.SerializableComparator;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.log4j.Logger;
@@ -71,9 +83,26 @@ public class MVCCVectorDetailQueryExecutor extends AbstractQueryExecutor<Object>
 
   private boolean isUpdate;
 
+  private PrimaryKeyVectorComparator comparator;
+
+  private PrimaryKeyRowComparator mergeRowComparator;
+
+  private int timestampOrdinal;
+
+  private int deleteStatusOrdinal;
+
+  private int[] columnOrdinals;
+
+  private int dataLength;
+
+  private List<PrimaryKeyExternalSorter> sorters = new ArrayList<>();
+
+  private String[] sortTempLocations;
+
   public MVCCVectorDetailQueryExecutor(Configuration configuration, boolean isUpdate) {
     super(configuration);
     this.isUpdate = isUpdate;
+    this.sortTempLocations = PrimaryKeyExternalSorter.getTempLocations(configuration);
   }
 
   @Override public CarbonIterator<Object> execute(QueryModel queryModel)
@@ -127,11 +156,33 @@ public class MVCCVectorDetailQueryExecutor extends AbstractQueryExecutor<Object>
       queryModel.getProjectionDimensions().add(projectionDimension);
       tupleIdex = projectionDimension.getOrdinal();
     }
-    PrimaryKeyVectorComparator comparator =
-        new PrimaryKeyVectorComparator(dataTypes, primaryKeyOrdinals);
+    this.comparator = new PrimaryKeyVectorComparator(dataTypes, primaryKeyOrdinals);
     this.setExecutorService(Executors.newCachedThreadPool());
-    AbstractQueue<IteratorHolder> recordHolder = new PriorityQueue<>();
+    this.dataLength =
+        queryModel.getProjectionDimensions().size() + queryModel.getProjectionMeasures().size();
+    this.mergeRowComparator = new PrimaryKeyRowComparator(dataTypes, primaryKeyOrdinals);
+    this.timestampOrdinal = timestampOrdinal[0];
+    this.deleteStatusOrdinal = deleteStatusOrdinal[0];
+    this.columnOrdinals =
+        getNormalColumnOrdinals(queryModel, primaryKeyOrdinals, timestampOrdinal[0],
+            deleteStatusOrdinal[0], tupleIdex);
     List<BlockExecutionInfo> blockExecutionInfos = getBlockExecutionInfos(queryModel);
+    List<BlockExecutionInfo> executionInfos = new ArrayList<>();
+    // holders of the stream blocks, null for the columnar blocks which are opened only when read
+    List<IteratorHolder> rowHolders = new ArrayList<>();
+    List<Object[]> minKeys = new ArrayList<>();
+    List<Object[]> maxKeys = new ArrayList<>();
+    List<Long> rowCounts = new ArrayList<>();
+    int streamBlockCount = 0;
+    for (BlockExecutionInfo executionInfo : blockExecutionInfos) {
+      if (executionInfo.getDataBlock().getDataRefNode().getBlockInfo().getVersion()
+          == ColumnarFormatVersion.R1) {
+        streamBlockCount++;
+      }
+    }
+    // the sorted rows of all the stream blocks are merged together, so the stream blocks share
+    // the in memory row limit of the task
+    int sortRowLimit = getStreamSortRowLimit() / Math.max(1, streamBlockCount);
 
     for (BlockExecutionInfo executionInfo : blockExecutionInfos) {
       if (executionInfo.getDataBlock().getDataRefNode().getBlockInfo().getVersion()
@@ -140,54 +191,344 @@ public class MVCCVectorDetailQueryExecutor extends AbstractQueryExecutor<Object>
         DetailQueryResultIterator iterator =
             new DetailQueryResultIterator(new ArrayList(Arrays.asList(executionInfo)), queryModel,
                 queryProperties.executorService);
-        List<Object[]> objects = new ArrayList<>();
+        // stream blocks are in arrival order, they are sorted in bounded memory
+        PrimaryKeyExternalSorter sorter = new PrimaryKeyExternalSorter(
+            new PrimaryKeyRowComparator(dataTypes, primaryKeyOrdinals), sortRowLimit,
+            sortTempLocations);
+        sorters.add(sorter);
         ChunkRowIterator rowIterator = new ChunkRowIterator(iterator);
         while (rowIterator.hasNext()) {
-          objects.add(rowIterator.next());
+          sorter.addRow(rowIterator.next());
         }
-        Collections.sort(objects,
-            new PrimaryKeyRowComparator(dataTypes, primaryKeyOrdinals));
-        IteratorRowHolder holder =
-            new IteratorRowHolder(comparator, objects.iterator(), executionInfo);
+        IteratorRowHolder holder = new IteratorRowHolder(comparator, sorter.sort(), executionInfo);
         if (holder.hasNext()) {
           holder.read();
-          recordHolder.add(holder);
+          executionInfos.add(executionInfo);
+          rowHolders.add(holder);
+          // rows are sorted, so the first and the last rows have the min and max keys
+          minKeys.add(getPrimaryKey(holder.getCurrentRow(), primaryKeyOrdinals));
+          maxKeys.add(getPrimaryKey(sorter.getMaxRow(), primaryKeyOrdinals));
+          rowCounts.add(sorter.getRowCount());
         }
       } else {
-        if (isUpdate) {
-          executionInfo.setDirectVectorFill(false);
-        }
-        VectorDetailQueryResultIterator iterator =
-            new VectorDetailQueryResultIterator(new ArrayList(Arrays.asList(executionInfo)),
-                queryModel, queryProperties.executorService);
-        IteratorVectorHolder holder =
-            new IteratorVectorHolder(comparator, iterator, createColumnarBatch(queryModel),
-                executionInfo);
-        if (holder.hasNext()) {
-          holder.read();
-          recordHolder.add(holder);
-        }
+        executionInfos.add(executionInfo);
+        rowHolders.add(null);
+        addPrimaryKeyRange(executionInfo, primaryKeyCols, minKeys, maxKeys, rowCounts);
       }
     }
 
-    int dataLength =
-        queryModel.getProjectionDimensions().size() + queryModel.getProjectionMeasures().size();
-    int[] columnOrdinals =
-        getNormalColumnOrdinals(queryModel, primaryKeyOrdinals, timestampOrdinal[0],
-            deleteStatusOrdinal[0], tupleIdex);
-    PrimaryKeyMerger merger = new PrimaryKeyMerger(new PrimaryKeyRowComparator(dataTypes, primaryKeyOrdinals),
-        timestampOrdinal[0], deleteStatusOrdinal[0], columnOrdinals);
     if (isUpdate) {
+      AbstractQueue<IteratorHolder> recordHolder = new LoserTreeQueue(comparator);
+      for (int i = 0; i < executionInfos.size(); i++) {
+        IteratorHolder holder = rowHolders.get(i);
+        if (holder == null) {
+          executionInfos.get(i).setDirectVectorFill(false);
+          holder = createVectorHolder(executionInfos.get(i), queryModel);
+        }
+        if (holder != null) {
+          recordHolder.add(holder);
+        }
+      }
+      PrimaryKeyMerger merger = createMerger();
       this.queryIterator =
           new PrimaryKeyDeleteVectorDetailQueryResultIterator(recordHolder, dataLength, merger,
               tupleIdex, queryModel.getUpdateTimeStamp());
+      return this.queryIterator;
+    }
+    int[] keyOrdinals = new int[dataTypes.length];
+    for (int i = 0; i < keyOrdinals.length; i++) {
+      keyOrdinals[i] = i;
+    }
+    List<List<Integer>> groups = PrimaryKeyRangePartitioner
+        .group(minKeys.toArray(new Object[minKeys.size()][]),
+            maxKeys.toArray(new Object[maxKeys.size()][]),
+            new PrimaryKeyRowComparator(dataTypes, keyOrdinals));
+    List<List<List<Integer>>> ranges =
+        PrimaryKeyRangePartitioner.combine(groups, toLongArray(rowCounts), getMergeParallelism());
+    int directBlocks = 0;
+    for (List<Integer> group : groups) {
+      if (isDirectGroup(group, rowHolders)) {
+        directBlocks++;
+      }
+    }
+    LOGGER.info("Reading " + executionInfos.size() + " blocks in " + ranges.size()
+        + " primary key ranges, " + directBlocks + " blocks do not overlap and are not merged");
+    List<CarbonBatchIterator> rangeIterators = new ArrayList<>(ranges.size());
+    List<CarbonColumnarBatch[]> rangeBatches = new ArrayList<>(ranges.size());
+    for (List<List<Integer>> range : ranges) {
+      rangeIterators.add(new RangeIterator(range, queryModel, executionInfos, rowHolders));
+      rangeBatches.add(new CarbonColumnarBatch[] { createColumnarBatch(queryModel),
+          createColumnarBatch(queryModel) });
+    }
+    if (rangeIterators.size() == 1) {
+      this.queryIterator = (CarbonIterator) rangeIterators.get(0);
     } else {
-      this.queryIterator =
-          new PrimaryKeyVectorDetailQueryResultIterator(recordHolder, dataLength, merger);
+      this.queryIterator = new PrimaryKeyRangeBatchIterator(rangeIterators, rangeBatches,
+          queryProperties.executorService);
     }
     return this.queryIterator;
   }
 
+  /**
+   * A group having a single columnar block has no key with more than one version, as the block
+   * is written by a merge, so it is read without merge
+   */
+  private boolean isDirectGroup(List<Integer> group, List<IteratorHolder> rowHolders) {
+    return group.size() == 1 && rowHolders.get(group.get(0)) == null;
+  }
+
+  /**
+   * Direct fill decodes the pages straight into the vectors. Same as the SDK reader it is used
+   * only when there is no filter and no complex column.
+   */
+  private boolean isDirectFillSupported(BlockExecutionInfo executionInfo, QueryModel queryModel) {
+    TableBlockInfo blockInfo = executionInfo.getDataBlock().getDataRefNode().getBlockInfo();
+    if (queryModel.getFilterExpressionResolverTree() != null
+        || blockInfo.getVersion() != ColumnarFormatVersion.V3
+        || blockInfo.getDataMapWriterPath() != null) {
+      return false;
+    }
+    for (ProjectionDimension dimension : queryModel.getProjectionDimensions()) {
+      if (dimension.getDimension().isComplex()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Creates the holder of a columnar block positioned on its first row, null if it has no rows
+   */
+  private IteratorHolder createVectorHolder(BlockExecutionInfo executionInfo,
+      QueryModel queryModel) {
+    VectorDetailQueryResultIterator iterator =
+        new VectorDetailQueryResultIterator(new ArrayList(Arrays.asList(executionInfo)),
+            queryModel, queryProperties.executorService);
+    IteratorVectorHolder holder =
+        new IteratorVectorHolder(comparator, iterator, createColumnarBatch(queryModel),
+            executionInfo);
+    if (holder.hasNext()) {
+      holder.read();
+      return holder;
+    }
+    return null;
+  }
+
+  private PrimaryKeyMerger createMerger() {
+    return new PrimaryKeyMerger(mergeRowComparator, timestampOrdinal, deleteStatusOrdinal,
+        columnOrdinals);
+  }
+
+  /**
+   * Reads the primary key groups of a range in key order. The blocks of a group are opened only
+   * when the group is reached, on the thread reading the range.
+   */
+  private class RangeIterator extends PrimaryKeyGroupBatchIterator {
+
+    private QueryModel queryModel;
+
+    private List<BlockExecutionInfo> executionInfos;
+
+    private List<IteratorHolder> rowHolders;
+
+    RangeIterator(List<List<Integer>> groups, QueryModel queryModel,
+        List<BlockExecutionInfo> executionInfos, List<IteratorHolder> rowHolders) {
+      super(groups);
+      this.queryModel = queryModel;
+      this.executionInfos = executionInfos;
+      this.rowHolders = rowHolders;
+    }
+
+    @Override protected CarbonBatchIterator createGroupIterator(List<Integer> group) {
+      if (isDirectGroup(group, rowHolders)) {
+        BlockExecutionInfo executionInfo = executionInfos.get(group.get(0));
+        executionInfo.setDirectVectorFill(isDirectFillSupported(executionInfo, queryModel));
+        VectorDetailQueryResultIterator iterator =
+            new VectorDetailQueryResultIterator(new ArrayList(Arrays.asList(executionInfo)),
+                queryModel, queryProperties.executorService);
+        return new PrimaryKeyDirectVectorDetailQueryResultIterator(iterator,
+            createColumnarBatch(queryModel), createMerger());
+      }
+      AbstractQueue<IteratorHolder> recordHolder = new LoserTreeQueue(comparator);
+      for (Integer index : group) {
+        IteratorHolder holder = rowHolders.get(index);
+        if (holder == null) {
+          holder = createVectorHolder(executionInfos.get(index), queryModel);
+        }
+        if (holder != null) {
+          recordHolder.add(holder);
+        }
+      }
+      return new PrimaryKeyVectorDetailQueryResultIterator(recordHolder, dataLength,
+          createMerger(), comparator);
+    }
+  }
+
+  /**
+   * Adds the min and max primary key of the block from the min and max of its blocklets. The
+   * range is unknown when the min or max of any primary key column is not present or can not be
+   * compared on its actual value.
+   */
+  private void addPrimaryKeyRange(BlockExecutionInfo executionInfo,
+      List<CarbonColumn> primaryKeyCols, List<Object[]> minKeys, List<Object[]> maxKeys,
+      List<Long> rowCounts) {
+    SegmentProperties segmentProperties = executionInfo.getDataBlock().getSegmentProperties();
+    BlockletDataRefNode firstNode =
+        (BlockletDataRefNode) executionInfo.getDataBlock().getDataRefNode();
+    Object[] minKey = new Object[primaryKeyCols.size()];
+    Object[] maxKey = new Object[primaryKeyCols.size()];
+    long rowCount = 0;
+    DataRefNode node = firstNode;
+    for (int i = 0; i < firstNode.numberOfNodes() && node != null; i++) {
+      rowCount += node.numRows();
+      byte[][] minValues = node.getColumnsMinValue();
+      byte[][] maxValues = node.getColumnsMaxValue();
+      boolean[] minMaxFlags = node.minMaxFlagArray();
+      for (int j = 0; j < primaryKeyCols.size() && minKey != null; j++) {
+        CarbonColumn keyCol = primaryKeyCols.get(j);
+        int index = getMinMaxIndex(keyCol, segmentProperties);
+        if (index < 0 || minValues == null || maxValues == null || minMaxFlags == null
+            || index >= minValues.length || index >= maxValues.length || !minMaxFlags[index]) {
+          minKey = null;
+          break;
+        }
+        Object min = getMinMaxValue(keyCol, minValues[index]);
+        Object max = getMinMaxValue(keyCol, maxValues[index]);
+        if (min == null || max == null) {
+          minKey = null;
+          break;
+        }
+        SerializableComparator comparator =
+            org.apache.carbondata.core.util.comparator.Comparator
+                .getComparator(keyCol.getDataType());
+        if (minKey[j] == null || comparator.compare(min, minKey[j]) < 0) {
+          minKey[j] = min;
+        }
+        if (maxKey[j] == null || comparator.compare(max, maxKey[j]) > 0) {
+          maxKey[j] = max;
+        }
+      }
+      node = node.getNextDataRefNode();
+    }
+    minKeys.add(minKey);
+    maxKeys.add(minKey == null ? null : maxKey);
+    rowCounts.add(rowCount);
+  }
+
+  private int getMinMaxIndex(CarbonColumn keyCol, SegmentProperties segmentProperties) {
+    if (keyCol.isDimension()) {
+      CarbonDimension dimension =
+          segmentProperties.getDimensionFromCurrentBlock((CarbonDimension) keyCol);
+      if (dimension == null || dimension.hasEncoding(Encoding.DICTIONARY) || dimension
+          .isComplex()) {
+        return -1;
+      }
+      return dimension.getOrdinal();
+    }
+    CarbonMeasure measure = segmentProperties.getMeasureFromCurrentBlock(keyCol.getColumnId());
+    if (measure == null) {
+      return -1;
+    }
+    return segmentProperties.getLastDimensionColOrdinal() + measure.getOrdinal();
+  }
+
+  /**
+   * Converts the min or max of a primary key column to the value compared by the merge, null if
+   * it can not be converted
+   */
+  private Object getMinMaxValue(CarbonColumn keyCol, byte[] value) {
+    DataType dataType = keyCol.getDataType();
+    if (!keyCol.isDimension()) {
+      if (dataType == DataTypes.SHORT || dataType == DataTypes.INT || dataType == DataTypes.LONG
+          || dataType == DataTypes.DOUBLE || DataTypes.isDecimal(dataType)) {
+        return DataTypeUtil.getMeasureObjectFromDataType(value, dataType);
+      }
+      return null;
+    }
+    if (dataType == DataTypes.STRING || dataType == DataTypes.VARCHAR) {
+      if (value == null || value.length == 0 || Arrays
+          .equals(CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY, value)) {
+        return null;
+      }
+      return value;
+    } else if (dataType == DataTypes.SHORT || dataType == DataTypes.INT
+        || dataType == DataTypes.LONG) {
+      return DataTypeUtil.getDataBasedOnDataTypeForNoDictionaryColumn(value, dataType);
+    }
+    return null;
+  }
+
+  private Object[] getPrimaryKey(Object[] row, int[] primaryKeyOrdinals) {
+    Object[] key = new Object[primaryKeyOrdinals.length];
+    for (int i = 0; i < primaryKeyOrdinals.length; i++) {
+      key[i] = row[primaryKeyOrdinals[i]];
+      if (key[i] == null) {
+        return null;
+      }
+    }
+    return key;
+  }
+
+  private long[] toLongArray(List<Long> values) {
+    long[] array = new long[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+
+  private int getMergeParallelism() {
+    int parallelism;
+    try {
+      parallelism = Integer.parseInt(CarbonProperties.getInstance()
+          .getProperty(CarbonCommonConstants.CARBON_PRIMARY_KEY_MERGE_PARALLELISM,
+              CarbonCommonConstants.CARBON_PRIMARY_KEY_MERGE_PARALLELISM_DEFAULT));
+    } catch (NumberFormatException e) {
+      LOGGER.warn("Configured value for property "
+          + CarbonCommonConstants.CARBON_PRIMARY_KEY_MERGE_PARALLELISM
+          + " is wrong. Falling back to the default value "
+          + CarbonCommonConstants.CARBON_PRIMARY_KEY_MERGE_PARALLELISM_DEFAULT);
+      parallelism =
+          Integer.parseInt(CarbonCommonConstants.CARBON_PRIMARY_KEY_MERGE_PARALLELISM_DEFAULT);
+    }
+    return Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+  }
+
+  private int getStreamSortRowLimit() {
+    try {
+      return Integer.parseInt(CarbonProperties.getInstance()
+          .getProperty(CarbonCommonConstants.CARBON_PRIMARY_KEY_STREAM_SORT_ROWS,
+              CarbonCommonConstants.CARBON_PRIMARY_KEY_STREAM_SORT_ROWS_DEFAULT));
+    } catch (NumberFormatException e) {
+      LOGGER.warn("Configured value for property "
+          + CarbonCommonConstants.CARBON_PRIMARY_KEY_STREAM_SORT_ROWS
+          + " is wrong. Falling back to the default value "
+          + CarbonCommonConstants.CARBON_PRIMARY_KEY_STREAM_SORT_ROWS_DEFAULT);
+      return Integer.parseInt(CarbonCommonConstants.CARBON_PRIMARY_KEY_STREAM_SORT_ROWS_DEFAULT);
+    }
+  }
+
+  @Override public void finish() throws QueryExecutionException {
+    RuntimeException closeException = null;
+    if (queryIterator instanceof PrimaryKeyRangeBatchIterator) {
+      // stop the range threads before their sorted runs and memory are freed
+      try {
+        queryIterator.close();
+      } catch (RuntimeException e) {
+        closeException = e;
+      }
+    }
+    // delete the sorted runs of the stream blocks not read till the end
+    for (PrimaryKeyExternalSorter sorter : sorters) {
+      sorter.close();
+    }
+    sorters.clear();
+    super.finish();
+    if (closeException != null) {
+      throw new QueryExecutionException(closeException);
+    }
+  }
+
   private CarbonColumn getTimeStampColumn(CarbonColumn schema, CarbonColumn versionColumn) {
     // TODO make the version column configurable
     if (schema.getColName().equalsIgnoreCase("timestamp")) {
@@ -18,15 +18,19 @@ package org.apache.carbondata.core.scan.filter.executer;
 
 import java.io.IOException;
 import java.util.BitSet;
+import java.util.List;
 
 import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.datastore.DataRefNode;
 import org.apache.carbondata.core.datastore.block.SegmentProperties;
 import org.apache.carbondata.core.datastore.chunk.DimensionColumnPage;
 import org.apache.carbondata.core.datastore.chunk.impl.DimensionRawColumnChunk;
 import org.apache.carbondata.core.datastore.chunk.impl.MeasureRawColumnChunk;
 import org.apache.carbondata.core.datastore.page.ColumnPage;
+import org.apache.carbondata.core.metadata.blocklet.BlockletInfo;
 import org.apache.carbondata.core.metadata.datatype.DataType;
 import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
 import org.apache.carbondata.core.scan.expression.exception.FilterUnsupportedException;
 import org.apache.carbondata.core.scan.filter.FilterUtil;
 import org.apache.carbondata.core.scan.filter.intf.RowIntf;
@@ -55,6 +59,17 @@ public class IncludeFilterExecuterImpl implements FilterExecuter {
    */
   private boolean isNaturalSorted = false;
 
+  /**
+   * is dimension the leading primary key column, the pages of a block written sorted are sorted on
+   * it even without inverted index
+   */
+  private boolean isPrimaryKeySorted = false;
+
+  /**
+   * whether the pages of the current chunk can be binary searched
+   */
+  private boolean isPageSorted = false;
+
   private byte[][] filterValues;
 
   public IncludeFilterExecuterImpl(byte[][] filterValues, boolean isNaturalSorted) {
@@ -77,6 +92,8 @@ public class IncludeFilterExecuterImpl implements FilterExecuter {
       isNaturalSorted =
           dimColumnEvaluatorInfo.getDimension().isUseInvertedIndex() && dimColumnEvaluatorInfo
               .getDimension().isSortColumn();
+      isPrimaryKeySorted =
+          isLeadingPrimaryKeyColumn(dimColumnEvaluatorInfo.getDimension(), segmentProperties);
 
     } else {
       this.msrColumnEvaluatorInfo = msrColumnEvaluatorInfo;
@@ -92,6 +109,31 @@ public class IncludeFilterExecuterImpl implements FilterExecuter {
 
   }
 
+  private static boolean isLeadingPrimaryKeyColumn(CarbonDimension dimension,
+      SegmentProperties segmentProperties) {
+    if (!dimension.getColumnSchema().isPrimaryKeyColumn() || !dimension.isSortColumn()
+        || dimension.hasEncoding(Encoding.DICTIONARY) || dimension.isComplex()) {
+      return false;
+    }
+    // sort columns are the first dimensions, in sort order
+    List<CarbonDimension> dimensions = segmentProperties.getDimensions();
+    return !dimensions.isEmpty() && dimensions.get(0).getColumnId()
+        .equals(dimension.getColumnId());
+  }
+
+  /**
+   * Returns true if the footer of the block records it as sorted, a block without the flag is
+   * scanned row by row
+   */
+  private static boolean isBlockSorted(DataRefNode dataBlock) {
+    if (dataBlock == null || dataBlock.getBlockInfo() == null
+        || dataBlock.getBlockInfo().getDetailInfo() == null) {
+      return false;
+    }
+    BlockletInfo blockletInfo = dataBlock.getBlockInfo().getDetailInfo().getBlockletInfo();
+    return blockletInfo != null && Boolean.TRUE.equals(blockletInfo.isSorted());
+  }
+
   @Override
   public BitSetGroup applyFilter(RawBlockletColumnChunks rawBlockletColumnChunks,
       boolean useBitsetPipeLine) throws IOException {
@@ -107,6 +149,9 @@ public class IncludeFilterExecuterImpl implements FilterExecuter {
           rawBlockletColumnChunks.getDimensionRawColumnChunks()[chunkIndex];
       BitSetGroup bitSetGroup = new BitSetGroup(dimensionRawColumnChunk.getPagesCount());
       filterValues = dimColumnExecuterInfo.getFilterKeys();
+      // local dictionary values are not in the order of the actual values
+      isPageSorted = isPrimaryKeySorted && isBlockSorted(rawBlockletColumnChunks.getDataBlock())
+          && dimensionRawColumnChunk.getLocalDictionary() == null;
       boolean isDecoded = false;
       for (int i = 0; i < dimensionRawColumnChunk.getPagesCount(); i++) {
         if (dimensionRawColumnChunk.getMaxValues() != null) {
@@ -465,8 +510,8 @@ public class IncludeFilterExecuterImpl implements FilterExecuter {
       return bitSet;
     }
     // binary search can only be applied if column is sorted and
-    // inverted index exists for that column
-    if (isNaturalSorted && dimensionColumnPage.isExplicitSorted()) {
+    // inverted index exists for that column, or if it is the leading primary key column
+    if (isPageSorted || (isNaturalSorted && dimensionColumnPage.isExplicitSorted())) {
       int startIndex = 0;
       for (int i = 0; i < filterValues.length; i++) {
         if (startIndex >= numerOfRows) {
@@ -31,6 +31,7 @@ import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
 import org.apache.carbondata.core.metadata.schema.table.column.CarbonMeasure;
 import org.apache.carbondata.core.scan.expression.Expression;
 import org.apache.carbondata.core.scan.filter.resolver.FilterResolverIntf;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyAsOfFilter;
 import org.apache.carbondata.core.util.DataTypeConverter;
 
 import org.apache.log4j.Logger;
@@ -43,6 +44,7 @@ public class QueryModelBuilder {
   private DataTypeConverter dataTypeConverter;
   private boolean forcedDetailRawQuery;
   private boolean readPageByPage;
+  private long asOfTimestamp;
   /**
    * log information
    */
@@ -291,6 +293,15 @@ public class QueryModelBuilder {
     return this;
   }
 
+  /**
+   * Reads the primary key table as of the given version, the versions written after it are
+   * filtered out before the merge
+   */
+  public QueryModelBuilder asOfTimestamp(long asOfTimestamp) {
+    this.asOfTimestamp = asOfTimestamp;
+    return this;
+  }
+
   public QueryModelBuilder dataConverter(DataTypeConverter dataTypeConverter) {
     this.dataTypeConverter = dataTypeConverter;
     return this;
@@ -311,6 +322,10 @@ public class QueryModelBuilder {
     queryModel.setForcedDetailRawQuery(forcedDetailRawQuery);
     queryModel.setReadPageByPage(readPageByPage);
     queryModel.setProjection(projection);
+    Expression filterExpression = this.filterExpression;
+    if (asOfTimestamp > 0) {
+      filterExpression = PrimaryKeyAsOfFilter.addTo(filterExpression, table, asOfTimestamp);
+    }
 
     if (table.isTransactionalTable()) {
       // set the filter to the query model in order to filter blocklet before scan
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.datatype.DecimalType;
+import org.apache.carbondata.core.scan.result.impl.CarbonStreamRecordReader;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+
+/**
+ * Selection list of the rows which won the primary key merge. Every entry points to a row of a
+ * source batch and the output row it goes to. The rows are copied column by column, so the data
+ * type of a column is resolved once per copy and the cells are moved with typed reads and writes
+ * instead of boxed objects.
+ */
+public class ColumnarRowSelection {
+
+  private CarbonColumnarBatch[] sourceBatches;
+
+  private int[] sourceRowIds;
+
+  private int[] targetRowIds;
+
+  private int size;
+
+  public ColumnarRowSelection(int capacity) {
+    sourceBatches = new CarbonColumnarBatch[capacity];
+    sourceRowIds = new int[capacity];
+    targetRowIds = new int[capacity];
+  }
+
+  public void add(CarbonColumnarBatch sourceBatch, int sourceRowId, int targetRowId) {
+    sourceBatches[size] = sourceBatch;
+    sourceRowIds[size] = sourceRowId;
+    targetRowIds[size] = targetRowId;
+    size++;
+  }
+
+  public int capacity() {
+    return sourceRowIds.length;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Copies all the selected rows to the target batch and clears the selection. It must be called
+   * before any of the source batches is refilled.
+   */
+  public void copyTo(CarbonColumnarBatch target) {
+    if (size == 0) {
+      return;
+    }
+    CarbonColumnVector[] targetVectors = target.columnVectors;
+    for (int i = 0; i < targetVectors.length; i++) {
+      copyColumn(i, targetVectors[i]);
+    }
+    for (int i = 0; i < size; i++) {
+      sourceBatches[i] = null;
+    }
+    size = 0;
+  }
+
+  private void copyColumn(int ordinal, CarbonColumnVector target) {
+    DataType dataType = sourceBatches[0].columnVectors[ordinal].getType();
+    if (!dataType.equals(target.getType())) {
+      // types differ after restructure, let the generic conversion handle it
+      for (int i = 0; i < size; i++) {
+        CarbonStreamRecordReader.putRowToColumnBatch(targetRowIds[i],
+            sourceBatches[i].columnVectors[ordinal].getData(sourceRowIds[i]), target);
+      }
+      return;
+    }
+    if (dataType == DataTypes.LONG || dataType == DataTypes.TIMESTAMP) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putLong(targetRowIds[i], source.getLong(sourceRowIds[i]));
+        }
+      }
+    } else if (dataType == DataTypes.INT || dataType == DataTypes.DATE) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putInt(targetRowIds[i], source.getInt(sourceRowIds[i]));
+        }
+      }
+    } else if (dataType == DataTypes.SHORT) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putShort(targetRowIds[i], source.getShort(sourceRowIds[i]));
+        }
+      }
+    } else if (dataType == DataTypes.BOOLEAN) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putBoolean(targetRowIds[i], source.getByte(sourceRowIds[i]) == 1);
+        }
+      }
+    } else if (dataType == DataTypes.BYTE) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putByte(targetRowIds[i], source.getByte(sourceRowIds[i]));
+        }
+      }
+    } else if (dataType == DataTypes.DOUBLE) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putDouble(targetRowIds[i], source.getDouble(sourceRowIds[i]));
+        }
+      }
+    } else if (dataType == DataTypes.FLOAT) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putFloat(targetRowIds[i], source.getFloat(sourceRowIds[i]));
+        }
+      }
+    } else if (DataTypes.isDecimal(dataType)) {
+      int precision = ((DecimalType) dataType).getPrecision();
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        if (source.isNullAt(sourceRowIds[i])) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          target.putDecimal(targetRowIds[i], source.getDecimal(sourceRowIds[i]), precision);
+        }
+      }
+    } else if (dataType == DataTypes.STRING || dataType == DataTypes.BYTE_ARRAY
+        || dataType == DataTypes.VARCHAR) {
+      for (int i = 0; i < size; i++) {
+        CarbonColumnVectorImpl source = getSource(i, ordinal);
+        int rowId = sourceRowIds[i];
+        if (source.isNullAt(rowId)) {
+          target.putNull(targetRowIds[i]);
+        } else {
+          byte[] buffer = source.getByteArrayBuffer(rowId);
+          int offset = source.getByteArrayOffset(rowId);
+          int length = source.getByteArrayLength(rowId);
+          if (offset == 0 && length == buffer.length) {
+            target.putByteArray(targetRowIds[i], buffer);
+          } else {
+            target.putByteArray(targetRowIds[i], offset, length, buffer);
+          }
+        }
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        CarbonStreamRecordReader.putRowToColumnBatch(targetRowIds[i],
+            sourceBatches[i].columnVectors[ordinal].getData(sourceRowIds[i]), target);
+      }
+    }
+  }
+
+  private CarbonColumnVectorImpl getSource(int index, int ordinal) {
+    return (CarbonColumnVectorImpl) sourceBatches[index].columnVectors[ordinal];
+  }
+}
@@ -72,6 +72,18 @@ public class IteratorVectorHolder implements IteratorHolder {
     return columnarBatch;
   }
 
+  public int getCurrentRowId() {
+    return counter;
+  }
+
+  /**
+   * Returns true if the current row is the last row of the batch, so the next read will refill
+   * the batch and overwrite the vectors.
+   */
+  public boolean isLastRowInBatch() {
+    return counter >= columnarBatch.getRowCounter() - 1;
+  }
+
   @Override public BlockExecutionInfo getBlockExecutionInfo() {
     return executionInfo;
   }
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tournament tree of losers over the iterator holders of the primary key merge. It replaces the
+ * PriorityQueue used by the merge and follows the same pattern: poll the smallest holder, read
+ * its next row and add it back.
+ *
+ * Adding the polled holder back replays only the matches on the path of its leaf, which is one
+ * comparison per level instead of the sift down and sift up of a heap. When a holder wins again
+ * the runner-up is looked up, and as long as the next row of the holder is not bigger than the
+ * runner-up it stays the winner without touching the tree, so a run of rows from one holder is
+ * drained with a single comparison per row. While the polled holder is out, peek returns the
+ * runner-up.
+ *
+ * Holders can be added freely until the first poll or peek, after that only the holder returned
+ * by the last poll can be added back. A polled holder which is not added back is exhausted.
+ */
+public class LoserTreeQueue extends AbstractQueue<IteratorHolder> {
+
+  private static final int UNKNOWN = -2;
+
+  private static final int NONE = -1;
+
+  private Comparator<IteratorHolder> comparator;
+
+  private List<IteratorHolder> initialHolders = new ArrayList<>();
+
+  /**
+   * holder of every leaf, set to null once the holder is exhausted
+   */
+  private IteratorHolder[] leaves;
+
+  /**
+   * tree[0] is the winner leaf and tree[1..k-1] are the loser leaves of each match, children of
+   * node n are 2n and 2n+1 and leaf i is placed at node k+i
+   */
+  private int[] tree;
+
+  private int size;
+
+  private int polledLeaf = NONE;
+
+  private int runnerUpLeaf = UNKNOWN;
+
+  public LoserTreeQueue(Comparator<IteratorHolder> comparator) {
+    this.comparator = comparator;
+  }
+
+  @Override public boolean offer(IteratorHolder holder) {
+    if (leaves == null) {
+      initialHolders.add(holder);
+      size++;
+      return true;
+    }
+    if (polledLeaf == NONE || leaves[polledLeaf] != holder) {
+      throw new IllegalStateException("Only the last polled holder can be added back");
+    }
+    int leaf = polledLeaf;
+    polledLeaf = NONE;
+    size++;
+    if (runnerUpLeaf != UNKNOWN) {
+      if (runnerUpLeaf == NONE || comparator.compare(holder, leaves[runnerUpLeaf]) <= 0) {
+        // still the smallest, so none of the matches on its path change
+        return true;
+      }
+      replay(leaf);
+    } else {
+      replay(leaf);
+      if (tree[0] == leaf) {
+        // the holder won again, so it is likely in a run of keys. Find the runner-up once, the
+        // next rows of the run need only one comparison against it
+        getRunnerUpLeaf();
+      }
+    }
+    return true;
+  }
+
+  @Override public IteratorHolder poll() {
+    initialize();
+    releasePolledLeaf();
+    if (size == 0) {
+      return null;
+    }
+    polledLeaf = tree[0];
+    size--;
+    return leaves[polledLeaf];
+  }
+
+  @Override public IteratorHolder peek() {
+    initialize();
+    if (polledLeaf != NONE) {
+      int runnerUp = getRunnerUpLeaf();
+      return runnerUp == NONE ? null : leaves[runnerUp];
+    }
+    return size == 0 ? null : leaves[tree[0]];
+  }
+
+  @Override public Iterator<IteratorHolder> iterator() {
+    if (leaves == null) {
+      return Collections.unmodifiableList(initialHolders).iterator();
+    }
+    List<IteratorHolder> holders = new ArrayList<>(size);
+    for (int i = 0; i < leaves.length; i++) {
+      if (leaves[i] != null && i != polledLeaf) {
+        holders.add(leaves[i]);
+      }
+    }
+    return Collections.unmodifiableList(holders).iterator();
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  private void initialize() {
+    if (leaves != null) {
+      return;
+    }
+    int k = initialHolders.size();
+    leaves = initialHolders.toArray(new IteratorHolder[k]);
+    initialHolders = null;
+    tree = new int[Math.max(k, 1)];
+    if (k <= 1) {
+      return;
+    }
+    int[] winners = new int[2 * k];
+    for (int i = 0; i < k; i++) {
+      winners[k + i] = i;
+    }
+    for (int node = k - 1; node > 0; node--) {
+      int left = winners[2 * node];
+      int right = winners[2 * node + 1];
+      if (isLess(right, left)) {
+        winners[node] = right;
+        tree[node] = left;
+      } else {
+        winners[node] = left;
+        tree[node] = right;
+      }
+    }
+    tree[0] = winners[1];
+  }
+
+  /**
+   * The polled holder was not added back, so it is exhausted and its matches are replayed
+   */
+  private void releasePolledLeaf() {
+    if (polledLeaf != NONE) {
+      leaves[polledLeaf] = null;
+      replay(polledLeaf);
+      polledLeaf = NONE;
+    }
+  }
+
+  private void replay(int leaf) {
+    int current = leaf;
+    for (int node = (leaves.length + leaf) >>> 1; node > 0; node >>>= 1) {
+      if (isLess(tree[node], current)) {
+        int winner = tree[node];
+        tree[node] = current;
+        current = winner;
+      }
+    }
+    tree[0] = current;
+    runnerUpLeaf = UNKNOWN;
+  }
+
+  /**
+   * The runner-up lost its match directly to the winner, so it is the smallest of the losers on
+   * the path of the winner leaf. It stays valid until the tree is replayed.
+   */
+  private int getRunnerUpLeaf() {
+    if (runnerUpLeaf == UNKNOWN) {
+      int best = NONE;
+      for (int node = (leaves.length + tree[0]) >>> 1; node > 0; node >>>= 1) {
+        int candidate = tree[node];
+        if (leaves[candidate] != null && (best == NONE || isLess(candidate, best))) {
+          best = candidate;
+        }
+      }
+      runnerUpLeaf = best;
+    }
+    return runnerUpLeaf;
+  }
+
+  private boolean isLess(int leaf1, int leaf2) {
+    if (leaves[leaf1] == null) {
+      return false;
+    }
+    if (leaves[leaf2] == null) {
+      return true;
+    }
+    return comparator.compare(leaves[leaf1], leaves[leaf2]) < 0;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.scan.expression.ColumnExpression;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.expression.LiteralExpression;
+import org.apache.carbondata.core.scan.expression.conditional.GreaterThanExpression;
+import org.apache.carbondata.core.scan.expression.conditional.LessThanEqualToExpression;
+import org.apache.carbondata.core.scan.expression.logical.AndExpression;
+
+/**
+ * Creates the filter of an as-of read of a primary key table. The filter keeps only the versions
+ * written at or before the as-of timestamp, so the blocklets whose min version is newer are
+ * pruned on their min and max, and the newer versions of the other blocklets are filtered in the
+ * scan before they reach the primary key merge. The merge then resolves every key to its latest
+ * version as of the timestamp.
+ */
+public final class PrimaryKeyAsOfFilter {
+
+  /**
+   * name of the version column of a primary key table
+   */
+  public static final String VERSION_COLUMN = "timestamp";
+
+  private PrimaryKeyAsOfFilter() {
+  }
+
+  /**
+   * @param carbonTable   primary key table
+   * @param asOfTimestamp latest version to read
+   * @return filter expression keeping the versions written at or before the timestamp
+   */
+  public static Expression createExpression(CarbonTable carbonTable, long asOfTimestamp) {
+    CarbonColumn versionColumn = getVersionColumn(carbonTable);
+    return new LessThanEqualToExpression(
+        new ColumnExpression(versionColumn.getColName(), versionColumn.getDataType()),
+        new LiteralExpression(asOfTimestamp, versionColumn.getDataType()));
+  }
+
+  /**
+   * @param carbonTable primary key table
+   * @param fromVersion versions written after it are kept
+   * @param toVersion   versions written at or before it are kept
+   * @return filter expression keeping the versions written in (fromVersion, toVersion], the
+   * blocklets whose version range does not intersect the window are pruned
+   */
+  public static Expression createWindowExpression(CarbonTable carbonTable, long fromVersion,
+      long toVersion) {
+    CarbonColumn versionColumn = getVersionColumn(carbonTable);
+    return new AndExpression(new GreaterThanExpression(
+        new ColumnExpression(versionColumn.getColName(), versionColumn.getDataType()),
+        new LiteralExpression(fromVersion, versionColumn.getDataType())),
+        createExpression(carbonTable, toVersion));
+  }
+
+  /**
+   * Returns the filter expression with the as-of filter added, the as-of filter alone if there is
+   * no filter expression
+   */
+  public static Expression addTo(Expression filterExpression, CarbonTable carbonTable,
+      long asOfTimestamp) {
+    Expression asOfExpression = createExpression(carbonTable, asOfTimestamp);
+    if (filterExpression == null) {
+      return asOfExpression;
+    }
+    return new AndExpression(filterExpression, asOfExpression);
+  }
+
+  private static CarbonColumn getVersionColumn(CarbonTable carbonTable) {
+    CarbonColumn versionColumn =
+        carbonTable.getColumnByName(carbonTable.getTableName(), VERSION_COLUMN);
+    if (versionColumn == null) {
+      throw new IllegalArgumentException(
+          "Table " + carbonTable.getTableName() + " has no " + VERSION_COLUMN
+              + " column to read by version");
+    }
+    return versionColumn;
+  }
+}
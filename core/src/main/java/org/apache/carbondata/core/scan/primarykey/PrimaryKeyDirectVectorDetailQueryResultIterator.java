@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import org.apache.carbondata.common.CarbonIterator;
+import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+
+/**
+ * Reads a block whose primary key range does not overlap any other block of the split. Every key
+ * of the block has a single version, so nothing is merged: the rows are scanned in vector batches
+ * and only the deleted keys are left out while copying them to the output batch.
+ */
+public class PrimaryKeyDirectVectorDetailQueryResultIterator extends CarbonIterator
+    implements CarbonBatchIterator {
+
+  private CarbonBatchIterator iterator;
+
+  private CarbonColumnarBatch sourceBatch;
+
+  private PrimaryKeyMerger merger;
+
+  private ColumnarRowSelection selection;
+
+  private int rowCount;
+
+  private int rowId;
+
+  /**
+   * @param iterator    scan iterator of the block
+   * @param sourceBatch batch the block is scanned into
+   * @param merger      merger giving the delete status of the rows
+   */
+  public PrimaryKeyDirectVectorDetailQueryResultIterator(CarbonBatchIterator iterator,
+      CarbonColumnarBatch sourceBatch, PrimaryKeyMerger merger) {
+    this.iterator = iterator;
+    this.sourceBatch = sourceBatch;
+    this.merger = merger;
+  }
+
+  @Override public boolean hasNext() {
+    return rowId < rowCount || iterator.hasNext();
+  }
+
+  @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+    int batchSize = columnarBatch.getBatchSize();
+    if (selection == null || selection.capacity() < batchSize) {
+      selection = new ColumnarRowSelection(batchSize);
+    }
+    boolean[] filteredRows = sourceBatch.getFilteredRows();
+    int i = 0;
+    while (i < batchSize) {
+      if (rowId >= rowCount) {
+        // the source batch gets refilled, so copy the rows selected from it first
+        selection.copyTo(columnarBatch);
+        if (!iterator.hasNext()) {
+          break;
+        }
+        sourceBatch.reset();
+        iterator.processNextBatch(sourceBatch);
+        // direct fill leaves out the rows of the delete delta and sets only the actual size,
+        // otherwise the rows of the delete delta are marked in the filtered rows
+        rowCount = Math.max(sourceBatch.getRowCounter(), sourceBatch.getActualSize());
+        rowId = 0;
+        continue;
+      }
+      int end = Math.min(rowCount, rowId + batchSize - i);
+      for (; rowId < end; rowId++) {
+        if (!filteredRows[rowId] && !merger.isDeletedRow(sourceBatch, rowId)) {
+          selection.add(sourceBatch, rowId, i++);
+        }
+      }
+    }
+    selection.copyTo(columnarBatch);
+    columnarBatch.setActualSize(i);
+  }
+
+  @Override public Object next() {
+    throw new UnsupportedOperationException("Not supported from here");
+  }
+
+  @Override public void close() {
+    iterator.close();
+  }
+}
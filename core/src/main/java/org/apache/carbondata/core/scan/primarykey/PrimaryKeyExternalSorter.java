@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.carbondata.common.logging.LogServiceFactory;
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.constants.CarbonCommonConstantsInternal;
+import org.apache.carbondata.core.util.CarbonUtil;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.log4j.Logger;
+
+/**
+ * Sorts the rows of a stream block on the primary key with bounded memory. Rows are buffered up
+ * to a row limit, a full buffer is sorted and spilled to a sorted run in a directory under one of
+ * the local temp locations of the task, and the runs are merged when the rows are read. Without
+ * spill the rows are sorted in memory. The directory of the runs is deleted on close.
+ */
+public class PrimaryKeyExternalSorter implements Closeable {
+
+  private static final Logger LOGGER =
+      LogServiceFactory.getLogService(PrimaryKeyExternalSorter.class.getName());
+
+  private static final byte NULL = 0;
+  private static final byte BYTE_ARRAY = 1;
+  private static final byte BOOLEAN = 2;
+  private static final byte BYTE = 3;
+  private static final byte SHORT = 4;
+  private static final byte INT = 5;
+  private static final byte LONG = 6;
+  private static final byte FLOAT = 7;
+  private static final byte DOUBLE = 8;
+  private static final byte DECIMAL = 9;
+  private static final byte STRING = 10;
+  private static final byte OBJECT = 11;
+
+  private static final AtomicLong RUN_DIRECTORY_ID = new AtomicLong();
+
+  private Comparator<Object[]> comparator;
+
+  private int inMemoryRowLimit;
+
+  private String[] tempLocations;
+
+  private File runDirectory;
+
+  private List<Object[]> buffer = new ArrayList<>();
+
+  private List<File> runFiles = new ArrayList<>();
+
+  private List<DataInputStream> runStreams = new ArrayList<>();
+
+  private Object[] maxRow;
+
+  private long rowCount;
+
+  /**
+   * @param comparator       primary key comparator of the rows
+   * @param inMemoryRowLimit max number of rows buffered before a run is spilled
+   * @param tempLocations    local directories of the task, the runs are spilled to one of them
+   */
+  public PrimaryKeyExternalSorter(Comparator<Object[]> comparator, int inMemoryRowLimit,
+      String[] tempLocations) {
+    if (tempLocations == null || tempLocations.length == 0) {
+      throw new IllegalArgumentException("No temp location to spill the sorted runs");
+    }
+    this.comparator = comparator;
+    this.inMemoryRowLimit = Math.max(1, inMemoryRowLimit);
+    this.tempLocations = tempLocations;
+  }
+
+  /**
+   * Returns the local directories of the task to spill the sorted runs, the java temp directory
+   * if the read is not run in a task, like a read of the SDK
+   */
+  public static String[] getTempLocations(Configuration configuration) {
+    String[] tempLocations = null;
+    if (configuration != null) {
+      tempLocations =
+          configuration.getStrings(CarbonCommonConstantsInternal.PRIMARY_KEY_SORT_TEMP_LOCATIONS);
+    }
+    if (tempLocations == null || tempLocations.length == 0) {
+      tempLocations = new String[] { System.getProperty("java.io.tmpdir") };
+    }
+    return tempLocations;
+  }
+
+  public void addRow(Object[] row) throws IOException {
+    buffer.add(row);
+    rowCount++;
+    if (buffer.size() >= inMemoryRowLimit) {
+      spill();
+    }
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the row with the max key, valid after {@link #sort()}
+   */
+  public Object[] getMaxRow() {
+    return maxRow;
+  }
+
+  /**
+   * Returns the rows sorted on the primary key. Rows of the same key keep no particular order.
+   */
+  public Iterator<Object[]> sort() throws IOException {
+    if (runFiles.isEmpty()) {
+      Collections.sort(buffer, comparator);
+      if (!buffer.isEmpty()) {
+        maxRow = buffer.get(buffer.size() - 1);
+      }
+      Iterator<Object[]> iterator = buffer.iterator();
+      buffer = null;
+      return iterator;
+    }
+    if (!buffer.isEmpty()) {
+      spill();
+    }
+    buffer = null;
+    LOGGER.info("Merging " + runFiles.size() + " sorted runs of " + rowCount + " rows");
+    List<RunIterator> runs = new ArrayList<>(runFiles.size());
+    for (File runFile : runFiles) {
+      DataInputStream stream = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(runFile), 64 * 1024));
+      runStreams.add(stream);
+      runs.add(new RunIterator(stream));
+    }
+    return new MergeIterator(runs);
+  }
+
+  private void spill() throws IOException {
+    Collections.sort(buffer, comparator);
+    Object[] last = buffer.get(buffer.size() - 1);
+    if (maxRow == null || comparator.compare(last, maxRow) > 0) {
+      maxRow = last;
+    }
+    if (runDirectory == null) {
+      runDirectory = createRunDirectory();
+    }
+    File runFile = new File(runDirectory, "run_" + runFiles.size() + ".run");
+    runFiles.add(runFile);
+    DataOutputStream stream = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(runFile), 64 * 1024));
+    try {
+      for (Object[] row : buffer) {
+        writeRow(stream, row);
+      }
+    } finally {
+      CarbonUtil.closeStreams(stream);
+    }
+    buffer = new ArrayList<>();
+  }
+
+  private File createRunDirectory() throws IOException {
+    String tempLocation = tempLocations[new Random().nextInt(tempLocations.length)];
+    File directory = new File(tempLocation,
+        "carbon_pk_sort_" + System.nanoTime() + "_" + RUN_DIRECTORY_ID.getAndIncrement());
+    if (!directory.mkdirs()) {
+      throw new IOException(
+          "Failed to create the directory of the sorted runs " + directory.getAbsolutePath());
+    }
+    return directory;
+  }
+
+  /**
+   * Returns the directory of the sorted runs, null if no run is spilled
+   */
+  File getRunDirectory() {
+    return runDirectory;
+  }
+
+  static void writeRow(DataOutputStream stream, Object[] row) throws IOException {
+    stream.writeInt(row.length);
+    for (Object value : row) {
+      if (value == null) {
+        stream.writeByte(NULL);
+      } else if (value instanceof byte[]) {
+        stream.writeByte(BYTE_ARRAY);
+        stream.writeInt(((byte[]) value).length);
+        stream.write((byte[]) value);
+      } else if (value instanceof Boolean) {
+        stream.writeByte(BOOLEAN);
+        stream.writeBoolean((Boolean) value);
+      } else if (value instanceof Byte) {
+        stream.writeByte(BYTE);
+        stream.writeByte((Byte) value);
+      } else if (value instanceof Short) {
+        stream.writeByte(SHORT);
+        stream.writeShort((Short) value);
+      } else if (value instanceof Integer) {
+        stream.writeByte(INT);
+        stream.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        stream.writeByte(LONG);
+        stream.writeLong((Long) value);
+      } else if (value instanceof Float) {
+        stream.writeByte(FLOAT);
+        stream.writeFloat((Float) value);
+      } else if (value instanceof Double) {
+        stream.writeByte(DOUBLE);
+        stream.writeDouble((Double) value);
+      } else if (value instanceof BigDecimal) {
+        stream.writeByte(DECIMAL);
+        byte[] unscaled = ((BigDecimal) value).unscaledValue().toByteArray();
+        stream.writeInt(((BigDecimal) value).scale());
+        stream.writeInt(unscaled.length);
+        stream.write(unscaled);
+      } else if (value instanceof String) {
+        byte[] bytes = ((String) value).getBytes(CarbonCommonConstants.DEFAULT_CHARSET_CLASS);
+        stream.writeByte(STRING);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+      } else {
+        // complex values are rare in primary key tables, they go through java serialization
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectStream = new ObjectOutputStream(bytes);
+        objectStream.writeObject(value);
+        objectStream.close();
+        stream.writeByte(OBJECT);
+        stream.writeInt(bytes.size());
+        bytes.writeTo(stream);
+      }
+    }
+  }
+
+  /**
+   * Reads a row written by {@link #writeRow(DataOutputStream, Object[])}, null at the end of the
+   * stream
+   */
+  static Object[] readRow(DataInputStream stream) throws IOException {
+    int length;
+    try {
+      length = stream.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    Object[] row = new Object[length];
+    for (int i = 0; i < length; i++) {
+      byte type = stream.readByte();
+      switch (type) {
+        case NULL:
+          break;
+        case BYTE_ARRAY:
+          byte[] bytes = new byte[stream.readInt()];
+          stream.readFully(bytes);
+          row[i] = bytes;
+          break;
+        case BOOLEAN:
+          row[i] = stream.readBoolean();
+          break;
+        case BYTE:
+          row[i] = stream.readByte();
+          break;
+        case SHORT:
+          row[i] = stream.readShort();
+          break;
+        case INT:
+          row[i] = stream.readInt();
+          break;
+        case LONG:
+          row[i] = stream.readLong();
+          break;
+        case FLOAT:
+          row[i] = stream.readFloat();
+          break;
+        case DOUBLE:
+          row[i] = stream.readDouble();
+          break;
+        case DECIMAL:
+          int scale = stream.readInt();
+          byte[] unscaled = new byte[stream.readInt()];
+          stream.readFully(unscaled);
+          row[i] = new BigDecimal(new BigInteger(unscaled), scale);
+          break;
+        case STRING:
+          byte[] stringBytes = new byte[stream.readInt()];
+          stream.readFully(stringBytes);
+          row[i] = new String(stringBytes, CarbonCommonConstants.DEFAULT_CHARSET_CLASS);
+          break;
+        case OBJECT:
+          byte[] serialized = new byte[stream.readInt()];
+          stream.readFully(serialized);
+          ObjectInputStream objectStream =
+              new ObjectInputStream(new ByteArrayInputStream(serialized));
+          try {
+            row[i] = objectStream.readObject();
+          } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+          } finally {
+            objectStream.close();
+          }
+          break;
+        default:
+          throw new IOException("Invalid value type " + type + " in sorted run");
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Deletes the sorted runs and their directory
+   */
+  @Override public void close() {
+    for (DataInputStream stream : runStreams) {
+      CarbonUtil.closeStreams(stream);
+    }
+    runStreams.clear();
+    for (File runFile : runFiles) {
+      if (!runFile.delete()) {
+        LOGGER.warn("Failed to delete sorted run " + runFile.getAbsolutePath());
+      }
+    }
+    runFiles.clear();
+    if (runDirectory != null && !runDirectory.delete()) {
+      LOGGER.warn("Failed to delete the directory of the sorted runs " + runDirectory
+          .getAbsolutePath());
+    }
+    runDirectory = null;
+    buffer = null;
+  }
+
+  /**
+   * Reads the rows of a sorted run
+   */
+  private static class RunIterator {
+
+    private DataInputStream stream;
+
+    private Object[] current;
+
+    RunIterator(DataInputStream stream) throws IOException {
+      this.stream = stream;
+      this.current = readRow(stream);
+    }
+
+    boolean advance() throws IOException {
+      current = readRow(stream);
+      return current != null;
+    }
+  }
+
+  /**
+   * Merges the sorted runs, one row of every run is in memory
+   */
+  private class MergeIterator implements Iterator<Object[]> {
+
+    private PriorityQueue<RunIterator> queue;
+
+    MergeIterator(List<RunIterator> runs) {
+      queue = new PriorityQueue<>(Math.max(1, runs.size()), new Comparator<RunIterator>() {
+        @Override public int compare(RunIterator o1, RunIterator o2) {
+          return comparator.compare(o1.current, o2.current);
+        }
+      });
+      for (RunIterator run : runs) {
+        if (run.current != null) {
+          queue.add(run);
+        }
+      }
+    }
+
+    @Override public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    @Override public Object[] next() {
+      if (queue.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      RunIterator run = queue.poll();
+      Object[] row = run.current;
+      try {
+        if (run.advance()) {
+          queue.add(run);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (queue.isEmpty()) {
+        close();
+      }
+      return row;
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException("Not supported from here");
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.List;
+
+import org.apache.carbondata.common.CarbonIterator;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+
+/**
+ * Returns the rows of the primary key groups of a range one group after the other. Groups do not
+ * overlap and are in key order, so the output stays sorted on the primary key. The iterator of a
+ * group is created only when the group is reached, so the blocks of a group are opened by the
+ * thread reading the range and only while they are read.
+ */
+public abstract class PrimaryKeyGroupBatchIterator extends CarbonIterator
+    implements CarbonBatchIterator {
+
+  private List<List<Integer>> groups;
+
+  private int nextGroup;
+
+  private CarbonBatchIterator current;
+
+  public PrimaryKeyGroupBatchIterator(List<List<Integer>> groups) {
+    this.groups = groups;
+  }
+
+  /**
+   * Creates the iterator returning the rows of the given inputs
+   */
+  protected abstract CarbonBatchIterator createGroupIterator(List<Integer> group);
+
+  @Override public boolean hasNext() {
+    while (current == null || !current.hasNext()) {
+      if (current != null) {
+        current.close();
+        current = null;
+      }
+      if (nextGroup == groups.size()) {
+        return false;
+      }
+      current = createGroupIterator(groups.get(nextGroup++));
+    }
+    return true;
+  }
+
+  @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+    // a group may return an empty batch when all its remaining keys are deleted
+    while (hasNext()) {
+      current.processNextBatch(columnarBatch);
+      if (columnarBatch.getActualSize() > 0) {
+        break;
+      }
+    }
+  }
+
+  @Override public Object next() {
+    throw new UnsupportedOperationException("Not supported from here");
+  }
+
+  @Override public void close() {
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+  }
+}
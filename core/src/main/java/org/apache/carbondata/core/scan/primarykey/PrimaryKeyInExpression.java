@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.scan.expression.ColumnExpression;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.expression.ExpressionResult;
+import org.apache.carbondata.core.scan.expression.LiteralExpression;
+import org.apache.carbondata.core.scan.expression.conditional.ConditionalExpression;
+import org.apache.carbondata.core.scan.expression.exception.FilterIllegalMemberException;
+import org.apache.carbondata.core.scan.expression.exception.FilterUnsupportedException;
+import org.apache.carbondata.core.scan.filter.intf.ExpressionType;
+import org.apache.carbondata.core.scan.filter.intf.RowIntf;
+
+/**
+ * IN filter of primary keys of more than one column. The looked up keys are kept in a hash set
+ * of their values, so a row is matched with one lookup of its key whatever the number of keys.
+ * It is a row level filter, it does not prune the blocklets, see {@link PrimaryKeyLookup}.
+ */
+public class PrimaryKeyInExpression extends Expression implements ConditionalExpression {
+
+  private static final long serialVersionUID = 4216790352168843597L;
+
+  private List<List<Object>> primaryKeys;
+
+  private transient Set<List<Object>> primaryKeySet;
+
+  /**
+   * @param columns     primary key columns in key order
+   * @param primaryKeys values of the key columns of every key
+   */
+  public PrimaryKeyInExpression(List<ColumnExpression> columns, List<Object[]> primaryKeys) {
+    children.addAll(columns);
+    this.primaryKeys = new ArrayList<>(primaryKeys.size());
+    for (Object[] primaryKey : primaryKeys) {
+      this.primaryKeys.add(new ArrayList<>(Arrays.asList(primaryKey)));
+    }
+  }
+
+  @Override public ExpressionResult evaluate(RowIntf value)
+      throws FilterUnsupportedException, FilterIllegalMemberException {
+    if (primaryKeySet == null) {
+      Set<List<Object>> keySet = new HashSet<>(primaryKeys.size() * 4 / 3 + 1);
+      for (List<Object> primaryKey : primaryKeys) {
+        List<Object> key = new ArrayList<>(children.size());
+        for (int i = 0; i < children.size(); i++) {
+          DataType dataType = ((ColumnExpression) children.get(i)).getDataType();
+          // converted as the literals of an IN filter
+          key.add(normalize(
+              new LiteralExpression(primaryKey.get(i), dataType).getExpressionResult(), dataType));
+        }
+        keySet.add(key);
+      }
+      primaryKeySet = keySet;
+    }
+    List<Object> key = new ArrayList<>(children.size());
+    for (Expression child : children) {
+      ExpressionResult result = child.evaluate(value);
+      // a null never equals a looked up value
+      if (result.isNull()) {
+        return new ExpressionResult(DataTypes.BOOLEAN, false);
+      }
+      key.add(normalize(result, ((ColumnExpression) child).getDataType()));
+    }
+    return new ExpressionResult(DataTypes.BOOLEAN, primaryKeySet.contains(key));
+  }
+
+  /**
+   * Converts the value to the java type of the column, so the looked up values and the row values
+   * are equal when the key is
+   */
+  private static Object normalize(ExpressionResult result, DataType dataType)
+      throws FilterUnsupportedException, FilterIllegalMemberException {
+    if (result.isNull()) {
+      return null;
+    } else if (dataType == DataTypes.BOOLEAN) {
+      return result.getBoolean();
+    } else if (dataType == DataTypes.STRING || dataType == DataTypes.VARCHAR) {
+      return result.getString();
+    } else if (dataType == DataTypes.SHORT) {
+      return result.getShort();
+    } else if (dataType == DataTypes.INT) {
+      return result.getInt();
+    } else if (dataType == DataTypes.LONG) {
+      return result.getLong();
+    } else if (dataType == DataTypes.DOUBLE) {
+      return result.getDouble();
+    } else if (dataType == DataTypes.DATE || dataType == DataTypes.TIMESTAMP) {
+      return result.getTime();
+    } else if (DataTypes.isDecimal(dataType)) {
+      // the scale of the looked up value may differ from the scale of the column
+      return result.getDecimal().stripTrailingZeros();
+    }
+    throw new FilterUnsupportedException(
+        "DataType: " + dataType + " not supported for the primary key filter");
+  }
+
+  @Override public ExpressionType getFilterExpressionType() {
+    return ExpressionType.UNKNOWN;
+  }
+
+  @Override public void findAndSetChild(Expression oldExpr, Expression newExpr) {
+    for (int i = 0; i < children.size(); i++) {
+      if (children.get(i) == oldExpr) {
+        children.set(i, newExpr);
+      }
+    }
+  }
+
+  @Override public List<ColumnExpression> getColumnList() {
+    List<ColumnExpression> columns = new ArrayList<>(children.size());
+    for (Expression child : children) {
+      ColumnExpression column = (ColumnExpression) child;
+      // the key columns are distinct, the row holds them in key order
+      column.setColIndex(columns.size());
+      columns.add(column);
+    }
+    return columns;
+  }
+
+  @Override public boolean isSingleColumn() {
+    return false;
+  }
+
+  @Override public List<ExpressionResult> getLiterals() {
+    return Collections.emptyList();
+  }
+
+  @Override public String getString() {
+    return "PrimaryKeyIn(" + getColumnNames() + ", " + primaryKeys.size() + " keys)";
+  }
+
+  @Override public String getStatement() {
+    return "(" + getColumnNames() + ") in " + primaryKeys.size() + " keys";
+  }
+
+  private String getColumnNames() {
+    StringBuilder builder = new StringBuilder();
+    for (Expression child : children) {
+      if (builder.length() > 0) {
+        builder.append(',');
+      }
+      builder.append(((ColumnExpression) child).getColumnName());
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.scan.expression.ColumnExpression;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.expression.LiteralExpression;
+import org.apache.carbondata.core.scan.expression.conditional.InExpression;
+import org.apache.carbondata.core.scan.expression.conditional.ListExpression;
+import org.apache.carbondata.core.scan.expression.logical.AndExpression;
+
+/**
+ * Creates the filter of a lookup of a batch of primary keys. For a primary key of one column the
+ * filter is an IN of the keys. For a primary key of more columns it is an IN of the values of the
+ * leading key column AND a {@link PrimaryKeyInExpression} of the whole keys. The IN comes first,
+ * so the blocklets are pruned on the min and max of the leading column and its pages are binary
+ * searched when the blocks are sorted on it. The keys are then matched in one row level filter
+ * with a hash set lookup per row, whatever the number of keys, so only the versions of the looked
+ * up keys reach the primary key merge.
+ */
+public final class PrimaryKeyLookup {
+
+  private PrimaryKeyLookup() {
+  }
+
+  /**
+   * @param carbonTable primary key table
+   * @param primaryKeys values of the primary key columns of every key, in the order of
+   *                    {@link #getPrimaryKeyColumns(CarbonTable)}
+   * @return filter expression matching the rows of the keys
+   */
+  public static Expression createFilterExpression(CarbonTable carbonTable,
+      List<Object[]> primaryKeys) {
+    List<CarbonColumn> keyColumns = getPrimaryKeyColumns(carbonTable);
+    if (primaryKeys.isEmpty()) {
+      throw new IllegalArgumentException("No primary key to look up");
+    }
+    for (Object[] primaryKey : primaryKeys) {
+      if (primaryKey.length != keyColumns.size()) {
+        throw new IllegalArgumentException(
+            "Primary key of " + carbonTable.getTableName() + " has " + keyColumns.size()
+                + " columns, but the looked up key has " + primaryKey.length + " values");
+      }
+    }
+    CarbonColumn leadingColumn = keyColumns.get(0);
+    Set<Object> leadingValues = new LinkedHashSet<>();
+    for (Object[] primaryKey : primaryKeys) {
+      leadingValues.add(primaryKey[0]);
+    }
+    List<Expression> literals = new ArrayList<>(leadingValues.size());
+    for (Object value : leadingValues) {
+      literals.add(new LiteralExpression(value, leadingColumn.getDataType()));
+    }
+    Expression leadingFilter = new InExpression(
+        new ColumnExpression(leadingColumn.getColName(), leadingColumn.getDataType()),
+        new ListExpression(literals));
+    if (keyColumns.size() == 1) {
+      return leadingFilter;
+    }
+    List<ColumnExpression> columns = new ArrayList<>(keyColumns.size());
+    for (CarbonColumn keyColumn : keyColumns) {
+      columns.add(new ColumnExpression(keyColumn.getColName(), keyColumn.getDataType()));
+    }
+    return new AndExpression(leadingFilter, new PrimaryKeyInExpression(columns, primaryKeys));
+  }
+
+  /**
+   * Returns the primary key columns of the table in key order
+   */
+  public static List<CarbonColumn> getPrimaryKeyColumns(CarbonTable carbonTable) {
+    String primaryKeyColumns = carbonTable.getTableInfo().getFactTable().getTableProperties()
+        .get(CarbonCommonConstants.PRIMARY_KEY_COLUMNS);
+    if (primaryKeyColumns == null || primaryKeyColumns.trim().isEmpty()) {
+      throw new IllegalArgumentException(
+          "Table " + carbonTable.getTableName() + " has no primary key");
+    }
+    List<CarbonColumn> keyColumns = new ArrayList<>();
+    for (String columnName : primaryKeyColumns.split(",")) {
+      CarbonColumn column =
+          carbonTable.getColumnByName(carbonTable.getTableName(), columnName.trim());
+      if (column == null) {
+        throw new IllegalArgumentException(
+            "Primary key column " + columnName + " is not present in " + carbonTable
+                .getTableName());
+      }
+      keyColumns.add(column);
+    }
+    return keyColumns;
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.carbondata.common.CarbonIterator;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.util.CarbonTaskInfo;
+import org.apache.carbondata.core.util.ThreadLocalTaskInfo;
+
+/**
+ * Runs the merge of every primary key range on its own thread and returns the merged rows range
+ * after range, so the output stays sorted on the primary key. Every range fills its own batches
+ * ahead of the reader, the rows are then copied to the batch of the reader.
+ *
+ * {@link #close()} returns only after every range thread has stopped and every range iterator is
+ * closed, as the threads read the memory of the task which is freed once the query finishes.
+ */
+public class PrimaryKeyRangeBatchIterator extends CarbonIterator implements CarbonBatchIterator {
+
+  /**
+   * marks the end of the rows of a range
+   */
+  private static final CarbonColumnarBatch END =
+      new CarbonColumnarBatch(new CarbonColumnVector[0], 0, new boolean[0]);
+
+  private List<RangeMerger> rangeMergers;
+
+  private List<Future<Void>> futures;
+
+  private int currentRange;
+
+  private CarbonColumnarBatch currentBatch;
+
+  private int currentRowId;
+
+  private ColumnarRowSelection selection;
+
+  private boolean closed;
+
+  /**
+   * @param rangeIterators merge iterator of every range, in key order
+   * @param rangeBatches   batches filled by every range, at least one per range
+   * @param executorService executor running the merge of the ranges
+   */
+  public PrimaryKeyRangeBatchIterator(List<CarbonBatchIterator> rangeIterators,
+      List<CarbonColumnarBatch[]> rangeBatches, ExecutorService executorService) {
+    rangeMergers = new ArrayList<>(rangeIterators.size());
+    futures = new ArrayList<>(rangeIterators.size());
+    for (int i = 0; i < rangeIterators.size(); i++) {
+      RangeMerger rangeMerger = new RangeMerger(rangeIterators.get(i), rangeBatches.get(i));
+      rangeMergers.add(rangeMerger);
+      futures.add(executorService.submit(rangeMerger));
+    }
+  }
+
+  @Override public boolean hasNext() {
+    while (currentBatch == null && currentRange < rangeMergers.size()) {
+      CarbonColumnarBatch batch = rangeMergers.get(currentRange).take();
+      if (batch == END) {
+        currentRange++;
+      } else {
+        currentBatch = batch;
+        currentRowId = 0;
+      }
+    }
+    return currentBatch != null;
+  }
+
+  @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+    int batchSize = columnarBatch.getBatchSize();
+    if (selection == null || selection.capacity() < batchSize) {
+      selection = new ColumnarRowSelection(batchSize);
+    }
+    int i = 0;
+    while (i < batchSize && hasNext()) {
+      int rowCount = Math.min(batchSize - i, currentBatch.getActualSize() - currentRowId);
+      for (int j = 0; j < rowCount; j++) {
+        selection.add(currentBatch, currentRowId++, i++);
+      }
+      selection.copyTo(columnarBatch);
+      if (currentRowId == currentBatch.getActualSize()) {
+        rangeMergers.get(currentRange).release(currentBatch);
+        currentBatch = null;
+      }
+    }
+    columnarBatch.setActualSize(i);
+  }
+
+  @Override public Object next() {
+    throw new UnsupportedOperationException("Not supported from here");
+  }
+
+  @Override public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (RangeMerger rangeMerger : rangeMergers) {
+      rangeMerger.stop();
+    }
+    for (Future<Void> future : futures) {
+      future.cancel(true);
+    }
+    RuntimeException exception = null;
+    for (RangeMerger rangeMerger : rangeMergers) {
+      rangeMerger.awaitStopped();
+      try {
+        rangeMerger.iterator.close();
+      } catch (RuntimeException e) {
+        if (exception == null) {
+          exception = e;
+        }
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Merges one range into its batches as long as the reader has released a batch
+   */
+  private static class RangeMerger implements Callable<Void> {
+
+    private static final int NEW = 0;
+
+    private static final int RUNNING = 1;
+
+    private static final int STOPPED = 2;
+
+    private CarbonBatchIterator iterator;
+
+    private BlockingQueue<CarbonColumnarBatch> freeBatches;
+
+    private BlockingQueue<CarbonColumnarBatch> filledBatches;
+
+    private CarbonTaskInfo taskInfo;
+
+    private volatile Throwable failure;
+
+    private final AtomicInteger state = new AtomicInteger(NEW);
+
+    private volatile boolean stopRequested;
+
+    // counted down when a started merge has returned
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    RangeMerger(CarbonBatchIterator iterator, CarbonColumnarBatch[] batches) {
+      this.iterator = iterator;
+      this.taskInfo = ThreadLocalTaskInfo.getCarbonTaskInfo();
+      this.freeBatches = new ArrayBlockingQueue<>(batches.length);
+      this.filledBatches = new ArrayBlockingQueue<>(batches.length + 1);
+      for (CarbonColumnarBatch batch : batches) {
+        freeBatches.add(batch);
+      }
+    }
+
+    @Override public Void call() throws Exception {
+      if (!state.compareAndSet(NEW, RUNNING)) {
+        // closed before the merge started
+        return null;
+      }
+      // memory allocated by the merge belongs to the task of the query
+      ThreadLocalTaskInfo.setCarbonTaskInfo(taskInfo);
+      try {
+        while (!stopRequested && iterator.hasNext()) {
+          CarbonColumnarBatch batch = freeBatches.take();
+          batch.reset();
+          iterator.processNextBatch(batch);
+          if (batch.getActualSize() > 0) {
+            filledBatches.put(batch);
+          } else {
+            freeBatches.put(batch);
+          }
+        }
+      } catch (InterruptedException e) {
+        // the reader is closed
+        return null;
+      } catch (Throwable e) {
+        failure = e;
+      } finally {
+        ThreadLocalTaskInfo.clearCarbonTaskInfo();
+        state.set(STOPPED);
+        finished.countDown();
+      }
+      // the queue has space for all the batches and the end marker
+      filledBatches.put(END);
+      return null;
+    }
+
+    void stop() {
+      stopRequested = true;
+    }
+
+    /**
+     * Waits till the merge returned, if it has started
+     */
+    void awaitStopped() {
+      if (state.compareAndSet(NEW, STOPPED)) {
+        return;
+      }
+      boolean interrupted = false;
+      while (true) {
+        try {
+          finished.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    CarbonColumnarBatch take() {
+      CarbonColumnarBatch batch;
+      try {
+        batch = filledBatches.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      if (batch == END && failure != null) {
+        throw new RuntimeException(failure);
+      }
+      return batch;
+    }
+
+    void release(CarbonColumnarBatch batch) {
+      freeBatches.add(batch);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Partitions the inputs of the primary key merge on their primary key min and max, so that no
+ * key can be present in two partitions. Every partition can then be merged on its own and the
+ * merged partitions are concatenated in key order.
+ *
+ * Inputs with overlapping key ranges always go to the same partition. The groups of overlapping
+ * inputs are combined in key order until only the requested number of partitions is left, each
+ * having about the same number of rows.
+ */
+public final class PrimaryKeyRangePartitioner {
+
+  private PrimaryKeyRangePartitioner() {
+  }
+
+  /**
+   * @param minKeys       min key of every input, null if the input has no known min
+   * @param maxKeys       max key of every input, null if the input has no known max
+   * @param rowCounts     number of rows of every input
+   * @param keyComparator comparator of the keys
+   * @param maxPartitions max number of partitions
+   * @return indexes of the inputs of every partition, partitions are in key order
+   */
+  public static List<List<Integer>> partition(Object[][] minKeys, Object[][] maxKeys,
+      long[] rowCounts, Comparator<Object[]> keyComparator, int maxPartitions) {
+    List<List<Integer>> partitions = new ArrayList<>();
+    for (List<List<Integer>> groups : combine(group(minKeys, maxKeys, keyComparator), rowCounts,
+        maxPartitions)) {
+      List<Integer> partition = new ArrayList<>();
+      for (List<Integer> group : groups) {
+        partition.addAll(group);
+      }
+      partitions.add(partition);
+    }
+    return partitions;
+  }
+
+  /**
+   * Groups the inputs whose key ranges overlap. The same key can be present in two inputs when
+   * the max of one is equal to the min of the other, so they overlap as well.
+   *
+   * @return indexes of the inputs of every group, groups are in key order
+   */
+  public static List<List<Integer>> group(final Object[][] minKeys, Object[][] maxKeys,
+      final Comparator<Object[]> keyComparator) {
+    List<Integer> indexes = new ArrayList<>(minKeys.length);
+    boolean bounded = true;
+    for (int i = 0; i < minKeys.length; i++) {
+      indexes.add(i);
+      bounded &= minKeys[i] != null && maxKeys[i] != null;
+    }
+    List<List<Integer>> groups = new ArrayList<>();
+    if (!bounded) {
+      // an input without min or max may overlap with any other input
+      groups.add(indexes);
+      return groups;
+    }
+    Collections.sort(indexes, new Comparator<Integer>() {
+      @Override public int compare(Integer o1, Integer o2) {
+        return keyComparator.compare(minKeys[o1], minKeys[o2]);
+      }
+    });
+    List<Integer> group = null;
+    Object[] groupMax = null;
+    for (Integer index : indexes) {
+      if (group == null || keyComparator.compare(minKeys[index], groupMax) > 0) {
+        group = new ArrayList<>();
+        groups.add(group);
+        groupMax = maxKeys[index];
+      } else if (keyComparator.compare(maxKeys[index], groupMax) > 0) {
+        groupMax = maxKeys[index];
+      }
+      group.add(index);
+    }
+    return groups;
+  }
+
+  /**
+   * Combines the groups in key order until only maxPartitions are left, each having about the
+   * same number of rows.
+   *
+   * @return groups of every partition, partitions are in key order
+   */
+  public static List<List<List<Integer>>> combine(List<List<Integer>> groups, long[] rowCounts,
+      int maxPartitions) {
+    long[] groupRowCounts = new long[groups.size()];
+    long remainingRowCount = 0;
+    for (int i = 0; i < groups.size(); i++) {
+      for (Integer index : groups.get(i)) {
+        groupRowCounts[i] += rowCounts[index];
+      }
+      remainingRowCount += groupRowCounts[i];
+    }
+    List<List<List<Integer>>> partitions = new ArrayList<>();
+    int remainingPartitions = Math.max(maxPartitions, 1);
+    List<List<Integer>> partition = new ArrayList<>();
+    long partitionRowCount = 0;
+    for (int i = 0; i < groups.size(); i++) {
+      partition.add(groups.get(i));
+      partitionRowCount += groupRowCounts[i];
+      boolean lastGroup = i == groups.size() - 1;
+      if (!lastGroup && remainingPartitions > 1
+          && partitionRowCount * remainingPartitions >= remainingRowCount) {
+        partitions.add(partition);
+        remainingRowCount -= partitionRowCount;
+        remainingPartitions--;
+        partition = new ArrayList<>();
+        partitionRowCount = 0;
+      }
+    }
+    if (!partition.isEmpty()) {
+      partitions.add(partition);
+    }
+    return partitions;
+  }
+}
@@ -5,6 +5,8 @@ import java.util.Comparator;
 import org.apache.carbondata.core.metadata.datatype.DataType;
 import org.apache.carbondata.core.metadata.datatype.DataTypes;
 import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+import org.apache.carbondata.core.util.ByteUtil;
 import org.apache.carbondata.core.util.comparator.SerializableComparator;
 
 public class PrimaryKeyVectorComparator implements Comparator<IteratorHolder> {
@@ -25,7 +27,7 @@ public class PrimaryKeyVectorComparator implements Comparator<IteratorHolder> {
   public PrimaryKeyVectorComparator(DataType[] dataTypes, int[] sortOrdinals,
       int timestampOrdinal, int deleteOrdinal) {
     comparators = new SerializableComparator[dataTypes.length + 2];
-    this.sortOrdinals = new int[sortOrdinals.length + 1];
+    this.sortOrdinals = new int[sortOrdinals.length + 2];
     System.arraycopy(sortOrdinals, 0, this.sortOrdinals, 0, sortOrdinals.length);
     this.sortOrdinals[this.sortOrdinals.length - 2] = timestampOrdinal;
     this.sortOrdinals[this.sortOrdinals.length - 1] = deleteOrdinal;
@@ -40,6 +42,12 @@ public class PrimaryKeyVectorComparator implements Comparator<IteratorHolder> {
   }
 
   @Override public int compare(IteratorHolder o1, IteratorHolder o2) {
+    if (o1 instanceof IteratorVectorHolder && o2 instanceof IteratorVectorHolder) {
+      IteratorVectorHolder v1 = (IteratorVectorHolder) o1;
+      IteratorVectorHolder v2 = (IteratorVectorHolder) o2;
+      return compare(v1.getColumnarBatch(), v1.getCurrentRowId(), v2.getColumnarBatch(),
+          v2.getCurrentRowId());
+    }
     int diff = 0;
     for (int i = 0; i < sortOrdinals.length; i++) {
       diff = comparators[i].compare(o1.getCell(sortOrdinals[i]), o2.getCell(sortOrdinals[i]));
@@ -50,4 +58,88 @@ public class PrimaryKeyVectorComparator implements Comparator<IteratorHolder> {
     return diff;
   }
 
+  /**
+   * Compares the key of a row in the batch with the current row of the holder
+   */
+  public int compare(CarbonColumnarBatch batch, int rowId, IteratorHolder holder) {
+    if (holder instanceof IteratorVectorHolder) {
+      IteratorVectorHolder vectorHolder = (IteratorVectorHolder) holder;
+      return compare(batch, rowId, vectorHolder.getColumnarBatch(),
+          vectorHolder.getCurrentRowId());
+    }
+    int diff = 0;
+    for (int i = 0; i < sortOrdinals.length; i++) {
+      diff = comparators[i].compare(batch.columnVectors[sortOrdinals[i]].getData(rowId),
+          holder.getCell(sortOrdinals[i]));
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return diff;
+  }
+
+  /**
+   * Compares the key of a row with the current row of the holder
+   */
+  public int compare(Object[] row, IteratorHolder holder) {
+    int diff = 0;
+    for (int i = 0; i < sortOrdinals.length; i++) {
+      diff = comparators[i].compare(row[sortOrdinals[i]], holder.getCell(sortOrdinals[i]));
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return diff;
+  }
+
+  /**
+   * Compares the keys of two rows directly on the typed column vectors, so no cell is boxed.
+   * Both batches must be filled with {@link CarbonColumnVectorImpl} vectors.
+   */
+  public int compare(CarbonColumnarBatch batch1, int rowId1, CarbonColumnarBatch batch2,
+      int rowId2) {
+    for (int i = 0; i < sortOrdinals.length; i++) {
+      int diff = compareCell(
+          (CarbonColumnVectorImpl) batch1.columnVectors[sortOrdinals[i]], rowId1,
+          (CarbonColumnVectorImpl) batch2.columnVectors[sortOrdinals[i]], rowId2);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return 0;
+  }
+
+  private static int compareCell(CarbonColumnVectorImpl vector1, int rowId1,
+      CarbonColumnVectorImpl vector2, int rowId2) {
+    boolean isNull1 = vector1.isNullAt(rowId1);
+    boolean isNull2 = vector2.isNullAt(rowId2);
+    if (isNull1 || isNull2) {
+      if (isNull1 && isNull2) {
+        return 0;
+      }
+      return isNull1 ? -1 : 1;
+    }
+    DataType dataType = vector1.getType();
+    if (dataType == DataTypes.LONG || dataType == DataTypes.TIMESTAMP) {
+      return Long.compare(vector1.getLong(rowId1), vector2.getLong(rowId2));
+    } else if (dataType == DataTypes.INT || dataType == DataTypes.DATE) {
+      return Integer.compare(vector1.getInt(rowId1), vector2.getInt(rowId2));
+    } else if (dataType == DataTypes.SHORT) {
+      return Short.compare(vector1.getShort(rowId1), vector2.getShort(rowId2));
+    } else if (dataType == DataTypes.BOOLEAN || dataType == DataTypes.BYTE) {
+      return Byte.compare(vector1.getByte(rowId1), vector2.getByte(rowId2));
+    } else if (dataType == DataTypes.DOUBLE) {
+      return Double.compare(vector1.getDouble(rowId1), vector2.getDouble(rowId2));
+    } else if (dataType == DataTypes.FLOAT) {
+      return Float.compare(vector1.getFloat(rowId1), vector2.getFloat(rowId2));
+    } else if (DataTypes.isDecimal(dataType)) {
+      return vector1.getDecimal(rowId1).compareTo(vector2.getDecimal(rowId2));
+    } else {
+      return ByteUtil.UnsafeComparer.INSTANCE
+          .compareTo(vector1.getByteArrayBuffer(rowId1), vector1.getByteArrayOffset(rowId1),
+              vector1.getByteArrayLength(rowId1), vector2.getByteArrayBuffer(rowId2),
+              vector2.getByteArrayOffset(rowId2), vector2.getByteArrayLength(rowId2));
+    }
+  }
+
 }
@@ -26,7 +26,9 @@ import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
 import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
 
 /**
- * It reads the data vector batch format
+ * It reads the data vector batch format. Keys having a single version are copied from the source
+ * vectors to the output batch through {@link ColumnarRowSelection}, only the keys having more
+ * than one version go through the {@link PrimaryKeyMerger}.
  */
 public class PrimaryKeyVectorDetailQueryResultIterator extends CarbonIterator
     implements CarbonBatchIterator {
@@ -37,60 +39,115 @@ public class PrimaryKeyVectorDetailQueryResultIterator extends CarbonIterator
 
   private PrimaryKeyMerger merger;
 
+  private PrimaryKeyVectorComparator comparator;
+
+  private ColumnarRowSelection selection;
+
+  /**
+   * True when the next row may have the same key as the last merged row, so the merged row is
+   * not complete yet
+   */
+  private boolean keyGroupOpen;
+
   public PrimaryKeyVectorDetailQueryResultIterator(AbstractQueue<IteratorHolder> recordHolder,
-      int dataLength, PrimaryKeyMerger merger) {
+      int dataLength, PrimaryKeyMerger merger, PrimaryKeyVectorComparator comparator) {
     this.recordHolder = recordHolder;
     newKey = new Object[dataLength];
     this.merger = merger;
+    this.comparator = comparator;
   }
 
   @Override public boolean hasNext() {
-    return recordHolder.size() > 0;
+    return recordHolder.size() > 0 || merger.isDataAdded();
   }
 
   @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
     int batchSize = columnarBatch.getBatchSize();
     CarbonColumnVector[] columnVectors = columnarBatch.columnVectors;
+    if (selection == null || selection.capacity() < batchSize) {
+      selection = new ColumnarRowSelection(batchSize);
+    }
     int i = 0;
-    while (i < batchSize && hasNext()) {
-      IteratorHolder poll = this.recordHolder.poll();
-      if (poll.isDeleted()) {
-        if (poll.hasNext()) {
-          poll.read();
-          recordHolder.add(poll);
+    while (i < batchSize) {
+      if (recordHolder.isEmpty()) {
+        // no more rows, so the last merged row is complete
+        keyGroupOpen = false;
+      }
+      if (!keyGroupOpen && merger.isDataAdded()) {
+        if (!merger.isDeletedRow()) {
+          putMergedRow(i++, columnVectors);
         }
+        merger.clear();
         continue;
       }
-      for (int i1 = 0; i1 < newKey.length; i1++) {
-        newKey[i1] = poll.getCell(i1);
+      if (recordHolder.isEmpty()) {
+        break;
       }
-      if (poll.hasNext()) {
-        poll.read();
-        recordHolder.add(poll);
+      IteratorHolder poll = this.recordHolder.poll();
+      if (poll.isDeleted()) {
+        moveToNextRow(poll, columnarBatch);
+        continue;
       }
-      if (!merger.isDataAdded()) {
-        merger.addFreshRow(newKey);
+      if (!keyGroupOpen && poll instanceof IteratorVectorHolder
+          && !((IteratorVectorHolder) poll).isLastRowInBatch()) {
+        // the current row stays in the batch after moving to the next row, so compare it with
+        // the smallest of the remaining rows
+        IteratorVectorHolder holder = (IteratorVectorHolder) poll;
+        CarbonColumnarBatch batch = holder.getColumnarBatch();
+        int rowId = holder.getCurrentRowId();
+        moveToNextRow(poll, columnarBatch);
+        IteratorHolder next = recordHolder.peek();
+        if (next == null || comparator.compare(batch, rowId, next) != 0) {
+          // only one version of the key exists, so the row is selected as it is
+          if (!merger.isDeletedRow(batch, rowId)) {
+            selection.add(batch, rowId, i++);
+          }
+        } else {
+          CarbonColumnVector[] sourceVectors = batch.columnVectors;
+          for (int i1 = 0; i1 < newKey.length; i1++) {
+            newKey[i1] = sourceVectors[i1].getData(rowId);
+          }
+          merger.addFreshRow(newKey);
+          keyGroupOpen = true;
+        }
       } else {
-        if (!merger.mergeRow(newKey)) {
+        for (int i1 = 0; i1 < newKey.length; i1++) {
+          newKey[i1] = poll.getCell(i1);
+        }
+        if (!merger.isDataAdded()) {
+          merger.addFreshRow(newKey);
+        } else if (!merger.mergeRow(newKey)) {
           if (!merger.isDeletedRow()) {
-            for (int j = 0; j < columnVectors.length; j++) {
-              CarbonStreamRecordReader
-                  .putRowToColumnBatch(i, merger.getMergedRow()[j], columnVectors[j]);
-            }
-            i++;
+            putMergedRow(i++, columnVectors);
           }
           merger.addFreshRow(newKey);
         }
+        moveToNextRow(poll, columnarBatch);
+        IteratorHolder next = recordHolder.peek();
+        keyGroupOpen = next != null && comparator.compare(newKey, next) == 0;
       }
     }
-    if (i < batchSize && !merger.isDeletedRow()) {
+    selection.copyTo(columnarBatch);
+    columnarBatch.setActualSize(i);
+  }
+
+  private void moveToNextRow(IteratorHolder holder, CarbonColumnarBatch columnarBatch) {
+    if (holder instanceof IteratorVectorHolder
+        && ((IteratorVectorHolder) holder).isLastRowInBatch()) {
+      // the batch of the holder gets refilled, so copy the rows selected from it first
+      selection.copyTo(columnarBatch);
+    }
+    if (holder.hasNext()) {
+      holder.read();
+      recordHolder.add(holder);
+    }
+  }
 
-      for (int j = 0; j < columnVectors.length; j++) {
-        CarbonStreamRecordReader.putRowToColumnBatch(i, merger.getMergedRow()[j], columnVectors[j]);
-      }
-      i++;
+  private void putMergedRow(int rowId, CarbonColumnVector[] columnVectors) {
+    Object[] mergedRow = merger.getMergedRow();
+    for (int j = 0; j < columnVectors.length; j++) {
+      CarbonStreamRecordReader.putRowToColumnBatch(rowId, mergedRow[j], columnVectors[j]);
     }
-    columnarBatch.setActualSize(i);
   }
 
   @Override public Object next() {
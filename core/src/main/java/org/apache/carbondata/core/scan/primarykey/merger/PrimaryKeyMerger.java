@@ -1,6 +1,8 @@
 package org.apache.carbondata.core.scan.primarykey.merger;
 
 import org.apache.carbondata.core.scan.primarykey.PrimaryKeyRowComparator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
 
 public class PrimaryKeyMerger {
 
@@ -16,6 +18,8 @@ public class PrimaryKeyMerger {
 
   private int tupleIdIndex = -1;
 
+  private boolean dataAdded;
+
   public PrimaryKeyMerger(PrimaryKeyRowComparator rowComparator, int versionColIndex,
       int deleteColIndex, int[] colOrdinals) {
     this.rowComparator = rowComparator;
@@ -75,7 +79,7 @@ public class PrimaryKeyMerger {
   }
 
   public boolean isDataAdded() {
-    return mergedKey != null;
+    return dataAdded;
   }
 
   public void addFreshRow(Object[] row) {
@@ -83,10 +87,18 @@ public class PrimaryKeyMerger {
       mergedKey = new Object[row.length];
     }
     System.arraycopy(row, 0, mergedKey, 0, row.length);
+    dataAdded = true;
+  }
+
+  /**
+   * Clears the merged row once it is consumed, the row buffer is reused for the next key.
+   */
+  public void clear() {
+    dataAdded = false;
   }
 
   public boolean isDeletedRow() {
-    if (mergedKey == null) {
+    if (!dataAdded) {
       return true;
     }
     if ((long)mergedKey[deleteColIndex] == 2) {
@@ -103,7 +115,36 @@ public class PrimaryKeyMerger {
     return true;
   }
 
+  /**
+   * Same as {@link #isDeletedRow()} for a key whose only version is the row of the batch, so the
+   * row need not be added to the merger.
+   */
+  public boolean isDeletedRow(CarbonColumnarBatch batch, int rowId) {
+    CarbonColumnVectorImpl deleteVector =
+        (CarbonColumnVectorImpl) batch.columnVectors[deleteColIndex];
+    if (!deleteVector.isNullAt(rowId) && deleteVector.getLong(rowId) == 2) {
+      return true;
+    }
+    if (colOrdinals.length == 0) {
+      return false;
+    }
+    for (int colOrdinal : colOrdinals) {
+      if (!((CarbonColumnVectorImpl) batch.columnVectors[colOrdinal]).isNullAt(rowId)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public Object[] getMergedRow() {
     return mergedKey;
   }
+
+  public int getDeleteColIndex() {
+    return deleteColIndex;
+  }
+
+  public int[] getColOrdinals() {
+    return colOrdinals;
+  }
 }
@@ -38,6 +38,8 @@ public class CarbonStreamRecordReader extends StreamRecordReader {
   // vector reader
   protected boolean isVectorReader;
 
+  private StreamBlockletBatchDecoder batchDecoder;
+
   public CarbonStreamRecordReader(BlockExecutionInfo executionInfo, boolean isVectorReader,
       boolean useRawRow) {
     super(executionInfo, useRawRow);
@@ -109,36 +111,19 @@ public class CarbonStreamRecordReader extends StreamRecordReader {
     }
 
     input.readBlockletData(header);
-    int rowNum = 0;
-    if (null == filter) {
-      while (input.hasNext()) {
-        readRowFromStream();
-        putRowToColumnBatch(rowNum++, columnarBatch);
-      }
-    } else {
-      try {
-        while (input.hasNext()) {
-          readRowFromStream();
-          if (filter.applyFilter(filterRow, blockExecutionInfo.getDataBlock().getSegmentProperties()
-              .getLastDimensionColOrdinal())) {
-            putRowToColumnBatch(rowNum++, columnarBatch);
-          }
-        }
-      } catch (FilterUnsupportedException e) {
-        throw new IOException("Failed to filter row in vector reader", e);
-      }
+    if (null == batchDecoder) {
+      batchDecoder = createBatchDecoder();
+    }
+    int rowNum;
+    try {
+      rowNum = batchDecoder.decode(input, columnarBatch);
+    } catch (FilterUnsupportedException e) {
+      throw new IOException("Failed to filter row in vector reader", e);
     }
     columnarBatch.setActualSize(rowNum);
     return rowNum > 0;
   }
 
-  private void putRowToColumnBatch(int rowId, CarbonColumnarBatch columnarBatch) {
-    for (int i = 0; i < projection.length; i++) {
-      Object value = outputValues[i];
-      putRowToColumnBatch(rowId, value, columnarBatch.columnVectors[i]);
-    }
-  }
-
   public static void putRowToColumnBatch(int rowId, Object value, CarbonColumnVector columnVector) {
     DataType t = columnVector.getType();
     if (null == value) {
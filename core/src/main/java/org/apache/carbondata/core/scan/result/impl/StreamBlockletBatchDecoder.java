@@ -0,0 +1,439 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.core.scan.result.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryGenerator;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.scan.expression.exception.FilterUnsupportedException;
+import org.apache.carbondata.core.scan.filter.GenericQueryType;
+import org.apache.carbondata.core.scan.filter.executer.FilterExecuter;
+import org.apache.carbondata.core.scan.filter.intf.RowIntf;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.util.DataTypeConverter;
+import org.apache.carbondata.core.util.DataTypeUtil;
+
+/**
+ * Decodes a decompressed stream blocklet into a columnar batch.
+ *
+ * The rows of a blocklet are stored one after another, so the decoder first walks the rows once
+ * and records the position of each required value, null values are read from the null bitmap of
+ * the row and counted per column. Then the filter is applied on the filter columns only, and the
+ * projection columns of the selected rows are filled column by column with a loop per data type.
+ * A column without nulls in the blocklet has no null check, a column of only nulls is filled by
+ * one putNulls call.
+ */
+class StreamBlockletBatchDecoder {
+
+  private static final int NULL = -1;
+
+  // metadata
+  private CarbonColumn[] storageColumns;
+  private boolean[] isNoDictColumn;
+  private DirectDictionaryGenerator[] directDictionaryGenerators;
+  private DataType[] measureDataTypes;
+  private int dimensionCount;
+  private GenericQueryType[] queryTypes;
+  private DataTypeConverter dataTypeConverter;
+
+  // required columns in storage order
+  private int[] requiredColumns;
+  private int[] requiredIndex;
+  private boolean[] isFilterRequired;
+  private boolean[] isProjectionRequired;
+
+  // filter
+  private FilterExecuter filter;
+  private RowIntf filterRow;
+  private Object[] filterValues;
+  private int[] filterMap;
+  private int lastDimensionColOrdinal;
+
+  // output
+  private int[] projectionMap;
+
+  // positions of the values in the blocklet buffer by required column and row
+  private int[][] valueOffsets;
+  private int[] nullCounts;
+  private int[] selectedRows;
+
+  StreamBlockletBatchDecoder(CarbonColumn[] storageColumns, boolean[] isNoDictColumn,
+      DirectDictionaryGenerator[] directDictionaryGenerators, DataType[] measureDataTypes,
+      int dimensionCount, GenericQueryType[] queryTypes, DataTypeConverter dataTypeConverter,
+      boolean[] isRequired, boolean[] isFilterRequired, boolean[] isProjectionRequired,
+      FilterExecuter filter, RowIntf filterRow, Object[] filterValues, int[] filterMap,
+      int lastDimensionColOrdinal, int[] projectionMap) {
+    this.storageColumns = storageColumns;
+    this.isNoDictColumn = isNoDictColumn;
+    this.directDictionaryGenerators = directDictionaryGenerators;
+    this.measureDataTypes = measureDataTypes;
+    this.dimensionCount = dimensionCount;
+    this.queryTypes = queryTypes;
+    this.dataTypeConverter = dataTypeConverter;
+    this.isFilterRequired = isFilterRequired;
+    this.isProjectionRequired = isProjectionRequired;
+    this.filter = filter;
+    this.filterRow = filterRow;
+    this.filterValues = filterValues;
+    this.filterMap = filterMap;
+    this.lastDimensionColOrdinal = lastDimensionColOrdinal;
+    this.projectionMap = projectionMap;
+    int count = 0;
+    for (boolean required : isRequired) {
+      if (required) {
+        count++;
+      }
+    }
+    requiredColumns = new int[count];
+    requiredIndex = new int[storageColumns.length];
+    Arrays.fill(requiredIndex, NULL);
+    count = 0;
+    for (int i = 0; i < storageColumns.length; i++) {
+      if (isRequired[i]) {
+        requiredIndex[i] = count;
+        requiredColumns[count++] = i;
+      }
+    }
+    valueOffsets = new int[requiredColumns.length][0];
+    nullCounts = new int[requiredColumns.length];
+    selectedRows = new int[0];
+  }
+
+  /**
+   * Decodes the rows of the blocklet which is read into the input, and fills the selected rows
+   * into the batch from row 0. Returns the number of rows filled.
+   */
+  int decode(StreamBlockletReader input, CarbonColumnarBatch columnarBatch)
+      throws FilterUnsupportedException, IOException {
+    int rowNums = input.getRowNums();
+    ensureCapacity(rowNums);
+    locateValues(input, rowNums);
+    int selectedNum = rowNums;
+    if (null == filter) {
+      for (int i = 0; i < rowNums; i++) {
+        selectedRows[i] = i;
+      }
+    } else {
+      selectedNum = applyFilter(input.getBuffer(), rowNums);
+    }
+    for (int i = 0; i < requiredColumns.length; i++) {
+      int colCount = requiredColumns[i];
+      if (isProjectionRequired[colCount]) {
+        fillVector(input.getBuffer(), i, selectedNum,
+            columnarBatch.columnVectors[projectionMap[colCount]]);
+      }
+    }
+    return selectedNum;
+  }
+
+  private void ensureCapacity(int rowNums) {
+    if (selectedRows.length < rowNums) {
+      for (int i = 0; i < valueOffsets.length; i++) {
+        valueOffsets[i] = new int[rowNums];
+      }
+      selectedRows = new int[rowNums];
+    }
+  }
+
+  /**
+   * walks the rows of the blocklet and records the offset of each required value, the offset of
+   * a variable length value points to its length
+   */
+  private void locateValues(StreamBlockletReader input, int rowNums) {
+    byte[] buffer = input.getBuffer();
+    Arrays.fill(nullCounts, 0);
+    for (int rowId = 0; rowId < rowNums; rowId++) {
+      input.nextRow();
+      int nullLen = input.readShort();
+      int nullOffset = input.getOffset();
+      input.skipBytes(nullLen);
+      for (int colCount = 0; colCount < storageColumns.length; colCount++) {
+        int index = requiredIndex[colCount];
+        if (isNull(buffer, nullOffset, nullLen, colCount)) {
+          if (index != NULL) {
+            valueOffsets[index][rowId] = NULL;
+            nullCounts[index]++;
+          }
+          continue;
+        }
+        if (index != NULL) {
+          valueOffsets[index][rowId] = input.getOffset();
+        }
+        input.skipBytes(getValueLength(input, colCount));
+      }
+    }
+  }
+
+  private static boolean isNull(byte[] buffer, int nullOffset, int nullLen, int colCount) {
+    // same bit order as BitSet.valueOf
+    int byteIndex = colCount >> 3;
+    return byteIndex < nullLen && (buffer[nullOffset + byteIndex] & (1 << (colCount & 7))) != 0;
+  }
+
+  /**
+   * length of the value at the current offset, variable length values are read to their data
+   */
+  private int getValueLength(StreamBlockletReader input, int colCount) {
+    if (colCount < isNoDictColumn.length) {
+      if (isNoDictColumn[colCount]) {
+        return input.readShort();
+      }
+      return 4;
+    } else if (colCount < dimensionCount) {
+      return input.readShort();
+    }
+    DataType dataType = measureDataTypes[colCount - dimensionCount];
+    if (dataType == DataTypes.BOOLEAN) {
+      return 1;
+    } else if (dataType == DataTypes.SHORT) {
+      return 2;
+    } else if (dataType == DataTypes.INT) {
+      return 4;
+    } else if (dataType == DataTypes.LONG || dataType == DataTypes.DOUBLE) {
+      return 8;
+    } else if (DataTypes.isDecimal(dataType)) {
+      return input.readShort();
+    }
+    return 0;
+  }
+
+  /**
+   * applies the filter on the filter columns of each row and collects the selected rows
+   */
+  private int applyFilter(byte[] buffer, int rowNums)
+      throws FilterUnsupportedException, IOException {
+    int selectedNum = 0;
+    for (int rowId = 0; rowId < rowNums; rowId++) {
+      for (int i = 0; i < requiredColumns.length; i++) {
+        int colCount = requiredColumns[i];
+        if (isFilterRequired[colCount]) {
+          filterValues[filterMap[colCount]] =
+              getFilterValue(buffer, colCount, valueOffsets[i][rowId]);
+        }
+      }
+      if (filter.applyFilter(filterRow, lastDimensionColOrdinal)) {
+        selectedRows[selectedNum++] = rowId;
+      }
+    }
+    return selectedNum;
+  }
+
+  private Object getFilterValue(byte[] buffer, int colCount, int offset) {
+    if (offset == NULL) {
+      if (colCount < isNoDictColumn.length) {
+        return CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY;
+      }
+      return null;
+    }
+    if (colCount < isNoDictColumn.length) {
+      if (isNoDictColumn[colCount]) {
+        return copy(buffer, offset + 2, readShort(buffer, offset));
+      }
+      return copy(buffer, offset, 4);
+    } else if (colCount < dimensionCount) {
+      return copy(buffer, offset + 2, readShort(buffer, offset));
+    }
+    DataType dataType = measureDataTypes[colCount - dimensionCount];
+    if (dataType == DataTypes.BOOLEAN) {
+      return buffer[offset] != 0;
+    } else if (dataType == DataTypes.SHORT) {
+      return readShort(buffer, offset);
+    } else if (dataType == DataTypes.INT) {
+      return readInt(buffer, offset);
+    } else if (dataType == DataTypes.LONG) {
+      return readLong(buffer, offset);
+    } else if (dataType == DataTypes.DOUBLE) {
+      return Double.longBitsToDouble(readLong(buffer, offset));
+    } else if (DataTypes.isDecimal(dataType)) {
+      return DataTypeUtil.byteToBigDecimal(copy(buffer, offset + 2, readShort(buffer, offset)));
+    }
+    return null;
+  }
+
+  /**
+   * fills one projection column of the selected rows into the vector
+   */
+  private void fillVector(byte[] buffer, int index, int selectedNum, CarbonColumnVector vector) {
+    int colCount = requiredColumns[index];
+    int[] offsets = valueOffsets[index];
+    if (nullCounts[index] > 0) {
+      boolean allNull = true;
+      for (int i = 0; i < selectedNum && allNull; i++) {
+        allNull = offsets[selectedRows[i]] == NULL;
+      }
+      if (allNull) {
+        vector.putNulls(0, selectedNum);
+        return;
+      }
+    }
+    boolean hasNull = nullCounts[index] > 0;
+    DataType vectorType = vector.getType();
+    if (colCount < isNoDictColumn.length && isNoDictColumn[colCount]
+        && vectorType == DataTypes.STRING
+        && storageColumns[colCount].getDataType() == DataTypes.STRING) {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        if (hasNull && offset == NULL) {
+          vector.putNull(i);
+        } else {
+          int len = readShort(buffer, offset);
+          if (isDefaultValue(buffer, offset + 2, len)) {
+            vector.putNull(i);
+          } else {
+            vector.putByteArray(i, offset + 2, len, buffer);
+          }
+        }
+      }
+    } else if (colCount < isNoDictColumn.length && !isNoDictColumn[colCount]
+        && null == directDictionaryGenerators[colCount] && vectorType == DataTypes.INT) {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        if (hasNull && offset == NULL) {
+          vector.putNull(i);
+        } else {
+          vector.putInt(i, readInt(buffer, offset));
+        }
+      }
+    } else if (colCount >= dimensionCount
+        && vectorType == measureDataTypes[colCount - dimensionCount]
+        && (vectorType == DataTypes.INT || vectorType == DataTypes.LONG
+        || vectorType == DataTypes.DOUBLE || vectorType == DataTypes.SHORT)) {
+      fillMeasureVector(buffer, offsets, hasNull, selectedNum, vector);
+    } else {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        CarbonStreamRecordReader.putRowToColumnBatch(i,
+            offset == NULL ? null : getOutputValue(buffer, colCount, offset), vector);
+      }
+    }
+  }
+
+  private void fillMeasureVector(byte[] buffer, int[] offsets, boolean hasNull, int selectedNum,
+      CarbonColumnVector vector) {
+    DataType dataType = vector.getType();
+    if (dataType == DataTypes.INT) {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        if (hasNull && offset == NULL) {
+          vector.putNull(i);
+        } else {
+          vector.putInt(i, readInt(buffer, offset));
+        }
+      }
+    } else if (dataType == DataTypes.LONG) {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        if (hasNull && offset == NULL) {
+          vector.putNull(i);
+        } else {
+          vector.putLong(i, readLong(buffer, offset));
+        }
+      }
+    } else if (dataType == DataTypes.DOUBLE) {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        if (hasNull && offset == NULL) {
+          vector.putNull(i);
+        } else {
+          vector.putDouble(i, Double.longBitsToDouble(readLong(buffer, offset)));
+        }
+      }
+    } else {
+      for (int i = 0; i < selectedNum; i++) {
+        int offset = offsets[selectedRows[i]];
+        if (hasNull && offset == NULL) {
+          vector.putNull(i);
+        } else {
+          vector.putShort(i, readShort(buffer, offset));
+        }
+      }
+    }
+  }
+
+  /**
+   * output value of the column in the same form as StreamRecordReader.readRowFromStream
+   */
+  private Object getOutputValue(byte[] buffer, int colCount, int offset) {
+    if (colCount < isNoDictColumn.length) {
+      if (isNoDictColumn[colCount]) {
+        return DataTypeUtil.getDataBasedOnDataTypeForNoDictionaryColumn(
+            copy(buffer, offset + 2, readShort(buffer, offset)),
+            storageColumns[colCount].getDataType(), true, dataTypeConverter);
+      } else if (null != directDictionaryGenerators[colCount]) {
+        return directDictionaryGenerators[colCount].getValueFromSurrogate(readInt(buffer, offset));
+      }
+      return readInt(buffer, offset);
+    } else if (colCount < dimensionCount) {
+      return queryTypes[colCount].getDataBasedOnDataType(
+          ByteBuffer.wrap(copy(buffer, offset + 2, readShort(buffer, offset))));
+    }
+    Object value = getFilterValue(buffer, colCount, offset);
+    if (DataTypes.isDecimal(measureDataTypes[colCount - dimensionCount])) {
+      return dataTypeConverter.convertFromBigDecimalToDecimal(value);
+    }
+    return value;
+  }
+
+  private static boolean isDefaultValue(byte[] buffer, int offset, int len) {
+    byte[] defaultValue = CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY;
+    if (len != defaultValue.length) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (buffer[offset + i] != defaultValue[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] copy(byte[] buffer, int offset, int len) {
+    byte[] b = new byte[len];
+    System.arraycopy(buffer, offset, b, 0, len);
+    return b;
+  }
+
+  private static short readShort(byte[] buffer, int offset) {
+    return (short) ((buffer[offset + 1] & 255) + ((buffer[offset]) << 8));
+  }
+
+  private static int readInt(byte[] buffer, int offset) {
+    return ((buffer[offset + 3] & 255) +
+        ((buffer[offset + 2] & 255) << 8) +
+        ((buffer[offset + 1] & 255) << 16) +
+        ((buffer[offset]) << 24));
+  }
+
+  private static long readLong(byte[] buffer, int offset) {
+    return ((long) (buffer[offset + 7] & 255)) +
+        ((long) (buffer[offset + 6] & 255) << 8) +
+        ((long) (buffer[offset + 5] & 255) << 16) +
+        ((long) (buffer[offset + 4] & 255) << 24) +
+        ((long) (buffer[offset + 3] & 255) << 32) +
+        ((long) (buffer[offset + 2] & 255) << 40) +
+        ((long) (buffer[offset + 1] & 255) << 48) +
+        ((long) (buffer[offset]) << 56);
+  }
+}
@@ -258,6 +258,17 @@ public class StreamBlockletReader {
     offset += len;
   }
 
+  /**
+   * decompressed data of the current blocklet
+   */
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  int getOffset() {
+    return offset;
+  }
+
   public int getRowNums() {
     return rowNums;
   }
@@ -559,6 +559,17 @@ public class StreamRecordReader extends CarbonIterator<Object[]> {
     }
   }
 
+  /**
+   * decoder which fills the rows of a blocklet into a columnar batch, created at the first row
+   */
+  StreamBlockletBatchDecoder createBatchDecoder() {
+    return new StreamBlockletBatchDecoder(storageColumns, isNoDictColumn,
+        directDictionaryGenerators, measureDataTypes, dimensionCount, queryTypes,
+        dataTypeConverter, isRequired, isFilterRequired, isProjectionRequired, filter, filterRow,
+        filterValues, filterMap, blockExecutionInfo.getDataBlock().getSegmentProperties()
+            .getLastDimensionColOrdinal(), projectionMap);
+  }
+
   private void readRawRowFromStream() {
     input.nextRow();
     short nullLen = input.readShort();
@@ -67,7 +67,7 @@ public class CarbonColumnVectorImpl implements CarbonColumnVector {
 
   private CarbonDictionary carbonDictionary;
 
-  private CarbonColumnVector dictionaryVector;
+  private CarbonColumnVectorImpl dictionaryVector;
 
   private LazyPageLoader lazyPage;
 
@@ -199,6 +199,9 @@ public class CarbonColumnVectorImpl implements CarbonColumnVector {
   }
 
   public boolean isNullAt(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
     return nullBytes.get(rowId);
   }
 
@@ -249,6 +252,89 @@ public class CarbonColumnVectorImpl implements CarbonColumnVector {
     }
   }
 
+  /**
+   * Typed getters below read the cell without boxing it, caller must check the null bit first
+   */
+  public long getLong(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return longs[rowId];
+  }
+
+  public int getInt(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return ints[rowId];
+  }
+
+  public short getShort(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return shorts[rowId];
+  }
+
+  public byte getByte(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return byteArr[rowId];
+  }
+
+  public float getFloat(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return floats[rowId];
+  }
+
+  public double getDouble(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return doubles[rowId];
+  }
+
+  public BigDecimal getDecimal(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    return decimals[rowId];
+  }
+
+  /**
+   * Returns the array holding the bytes of the given row without copying it. Use
+   * {@link #getByteArrayOffset(int)} and {@link #getByteArrayLength(int)} to locate the value.
+   */
+  public byte[] getByteArrayBuffer(int rowId) {
+    if (!loaded) {
+      loadPage();
+    }
+    if (null != carbonDictionary) {
+      return carbonDictionary.getDictionaryValue(dictionaryVector.getInt(rowId));
+    } else if (byteArr != null) {
+      return byteArr;
+    } else {
+      return bytes[rowId];
+    }
+  }
+
+  public int getByteArrayOffset(int rowId) {
+    if (null == carbonDictionary && byteArr != null) {
+      return offsets[rowId];
+    }
+    return 0;
+  }
+
+  public int getByteArrayLength(int rowId) {
+    if (null == carbonDictionary && byteArr != null) {
+      return lengths[rowId];
+    }
+    return getByteArrayBuffer(rowId).length;
+  }
+
   public Object getDataArray() {
     if (!loaded) {
       loadPage();
@@ -17,6 +17,9 @@
 
 package org.apache.carbondata.core.stream;
 
+import java.util.BitSet;
+import java.util.List;
+
 import org.apache.carbondata.common.annotations.InterfaceAudience;
 import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
 
@@ -31,6 +34,14 @@ public class StreamFile {
 
   private BlockletMinMaxIndex minMaxIndex;
 
+  // min/max and start offset of every blocklet in file order, null if not in the index
+  private List<BlockletMinMaxIndex> blockletMinMaxIndexes;
+
+  private long[] blockletOffsets;
+
+  // blocklets which pass the filter, null if all blocklets are scanned
+  private BitSet scanBlocklets;
+
   public StreamFile(String segmentNo, String filePath, long fileSize) {
     this.segmentNo = segmentNo;
     this.filePath = filePath;
@@ -60,4 +71,26 @@ public class StreamFile {
   public void setMinMaxIndex(BlockletMinMaxIndex minMaxIndex) {
     this.minMaxIndex = minMaxIndex;
   }
+
+  public List<BlockletMinMaxIndex> getBlockletMinMaxIndexes() {
+    return blockletMinMaxIndexes;
+  }
+
+  public long[] getBlockletOffsets() {
+    return blockletOffsets;
+  }
+
+  public void setBlockletIndexes(List<BlockletMinMaxIndex> blockletMinMaxIndexes,
+      long[] blockletOffsets) {
+    this.blockletMinMaxIndexes = blockletMinMaxIndexes;
+    this.blockletOffsets = blockletOffsets;
+  }
+
+  public BitSet getScanBlocklets() {
+    return scanBlocklets;
+  }
+
+  public void setScanBlocklets(BitSet scanBlocklets) {
+    this.scanBlocklets = scanBlocklets;
+  }
 }
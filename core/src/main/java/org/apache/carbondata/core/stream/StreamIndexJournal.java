@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.core.stream;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.carbondata.common.annotations.InterfaceAudience;
+import org.apache.carbondata.common.logging.LogServiceFactory;
+import org.apache.carbondata.core.datastore.impl.FileFactory;
+import org.apache.carbondata.core.reader.CarbonIndexFileReader;
+import org.apache.carbondata.core.util.CarbonUtil;
+import org.apache.carbondata.format.BlockIndex;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.log4j.Logger;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+/**
+ * Append-only journal of a stream index file. A writer appends one small record per blocklet
+ * instead of rewriting the index file, and checkpoints the journal into the index file when the
+ * stream file is closed.
+ *
+ * A record is a BlockIndex of one blocklet: the offset of the blocklet, the length of the file
+ * after it, the rows, the min/max and the offset of the blocklet in the blocklet lists, and the
+ * min/max and the sorted flag of the file up to the blocklet. The readers fold the records into
+ * the entries of the index file, the records already covered by the index file are skipped, so a
+ * checkpoint that failed before the journal was deleted is folded correctly.
+ */
+@InterfaceAudience.Internal
+public class StreamIndexJournal {
+
+  private static final Logger LOGGER =
+      LogServiceFactory.getLogService(StreamIndexJournal.class.getName());
+
+  public static final String JOURNAL_FILE_EXT = ".journal";
+
+  private static final int BUFFER_SIZE = 2048;
+
+  private String journalPath;
+
+  private DataOutputStream outputStream;
+
+  private TProtocol protocol;
+
+  public StreamIndexJournal(String indexFilePath) {
+    this.journalPath = getJournalFilePath(indexFilePath);
+  }
+
+  public static String getJournalFilePath(String indexFilePath) {
+    return indexFilePath + JOURNAL_FILE_EXT;
+  }
+
+  /**
+   * Appends the record of a blocklet, the record is visible to the readers on return
+   */
+  public void append(BlockIndex record) throws IOException {
+    if (outputStream == null) {
+      outputStream = FileFactory.getDataOutputStream(journalPath,
+          FileFactory.getFileType(journalPath), BUFFER_SIZE, true);
+      protocol = new TCompactProtocol(new TIOStreamTransport(outputStream));
+    }
+    try {
+      record.write(protocol);
+    } catch (TException e) {
+      throw new IOException(e);
+    }
+    outputStream.flush();
+    if (outputStream instanceof FSDataOutputStream) {
+      ((FSDataOutputStream) outputStream).hflush();
+    }
+  }
+
+  public void close() {
+    CarbonUtil.closeStreams(outputStream);
+    outputStream = null;
+    protocol = null;
+  }
+
+  /**
+   * Closes and deletes the journal, called after it is checkpointed into the index file
+   */
+  public void delete() throws IOException {
+    close();
+    if (FileFactory.isFileExist(journalPath)) {
+      FileFactory.deleteFile(journalPath, FileFactory.getFileType(journalPath));
+    }
+  }
+
+  /**
+   * Reads the entries of the index file with the records of its journal folded in
+   */
+  public static List<BlockIndex> readIndex(String indexFilePath) throws IOException {
+    Map<String, BlockIndex> blockIndexes = new LinkedHashMap<>();
+    CarbonIndexFileReader indexReader = new CarbonIndexFileReader();
+    indexReader.openThriftReader(indexFilePath);
+    try {
+      while (indexReader.hasNext()) {
+        BlockIndex blockIndex = indexReader.readBlockIndexInfo();
+        blockIndexes.put(blockIndex.getFile_name(), blockIndex);
+      }
+    } finally {
+      indexReader.closeThriftReader();
+    }
+    String journalPath = getJournalFilePath(indexFilePath);
+    if (FileFactory.isFileExist(journalPath)) {
+      CarbonIndexFileReader journalReader = new CarbonIndexFileReader();
+      journalReader.openThriftReader(journalPath);
+      try {
+        while (journalReader.hasNext()) {
+          BlockIndex record;
+          try {
+            record = journalReader.readBlockIndexInfo();
+          } catch (IOException e) {
+            // the writer failed in the middle of a record, its blocklet is not indexed
+            LOGGER.warn("Ignoring the incomplete record at the end of " + journalPath);
+            break;
+          }
+          fold(blockIndexes, record);
+        }
+      } finally {
+        journalReader.closeThriftReader();
+      }
+    }
+    return new ArrayList<>(blockIndexes.values());
+  }
+
+  private static void fold(Map<String, BlockIndex> blockIndexes, BlockIndex record) {
+    BlockIndex blockIndex = blockIndexes.get(record.getFile_name());
+    if (blockIndex == null) {
+      // first blocklet of the file
+      blockIndex = new BlockIndex();
+      blockIndex.setFile_name(record.getFile_name());
+      blockIndex.setOffset(-1);
+      blockIndex.setNum_rows(0);
+      if (record.isSetBlocklet_min_max_index()) {
+        blockIndex.setBlocklet_min_max_index(
+            new ArrayList<org.apache.carbondata.format.BlockletMinMaxIndex>());
+      }
+      if (record.isSetBlocklet_offsets()) {
+        blockIndex.setBlocklet_offsets(new ArrayList<Long>());
+      }
+      blockIndexes.put(record.getFile_name(), blockIndex);
+    } else if (record.getFile_size() <= blockIndex.getFile_size()) {
+      // the blocklet is in the index file already
+      return;
+    }
+    blockIndex.setFile_size(record.getFile_size());
+    blockIndex.setNum_rows(blockIndex.getNum_rows() + record.getNum_rows());
+    blockIndex.setBlock_index(record.getBlock_index());
+    if (blockIndex.isSetBlocklet_min_max_index() && record.isSetBlocklet_min_max_index()) {
+      blockIndex.getBlocklet_min_max_index().addAll(record.getBlocklet_min_max_index());
+    } else {
+      blockIndex.setBlocklet_min_max_index(null);
+    }
+    if (blockIndex.isSetBlocklet_offsets() && record.isSetBlocklet_offsets()) {
+      blockIndex.getBlocklet_offsets().addAll(record.getBlocklet_offsets());
+    } else {
+      blockIndex.setBlocklet_offsets(null);
+    }
+  }
+}
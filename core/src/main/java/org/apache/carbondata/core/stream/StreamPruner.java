@@ -21,29 +21,49 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.carbondata.common.annotations.InterfaceAudience;
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
 import org.apache.carbondata.core.datamap.Segment;
 import org.apache.carbondata.core.datastore.block.SegmentProperties;
 import org.apache.carbondata.core.datastore.filesystem.CarbonFile;
 import org.apache.carbondata.core.datastore.filesystem.CarbonFileFilter;
 import org.apache.carbondata.core.datastore.impl.FileFactory;
+import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
 import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
 import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
 import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
 import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
-import org.apache.carbondata.core.reader.CarbonIndexFileReader;
 import org.apache.carbondata.core.scan.filter.FilterUtil;
 import org.apache.carbondata.core.scan.filter.executer.FilterExecuter;
 import org.apache.carbondata.core.scan.filter.resolver.FilterResolverIntf;
 import org.apache.carbondata.core.util.CarbonMetadataUtil;
+import org.apache.carbondata.core.util.CarbonProperties;
 import org.apache.carbondata.core.util.path.CarbonTablePath;
 import org.apache.carbondata.format.BlockIndex;
 
 @InterfaceAudience.Internal
 public class StreamPruner {
 
+  // index files cached by the driver, the least recently used are evicted
+  private static final int MAX_CACHED_INDEX_FILES = 10000;
+
+  // parsed index files by path, the file paths in the cached files are the file names
+  private static final Map<String, CachedIndexFile> INDEX_CACHE =
+      new LinkedHashMap<String, CachedIndexFile>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, CachedIndexFile> eldest) {
+          return size() > MAX_CACHED_INDEX_FILES;
+        }
+      };
+
   private CarbonTable carbonTable;
   private FilterExecuter filterExecuter;
 
@@ -85,7 +105,7 @@ public class StreamPruner {
     } else {
       List<StreamFile> streamFileList = new ArrayList<>();
       for (StreamFile streamFile : listAllStreamFiles(segments, true)) {
-        if (isScanRequire(streamFile)) {
+        if (isScanRequire(streamFile.getMinMaxIndex()) && pruneBlocklets(streamFile)) {
           // if stream file is required to scan
           streamFileList.add(streamFile);
         }
@@ -94,15 +114,15 @@ public class StreamPruner {
     }
   }
 
-  private boolean isScanRequire(StreamFile streamFile) {
+  private boolean isScanRequire(BlockletMinMaxIndex minMaxIndex) {
     // backward compatibility, old stream file without min/max index
-    if (streamFile.getMinMaxIndex() == null) {
+    if (minMaxIndex == null) {
       return true;
     }
-    byte[][] maxValue = streamFile.getMinMaxIndex().getMaxValues();
-    byte[][] minValue = streamFile.getMinMaxIndex().getMinValues();
+    byte[][] maxValue = minMaxIndex.getMaxValues();
+    byte[][] minValue = minMaxIndex.getMinValues();
     BitSet bitSet = filterExecuter
-        .isScanRequired(maxValue, minValue, streamFile.getMinMaxIndex().getIsMinMaxSet());
+        .isScanRequired(maxValue, minValue, minMaxIndex.getIsMinMaxSet());
     if (!bitSet.isEmpty()) {
       return true;
     } else {
@@ -110,59 +130,205 @@ public class StreamPruner {
     }
   }
 
+  /**
+   * Prunes the blocklets of the stream file by their min/max, the blocklets to scan are set in the
+   * stream file if some are pruned. Returns false if all the blocklets are pruned.
+   */
+  boolean pruneBlocklets(StreamFile streamFile) {
+    List<BlockletMinMaxIndex> minMaxIndexes = streamFile.getBlockletMinMaxIndexes();
+    if (minMaxIndexes == null) {
+      return true;
+    }
+    BitSet scanBlocklets = new BitSet(minMaxIndexes.size());
+    for (int i = 0; i < minMaxIndexes.size(); i++) {
+      if (isScanRequire(minMaxIndexes.get(i))) {
+        scanBlocklets.set(i);
+      }
+    }
+    if (scanBlocklets.cardinality() < minMaxIndexes.size()) {
+      streamFile.setScanBlocklets(scanBlocklets);
+    }
+    return !scanBlocklets.isEmpty();
+  }
+
   // TODO optimize and move the code to StreamSegment , but it's in the streaming module.
-  private List<StreamFile> listAllStreamFiles(List<Segment> segments, boolean withMinMax)
+  private List<StreamFile> listAllStreamFiles(List<Segment> segments, final boolean withMinMax)
       throws IOException {
     List<StreamFile> streamFileList = new ArrayList<>();
-    for (Segment segment : segments) {
-      String segmentDir = CarbonTablePath
-          .getSegmentPath(carbonTable.getAbsoluteTableIdentifier().getTablePath(),
-              segment.getSegmentNo());
-      String indexFile = CarbonTablePath.getCarbonStreamIndexFilePath(segmentDir);
-      if (FileFactory.isFileExist(indexFile, FileFactory.getFileType(indexFile))) {
-        readIndexAndgetStreamFiles(withMinMax, streamFileList, segment, segmentDir, indexFile);
-      } else {
-        CarbonFile carbonFile = FileFactory.getCarbonFile(segmentDir);
-        CarbonFile[] files = carbonFile.listFiles(new CarbonFileFilter() {
-          @Override public boolean accept(CarbonFile file) {
-            return file.getName().endsWith(CarbonTablePath.INDEX_FILE_EXT);
-          }
-        });
-        for (CarbonFile index : files) {
-          readIndexAndgetStreamFiles(withMinMax, streamFileList, segment, segmentDir,
-              index.getAbsolutePath());
+    int numOfThreads = Math.min(getNumOfThreadsForListing(), segments.size());
+    if (numOfThreads <= 1) {
+      for (Segment segment : segments) {
+        streamFileList.addAll(listStreamFiles(segment, withMinMax));
+      }
+    } else {
+      // the index files of the segments are read in parallel, the files keep the segment order
+      List<Future<List<StreamFile>>> results = new ArrayList<>(segments.size());
+      ExecutorService executorService = Executors.newFixedThreadPool(numOfThreads);
+      final String threadName = Thread.currentThread().getName();
+      try {
+        for (final Segment segment : segments) {
+          results.add(executorService.submit(new Callable<List<StreamFile>>() {
+            @Override public List<StreamFile> call() throws IOException {
+              Thread.currentThread().setName(threadName);
+              return listStreamFiles(segment, withMinMax);
+            }
+          }));
+        }
+        for (Future<List<StreamFile>> result : results) {
+          streamFileList.addAll(result.get());
         }
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while listing the stream files", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      } finally {
+        executorService.shutdownNow();
       }
     }
     totalFileNums = streamFileList.size();
     return streamFileList;
   }
 
+  private List<StreamFile> listStreamFiles(Segment segment, boolean withMinMax)
+      throws IOException {
+    List<StreamFile> streamFileList = new ArrayList<>();
+    String segmentDir = CarbonTablePath
+        .getSegmentPath(carbonTable.getAbsoluteTableIdentifier().getTablePath(),
+            segment.getSegmentNo());
+    String indexFile = CarbonTablePath.getCarbonStreamIndexFilePath(segmentDir);
+    if (FileFactory.isFileExist(indexFile, FileFactory.getFileType(indexFile))) {
+      readIndexAndgetStreamFiles(withMinMax, streamFileList, segment, segmentDir,
+          FileFactory.getCarbonFile(indexFile));
+    } else {
+      CarbonFile carbonFile = FileFactory.getCarbonFile(segmentDir);
+      CarbonFile[] files = carbonFile.listFiles(new CarbonFileFilter() {
+        @Override public boolean accept(CarbonFile file) {
+          return file.getName().endsWith(CarbonTablePath.INDEX_FILE_EXT);
+        }
+      });
+      for (CarbonFile index : files) {
+        readIndexAndgetStreamFiles(withMinMax, streamFileList, segment, segmentDir, index);
+      }
+    }
+    return streamFileList;
+  }
+
+  private int getNumOfThreadsForListing() {
+    int numOfThreads = Integer.parseInt(CarbonProperties.getInstance()
+        .getProperty(CarbonCommonConstants.CARBON_MAX_DRIVER_THREADS_FOR_BLOCK_PRUNING,
+            CarbonCommonConstants.CARBON_MAX_DRIVER_THREADS_FOR_BLOCK_PRUNING_DEFAULT));
+    if (numOfThreads > Integer
+        .parseInt(CarbonCommonConstants.CARBON_MAX_DRIVER_THREADS_FOR_BLOCK_PRUNING_DEFAULT)
+        || numOfThreads < 1) {
+      numOfThreads = Integer
+          .parseInt(CarbonCommonConstants.CARBON_MAX_DRIVER_THREADS_FOR_BLOCK_PRUNING_DEFAULT);
+    }
+    return numOfThreads;
+  }
+
   public static void readIndexAndgetStreamFiles(boolean withMinMax, List<StreamFile> streamFileList,
       Segment segment, String segmentDir, String indexFile) throws IOException {
-    CarbonIndexFileReader indexReader = new CarbonIndexFileReader();
-    indexReader.openThriftReader(indexFile);
-    try {
-      while (indexReader.hasNext()) {
-        BlockIndex blockIndex = indexReader.readBlockIndexInfo();
-        String filePath = segmentDir + File.separator + blockIndex.getFile_name();
-        long length = blockIndex.getFile_size();
-        StreamFile streamFile = new StreamFile(segment.getSegmentNo(), filePath, length);
-        streamFileList.add(streamFile);
-        if (withMinMax) {
-          if (blockIndex.getBlock_index() != null
-              && blockIndex.getBlock_index().getMin_max_index() != null) {
-            streamFile.setMinMaxIndex(CarbonMetadataUtil
-                .convertExternalMinMaxIndex(blockIndex.getBlock_index().getMin_max_index()));
-          }
+    readIndexAndgetStreamFiles(withMinMax, streamFileList, segment, segmentDir,
+        FileFactory.getCarbonFile(indexFile));
+  }
+
+  public static void readIndexAndgetStreamFiles(boolean withMinMax,
+      List<StreamFile> streamFileList, Segment segment, String segmentDir, CarbonFile indexFile)
+      throws IOException {
+    for (StreamFile indexedFile : readIndexFile(indexFile)) {
+      String filePath = segmentDir + File.separator + indexedFile.getFilePath();
+      StreamFile streamFile =
+          new StreamFile(segment.getSegmentNo(), filePath, indexedFile.getFileSize());
+      streamFileList.add(streamFile);
+      if (withMinMax) {
+        streamFile.setMinMaxIndex(indexedFile.getMinMaxIndex());
+        streamFile.setBlockletIndexes(indexedFile.getBlockletMinMaxIndexes(),
+            indexedFile.getBlockletOffsets());
+      }
+    }
+  }
+
+  /**
+   * Returns the files of the index file by their names. The index file is read only if it is not
+   * in the cache or it is changed since it was cached. An index file with a journal is being
+   * appended, it is read every time because the status of a file under write can be stale.
+   */
+  private static List<StreamFile> readIndexFile(CarbonFile indexFile) throws IOException {
+    String indexPath = indexFile.getAbsolutePath();
+    String journalPath = StreamIndexJournal.getJournalFilePath(indexPath);
+    boolean cacheable = !FileFactory.isFileExist(journalPath);
+    long lastModifiedTime = indexFile.getLastModifiedTime();
+    long size = indexFile.getSize();
+    if (cacheable) {
+      synchronized (INDEX_CACHE) {
+        CachedIndexFile cached = INDEX_CACHE.get(indexPath);
+        if (cached != null && cached.lastModifiedTime == lastModifiedTime
+            && cached.size == size) {
+          return cached.streamFiles;
         }
       }
-    } finally {
-      indexReader.closeThriftReader();
     }
+    // the blocklets appended after the last checkpoint of the index are in its journal
+    List<BlockIndex> blockIndexes = StreamIndexJournal.readIndex(indexPath);
+    List<StreamFile> streamFiles = new ArrayList<>(blockIndexes.size());
+    for (BlockIndex blockIndex : blockIndexes) {
+      StreamFile streamFile =
+          new StreamFile(null, blockIndex.getFile_name(), blockIndex.getFile_size());
+      if (blockIndex.getBlock_index() != null
+          && blockIndex.getBlock_index().getMin_max_index() != null) {
+        streamFile.setMinMaxIndex(CarbonMetadataUtil
+            .convertExternalMinMaxIndex(blockIndex.getBlock_index().getMin_max_index()));
+      }
+      setBlockletIndexes(streamFile, blockIndex);
+      streamFiles.add(streamFile);
+    }
+    // a journal created during the read may be folded in already
+    if (cacheable && !FileFactory.isFileExist(journalPath)) {
+      synchronized (INDEX_CACHE) {
+        INDEX_CACHE.put(indexPath, new CachedIndexFile(lastModifiedTime, size, streamFiles));
+      }
+    }
+    return streamFiles;
+  }
+
+  private static void setBlockletIndexes(StreamFile streamFile, BlockIndex blockIndex) {
+    if (!blockIndex.isSetBlocklet_min_max_index() || !blockIndex.isSetBlocklet_offsets()
+        || blockIndex.getBlocklet_min_max_index().size() != blockIndex.getBlocklet_offsets()
+        .size()) {
+      return;
+    }
+    List<BlockletMinMaxIndex> minMaxIndexes =
+        new ArrayList<>(blockIndex.getBlocklet_min_max_index().size());
+    for (org.apache.carbondata.format.BlockletMinMaxIndex minMaxIndex : blockIndex
+        .getBlocklet_min_max_index()) {
+      minMaxIndexes.add(CarbonMetadataUtil.convertExternalMinMaxIndex(minMaxIndex));
+    }
+    long[] offsets = new long[blockIndex.getBlocklet_offsets().size()];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = blockIndex.getBlocklet_offsets().get(i);
+    }
+    streamFile.setBlockletIndexes(minMaxIndexes, offsets);
   }
 
   public int getTotalFileNums() {
     return totalFileNums;
   }
+
+  private static class CachedIndexFile {
+
+    private long lastModifiedTime;
+
+    private long size;
+
+    private List<StreamFile> streamFiles;
+
+    private CachedIndexFile(long lastModifiedTime, long size, List<StreamFile> streamFiles) {
+      this.lastModifiedTime = lastModifiedTime;
+      this.size = size;
+      this.streamFiles = streamFiles;
+    }
+  }
 }
@@ -195,6 +195,37 @@ public final class ByteUtil {
       return length1 - length2;
     }
 
+    /**
+     * Lexicographically compare two byte sequences of unsafe memory in place, the base objects
+     * are null for off-heap memory or the owning arrays for on-heap memory.
+     *
+     * @return 0 if equal, < 0 if left is less than right, etc.
+     */
+    public int compareTo(Object baseObject1, long address1, int length1, Object baseObject2,
+        long address2, int length2) {
+      int minLength = Math.min(length1, length2);
+      int minWords = minLength / SIZEOF_LONG;
+      for (int i = 0; i < minWords * SIZEOF_LONG; i += SIZEOF_LONG) {
+        long lw = CarbonUnsafe.getUnsafe().getLong(baseObject1, address1 + i);
+        long rw = CarbonUnsafe.getUnsafe().getLong(baseObject2, address2 + i);
+        if (lw != rw) {
+          if (CarbonUnsafe.ISLITTLEENDIAN) {
+            lw = Long.reverseBytes(lw);
+            rw = Long.reverseBytes(rw);
+          }
+          return lessThanUnsigned(lw, rw) ? -1 : 1;
+        }
+      }
+      for (int i = minWords * SIZEOF_LONG; i < minLength; i++) {
+        int a = CarbonUnsafe.getUnsafe().getByte(baseObject1, address1 + i) & 0xff;
+        int b = CarbonUnsafe.getUnsafe().getByte(baseObject2, address2 + i) & 0xff;
+        if (a != b) {
+          return a - b;
+        }
+      }
+      return length1 - length2;
+    }
+
     /**
      * Return negative value if {@code buffer1} less than {@code buffer2},
      * return 0 if they are equal, otherwise return positive value.
@@ -18,10 +18,17 @@ package org.apache.carbondata.core.scan.filter.executer;
 
 import java.util.BitSet;
 
+import org.apache.carbondata.core.datastore.DataRefNode;
+import org.apache.carbondata.core.datastore.block.TableBlockInfo;
 import org.apache.carbondata.core.datastore.chunk.DimensionColumnPage;
 import org.apache.carbondata.core.datastore.chunk.impl.FixedLengthDimensionColumnPage;
+import org.apache.carbondata.core.indexstore.BlockletDetailInfo;
+import org.apache.carbondata.core.metadata.blocklet.BlockletInfo;
 import org.apache.carbondata.core.util.CarbonUtil;
 
+import mockit.Deencapsulation;
+import mockit.Mock;
+import mockit.MockUp;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -332,4 +339,68 @@ public class IncludeFilterExecuterImplTest extends TestCase {
 
   }
 
+  /**
+   * Tests that only the blocks recorded as sorted in the footer are binary searched
+   */
+  @Test
+  public void testBlockSortedFlag() {
+    assertTrue(isBlockSorted(createDataBlock(Boolean.TRUE)));
+    assertFalse(isBlockSorted(createDataBlock(Boolean.FALSE)));
+    // written by an old writer without the flag
+    assertFalse(isBlockSorted(createDataBlock(null)));
+  }
+
+  /**
+   * Tests that the page of a block without the sorted flag is scanned row by row
+   */
+  @Test
+  public void testUnsortedPageOfPrimaryKeyIsScanned() {
+    byte[] dataChunk = new byte[] { 5, 1, 3, 1, 7, 3 };
+    FixedLengthDimensionColumnPage page =
+        new FixedLengthDimensionColumnPage(dataChunk, null, null, 6, 1, dataChunk.length);
+    IncludeFilterExecuterImpl executer =
+        new IncludeFilterExecuterImpl(new byte[][] { { 1 }, { 3 } }, false);
+    Deencapsulation.setField(executer, "isPageSorted", isBlockSorted(createDataBlock(null)));
+    BitSet bitSet = Deencapsulation.invoke(executer, "setFilterdIndexToBitSet", page, 6);
+    BitSet expected = new BitSet();
+    expected.set(1, 4);
+    expected.set(5);
+    assertEquals(expected, bitSet);
+  }
+
+  /**
+   * Tests that the binary search of the page of a sorted block finds all the filtered rows
+   */
+  @Test
+  public void testSortedPageOfPrimaryKeyIsSearched() {
+    byte[] dataChunk = new byte[] { 1, 1, 3, 3, 5, 7, 9 };
+    FixedLengthDimensionColumnPage page =
+        new FixedLengthDimensionColumnPage(dataChunk, null, null, 7, 1, dataChunk.length);
+    IncludeFilterExecuterImpl executer =
+        new IncludeFilterExecuterImpl(new byte[][] { { 1 }, { 4 }, { 7 } }, false);
+    Deencapsulation.setField(executer, "isPageSorted", isBlockSorted(createDataBlock(true)));
+    BitSet bitSet = Deencapsulation.invoke(executer, "setFilterdIndexToBitSet", page, 7);
+    assertEquals(setFilterdIndexToBitSet(page, 7, new byte[][] { { 1 }, { 4 }, { 7 } }), bitSet);
+    assertEquals(3, bitSet.cardinality());
+  }
+
+  private static boolean isBlockSorted(DataRefNode dataBlock) {
+    return (Boolean) Deencapsulation
+        .invoke(IncludeFilterExecuterImpl.class, "isBlockSorted", dataBlock);
+  }
+
+  private static DataRefNode createDataBlock(Boolean isSorted) {
+    BlockletInfo blockletInfo = new BlockletInfo();
+    blockletInfo.setSorted(isSorted);
+    BlockletDetailInfo detailInfo = new BlockletDetailInfo();
+    detailInfo.setBlockletInfo(blockletInfo);
+    final TableBlockInfo blockInfo = new TableBlockInfo();
+    blockInfo.setDetailInfo(detailInfo);
+    return new MockUp<DataRefNode>() {
+      @Mock public TableBlockInfo getBlockInfo() {
+        return blockInfo;
+      }
+    }.getMockInstance();
+  }
+
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoserTreeQueueTest {
+
+  private static final PrimaryKeyVectorComparator COMPARATOR =
+      new PrimaryKeyVectorComparator(new DataType[] { DataTypes.INT }, new int[] { 0 });
+
+  @Test public void testMergeIsSorted() {
+    Random random = new Random(7);
+    for (int inputs : new int[] { 1, 2, 3, 5, 8, 13, 64 }) {
+      List<List<Object[]>> blocks = new ArrayList<>();
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < inputs; i++) {
+        List<Object[]> rows = new ArrayList<>();
+        int rowCount = random.nextInt(50);
+        for (int j = 0; j < rowCount; j++) {
+          int key = random.nextInt(1000);
+          rows.add(new Object[] { key });
+          expected.add(key);
+        }
+        Collections.sort(rows, new PrimaryKeyRowComparator(new DataType[] { DataTypes.INT },
+            new int[] { 0 }));
+        blocks.add(rows);
+      }
+      Collections.sort(expected);
+      Assert.assertEquals(expected, merge(blocks));
+    }
+  }
+
+  @Test public void testPeekReturnsRunnerUpWhilePolled() {
+    LoserTreeQueue queue = new LoserTreeQueue(COMPARATOR);
+    queue.add(createHolder(1, 2));
+    queue.add(createHolder(3));
+    queue.add(createHolder(5));
+    Assert.assertEquals(3, queue.size());
+    Assert.assertEquals(1, queue.peek().getCell(0));
+    IteratorHolder polled = queue.poll();
+    Assert.assertEquals(1, polled.getCell(0));
+    Assert.assertEquals(2, queue.size());
+    Assert.assertEquals(3, queue.peek().getCell(0));
+    polled.read();
+    queue.add(polled);
+    Assert.assertEquals(2, queue.peek().getCell(0));
+    Assert.assertEquals(2, queue.poll().getCell(0));
+    // not added back, so the holder is exhausted
+    Assert.assertEquals(3, queue.poll().getCell(0));
+    Assert.assertEquals(5, queue.poll().getCell(0));
+    Assert.assertNull(queue.poll());
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testOnlyPolledHolderCanBeAddedBack() {
+    LoserTreeQueue queue = new LoserTreeQueue(COMPARATOR);
+    IteratorHolder holder = createHolder(1);
+    queue.add(holder);
+    queue.add(createHolder(2));
+    queue.poll();
+    queue.add(createHolder(3));
+  }
+
+  private List<Integer> merge(List<List<Object[]>> blocks) {
+    LoserTreeQueue queue = new LoserTreeQueue(COMPARATOR);
+    for (List<Object[]> rows : blocks) {
+      IteratorHolder holder = new IteratorRowHolder(COMPARATOR, rows.iterator(), null);
+      if (holder.hasNext()) {
+        holder.read();
+        queue.add(holder);
+      }
+    }
+    List<Integer> result = new ArrayList<>();
+    IteratorHolder holder;
+    while ((holder = queue.poll()) != null) {
+      result.add((Integer) holder.getCell(0));
+      if (holder.hasNext()) {
+        holder.read();
+        queue.add(holder);
+      }
+    }
+    return result;
+  }
+
+  private IteratorHolder createHolder(int... keys) {
+    List<Object[]> rows = new ArrayList<>();
+    for (int key : keys) {
+      rows.add(new Object[] { key });
+    }
+    IteratorHolder holder = new IteratorRowHolder(COMPARATOR, rows.iterator(), null);
+    holder.read();
+    return holder;
+  }
+}
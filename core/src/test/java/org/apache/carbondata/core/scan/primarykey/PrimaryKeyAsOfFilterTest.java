@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.scan.expression.ColumnExpression;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.filter.intf.RowImpl;
+import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+
+import mockit.Deencapsulation;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrimaryKeyAsOfFilterTest {
+
+  private static final DataType[] KEY_TYPES = new DataType[] { DataTypes.INT };
+
+  private static final int[] KEY_ORDINALS = new int[] { 0 };
+
+  private static final int VERSION = 1;
+
+  private static final int DELETE_STATUS = 2;
+
+  private static final int NAME = 3;
+
+  // versions of the keys in key order: id, timestamp, delete status, name
+  private static final Object[][] ROWS = new Object[][] {
+      // updated at 20
+      { 1, 10L, 0L, "a" }, { 1, 20L, 0L, "b" },
+      // deleted at 30
+      { 2, 10L, 0L, "c" }, { 2, 30L, 2L, null },
+      // deleted at 15
+      { 3, 10L, 0L, "d" }, { 3, 15L, 2L, null },
+      // written at 25
+      { 4, 25L, 0L, "e" } };
+
+  private CarbonTable carbonTable;
+
+  @Before public void setUp() {
+    final ColumnSchema columnSchema = new ColumnSchema();
+    columnSchema.setColumnName(PrimaryKeyAsOfFilter.VERSION_COLUMN);
+    columnSchema.setDataType(DataTypes.LONG);
+    columnSchema.setDimensionColumn(true);
+    new MockUp<CarbonTable>() {
+      @Mock public String getTableName() {
+        return "pk_table";
+      }
+
+      @Mock public CarbonColumn getColumnByName(String tableName, String columnName) {
+        return PrimaryKeyAsOfFilter.VERSION_COLUMN.equals(columnName) ?
+            new CarbonDimension(columnSchema, VERSION, -1, -1) :
+            null;
+      }
+    };
+    carbonTable = Deencapsulation.newInstance(CarbonTable.class);
+  }
+
+  @Test public void testOlderVersionOfUpdatedKey() throws Exception {
+    List<Object[]> rows = read(15);
+    assertRow(rows.get(0), 1, "a");
+    rows = read(20);
+    assertRow(rows.get(0), 1, "b");
+  }
+
+  @Test public void testOlderVersionOfDeletedKey() throws Exception {
+    // key 2 is read as before its delete, key 3 is deleted already
+    List<Object[]> rows = read(15);
+    Assert.assertEquals(2, rows.size());
+    assertRow(rows.get(1), 2, "c");
+    rows = read(29);
+    Assert.assertEquals(3, rows.size());
+    assertRow(rows.get(1), 2, "c");
+    assertRow(rows.get(2), 4, "e");
+  }
+
+  @Test public void testLatestVersion() throws Exception {
+    List<Object[]> rows = read(Long.MAX_VALUE);
+    Assert.assertEquals(2, rows.size());
+    assertRow(rows.get(0), 1, "b");
+    assertRow(rows.get(1), 4, "e");
+  }
+
+  @Test public void testVersionsBeforeFirstWriteAreEmpty() throws Exception {
+    Assert.assertTrue(read(5).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableWithoutVersionColumn() {
+    new MockUp<CarbonTable>() {
+      @Mock public String getTableName() {
+        return "table_without_version";
+      }
+
+      @Mock public CarbonColumn getColumnByName(String tableName, String columnName) {
+        return null;
+      }
+    };
+    PrimaryKeyAsOfFilter.createExpression(carbonTable, 10);
+  }
+
+  /**
+   * Filters the versions with the as-of filter and merges the remaining versions of every key as
+   * the primary key scan does
+   */
+  private List<Object[]> read(long asOfTimestamp) throws Exception {
+    Expression filter = PrimaryKeyAsOfFilter.addTo(null, carbonTable, asOfTimestamp);
+    ((ColumnExpression) filter.getChildren().get(0)).setColIndex(VERSION);
+    PrimaryKeyMerger merger =
+        new PrimaryKeyMerger(new PrimaryKeyRowComparator(KEY_TYPES, KEY_ORDINALS), VERSION,
+            DELETE_STATUS, new int[] { NAME });
+    List<Object[]> result = new ArrayList<>();
+    for (Object[] row : ROWS) {
+      RowImpl value = new RowImpl();
+      value.setValues(row);
+      if (!filter.evaluate(value).getBoolean()) {
+        continue;
+      }
+      if (!merger.isDataAdded() || !merger.mergeRow(row)) {
+        collect(merger, result);
+        merger.addFreshRow(row);
+      }
+    }
+    collect(merger, result);
+    return result;
+  }
+
+  private static void collect(PrimaryKeyMerger merger, List<Object[]> result) {
+    if (!merger.isDeletedRow()) {
+      result.add(merger.getMergedRow().clone());
+    }
+    merger.clear();
+  }
+
+  private static void assertRow(Object[] row, int id, String name) {
+    Assert.assertEquals(id, row[0]);
+    Assert.assertEquals(name, row[NAME]);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+import org.apache.carbondata.core.scan.result.impl.CarbonStreamRecordReader;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimaryKeyDirectVectorDetailQueryResultIteratorTest {
+
+  private static final DataType[] SCHEMA =
+      new DataType[] { DataTypes.INT, DataTypes.LONG, DataTypes.LONG, DataTypes.STRING };
+
+  @Test public void testDeletedKeysAreSkipped() {
+    Object[][] rows = new Object[][] { { 1, 10L, 0L, "a1" }, { 2, 10L, 2L, "a2" },
+        { 3, 10L, 0L, "a3" }, { 4, 10L, 1L, null }, { 5, 10L, 0L, "a5" }, { 6, 10L, 0L, "a6" },
+        { 7, 10L, 0L, "a7" } };
+    PrimaryKeyMerger merger =
+        new PrimaryKeyMerger(new PrimaryKeyRowComparator(new DataType[] { DataTypes.INT },
+            new int[] { 0 }), 1, 2, new int[] { 3 });
+    PrimaryKeyDirectVectorDetailQueryResultIterator iterator =
+        new PrimaryKeyDirectVectorDetailQueryResultIterator(new ArrayBatchIterator(rows, 3),
+            createBatch(3), merger);
+    CarbonColumnarBatch output = createBatch(2);
+    List<Integer> keys = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    while (iterator.hasNext()) {
+      output.reset();
+      iterator.processNextBatch(output);
+      Assert.assertTrue(output.getActualSize() <= 2);
+      for (int i = 0; i < output.getActualSize(); i++) {
+        keys.add((Integer) output.columnVectors[0].getData(i));
+        values.add(new String((byte[]) output.columnVectors[3].getData(i)));
+      }
+    }
+    iterator.close();
+    Assert.assertEquals("[1, 3, 5, 6, 7]", keys.toString());
+    Assert.assertEquals("[a1, a3, a5, a6, a7]", values.toString());
+  }
+
+  private static CarbonColumnarBatch createBatch(int batchSize) {
+    CarbonColumnVector[] vectors = new CarbonColumnVector[SCHEMA.length];
+    for (int i = 0; i < SCHEMA.length; i++) {
+      vectors[i] = new CarbonColumnVectorImpl(batchSize, SCHEMA[i]);
+    }
+    return new CarbonColumnarBatch(vectors, batchSize, new boolean[batchSize]);
+  }
+
+  /**
+   * Returns the rows of a block in batches of the given size
+   */
+  private static class ArrayBatchIterator implements CarbonBatchIterator {
+
+    private Object[][] rows;
+
+    private int rowsPerBatch;
+
+    private int position;
+
+    ArrayBatchIterator(Object[][] rows, int rowsPerBatch) {
+      this.rows = rows;
+      this.rowsPerBatch = rowsPerBatch;
+    }
+
+    @Override public boolean hasNext() {
+      return position < rows.length;
+    }
+
+    @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+      int rowCount = Math.min(rowsPerBatch, rows.length - position);
+      for (int i = 0; i < rowCount; i++) {
+        Object[] row = rows[position++];
+        for (int j = 0; j < row.length; j++) {
+          CarbonStreamRecordReader.putRowToColumnBatch(i, row[j], columnarBatch.columnVectors[j]);
+        }
+      }
+      columnarBatch.setActualSize(rowCount);
+    }
+
+    @Override public void close() {
+
+    }
+  }
+}
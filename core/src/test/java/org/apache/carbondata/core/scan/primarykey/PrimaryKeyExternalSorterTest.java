@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.util.CarbonUtil;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrimaryKeyExternalSorterTest {
+
+  private static final PrimaryKeyRowComparator KEY_COMPARATOR =
+      new PrimaryKeyRowComparator(new DataType[] { DataTypes.LONG }, new int[] { 0 });
+
+  private File tempLocation;
+
+  @Before public void setUp() {
+    tempLocation = new File(System.getProperty("java.io.tmpdir"),
+        "pk_sorter_test_" + System.nanoTime());
+    Assert.assertTrue(tempLocation.mkdirs());
+  }
+
+  @After public void tearDown() throws Exception {
+    CarbonUtil.deleteFoldersAndFiles(tempLocation);
+  }
+
+  @Test public void testInMemorySort() throws IOException {
+    assertSorted(100, 1000);
+  }
+
+  @Test public void testSpilledRunsAreMerged() throws IOException {
+    assertSorted(1000, 64);
+  }
+
+  @Test public void testSpilledValuesAreRestored() throws IOException {
+    PrimaryKeyExternalSorter sorter = createSorter(1);
+    Object[] row = new Object[] { 1L, "name".getBytes(), null, 10, new BigDecimal("12.345"),
+        1.5d, "value", true };
+    sorter.addRow(row);
+    sorter.addRow(new Object[] { 0L, null, null, null, null, null, null, null });
+    Iterator<Object[]> iterator = sorter.sort();
+    Assert.assertEquals(0L, iterator.next()[0]);
+    Object[] restored = iterator.next();
+    Assert.assertFalse(iterator.hasNext());
+    Assert.assertEquals(1L, restored[0]);
+    Assert.assertArrayEquals((byte[]) row[1], (byte[]) restored[1]);
+    Assert.assertNull(restored[2]);
+    for (int i = 3; i < row.length; i++) {
+      Assert.assertEquals(row[i], restored[i]);
+    }
+    sorter.close();
+  }
+
+  @Test public void testRunsAreSpilledToTempLocationAndDeletedOnClose() throws IOException {
+    PrimaryKeyExternalSorter sorter = createSorter(2);
+    for (long i = 0; i < 5; i++) {
+      sorter.addRow(new Object[] { 5 - i });
+    }
+    File runDirectory = sorter.getRunDirectory();
+    Assert.assertNotNull(runDirectory);
+    Assert.assertEquals(tempLocation.getCanonicalFile(),
+        runDirectory.getParentFile().getCanonicalFile());
+    Iterator<Object[]> iterator = sorter.sort();
+    Assert.assertEquals(3, runDirectory.listFiles().length);
+    Assert.assertEquals(1L, iterator.next()[0]);
+    // closed before the runs are read till the end
+    sorter.close();
+    Assert.assertFalse(runDirectory.exists());
+    Assert.assertEquals(0, tempLocation.listFiles().length);
+  }
+
+  @Test public void testInMemorySortDoesNotSpill() throws IOException {
+    PrimaryKeyExternalSorter sorter = createSorter(10);
+    sorter.addRow(new Object[] { 2L });
+    sorter.addRow(new Object[] { 1L });
+    Assert.assertEquals(1L, sorter.sort().next()[0]);
+    Assert.assertNull(sorter.getRunDirectory());
+    sorter.close();
+    Assert.assertEquals(0, tempLocation.listFiles().length);
+  }
+
+  private PrimaryKeyExternalSorter createSorter(int inMemoryRowLimit) {
+    return new PrimaryKeyExternalSorter(KEY_COMPARATOR, inMemoryRowLimit,
+        new String[] { tempLocation.getAbsolutePath() });
+  }
+
+  private void assertSorted(int rows, int inMemoryRowLimit) throws IOException {
+    PrimaryKeyExternalSorter sorter = createSorter(inMemoryRowLimit);
+    Random random = new Random(7);
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < rows; i++) {
+      long key = random.nextInt(rows / 2);
+      max = Math.max(max, key);
+      sorter.addRow(new Object[] { key, (long) i });
+    }
+    Iterator<Object[]> iterator = sorter.sort();
+    Assert.assertEquals(rows, sorter.getRowCount());
+    Assert.assertEquals(max, sorter.getMaxRow()[0]);
+    long previous = Long.MIN_VALUE;
+    int count = 0;
+    while (iterator.hasNext()) {
+      long key = (Long) iterator.next()[0];
+      Assert.assertTrue(key >= previous);
+      previous = key;
+      count++;
+    }
+    Assert.assertEquals(rows, count);
+    sorter.close();
+  }
+}
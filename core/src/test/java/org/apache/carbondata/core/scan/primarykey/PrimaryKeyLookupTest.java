@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.scan.expression.ColumnExpression;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.expression.conditional.InExpression;
+import org.apache.carbondata.core.scan.expression.logical.AndExpression;
+import org.apache.carbondata.core.scan.filter.intf.RowImpl;
+
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimaryKeyLookupTest {
+
+  @Test public void testSingleColumnKeyIsInFilter() throws Exception {
+    mockPrimaryKeyColumns(createColumn("id", DataTypes.INT, 0));
+    Expression filter = PrimaryKeyLookup.createFilterExpression(null,
+        Arrays.asList(new Object[] { 1 }, new Object[] { 3 }, new Object[] { 1 }));
+    Assert.assertTrue(filter instanceof InExpression);
+    Assert.assertTrue(matches(filter, 1));
+    Assert.assertTrue(matches(filter, 3));
+    Assert.assertFalse(matches(filter, 2));
+  }
+
+  @Test public void testMultiColumnKeyMatchesOnlyLookedUpTuples() throws Exception {
+    mockPrimaryKeyColumns(createColumn("id", DataTypes.INT, 0),
+        createColumn("name", DataTypes.STRING, 1));
+    Expression filter = PrimaryKeyLookup.createFilterExpression(null,
+        Arrays.asList(new Object[] { 1, "a" }, new Object[] { 2, "b" },
+            new Object[] { 1, "c" }));
+    Assert.assertTrue(matches(filter, 1, "a"));
+    Assert.assertTrue(matches(filter, 2, "b"));
+    Assert.assertTrue(matches(filter, 1, "c"));
+    // combinations of the values of different keys
+    Assert.assertFalse(matches(filter, 1, "b"));
+    Assert.assertFalse(matches(filter, 2, "a"));
+    Assert.assertFalse(matches(filter, 2, "c"));
+    Assert.assertFalse(matches(filter, 3, "a"));
+  }
+
+  @Test public void testLeadingKeyColumnIsFilteredFirst() throws Exception {
+    mockPrimaryKeyColumns(createColumn("id", DataTypes.INT, 0),
+        createColumn("name", DataTypes.STRING, 1));
+    List<Object[]> keys = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      keys.add(new Object[] { i % 10, "v" + i });
+    }
+    Expression filter = PrimaryKeyLookup.createFilterExpression(null, keys);
+    // one IN of the leading values prunes, one row level filter matches the whole keys
+    Assert.assertTrue(filter instanceof AndExpression);
+    Expression leadingFilter = ((AndExpression) filter).getLeft();
+    Assert.assertTrue(leadingFilter instanceof InExpression);
+    Assert.assertEquals("id",
+        ((ColumnExpression) leadingFilter.getChildren().get(0)).getColumnName());
+    Assert.assertEquals(10, leadingFilter.getChildren().get(1).getChildren().size());
+    Assert.assertTrue(((AndExpression) filter).getRight() instanceof PrimaryKeyInExpression);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertTrue(matches(filter, i % 10, "v" + i));
+      Assert.assertFalse(matches(filter, i % 10, "v" + (i + 1)));
+    }
+  }
+
+  @Test public void testNullKeyValueDoesNotMatch() throws Exception {
+    mockPrimaryKeyColumns(createColumn("id", DataTypes.LONG, 0),
+        createColumn("name", DataTypes.STRING, 1));
+    Expression filter = PrimaryKeyLookup.createFilterExpression(null,
+        Arrays.asList(new Object[] { 1L, "a" }, new Object[] { 2L, "b" }));
+    Assert.assertTrue(matches(filter, 1L, "a"));
+    Assert.assertTrue(matches(filter, 2L, "b"));
+    Assert.assertFalse(matches(filter, 1L, null));
+    Assert.assertFalse(matches(filter, null, "a"));
+  }
+
+  private static boolean matches(Expression filter, Object... row) throws Exception {
+    setColumnIndexes(filter);
+    RowImpl value = new RowImpl();
+    value.setValues(row);
+    return filter.evaluate(value).getBoolean();
+  }
+
+  private static void setColumnIndexes(Expression expression) {
+    if (expression instanceof ColumnExpression) {
+      ColumnExpression column = (ColumnExpression) expression;
+      column.setColIndex("id".equals(column.getColumnName()) ? 0 : 1);
+      return;
+    }
+    for (Expression child : expression.getChildren()) {
+      setColumnIndexes(child);
+    }
+  }
+
+  private static void mockPrimaryKeyColumns(final CarbonColumn... columns) {
+    new MockUp<PrimaryKeyLookup>() {
+      @Mock public List<CarbonColumn> getPrimaryKeyColumns(CarbonTable carbonTable) {
+        return Arrays.asList(columns);
+      }
+    };
+  }
+
+  private static CarbonColumn createColumn(String name, DataType dataType, int ordinal) {
+    ColumnSchema columnSchema = new ColumnSchema();
+    columnSchema.setColumnName(name);
+    columnSchema.setColumnUniqueId(name);
+    columnSchema.setDataType(dataType);
+    columnSchema.setDimensionColumn(true);
+    return new CarbonDimension(columnSchema, ordinal, -1, -1);
+  }
+}
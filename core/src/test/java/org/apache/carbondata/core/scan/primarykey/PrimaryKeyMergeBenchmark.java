@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.AbstractQueue;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+
+/**
+ * Benchmark of the queue used by the primary key merge, PriorityQueue against LoserTreeQueue.
+ * It runs the poll, add and peek pattern of the merge over long keys held in column vectors and
+ * prints the comparisons per row and the rows per second for 8, 64 and 512 inputs. Keys are
+ * either randomly interleaved between the inputs or assigned to them in runs, like the blocks of
+ * a compacted segment.
+ *
+ * Run it as a java application from the test classpath.
+ */
+public class PrimaryKeyMergeBenchmark {
+
+  private static final int TOTAL_ROWS = 4 * 1000 * 1000;
+
+  private static final int BATCH_SIZE = 4 * 1024;
+
+  private static final int[] INPUTS = new int[] { 8, 64, 512 };
+
+  private static final int[] RUN_LENGTHS = new int[] { 1, 1000 };
+
+  public static void main(String[] args) {
+    for (int inputs : INPUTS) {
+      for (int runLength : RUN_LENGTHS) {
+        long[][] keys = generateKeys(inputs, runLength);
+        // first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+          boolean print = round == 1;
+          run("PriorityQueue", inputs, runLength, keys, false, print);
+          run("LoserTreeQueue", inputs, runLength, keys, true, print);
+        }
+      }
+    }
+  }
+
+  private static void run(String name, int inputs, int runLength, long[][] keys,
+      boolean loserTree, boolean print) {
+    CountingComparator comparator = new CountingComparator();
+    AbstractQueue<IteratorHolder> queue;
+    if (loserTree) {
+      queue = new LoserTreeQueue(comparator);
+    } else {
+      queue = new PriorityQueue<>(inputs, comparator);
+    }
+    for (long[] inputKeys : keys) {
+      IteratorVectorHolder holder = new IteratorVectorHolder(comparator,
+          new LongBatchIterator(inputKeys), createBatch(), null);
+      if (holder.hasNext()) {
+        holder.read();
+        queue.add(holder);
+      }
+    }
+    comparator.count = 0;
+    long rows = 0;
+    long start = System.nanoTime();
+    IteratorVectorHolder holder;
+    while ((holder = (IteratorVectorHolder) queue.poll()) != null) {
+      rows++;
+      CarbonColumnarBatch batch = holder.getColumnarBatch();
+      int rowId = holder.getCurrentRowId();
+      boolean lastRowInBatch = holder.isLastRowInBatch();
+      if (holder.hasNext()) {
+        holder.read();
+        queue.add(holder);
+      }
+      // the merge checks whether the next row has the same key
+      IteratorHolder next = queue.peek();
+      if (next != null && !lastRowInBatch) {
+        comparator.compare(batch, rowId, next);
+      }
+    }
+    long time = System.nanoTime() - start;
+    if (print) {
+      System.out.println(String.format(
+          "%-15s inputs %4d run length %5d : %6.2f comparisons/row %,14d rows/sec", name, inputs,
+          runLength, (double) comparator.count / rows, rows * 1000L * 1000L * 1000L / time));
+    }
+  }
+
+  private static long[][] generateKeys(int inputs, int runLength) {
+    Random random = new Random(inputs * 31 + runLength);
+    int[] counts = new int[inputs];
+    int[] owner = new int[TOTAL_ROWS / runLength];
+    for (int i = 0; i < owner.length; i++) {
+      owner[i] = random.nextInt(inputs);
+      counts[owner[i]] += runLength;
+    }
+    long[][] keys = new long[inputs][];
+    for (int i = 0; i < inputs; i++) {
+      keys[i] = new long[counts[i]];
+      counts[i] = 0;
+    }
+    for (int i = 0; i < owner.length; i++) {
+      for (int j = 0; j < runLength; j++) {
+        keys[owner[i]][counts[owner[i]]++] = (long) i * runLength + j;
+      }
+    }
+    return keys;
+  }
+
+  private static CarbonColumnarBatch createBatch() {
+    CarbonColumnVector[] vectors =
+        new CarbonColumnVector[] { new CarbonColumnVectorImpl(BATCH_SIZE, DataTypes.LONG) };
+    return new CarbonColumnarBatch(vectors, BATCH_SIZE, new boolean[BATCH_SIZE]);
+  }
+
+  private static class CountingComparator extends PrimaryKeyVectorComparator {
+
+    private long count;
+
+    CountingComparator() {
+      super(new DataType[] { DataTypes.LONG }, new int[] { 0 });
+    }
+
+    @Override public int compare(IteratorHolder o1, IteratorHolder o2) {
+      count++;
+      return super.compare(o1, o2);
+    }
+
+    @Override public int compare(CarbonColumnarBatch batch, int rowId, IteratorHolder holder) {
+      count++;
+      return super.compare(batch, rowId, holder);
+    }
+  }
+
+  private static class LongBatchIterator implements CarbonBatchIterator {
+
+    private long[] keys;
+
+    private int position;
+
+    LongBatchIterator(long[] keys) {
+      this.keys = keys;
+    }
+
+    @Override public boolean hasNext() {
+      return position < keys.length;
+    }
+
+    @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+      int rows = Math.min(BATCH_SIZE, keys.length - position);
+      CarbonColumnVector vector = columnarBatch.columnVectors[0];
+      for (int i = 0; i < rows; i++) {
+        vector.putLong(i, keys[position++]);
+      }
+      columnarBatch.setRowCounter(rows);
+    }
+
+    @Override public void close() {
+
+    }
+  }
+}
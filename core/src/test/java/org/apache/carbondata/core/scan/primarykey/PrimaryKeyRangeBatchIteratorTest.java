@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrimaryKeyRangeBatchIteratorTest {
+
+  private ExecutorService executorService;
+
+  @Before public void setUp() {
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @After public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test public void testRangesAreReturnedInOrder() {
+    List<Long> rows = read(3, new LongRangeIterator(0, 10, 4), new LongRangeIterator(10, 11, 4),
+        new LongRangeIterator(11, 11, 4), new LongRangeIterator(11, 25, 5));
+    Assert.assertEquals(25, rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      Assert.assertEquals(Long.valueOf(i), rows.get(i));
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testFailureOfRangeIsThrown() {
+    read(4, new LongRangeIterator(0, 10, 4), new LongRangeIterator(10, 20, 4) {
+      @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+        throw new IllegalStateException("merge failed");
+      }
+    });
+  }
+
+  @Test public void testCloseInMiddleOfReadStopsRanges() throws InterruptedException {
+    final AtomicInteger activeMerges = new AtomicInteger();
+    final AtomicInteger closedRanges = new AtomicInteger();
+    List<CarbonBatchIterator> rangeIterators = new ArrayList<>();
+    List<CarbonColumnarBatch[]> rangeBatches = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      rangeIterators.add(new LongRangeIterator(0, Long.MAX_VALUE, 4) {
+        @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+          activeMerges.incrementAndGet();
+          try {
+            // a merge which does not react to the interrupt
+            long end = System.currentTimeMillis() + 20;
+            while (System.currentTimeMillis() < end) {
+              Thread.yield();
+            }
+            super.processNextBatch(columnarBatch);
+          } finally {
+            activeMerges.decrementAndGet();
+          }
+        }
+
+        @Override public void close() {
+          closedRanges.incrementAndGet();
+        }
+      });
+      rangeBatches.add(new CarbonColumnarBatch[] { createBatch(5), createBatch(5) });
+    }
+    PrimaryKeyRangeBatchIterator iterator =
+        new PrimaryKeyRangeBatchIterator(rangeIterators, rangeBatches, executorService);
+    CarbonColumnarBatch output = createBatch(4);
+    Assert.assertTrue(iterator.hasNext());
+    iterator.processNextBatch(output);
+    Assert.assertEquals(4, output.getActualSize());
+
+    iterator.close();
+    Assert.assertEquals(0, activeMerges.get());
+    Assert.assertEquals(3, closedRanges.get());
+    // no merge runs after close returned
+    Thread.sleep(50);
+    Assert.assertEquals(0, activeMerges.get());
+    iterator.close();
+    Assert.assertEquals(3, closedRanges.get());
+  }
+
+  private List<Long> read(int batchSize, CarbonBatchIterator... ranges) {
+    List<CarbonBatchIterator> rangeIterators = new ArrayList<>();
+    List<CarbonColumnarBatch[]> rangeBatches = new ArrayList<>();
+    for (CarbonBatchIterator range : ranges) {
+      rangeIterators.add(range);
+      rangeBatches.add(new CarbonColumnarBatch[] { createBatch(5), createBatch(5) });
+    }
+    PrimaryKeyRangeBatchIterator iterator =
+        new PrimaryKeyRangeBatchIterator(rangeIterators, rangeBatches, executorService);
+    List<Long> rows = new ArrayList<>();
+    CarbonColumnarBatch output = createBatch(batchSize);
+    try {
+      while (iterator.hasNext()) {
+        output.reset();
+        iterator.processNextBatch(output);
+        for (int i = 0; i < output.getActualSize(); i++) {
+          rows.add((Long) output.columnVectors[0].getData(i));
+        }
+      }
+    } finally {
+      iterator.close();
+    }
+    return rows;
+  }
+
+  private static CarbonColumnarBatch createBatch(int batchSize) {
+    CarbonColumnVector[] vectors =
+        new CarbonColumnVector[] { new CarbonColumnVectorImpl(batchSize, DataTypes.LONG) };
+    return new CarbonColumnarBatch(vectors, batchSize, new boolean[batchSize]);
+  }
+
+  private static class LongRangeIterator implements CarbonBatchIterator {
+
+    private long next;
+
+    private long end;
+
+    private int rowsPerBatch;
+
+    LongRangeIterator(long start, long end, int rowsPerBatch) {
+      this.next = start;
+      this.end = end;
+      this.rowsPerBatch = rowsPerBatch;
+    }
+
+    @Override public boolean hasNext() {
+      return next < end;
+    }
+
+    @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+      int i = 0;
+      while (i < rowsPerBatch && next < end) {
+        columnarBatch.columnVectors[0].putLong(i++, next++);
+      }
+      columnarBatch.setActualSize(i);
+    }
+
+    @Override public void close() {
+
+    }
+  }
+}
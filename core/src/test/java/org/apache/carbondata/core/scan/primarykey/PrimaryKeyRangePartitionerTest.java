@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimaryKeyRangePartitionerTest {
+
+  private static final PrimaryKeyRowComparator KEY_COMPARATOR =
+      new PrimaryKeyRowComparator(new DataType[] { DataTypes.INT }, new int[] { 0 });
+
+  @Test public void testOverlappingRangesAreInSamePartition() {
+    List<List<Integer>> partitions = partition(10,
+        new Integer[][] { { 50, 60 }, { 1, 10 }, { 5, 20 }, { 20, 30 }, { 31, 40 } },
+        new long[] { 1, 1, 1, 1, 1 });
+    Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4),
+        Arrays.asList(0)), partitions);
+  }
+
+  @Test public void testUnknownRangeGivesSinglePartition() {
+    List<List<Integer>> partitions = partition(10,
+        new Integer[][] { { 1, 10 }, null, { 20, 30 } }, new long[] { 1, 1, 1 });
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1, 2)), partitions);
+  }
+
+  @Test public void testRangesAreCombinedOnRowCount() {
+    List<List<Integer>> partitions = partition(2,
+        new Integer[][] { { 1, 10 }, { 11, 20 }, { 21, 30 }, { 31, 40 } },
+        new long[] { 100, 10, 10, 100 });
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3)), partitions);
+    partitions = partition(3,
+        new Integer[][] { { 1, 10 }, { 11, 20 }, { 21, 30 }, { 31, 40 }, { 41, 50 } },
+        new long[] { 10, 10, 10, 10, 10 });
+    Assert.assertEquals(3, partitions.size());
+    Assert.assertEquals(Arrays.asList(0, 1), partitions.get(0));
+    Assert.assertEquals(Arrays.asList(2, 3), partitions.get(1));
+    Assert.assertEquals(Arrays.asList(4), partitions.get(2));
+  }
+
+  @Test public void testGroupsAreCombinedInKeyOrder() {
+    List<List<Integer>> groups = Arrays.asList(Arrays.asList(2), Arrays.asList(0, 3),
+        Arrays.asList(1));
+    List<List<List<Integer>>> partitions =
+        PrimaryKeyRangePartitioner.combine(groups, new long[] { 5, 10, 10, 5 }, 2);
+    Assert.assertEquals(2, partitions.size());
+    Assert.assertEquals(Arrays.asList(Arrays.asList(2), Arrays.asList(0, 3)), partitions.get(0));
+    Assert.assertEquals(Arrays.asList(Arrays.asList(1)), partitions.get(1));
+  }
+
+  private List<List<Integer>> partition(int maxPartitions, Integer[][] ranges, long[] rowCounts) {
+    Object[][] minKeys = new Object[ranges.length][];
+    Object[][] maxKeys = new Object[ranges.length][];
+    for (int i = 0; i < ranges.length; i++) {
+      if (ranges[i] != null) {
+        minKeys[i] = new Object[] { ranges[i][0] };
+        maxKeys[i] = new Object[] { ranges[i][1] };
+      }
+    }
+    return PrimaryKeyRangePartitioner
+        .partition(minKeys, maxKeys, rowCounts, KEY_COMPARATOR, maxPartitions);
+  }
+}
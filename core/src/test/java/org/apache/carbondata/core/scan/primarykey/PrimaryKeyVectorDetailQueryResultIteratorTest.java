@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.core.scan.primarykey;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+import org.apache.carbondata.core.scan.result.impl.CarbonStreamRecordReader;
+import org.apache.carbondata.core.scan.result.iterator.CarbonBatchIterator;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimaryKeyVectorDetailQueryResultIteratorTest {
+
+  private static final DataType[] SCHEMA =
+      new DataType[] { DataTypes.INT, DataTypes.LONG, DataTypes.LONG, DataTypes.STRING };
+
+  private static final DataType[] KEY_TYPES = new DataType[] { DataTypes.INT };
+
+  private static final int[] KEY_ORDINALS = new int[] { 0 };
+
+  @Test public void testSingleVersionRowsAreCopiedAndVersionsMerged() {
+    List<Object[]> rows = merge(10,
+        new Object[][] { { 1, 10L, 0L, "a1" }, { 3, 10L, 0L, "a3" }, { 5, 10L, 0L, "a5" } },
+        new Object[][] { { 2, 10L, 0L, "b2" }, { 3, 20L, 0L, "b3" }, { 6, 10L, 0L, "b6" } });
+    assertRows(rows, new Object[][] { { 1, "a1" }, { 2, "b2" }, { 3, "b3" }, { 5, "a5" },
+        { 6, "b6" } });
+  }
+
+  @Test public void testDeletedKeysAreSkipped() {
+    List<Object[]> rows = merge(10,
+        new Object[][] { { 1, 10L, 0L, "a1" }, { 3, 10L, 0L, "a3" } },
+        new Object[][] { { 3, 20L, 2L, null }, { 4, 10L, 0L, "b4" }, { 7, 20L, 2L, null } });
+    assertRows(rows, new Object[][] { { 1, "a1" }, { 4, "b4" } });
+  }
+
+  @Test public void testOutputSmallerThanInput() {
+    List<Object[]> rows = merge(2,
+        new Object[][] { { 1, 10L, 0L, "a1" }, { 2, 10L, 0L, "a2" }, { 4, 10L, 0L, "a4" } },
+        new Object[][] { { 2, 20L, 0L, "b2" }, { 3, 10L, 0L, "b3" }, { 5, 10L, 0L, "b5" } });
+    assertRows(rows, new Object[][] { { 1, "a1" }, { 2, "b2" }, { 3, "b3" }, { 4, "a4" },
+        { 5, "b5" } });
+  }
+
+  private List<Object[]> merge(int outputBatchSize, Object[][]... blocks) {
+    PrimaryKeyVectorComparator comparator =
+        new PrimaryKeyVectorComparator(KEY_TYPES, KEY_ORDINALS);
+    AbstractQueue<IteratorHolder> recordHolder = new LoserTreeQueue(comparator);
+    for (Object[][] block : blocks) {
+      IteratorVectorHolder holder = new IteratorVectorHolder(comparator,
+          new ArrayBatchIterator(block), createBatch(block.length), null);
+      if (holder.hasNext()) {
+        holder.read();
+        recordHolder.add(holder);
+      }
+    }
+    PrimaryKeyMerger merger =
+        new PrimaryKeyMerger(new PrimaryKeyRowComparator(KEY_TYPES, KEY_ORDINALS), 1, 2,
+            new int[] { 3 });
+    PrimaryKeyVectorDetailQueryResultIterator iterator =
+        new PrimaryKeyVectorDetailQueryResultIterator(recordHolder, SCHEMA.length, merger,
+            comparator);
+    CarbonColumnarBatch output = createBatch(outputBatchSize);
+    List<Object[]> result = new ArrayList<>();
+    while (iterator.hasNext()) {
+      output.reset();
+      iterator.processNextBatch(output);
+      for (int i = 0; i < output.getActualSize(); i++) {
+        Object value = output.columnVectors[3].getData(i);
+        result.add(new Object[] { output.columnVectors[0].getData(i),
+            value == null ? null : new String((byte[]) value) });
+      }
+    }
+    return result;
+  }
+
+  private void assertRows(List<Object[]> actual, Object[][] expected) {
+    Assert.assertEquals(expected.length, actual.size());
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertArrayEquals(expected[i], actual.get(i));
+    }
+  }
+
+  private static CarbonColumnarBatch createBatch(int batchSize) {
+    CarbonColumnVector[] vectors = new CarbonColumnVector[SCHEMA.length];
+    for (int i = 0; i < SCHEMA.length; i++) {
+      vectors[i] = new CarbonColumnVectorImpl(batchSize, SCHEMA[i]);
+    }
+    return new CarbonColumnarBatch(vectors, batchSize, new boolean[batchSize]);
+  }
+
+  /**
+   * Returns all the rows of a block in a single batch
+   */
+  private static class ArrayBatchIterator implements CarbonBatchIterator {
+
+    private Object[][] rows;
+
+    private boolean consumed;
+
+    ArrayBatchIterator(Object[][] rows) {
+      this.rows = rows;
+    }
+
+    @Override public boolean hasNext() {
+      return !consumed;
+    }
+
+    @Override public void processNextBatch(CarbonColumnarBatch columnarBatch) {
+      for (int i = 0; i < rows.length; i++) {
+        for (int j = 0; j < rows[i].length; j++) {
+          CarbonStreamRecordReader
+              .putRowToColumnBatch(i, rows[i][j], columnarBatch.columnVectors[j]);
+        }
+      }
+      columnarBatch.setRowCounter(rows.length);
+      consumed = true;
+    }
+
+    @Override public void close() {
+
+    }
+  }
+}
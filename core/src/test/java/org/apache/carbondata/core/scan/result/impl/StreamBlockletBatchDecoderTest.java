@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.core.scan.result.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import org.apache.carbondata.core.datastore.compression.CompressorFactory;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryGenerator;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonMeasure;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.scan.filter.GenericQueryType;
+import org.apache.carbondata.core.scan.filter.executer.FilterExecuter;
+import org.apache.carbondata.core.scan.filter.intf.RowImpl;
+import org.apache.carbondata.core.scan.filter.intf.RowIntf;
+import org.apache.carbondata.core.scan.processor.RawBlockletColumnChunks;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnVector;
+import org.apache.carbondata.core.scan.result.vector.CarbonColumnarBatch;
+import org.apache.carbondata.core.scan.result.vector.impl.CarbonColumnVectorImpl;
+import org.apache.carbondata.core.util.BitSetGroup;
+import org.apache.carbondata.core.util.CarbonUtil;
+import org.apache.carbondata.core.util.DataTypeConverterImpl;
+import org.apache.carbondata.format.BlockletHeader;
+import org.apache.carbondata.format.BlockletInfo;
+import org.apache.carbondata.format.MutationType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamBlockletBatchDecoderTest {
+
+  private static final byte[] SYNC_MARKER = "0123456789abcdef".getBytes();
+
+  // name string, age int, score double
+  private static final CarbonColumn[] STORAGE_COLUMNS = new CarbonColumn[] {
+      new CarbonDimension(createColumn("name", DataTypes.STRING, true), 0, -1, -1),
+      new CarbonMeasure(createColumn("age", DataTypes.INT, false), 0),
+      new CarbonMeasure(createColumn("score", DataTypes.DOUBLE, false), 1) };
+
+  private static final Object[][] ROWS = new Object[][] {
+      { "a", 1, 1.5d }, { null, 2, null }, { "c", 3, 3.5d }, { "d", null, 4.5d } };
+
+  @Test public void testDecodeWithoutFilter() throws Exception {
+    CarbonColumnarBatch batch = createBatch();
+    StreamBlockletReader input = createInput();
+    int rowNum = createDecoder(new boolean[] { true, false, true }, new boolean[3], null,
+        new RowImpl(), new Object[0]).decode(input, batch);
+
+    Assert.assertEquals(4, rowNum);
+    Assert.assertEquals(1.5d, batch.columnVectors[0].getData(0));
+    Assert.assertNull(batch.columnVectors[0].getData(1));
+    Assert.assertEquals("a", new String((byte[]) batch.columnVectors[1].getData(0)));
+    Assert.assertNull(batch.columnVectors[1].getData(1));
+    Assert.assertEquals("d", new String((byte[]) batch.columnVectors[1].getData(3)));
+  }
+
+  @Test public void testDecodeWithFilter() throws Exception {
+    CarbonColumnarBatch batch = createBatch();
+    StreamBlockletReader input = createInput();
+    Object[] filterValues = new Object[2];
+    RowIntf filterRow = new RowImpl();
+    filterRow.setValues(filterValues);
+    // age >= 2
+    FilterExecuter filter = new TestFilterExecuter() {
+      @Override public boolean applyFilter(RowIntf value, int dimOrdinalMax) {
+        Object age = value.getVal(1);
+        return age != null && (int) age >= 2;
+      }
+    };
+    int rowNum = createDecoder(new boolean[] { true, true, true },
+        new boolean[] { false, true, false }, filter, filterRow, filterValues)
+        .decode(input, batch);
+
+    Assert.assertEquals(2, rowNum);
+    Assert.assertNull(batch.columnVectors[0].getData(0));
+    Assert.assertNull(batch.columnVectors[1].getData(0));
+    Assert.assertEquals(3.5d, batch.columnVectors[0].getData(1));
+    Assert.assertEquals("c", new String((byte[]) batch.columnVectors[1].getData(1)));
+  }
+
+  private static StreamBlockletBatchDecoder createDecoder(boolean[] isRequired,
+      boolean[] isFilterRequired, FilterExecuter filter, RowIntf filterRow,
+      Object[] filterValues) {
+    // project score, name
+    return new StreamBlockletBatchDecoder(STORAGE_COLUMNS, new boolean[] { true },
+        new DirectDictionaryGenerator[3], new DataType[] { DataTypes.INT, DataTypes.DOUBLE }, 1,
+        new GenericQueryType[2], new DataTypeConverterImpl(), isRequired, isFilterRequired,
+        new boolean[] { true, false, true }, filter, filterRow, filterValues,
+        new int[] { 0, 1, 0 }, 1, new int[] { 1, 0, 0 });
+  }
+
+  private static CarbonColumnarBatch createBatch() {
+    CarbonColumnVector[] vectors = new CarbonColumnVector[] {
+        new CarbonColumnVectorImpl(ROWS.length, DataTypes.DOUBLE),
+        new CarbonColumnVectorImpl(ROWS.length, DataTypes.STRING) };
+    return new CarbonColumnarBatch(vectors, ROWS.length, new boolean[ROWS.length]);
+  }
+
+  /**
+   * stream of one blocklet with the rows, in the format of StreamBlockletWriter
+   */
+  private static StreamBlockletReader createInput() throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    DataOutputStream rows = new DataOutputStream(data);
+    for (Object[] row : ROWS) {
+      BitSet nullBitSet = new BitSet(row.length);
+      for (int i = 0; i < row.length; i++) {
+        if (row[i] == null) {
+          nullBitSet.set(i);
+        }
+      }
+      byte[] nullBytes = nullBitSet.toByteArray();
+      rows.writeShort(nullBytes.length);
+      rows.write(nullBytes);
+      if (row[0] != null) {
+        byte[] name = ((String) row[0]).getBytes();
+        rows.writeShort(name.length);
+        rows.write(name);
+      }
+      if (row[1] != null) {
+        rows.writeInt((int) row[1]);
+      }
+      if (row[2] != null) {
+        rows.writeDouble((double) row[2]);
+      }
+    }
+    rows.flush();
+    byte[] uncompressed = data.toByteArray();
+    byte[] compressed =
+        CompressorFactory.getInstance().getCompressor("snappy").compressByte(uncompressed);
+
+    BlockletHeader header = new BlockletHeader();
+    header.setBlocklet_length(uncompressed.length);
+    header.setMutation(MutationType.INSERT);
+    header.setBlocklet_info(new BlockletInfo(ROWS.length));
+    byte[] headerBytes = CarbonUtil.getByteArray(header);
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(file);
+    out.write(SYNC_MARKER);
+    out.writeInt(headerBytes.length);
+    out.write(headerBytes);
+    out.writeInt(compressed.length);
+    out.write(compressed);
+    out.flush();
+
+    StreamBlockletReader input = new StreamBlockletReader(SYNC_MARKER,
+        new ByteArrayInputStream(file.toByteArray()), file.size(), false, "snappy");
+    Assert.assertTrue(input.nextBlocklet());
+    input.readBlockletData(input.readBlockletHeader());
+    return input;
+  }
+
+  private static ColumnSchema createColumn(String name, DataType dataType, boolean dimension) {
+    ColumnSchema column = new ColumnSchema();
+    column.setColumnName(name);
+    column.setColumnUniqueId(name);
+    column.setDataType(dataType);
+    column.setDimensionColumn(dimension);
+    column.setEncodingList(new ArrayList<Encoding>());
+    return column;
+  }
+
+  private abstract static class TestFilterExecuter implements FilterExecuter {
+
+    @Override public BitSetGroup applyFilter(RawBlockletColumnChunks rawBlockletColumnChunks,
+        boolean useBitsetPipeLine) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public BitSet prunePages(RawBlockletColumnChunks rawBlockletColumnChunks) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public BitSet isScanRequired(byte[][] blockMaxValue, byte[][] blockMinValue,
+        boolean[] isMinMaxSet) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public void readColumnChunks(RawBlockletColumnChunks rawBlockletColumnChunks) {
+    }
+  }
+}
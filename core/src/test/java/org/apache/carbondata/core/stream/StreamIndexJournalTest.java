@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.core.stream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.carbondata.core.writer.CarbonIndexFileWriter;
+import org.apache.carbondata.format.BlockIndex;
+import org.apache.carbondata.format.BlockletIndex;
+import org.apache.carbondata.format.BlockletMinMaxIndex;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamIndexJournalTest {
+
+  private String indexPath;
+
+  @Before public void setUp() {
+    File dir = new File("./testStreamIndexJournal").getAbsoluteFile();
+    dir.mkdirs();
+    indexPath = new File(dir, "0-0-0.carbonindex").getAbsolutePath();
+  }
+
+  @After public void tearDown() {
+    new File(indexPath).delete();
+    new File(StreamIndexJournal.getJournalFilePath(indexPath)).delete();
+    new File(indexPath).getParentFile().delete();
+  }
+
+  @Test public void testJournalIsFoldedIntoIndex() throws IOException {
+    writeIndex(createBlockIndex("part-0", 0, 100, 10, 1));
+    StreamIndexJournal journal = new StreamIndexJournal(indexPath);
+    journal.append(createBlockIndex("part-0", 100, 250, 20, 2));
+    journal.append(createBlockIndex("part-0", 250, 300, 5, 3));
+    journal.close();
+
+    List<BlockIndex> blockIndexes = StreamIndexJournal.readIndex(indexPath);
+    Assert.assertEquals(1, blockIndexes.size());
+    BlockIndex blockIndex = blockIndexes.get(0);
+    Assert.assertEquals(300, blockIndex.getFile_size());
+    Assert.assertEquals(35, blockIndex.getNum_rows());
+    Assert.assertEquals(3, blockIndex.getBlocklet_min_max_index().size());
+    Assert.assertEquals(Arrays.asList(0L, 100L, 250L), blockIndex.getBlocklet_offsets());
+    Assert.assertEquals(3,
+        blockIndex.getBlock_index().getMin_max_index().getMax_values().get(0).get(0));
+  }
+
+  @Test public void testRecordsInIndexAreSkipped() throws IOException {
+    StreamIndexJournal journal = new StreamIndexJournal(indexPath);
+    journal.append(createBlockIndex("part-0", 100, 250, 20, 2));
+    journal.append(createBlockIndex("part-0", 250, 300, 5, 3));
+    journal.close();
+    // checkpoint of the journal which failed to delete it
+    BlockIndex checkpoint = createBlockIndex("part-0", 0, 250, 30, 2);
+    checkpoint.getBlocklet_min_max_index().add(createMinMax(2));
+    checkpoint.getBlocklet_offsets().add(100L);
+    writeIndex(checkpoint);
+
+    BlockIndex blockIndex = StreamIndexJournal.readIndex(indexPath).get(0);
+    Assert.assertEquals(300, blockIndex.getFile_size());
+    Assert.assertEquals(35, blockIndex.getNum_rows());
+    Assert.assertEquals(3, blockIndex.getBlocklet_min_max_index().size());
+    Assert.assertEquals(Arrays.asList(0L, 100L, 250L), blockIndex.getBlocklet_offsets());
+
+    journal.delete();
+    Assert.assertFalse(new File(StreamIndexJournal.getJournalFilePath(indexPath)).exists());
+    Assert.assertEquals(250, StreamIndexJournal.readIndex(indexPath).get(0).getFile_size());
+  }
+
+  @Test public void testIncompleteRecordIsIgnored() throws IOException {
+    writeIndex(createBlockIndex("part-0", 0, 100, 10, 1));
+    StreamIndexJournal journal = new StreamIndexJournal(indexPath);
+    journal.append(createBlockIndex("part-0", 100, 250, 20, 2));
+    journal.close();
+    FileOutputStream stream =
+        new FileOutputStream(StreamIndexJournal.getJournalFilePath(indexPath), true);
+    stream.write(new byte[] { 0x18, 0x06, 'p', 'a' });
+    stream.close();
+
+    BlockIndex blockIndex = StreamIndexJournal.readIndex(indexPath).get(0);
+    Assert.assertEquals(250, blockIndex.getFile_size());
+    Assert.assertEquals(30, blockIndex.getNum_rows());
+  }
+
+  private void writeIndex(BlockIndex blockIndex) throws IOException {
+    new File(indexPath).delete();
+    CarbonIndexFileWriter writer = new CarbonIndexFileWriter();
+    writer.openThriftWriter(indexPath);
+    writer.writeThrift(blockIndex);
+    writer.close();
+  }
+
+  private static BlockIndex createBlockIndex(String fileName, long offset, long fileSize,
+      long rows, int max) {
+    BlockIndex blockIndex = new BlockIndex();
+    blockIndex.setFile_name(fileName);
+    blockIndex.setOffset(offset);
+    blockIndex.setFile_size(fileSize);
+    blockIndex.setNum_rows(rows);
+    BlockletIndex blockletIndex = new BlockletIndex();
+    blockletIndex.setMin_max_index(createMinMax(max));
+    blockIndex.setBlock_index(blockletIndex);
+    List<BlockletMinMaxIndex> blockletMinMaxIndexes = new ArrayList<>();
+    blockletMinMaxIndexes.add(createMinMax(max));
+    blockIndex.setBlocklet_min_max_index(blockletMinMaxIndexes);
+    List<Long> blockletOffsets = new ArrayList<>();
+    blockletOffsets.add(offset);
+    blockIndex.setBlocklet_offsets(blockletOffsets);
+    return blockIndex;
+  }
+
+  private static BlockletMinMaxIndex createMinMax(int max) {
+    List<ByteBuffer> minValues = new ArrayList<>();
+    minValues.add(ByteBuffer.wrap(new byte[] { 0 }));
+    List<ByteBuffer> maxValues = new ArrayList<>();
+    maxValues.add(ByteBuffer.wrap(new byte[] { (byte) max }));
+    return new BlockletMinMaxIndex(minValues, maxValues);
+  }
+}
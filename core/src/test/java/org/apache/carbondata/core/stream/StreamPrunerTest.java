@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.core.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.carbondata.core.datamap.Segment;
+import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
+import org.apache.carbondata.core.scan.filter.executer.FilterExecuter;
+import org.apache.carbondata.core.writer.CarbonIndexFileWriter;
+import org.apache.carbondata.format.BlockIndex;
+
+import mockit.Deencapsulation;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamPrunerTest {
+
+  private File dir;
+
+  private String indexPath;
+
+  @Before public void setUp() {
+    dir = new File("./testStreamPruner").getAbsoluteFile();
+    dir.mkdirs();
+    indexPath = new File(dir, "0-0-0.carbonindex").getAbsolutePath();
+  }
+
+  @After public void tearDown() {
+    new File(indexPath).delete();
+    new File(StreamIndexJournal.getJournalFilePath(indexPath)).delete();
+    dir.delete();
+  }
+
+  @Test public void testChangedIndexFileIsReadAgain() throws IOException {
+    writeIndex(createBlockIndex("part-0", 100, 10));
+    Assert.assertEquals(100, readFiles().get(0).getFileSize());
+    // cached files are copied for every reader
+    Assert.assertNotSame(readFiles().get(0), readFiles().get(0));
+    Assert.assertEquals(dir.getPath() + File.separator + "part-0",
+        readFiles().get(0).getFilePath());
+
+    // a longer name changes the size of the index file
+    writeIndex(createBlockIndex("part-00", 300, 30));
+    Assert.assertEquals(300, readFiles().get(0).getFileSize());
+  }
+
+  @Test public void testIndexFileWithJournalIsNotCached() throws IOException {
+    writeIndex(createBlockIndex("part-0", 100, 10));
+    Assert.assertEquals(100, readFiles().get(0).getFileSize());
+    StreamIndexJournal journal = new StreamIndexJournal(indexPath);
+    journal.append(createBlockIndex("part-0", 200, 10));
+    Assert.assertEquals(200, readFiles().get(0).getFileSize());
+    journal.append(createBlockIndex("part-0", 300, 10));
+    journal.close();
+    Assert.assertEquals(300, readFiles().get(0).getFileSize());
+  }
+
+  @Test public void testBlockletsArePrunedByMinMax() {
+    StreamPruner pruner = createPruner(5);
+    StreamFile streamFile =
+        createStreamFile(new int[][] { { 0, 3 }, { 4, 6 }, { 7, 9 }, { 5, 5 } });
+    Assert.assertTrue(pruner.pruneBlocklets(streamFile));
+    BitSet expected = new BitSet();
+    expected.set(1);
+    // the last blocklet is pruned as the others
+    expected.set(3);
+    Assert.assertEquals(expected, streamFile.getScanBlocklets());
+  }
+
+  @Test public void testFileWithAllBlockletsPrunedIsNotScanned() {
+    StreamFile streamFile = createStreamFile(new int[][] { { 0, 3 }, { 7, 9 } });
+    Assert.assertFalse(createPruner(5).pruneBlocklets(streamFile));
+  }
+
+  @Test public void testAllBlockletsScannedAreNotSet() {
+    StreamFile streamFile = createStreamFile(new int[][] { { 0, 5 }, { 5, 9 } });
+    Assert.assertTrue(createPruner(5).pruneBlocklets(streamFile));
+    Assert.assertNull(streamFile.getScanBlocklets());
+  }
+
+  @Test public void testFileWithoutBlockletIndexIsScanned() {
+    // a file of an old writer has no blocklet index
+    StreamFile streamFile = new StreamFile("0", "part-0", 100);
+    Assert.assertTrue(createPruner(5).pruneBlocklets(streamFile));
+    Assert.assertNull(streamFile.getScanBlocklets());
+  }
+
+  /**
+   * Returns a pruner of the filter on the value of a column of one byte
+   */
+  private static StreamPruner createPruner(final int value) {
+    FilterExecuter filterExecuter = new MockUp<FilterExecuter>() {
+      @Mock public BitSet isScanRequired(byte[][] blockMaxValue, byte[][] blockMinValue,
+          boolean[] isMinMaxSet) {
+        BitSet bitSet = new BitSet(1);
+        if (blockMinValue[0][0] <= value && value <= blockMaxValue[0][0]) {
+          bitSet.set(0);
+        }
+        return bitSet;
+      }
+    }.getMockInstance();
+    StreamPruner pruner = new StreamPruner(null);
+    Deencapsulation.setField(pruner, "filterExecuter", filterExecuter);
+    return pruner;
+  }
+
+  private static StreamFile createStreamFile(int[][] blockletMinMax) {
+    List<BlockletMinMaxIndex> minMaxIndexes = new ArrayList<>();
+    long[] offsets = new long[blockletMinMax.length];
+    for (int i = 0; i < blockletMinMax.length; i++) {
+      BlockletMinMaxIndex minMaxIndex = new BlockletMinMaxIndex();
+      minMaxIndex.setMinValues(new byte[][] { { (byte) blockletMinMax[i][0] } });
+      minMaxIndex.setMaxValues(new byte[][] { { (byte) blockletMinMax[i][1] } });
+      minMaxIndex.setIsMinMaxSet(new boolean[] { true });
+      minMaxIndexes.add(minMaxIndex);
+      offsets[i] = i * 100L;
+    }
+    StreamFile streamFile = new StreamFile("0", "part-0", blockletMinMax.length * 100L);
+    streamFile.setBlockletIndexes(minMaxIndexes, offsets);
+    return streamFile;
+  }
+
+  private List<StreamFile> readFiles() throws IOException {
+    List<StreamFile> streamFiles = new ArrayList<>();
+    StreamPruner.readIndexAndgetStreamFiles(true, streamFiles, Segment.toSegment("0"),
+        dir.getPath(), indexPath);
+    return streamFiles;
+  }
+
+  private void writeIndex(BlockIndex blockIndex) throws IOException {
+    new File(indexPath).delete();
+    CarbonIndexFileWriter writer = new CarbonIndexFileWriter();
+    writer.openThriftWriter(indexPath);
+    writer.writeThrift(blockIndex);
+    writer.close();
+  }
+
+  private static BlockIndex createBlockIndex(String fileName, long fileSize, long rows) {
+    BlockIndex blockIndex = new BlockIndex();
+    blockIndex.setFile_name(fileName);
+    blockIndex.setOffset(-1);
+    blockIndex.setFile_size(fileSize);
+    blockIndex.setNum_rows(rows);
+    return blockIndex;
+  }
+}
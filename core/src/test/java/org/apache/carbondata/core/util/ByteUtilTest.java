@@ -19,6 +19,7 @@ package org.apache.carbondata.core.util;
 import junit.framework.TestCase;
 
 import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.memory.CarbonUnsafe;
 import org.apache.carbondata.core.util.ByteUtil.UnsafeComparer;
 
 import org.junit.Before;
@@ -114,6 +115,23 @@ public class ByteUtilTest extends TestCase {
     assertFalse(UnsafeComparer.INSTANCE.compareTo(buff1, buff2) < 0);
   }
 
+  @Test
+  public void testCompareInUnsafeMemory() {
+    byte[] data = "xaaaaaaaa1234aaaaa6aa1235aaaaaaaa12341".getBytes();
+    long offset = CarbonUnsafe.BYTE_ARRAY_OFFSET;
+    assertEquals(0,
+        UnsafeComparer.INSTANCE.compareTo(data, offset + 1, 12, data, offset + 1, 12));
+    assertTrue(
+        UnsafeComparer.INSTANCE.compareTo(data, offset + 1, 12, data, offset + 13, 12) > 0);
+    assertTrue(
+        UnsafeComparer.INSTANCE.compareTo(data, offset + 13, 12, data, offset + 1, 12) < 0);
+    assertTrue(
+        UnsafeComparer.INSTANCE.compareTo(data, offset + 1, 12, data, offset + 25, 13) < 0);
+    byte[] high = new byte[] { 'a', (byte) 0xFF };
+    assertTrue(
+        UnsafeComparer.INSTANCE.compareTo(data, offset + 1, 2, high, offset, 2) < 0);
+  }
+
   @Test
   public void testIntConversion() {
     byte[] data = new byte[4];
@@ -45,4 +45,6 @@ struct BlockIndex{
   4: required carbondata.BlockletIndex block_index;	// Blocklet index
   5: optional carbondata.BlockletInfo3 blocklet_info;
   6: optional i64 file_size // Record the valid size for appendable carbon file
+  8: optional list<carbondata.BlockletMinMaxIndex> blocklet_min_max_index; // Min/max of every blocklet of the stream file, in file order
+  9: optional list<i64> blocklet_offsets; // Start offset of every blocklet of the stream file, in file order
 }
\ No newline at end of file
@@ -52,6 +52,7 @@ import org.apache.carbondata.core.scan.filter.FilterUtil;
 import org.apache.carbondata.core.scan.filter.resolver.FilterResolverIntf;
 import org.apache.carbondata.core.scan.model.QueryModel;
 import org.apache.carbondata.core.scan.model.QueryModelBuilder;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyAsOfFilter;
 import org.apache.carbondata.core.stats.QueryStatistic;
 import org.apache.carbondata.core.stats.QueryStatisticsConstants;
 import org.apache.carbondata.core.stats.QueryStatisticsRecorder;
@@ -118,6 +119,7 @@ public abstract class CarbonInputFormat<T> extends FileInputFormat<Void, T> {
   private static final String FGDATAMAP_PRUNING = "mapreduce.input.carboninputformat.fgdatamap";
   private static final String READ_COMMITTED_SCOPE =
       "mapreduce.input.carboninputformat.read.committed.scope";
+  private static final String AS_OF_TIMESTAMP = "mapreduce.input.carboninputformat.asoftimestamp";
 
   // record segment number and hit blocks
   protected int numSegments = 0;
@@ -209,6 +211,24 @@ m filterExpression
     }
   }
 
+  /**
+   * Set the version of the primary key table to read, the versions written after it are
+   * filtered out before the primary key merge
+   *
+   * @param configuration Configuration info
+   * @param asOfTimestamp latest version to read
+   */
+  public static void setAsOfTimestamp(Configuration configuration, long asOfTimestamp) {
+    configuration.setLong(AS_OF_TIMESTAMP, asOfTimestamp);
+  }
+
+  /**
+   * Get the version of the primary key table to read, 0 if the latest version is read
+   */
+  public static long getAsOfTimestamp(Configuration configuration) {
+    return configuration.getLong(AS_OF_TIMESTAMP, 0);
+  }
+
   /**
    * Set the column projection column names
    *
@@ -383,11 +403,17 @@ m filterExpression
   protected Expression getFilterPredicates(Configuration configuration) {
     try {
       String filterExprString = configuration.get(FILTER_PREDICATE);
-      if (filterExprString == null) {
-        return null;
+      Expression filter = null;
+      if (filterExprString != null) {
+        filter = (Expression) ObjectSerializationUtil.convertStringToObject(filterExprString);
+      }
+      long asOfTimestamp = getAsOfTimestamp(configuration);
+      if (asOfTimestamp > 0) {
+        // prunes the blocklets written after the version and filters out the newer versions
+        filter = PrimaryKeyAsOfFilter
+            .addTo(filter, getOrCreateCarbonTable(configuration), asOfTimestamp);
       }
-      Object filter = ObjectSerializationUtil.convertStringToObject(filterExprString);
-      return (Expression) filter;
+      return filter;
     } catch (IOException e) {
       throw new RuntimeException("Error while reading filter expression", e);
     }
@@ -52,6 +52,7 @@ import org.apache.carbondata.core.readcommitter.TableStatusReadCommittedScope;
 import org.apache.carbondata.core.scan.expression.Expression;
 import org.apache.carbondata.core.scan.filter.FilterExpressionProcessor;
 import org.apache.carbondata.core.scan.filter.resolver.FilterResolverIntf;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyLookup;
 import org.apache.carbondata.core.statusmanager.FileFormat;
 import org.apache.carbondata.core.statusmanager.LoadMetadataDetails;
 import org.apache.carbondata.core.statusmanager.SegmentStatusManager;
@@ -100,6 +101,21 @@ public class CarbonTableInputFormat<T> extends CarbonInputFormat<T> {
   private ReadCommittedScope readCommittedScope;
   private short[] primaryKeyColIndexes;
 
+  /**
+   * Sets the filter of a lookup of a batch of primary keys, it replaces the filter set by
+   * {@link #setFilterPredicates(Configuration, Expression)}. The blocklets are pruned on the
+   * primary key and only the versions of the looked up keys are merged.
+   *
+   * @param configuration configuration of the job
+   * @param carbonTable   primary key table
+   * @param primaryKeys   values of the primary key columns of every key
+   */
+  public static void setPrimaryKeyLookup(Configuration configuration, CarbonTable carbonTable,
+      List<Object[]> primaryKeys) {
+    setFilterPredicates(configuration,
+        PrimaryKeyLookup.createFilterExpression(carbonTable, primaryKeys));
+  }
+
   /**
    * Get the cached CarbonTable or create it by TableInfo in `configuration`
    */
@@ -385,30 +401,33 @@ public class CarbonTableInputFormat<T> extends CarbonInputFormat<T> {
           blkLocations = fs.getFileBlockLocations(path, 0, length);
           long blockSize = file.getBlockSize();
           long splitSize = computeSplitSize(blockSize, minSize, maxSize);
-          long bytesRemaining = length;
-          // split the stream file to small splits
-          // there is 10% slop to avoid to generate very small split in the end
-          while (((double) bytesRemaining) / splitSize > 1.1) {
-            int blkIndex = getBlockIndex(blkLocations, length - bytesRemaining);
-            RangeColumnSplitMerger merger =
-                new RangeColumnSplitMerger(primaryKeyColIndexes,
-                    streamFile.getMinMaxIndex().getMinValues(),
-                    streamFile.getMinMaxIndex().getMaxValues());
-            splits.add(
-                makeSplit(streamFile.getSegmentNo(), path, length - bytesRemaining,
-                    splitSize, blkLocations[blkIndex].getHosts(),
-                    blkLocations[blkIndex].getCachedHosts(), FileFormat.ROW_V1, merger));
-            bytesRemaining -= splitSize;
-          }
-          if (bytesRemaining != 0) {
-            RangeColumnSplitMerger merger =
-                new RangeColumnSplitMerger(primaryKeyColIndexes,
-                    streamFile.getMinMaxIndex().getMinValues(),
-                    streamFile.getMinMaxIndex().getMaxValues());
-            int blkIndex = getBlockIndex(blkLocations, length - bytesRemaining);
-            splits.add(makeSplit(streamFile.getSegmentNo(), path, length - bytesRemaining,
-                bytesRemaining, blkLocations[blkIndex].getHosts(),
-                blkLocations[blkIndex].getCachedHosts(), FileFormat.ROW_V1, merger));
+          for (long[] range : getScanRanges(streamFile, splitSize)) {
+            long end = range[1];
+            long bytesRemaining = end - range[0];
+            // split the stream file to small splits
+            // there is 10% slop to avoid to generate very small split in the end
+            while (((double) bytesRemaining) / splitSize > 1.1) {
+              int blkIndex = getBlockIndex(blkLocations, end - bytesRemaining);
+              RangeColumnSplitMerger merger =
+                  new RangeColumnSplitMerger(primaryKeyColIndexes,
+                      streamFile.getMinMaxIndex().getMinValues(),
+                      streamFile.getMinMaxIndex().getMaxValues());
+              splits.add(
+                  makeSplit(streamFile.getSegmentNo(), path, end - bytesRemaining,
+                      splitSize, blkLocations[blkIndex].getHosts(),
+                      blkLocations[blkIndex].getCachedHosts(), FileFormat.ROW_V1, merger));
+              bytesRemaining -= splitSize;
+            }
+            if (bytesRemaining != 0) {
+              RangeColumnSplitMerger merger =
+                  new RangeColumnSplitMerger(primaryKeyColIndexes,
+                      streamFile.getMinMaxIndex().getMinValues(),
+                      streamFile.getMinMaxIndex().getMaxValues());
+              int blkIndex = getBlockIndex(blkLocations, end - bytesRemaining);
+              splits.add(makeSplit(streamFile.getSegmentNo(), path, end - bytesRemaining,
+                  bytesRemaining, blkLocations[blkIndex].getHosts(),
+                  blkLocations[blkIndex].getCachedHosts(), FileFormat.ROW_V1, merger));
+            }
           }
         }
       }
@@ -416,6 +435,34 @@ public class CarbonTableInputFormat<T> extends CarbonInputFormat<T> {
     return splits;
   }
 
+  /**
+   * Returns the ranges of the stream file to scan, the whole file or the runs of the blocklets
+   * which pass the filter. The reader reads the blocklets starting in its split, so the pruned
+   * blocklets are not read at all. A gap of pruned blocklets shorter than a tenth of the split
+   * size is scanned, the reader skips the data of its blocklets by the min/max in their header.
+   */
+  static List<long[]> getScanRanges(StreamFile streamFile, long splitSize) {
+    List<long[]> ranges = new ArrayList<>();
+    BitSet scanBlocklets = streamFile.getScanBlocklets();
+    if (scanBlocklets == null) {
+      ranges.add(new long[] { 0, streamFile.getFileSize() });
+      return ranges;
+    }
+    long[] offsets = streamFile.getBlockletOffsets();
+    long[] range = null;
+    for (int i = scanBlocklets.nextSetBit(0); i >= 0; i = scanBlocklets.nextSetBit(i + 1)) {
+      long start = offsets[i];
+      long end = i + 1 < offsets.length ? offsets[i + 1] : streamFile.getFileSize();
+      if (range != null && start - range[1] < splitSize / 10) {
+        range[1] = end;
+      } else {
+        range = new long[] { start, end };
+        ranges.add(range);
+      }
+    }
+    return ranges;
+  }
+
   protected FileSplit makeSplit(String segmentId, Path file, long start, long length,
       String[] hosts, String[] inMemoryHosts, FileFormat fileFormat,
       RangeColumnSplitMerger merger) {
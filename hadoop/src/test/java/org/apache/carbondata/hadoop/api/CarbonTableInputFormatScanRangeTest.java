@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.hadoop.api;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
+import org.apache.carbondata.core.stream.StreamFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CarbonTableInputFormatScanRangeTest {
+
+  // four blocklets of 100 bytes
+  private static final long[] OFFSETS = new long[] { 0, 100, 200, 300 };
+
+  private static final long FILE_SIZE = 400;
+
+  @Test public void testWholeFileIsScannedWithoutPrunedBlocklets() {
+    StreamFile streamFile = createStreamFile();
+    assertRanges(CarbonTableInputFormat.getScanRanges(streamFile, 1000), 0, FILE_SIZE);
+  }
+
+  @Test public void testFileWithoutBlockletIndexIsScanned() {
+    // a file of an old writer has no blocklet index
+    StreamFile streamFile = new StreamFile("0", "part-0", FILE_SIZE);
+    assertRanges(CarbonTableInputFormat.getScanRanges(streamFile, 1000), 0, FILE_SIZE);
+  }
+
+  @Test public void testRangesStartAtBlockletOffsets() {
+    StreamFile streamFile = createStreamFile(1, 3);
+    // the gap of a blocklet is not less than a tenth of the split
+    assertRanges(CarbonTableInputFormat.getScanRanges(streamFile, 1000), 100, 200, 300,
+        FILE_SIZE);
+  }
+
+  @Test public void testShortGapIsScanned() {
+    StreamFile streamFile = createStreamFile(0, 2);
+    // the gap of a blocklet is less than a tenth of the split
+    assertRanges(CarbonTableInputFormat.getScanRanges(streamFile, 2000), 0, 300);
+  }
+
+  @Test public void testLastBlockletEndsAtFileSize() {
+    StreamFile streamFile = createStreamFile(3);
+    assertRanges(CarbonTableInputFormat.getScanRanges(streamFile, 1000), 300, FILE_SIZE);
+    streamFile = createStreamFile(2, 3);
+    assertRanges(CarbonTableInputFormat.getScanRanges(streamFile, 1000), 200, FILE_SIZE);
+  }
+
+  private static StreamFile createStreamFile(int... scanBlocklets) {
+    StreamFile streamFile = new StreamFile("0", "part-0", FILE_SIZE);
+    List<BlockletMinMaxIndex> minMaxIndexes = new ArrayList<>();
+    for (int i = 0; i < OFFSETS.length; i++) {
+      minMaxIndexes.add(new BlockletMinMaxIndex());
+    }
+    streamFile.setBlockletIndexes(minMaxIndexes, OFFSETS);
+    if (scanBlocklets.length > 0) {
+      BitSet bitSet = new BitSet(OFFSETS.length);
+      for (int blocklet : scanBlocklets) {
+        bitSet.set(blocklet);
+      }
+      streamFile.setScanBlocklets(bitSet);
+    }
+    return streamFile;
+  }
+
+  /**
+   * Asserts the ranges are the given start and end offsets
+   */
+  private static void assertRanges(List<long[]> ranges, long... startAndEnds) {
+    Assert.assertEquals(startAndEnds.length / 2, ranges.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      Assert.assertArrayEquals(new long[] { startAndEnds[2 * i], startAndEnds[2 * i + 1] },
+          ranges.get(i));
+    }
+  }
+}
@@ -77,6 +77,8 @@ class CarbonMergerRDD[K, V](
   val databaseName = carbonMergerMapping.databaseName
   val factTableName = carbonMergerMapping.factTableName
   val tableId = carbonMergerMapping.tableId
+  // whether a single task compacts every segment of the table, set while planning the partitions
+  var compactingAllSegments = false
 
   override def internalCompute(theSplit: Partition, context: TaskContext): Iterator[(K, V)] = {
     val queryStartTime = System.currentTimeMillis()
@@ -197,7 +199,10 @@ class CarbonMergerRDD[K, V](
         val tempStoreLoc = CarbonDataProcessorUtil.getLocalDataFolderLocation(
           carbonTable, carbonLoadModel.getTaskNo, mergeNumber, true, false)
 
-        if (carbonTable.getSortScope == SortScopeOptions.SortScope.NO_SORT ||
+        // versions of a primary key table are collapsed only when the rows are merged sorted
+        val collapseVersions =
+          PrimaryKeyCompactionFactHandler.isSupported(carbonTable, segmentProperties)
+        if ((carbonTable.getSortScope == SortScopeOptions.SortScope.NO_SORT && !collapseVersions) ||
           rawResultIteratorMap.get(CarbonCompactionUtil.UNSORTED_IDX).size() == 0) {
 
           LOGGER.info("RowResultMergerProcessor flow is selected")
@@ -223,6 +228,7 @@ class CarbonMergerRDD[K, V](
 
         }
 
+        processor.setCompactingAllSegments(compactingAllSegments)
         mergeStatus = processor.execute(
           rawResultIteratorMap.get(CarbonCompactionUtil.UNSORTED_IDX),
           rawResultIteratorMap.get(CarbonCompactionUtil.SORTED_IDX))
@@ -469,6 +475,11 @@ class CarbonMergerRDD[K, V](
       logInfo(s"Node: ${ multiBlockSplit.getLocations.mkString(",") }, No.Of Blocks: " +
               s"${ CarbonInputSplit.createBlocks(splitList).size }")
     }
+    // deleted keys of a primary key table can be dropped only when no other segment or task
+    // holds an older version of them
+    compactingAllSegments = result.size == 1 &&
+      PrimaryKeyCompactionFactHandler.isCompactingAllSegments(carbonTable,
+        carbonMergerMapping.validSegments.map(_.getSegmentNo).toSeq.asJava)
     result.toArray(new Array[Partition](result.size))
   }
 
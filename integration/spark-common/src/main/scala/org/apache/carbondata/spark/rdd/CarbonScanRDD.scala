@@ -429,6 +429,12 @@ class CarbonScanRDD[T: ClassTag](
     val taskId = split.index
     val attemptId = new TaskAttemptID(jobTrackerId, id, TaskType.MAP, split.index, 0)
     val attemptContext = new TaskAttemptContextImpl(FileFactory.getConfiguration, attemptId)
+    // the primary key read spills the sorted runs of the stream blocks to the local dirs
+    val localDirs = Util.getConfiguredLocalDirs(SparkEnv.get.conf)
+    if (null != localDirs && localDirs.nonEmpty) {
+      attemptContext.getConfiguration.setStrings(
+        CarbonCommonConstantsInternal.PRIMARY_KEY_SORT_TEMP_LOCATIONS, localDirs: _*)
+    }
     val format = prepareInputFormatForExecutor(attemptContext.getConfiguration)
     val inputSplit = split.asInstanceOf[CarbonSparkPartition].split.value
     TaskMetricsMap.getInstance().registerThreadCallback()
@@ -28,6 +28,7 @@ import org.apache.carbondata.core.memory.UnsafeSortMemoryManager;
 import org.apache.carbondata.core.util.ReUsableByteArrayDataOutputStream;
 import org.apache.carbondata.processing.loading.row.IntermediateSortTempRow;
 import org.apache.carbondata.processing.loading.sort.SortStepRowHandler;
+import org.apache.carbondata.processing.loading.sort.unsafe.comparator.UnsafeRowKeyPrefix;
 import org.apache.carbondata.processing.sort.sortdata.TableFieldStat;
 
 /**
@@ -49,13 +50,18 @@ public class UnsafeCarbonRowPage {
   private TableFieldStat tableFieldStat;
   private SortStepRowHandler sortStepRowHandler;
   private boolean convertNoSortFields;
+  // encodes the sort key prefix of the rows, only if sorted by no dictionary columns
+  private UnsafeRowKeyPrefix keyPrefix;
 
   public UnsafeCarbonRowPage(TableFieldStat tableFieldStat, MemoryBlock memoryBlock,
       String taskId) {
     this.tableFieldStat = tableFieldStat;
     this.sortStepRowHandler = new SortStepRowHandler(tableFieldStat);
     this.taskId = taskId;
-    buffer = new IntPointerBuffer(this.taskId);
+    if (tableFieldStat.getNoDictSortDimCnt() > 0) {
+      this.keyPrefix = new UnsafeRowKeyPrefix(tableFieldStat);
+    }
+    buffer = new IntPointerBuffer(this.taskId, keyPrefix != null);
     this.dataBlock = memoryBlock;
     // TODO Only using 98% of space for safe side.May be we can have different logic.
     sizeToBeUsed = dataBlock.size() - (dataBlock.size() * 5) / 100;
@@ -65,8 +71,13 @@ public class UnsafeCarbonRowPage {
   public int addRow(Object[] row,
       ReUsableByteArrayDataOutputStream reUsableByteArrayDataOutputStream)
       throws MemoryException, IOException {
-    int size = addRow(row, dataBlock.getBaseOffset() + lastSize, reUsableByteArrayDataOutputStream);
-    buffer.set(lastSize);
+    long address = dataBlock.getBaseOffset() + lastSize;
+    int size = addRow(row, address, reUsableByteArrayDataOutputStream);
+    if (keyPrefix != null) {
+      buffer.set(lastSize, keyPrefix.getPrefix(dataBlock.getBaseObject(), address));
+    } else {
+      buffer.set(lastSize);
+    }
     lastSize = lastSize + size;
     return size;
   }
@@ -143,6 +154,10 @@ public class UnsafeCarbonRowPage {
     return tableFieldStat;
   }
 
+  public UnsafeRowKeyPrefix getKeyPrefix() {
+    return keyPrefix;
+  }
+
   public void setNewDataBlock(MemoryBlock newMemoryBlock) {
     this.dataBlock = newMemoryBlock;
     this.managerType = MemoryManagerType.UNSAFE_SORT_MEMORY_MANAGER;
@@ -21,6 +21,7 @@ import java.util.Comparator;
 
 import org.apache.carbondata.core.memory.CarbonUnsafe;
 import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
 import org.apache.carbondata.core.util.ByteUtil.UnsafeComparer;
 import org.apache.carbondata.core.util.CarbonUnsafeUtil;
 import org.apache.carbondata.core.util.DataTypeUtil;
@@ -33,17 +34,32 @@ public class UnsafeRowComparator implements Comparator<UnsafeCarbonRow> {
   private Object baseObject;
   private TableFieldStat tableFieldStat;
   private int dictSizeInMemory;
+  // whether the rows being sorted carry the sort key prefix
+  private boolean usePrefix;
+  private boolean isCompletePrefix;
 
   public UnsafeRowComparator(UnsafeCarbonRowPage rowPage) {
     this.baseObject = rowPage.getDataBlock().getBaseObject();
     this.tableFieldStat = rowPage.getTableFieldStat();
     this.dictSizeInMemory = tableFieldStat.getDictSortDimCnt() * 4;
+    if (rowPage.getBuffer().hasPrefix()) {
+      this.usePrefix = true;
+      this.isCompletePrefix = rowPage.getKeyPrefix().isCompleteKey();
+    }
   }
 
   /**
    * Below method will be used to compare two mdkey
    */
   public int compare(UnsafeCarbonRow rowL, UnsafeCarbonRow rowR) {
+    if (usePrefix) {
+      if (rowL.prefix != rowR.prefix) {
+        return rowL.prefix < rowR.prefix ? -1 : 1;
+      }
+      if (isCompletePrefix) {
+        return 0;
+      }
+    }
     return compare(rowL, baseObject, rowR, baseObject);
   }
 
@@ -70,45 +86,21 @@ public class UnsafeRowComparator implements Comparator<UnsafeCarbonRow> {
             rowB + dictSizeInMemory + sizeInNonDictPartB);
         sizeInNonDictPartB += 2;
         DataType dataType = tableFieldStat.getNoDictDataType()[noDicSortIdx++];
+        long addressA = rowA + dictSizeInMemory + sizeInNonDictPartA;
+        long addressB = rowB + dictSizeInMemory + sizeInNonDictPartB;
+        int difference;
         if (DataTypeUtil.isPrimitiveColumn(dataType)) {
-          Object data1 = null;
-          if (0 != lengthA) {
-            data1 = CarbonUnsafeUtil
-                .getDataFromUnsafe(dataType, baseObjectL, rowA + dictSizeInMemory,
-                    sizeInNonDictPartA, lengthA);
-            sizeInNonDictPartA += lengthA;
-          }
-          Object data2 = null;
-          if (0 != lengthB) {
-            data2 = CarbonUnsafeUtil
-                .getDataFromUnsafe(dataType, baseObjectR, rowB + dictSizeInMemory,
-                    sizeInNonDictPartB, lengthB);
-            sizeInNonDictPartB += lengthB;
-          }
-          // use the data type based comparator for the no dictionary encoded columns
-          SerializableComparator comparator =
-              org.apache.carbondata.core.util.comparator.Comparator.getComparator(dataType);
-          int difference = comparator.compare(data1, data2);
-          if (difference != 0) {
-            return difference;
-          }
+          difference = comparePrimitive(dataType, baseObjectL, addressA, lengthA, baseObjectR,
+              addressB, lengthB);
         } else {
-          byte[] byteArr1 = new byte[lengthA];
-          CarbonUnsafe.getUnsafe()
-              .copyMemory(baseObjectL, rowA + dictSizeInMemory + sizeInNonDictPartA, byteArr1,
-                  CarbonUnsafe.BYTE_ARRAY_OFFSET, lengthA);
-          sizeInNonDictPartA += lengthA;
-
-          byte[] byteArr2 = new byte[lengthB];
-          CarbonUnsafe.getUnsafe()
-              .copyMemory(baseObjectR, rowB + dictSizeInMemory + sizeInNonDictPartB, byteArr2,
-                  CarbonUnsafe.BYTE_ARRAY_OFFSET, lengthB);
-          sizeInNonDictPartB += lengthB;
-
-          int difference = UnsafeComparer.INSTANCE.compareTo(byteArr1, byteArr2);
-          if (difference != 0) {
-            return difference;
-          }
+          // compare in place, without copying the values
+          difference = UnsafeComparer.INSTANCE
+              .compareTo(baseObjectL, addressA, lengthA, baseObjectR, addressB, lengthB);
+        }
+        sizeInNonDictPartA += lengthA;
+        sizeInNonDictPartB += lengthB;
+        if (difference != 0) {
+          return difference;
         }
       } else {
         int dimFieldA = CarbonUnsafe.getUnsafe().getInt(baseObjectL, rowA + sizeInDictPartA);
@@ -124,4 +116,42 @@ public class UnsafeRowComparator implements Comparator<UnsafeCarbonRow> {
 
     return diff;
   }
+
+  /**
+   * compare the primitive no dictionary values, null is stored with length 0 and sorted first
+   */
+  private static int comparePrimitive(DataType dataType, Object baseObjectL, long addressA,
+      short lengthA, Object baseObjectR, long addressB, short lengthB) {
+    if (lengthA == 0 || lengthB == 0) {
+      return (lengthA == 0 ? 0 : 1) - (lengthB == 0 ? 0 : 1);
+    }
+    if (dataType == DataTypes.BOOLEAN) {
+      return Boolean.compare(CarbonUnsafe.getUnsafe().getBoolean(baseObjectL, addressA),
+          CarbonUnsafe.getUnsafe().getBoolean(baseObjectR, addressB));
+    } else if (dataType == DataTypes.BYTE) {
+      return CarbonUnsafe.getUnsafe().getByte(baseObjectL, addressA) - CarbonUnsafe.getUnsafe()
+          .getByte(baseObjectR, addressB);
+    } else if (dataType == DataTypes.SHORT) {
+      return Short.compare(CarbonUnsafe.getUnsafe().getShort(baseObjectL, addressA),
+          CarbonUnsafe.getUnsafe().getShort(baseObjectR, addressB));
+    } else if (dataType == DataTypes.INT) {
+      return Integer.compare(CarbonUnsafe.getUnsafe().getInt(baseObjectL, addressA),
+          CarbonUnsafe.getUnsafe().getInt(baseObjectR, addressB));
+    } else if (dataType == DataTypes.LONG || dataType == DataTypes.TIMESTAMP) {
+      return Long.compare(CarbonUnsafe.getUnsafe().getLong(baseObjectL, addressA),
+          CarbonUnsafe.getUnsafe().getLong(baseObjectR, addressB));
+    } else if (dataType == DataTypes.DOUBLE) {
+      return Double.compare(CarbonUnsafe.getUnsafe().getDouble(baseObjectL, addressA),
+          CarbonUnsafe.getUnsafe().getDouble(baseObjectR, addressB));
+    } else if (dataType == DataTypes.FLOAT) {
+      return Float.compare(CarbonUnsafe.getUnsafe().getFloat(baseObjectL, addressA),
+          CarbonUnsafe.getUnsafe().getFloat(baseObjectR, addressB));
+    }
+    // use the data type based comparator for the other no dictionary encoded columns
+    Object data1 = CarbonUnsafeUtil.getDataFromUnsafe(dataType, baseObjectL, addressA, 0, lengthA);
+    Object data2 = CarbonUnsafeUtil.getDataFromUnsafe(dataType, baseObjectR, addressB, 0, lengthB);
+    SerializableComparator comparator =
+        org.apache.carbondata.core.util.comparator.Comparator.getComparator(dataType);
+    return comparator.compare(data1, data2);
+  }
 }
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.processing.loading.sort.unsafe.comparator;
+
+import org.apache.carbondata.core.memory.CarbonUnsafe;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.util.DataTypeUtil;
+import org.apache.carbondata.processing.sort.sortdata.TableFieldStat;
+
+/**
+ * Encodes the sort columns of a row in unsafe memory into a 8 byte normalized key prefix, the
+ * bytes are compared in the order of {@link UnsafeRowComparator}:
+ * dictionary columns as 4 bytes with flipped sign bit,
+ * primitive no dictionary columns as a null marker byte followed by the value with flipped sign,
+ * other no dictionary columns as their bytes, after which the encoding stops.
+ * Columns which do not fit are truncated, so rows of different prefixes compare as the prefixes
+ * and only rows of equal prefixes need to compare the columns.
+ *
+ * The prefix is stored with flipped sign bit so that it can be compared as a signed long.
+ */
+public class UnsafeRowKeyPrefix {
+
+  private static final int PREFIX_BYTES = 8;
+
+  private boolean[] isSortColNoDictFlags;
+
+  private DataType[] noDictDataTypes;
+
+  private int dictSizeInMemory;
+
+  // whether equal prefixes means equal sort columns
+  private boolean isCompleteKey;
+
+  public UnsafeRowKeyPrefix(TableFieldStat tableFieldStat) {
+    this.isSortColNoDictFlags = tableFieldStat.getIsSortColNoDictFlags();
+    this.noDictDataTypes = tableFieldStat.getNoDictDataType();
+    this.dictSizeInMemory = tableFieldStat.getDictSortDimCnt() * 4;
+    int keySize = 0;
+    int noDictSortIdx = 0;
+    boolean isComplete = true;
+    for (boolean isNoDictionary : isSortColNoDictFlags) {
+      if (isNoDictionary) {
+        int valueSize = getPrimitiveSize(noDictDataTypes[noDictSortIdx++]);
+        if (valueSize < 0) {
+          isComplete = false;
+          break;
+        }
+        keySize += 1 + valueSize;
+      } else {
+        keySize += 4;
+      }
+    }
+    this.isCompleteKey = isComplete && keySize <= PREFIX_BYTES;
+  }
+
+  /**
+   * Returns the prefix of the row at the address
+   */
+  public long getPrefix(Object baseObject, long address) {
+    long prefix = 0;
+    int bytesLeft = PREFIX_BYTES;
+    int sizeInDictPart = 0;
+    int sizeInNonDictPart = dictSizeInMemory;
+    int noDictSortIdx = 0;
+    for (boolean isNoDictionary : isSortColNoDictFlags) {
+      if (bytesLeft == 0) {
+        break;
+      }
+      if (!isNoDictionary) {
+        int value = CarbonUnsafe.getUnsafe().getInt(baseObject, address + sizeInDictPart);
+        sizeInDictPart += 4;
+        prefix = append(prefix, bytesLeft, (value ^ Integer.MIN_VALUE) & 0xFFFFFFFFL, 4);
+        bytesLeft -= Math.min(4, bytesLeft);
+        continue;
+      }
+      short length = CarbonUnsafe.getUnsafe().getShort(baseObject, address + sizeInNonDictPart);
+      sizeInNonDictPart += 2;
+      DataType dataType = noDictDataTypes[noDictSortIdx++];
+      int valueSize = getPrimitiveSize(dataType);
+      if (valueSize > 0) {
+        // null is stored with length 0 and sorted first
+        prefix = append(prefix, bytesLeft, length == 0 ? 0 : 1, 1);
+        bytesLeft--;
+        if (bytesLeft > 0) {
+          long value = length == 0 ?
+              0 :
+              encodePrimitive(dataType, baseObject, address + sizeInNonDictPart);
+          prefix = append(prefix, bytesLeft, value, valueSize);
+          bytesLeft -= Math.min(valueSize, bytesLeft);
+        }
+        sizeInNonDictPart += length;
+      } else if (DataTypeUtil.isPrimitiveColumn(dataType)) {
+        // not encoded, the prefix ends before it
+        break;
+      } else {
+        int bytes = Math.min(length, bytesLeft);
+        for (int i = 0; i < bytes; i++) {
+          prefix = (prefix << 8) | (CarbonUnsafe.getUnsafe()
+              .getByte(baseObject, address + sizeInNonDictPart + i) & 0xFF);
+        }
+        bytesLeft -= bytes;
+        // the value is of variable length, the following columns can not be appended
+        break;
+      }
+    }
+    if (bytesLeft > 0) {
+      prefix <<= bytesLeft << 3;
+    }
+    return prefix ^ Long.MIN_VALUE;
+  }
+
+  /**
+   * Returns true if the rows of equal prefix have equal sort columns
+   */
+  public boolean isCompleteKey() {
+    return isCompleteKey;
+  }
+
+  /**
+   * appends the first bytes of the value of width bytes which fit in the prefix
+   */
+  private static long append(long prefix, int bytesLeft, long value, int width) {
+    int bytes = Math.min(width, bytesLeft);
+    return (prefix << (bytes << 3)) | (value >>> ((width - bytes) << 3));
+  }
+
+  /**
+   * size of the encoded primitive value, or -1 if the type is not encoded
+   */
+  private static int getPrimitiveSize(DataType dataType) {
+    if (dataType == DataTypes.BOOLEAN || dataType == DataTypes.BYTE) {
+      return 1;
+    } else if (dataType == DataTypes.SHORT) {
+      return 2;
+    } else if (dataType == DataTypes.INT || dataType == DataTypes.FLOAT) {
+      return 4;
+    } else if (dataType == DataTypes.LONG || dataType == DataTypes.TIMESTAMP
+        || dataType == DataTypes.DOUBLE) {
+      return 8;
+    }
+    return -1;
+  }
+
+  /**
+   * encodes the value so that the unsigned order of the bytes is the order of the values
+   */
+  private static long encodePrimitive(DataType dataType, Object baseObject, long address) {
+    if (dataType == DataTypes.BOOLEAN) {
+      return CarbonUnsafe.getUnsafe().getBoolean(baseObject, address) ? 1 : 0;
+    } else if (dataType == DataTypes.BYTE) {
+      return (CarbonUnsafe.getUnsafe().getByte(baseObject, address) ^ Byte.MIN_VALUE) & 0xFFL;
+    } else if (dataType == DataTypes.SHORT) {
+      return (CarbonUnsafe.getUnsafe().getShort(baseObject, address) ^ Short.MIN_VALUE) & 0xFFFFL;
+    } else if (dataType == DataTypes.INT) {
+      return (CarbonUnsafe.getUnsafe().getInt(baseObject, address) ^ Integer.MIN_VALUE)
+          & 0xFFFFFFFFL;
+    } else if (dataType == DataTypes.FLOAT) {
+      int bits = Float.floatToIntBits(CarbonUnsafe.getUnsafe().getFloat(baseObject, address));
+      // same order as Float.compare, negative values are reversed
+      bits ^= bits < 0 ? -1 : Integer.MIN_VALUE;
+      return bits & 0xFFFFFFFFL;
+    } else if (dataType == DataTypes.DOUBLE) {
+      long bits =
+          Double.doubleToLongBits(CarbonUnsafe.getUnsafe().getDouble(baseObject, address));
+      return bits ^ (bits < 0 ? -1L : Long.MIN_VALUE);
+    } else {
+      return CarbonUnsafe.getUnsafe().getLong(baseObject, address) ^ Long.MIN_VALUE;
+    }
+  }
+}
@@ -21,4 +21,7 @@ public class UnsafeCarbonRow {
 
   public long address;
 
+  // sort key prefix of the row, set only while sorting a page
+  public long prefix;
+
 }
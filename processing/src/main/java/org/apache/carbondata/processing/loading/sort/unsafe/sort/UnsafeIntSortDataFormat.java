@@ -44,6 +44,9 @@ public class UnsafeIntSortDataFormat
   @Override
   public UnsafeCarbonRow getKey(IntPointerBuffer data, int pos, UnsafeCarbonRow reuse) {
     reuse.address = data.get(pos) + page.getDataBlock().getBaseOffset();
+    if (data.hasPrefix()) {
+      reuse.prefix = data.getPrefix(pos);
+    }
     return reuse;
   }
 
@@ -51,20 +54,31 @@ public class UnsafeIntSortDataFormat
     int tempPointer = data.get(pos0);
     data.set(pos0, data.get(pos1));
     data.set(pos1, tempPointer);
+    if (data.hasPrefix()) {
+      long tempPrefix = data.getPrefix(pos0);
+      data.setPrefix(pos0, data.getPrefix(pos1));
+      data.setPrefix(pos1, tempPrefix);
+    }
   }
 
   @Override
   public void copyElement(IntPointerBuffer src, int srcPos, IntPointerBuffer dst, int dstPos) {
     dst.set(dstPos, src.get(srcPos));
+    if (src.hasPrefix()) {
+      dst.setPrefix(dstPos, src.getPrefix(srcPos));
+    }
   }
 
   @Override
   public void copyRange(IntPointerBuffer src, int srcPos, IntPointerBuffer dst, int dstPos,
       int length) {
     System.arraycopy(src.getPointerBlock(), srcPos, dst.getPointerBlock(), dstPos, length);
+    if (src.hasPrefix()) {
+      System.arraycopy(src.getPrefixBlock(), srcPos, dst.getPrefixBlock(), dstPos, length);
+    }
   }
 
   @Override public IntPointerBuffer allocate(int length) {
-    return new IntPointerBuffer(length);
+    return new IntPointerBuffer(length, page.getBuffer().hasPrefix());
   }
 }
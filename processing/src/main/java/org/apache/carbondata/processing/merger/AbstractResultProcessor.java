@@ -32,6 +32,12 @@ import org.apache.carbondata.processing.store.CarbonFactDataHandlerModel;
  */
 public abstract class AbstractResultProcessor {
 
+  /**
+   * whether the task compacts every segment of a primary key table, deleted keys are then left
+   * out instead of being written as tombstones
+   */
+  protected boolean compactingAllSegments;
+
   /**
    * This method will perform the desired tasks of merging the selected slices
    *
@@ -48,6 +54,10 @@ public abstract class AbstractResultProcessor {
    */
   public abstract void close();
 
+  public void setCompactingAllSegments(boolean compactingAllSegments) {
+    this.compactingAllSegments = compactingAllSegments;
+  }
+
   protected void setDataFileAttributesInModel(CarbonLoadModel loadModel,
       CompactionType compactionType, CarbonFactDataHandlerModel carbonFactDataHandlerModel)
       throws IOException {
@@ -515,6 +515,13 @@ public class CompactionResultSortProcessor extends AbstractResultProcessor {
     setDataFileAttributesInModel(carbonLoadModel, compactionType, carbonFactDataHandlerModel);
     this.noDicAndComplexColumns = carbonFactDataHandlerModel.getNoDictAndComplexColumns();
     dataHandler = CarbonFactHandlerFactory.createCarbonFactHandler(carbonFactDataHandlerModel);
+    if (PrimaryKeyCompactionFactHandler.isSupported(carbonTable, segmentProperties)) {
+      PrimaryKeyCompactionFactHandler primaryKeyHandler =
+          new PrimaryKeyCompactionFactHandler(dataHandler, segmentProperties,
+              PrimaryKeyCompactionFactHandler.getRetentionTimestamp());
+      primaryKeyHandler.setCompactingAllSegments(compactingAllSegments);
+      dataHandler = primaryKeyHandler;
+    }
     try {
       dataHandler.initialise();
     } catch (CarbonDataWriterException e) {
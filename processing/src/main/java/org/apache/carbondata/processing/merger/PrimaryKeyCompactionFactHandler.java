@@ -0,0 +1,491 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.carbondata.processing.merger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.carbondata.common.logging.LogServiceFactory;
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.datamap.Segment;
+import org.apache.carbondata.core.datastore.block.SegmentProperties;
+import org.apache.carbondata.core.datastore.exception.CarbonDataWriterException;
+import org.apache.carbondata.core.datastore.row.CarbonRow;
+import org.apache.carbondata.core.datastore.row.WriteStepRowUtil;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyRowComparator;
+import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+import org.apache.carbondata.core.statusmanager.SegmentStatusManager;
+import org.apache.carbondata.core.util.CarbonProperties;
+import org.apache.carbondata.core.util.DataTypeUtil;
+import org.apache.carbondata.processing.store.CarbonFactHandler;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collapses the versions of every primary key while a primary key table is compacted. The rows
+ * reach the handler sorted on the sort columns, which start with the primary key, so all the
+ * versions of a key are added one after the other. They are applied in version order, the same
+ * way {@link PrimaryKeyMerger} merges them at read time, and only the result is passed to the
+ * actual handler.
+ *
+ * When other segments of the table are not part of the compaction, they may hold older versions
+ * of the key, so the result is written as a row with the columns last set by an update and a row
+ * with the columns last deleted and the delete status of the newest delete, followed by the
+ * update again when the key was updated last. Read on top of any older version they give the
+ * same row as the collapsed versions, and a deleted key stays deleted. Only when the compaction
+ * covers every segment of the table the result is written as a single row and fully deleted keys
+ * are left out.
+ *
+ * Versions newer than the retention timestamp are passed on as they are after the rows collapsing
+ * the older versions, so a reader still sees every version inside the retention period.
+ */
+public class PrimaryKeyCompactionFactHandler implements CarbonFactHandler {
+
+  private static final Logger LOGGER =
+      LogServiceFactory.getLogService(PrimaryKeyCompactionFactHandler.class.getName());
+
+  private static final String VERSION_COLUMN = "timestamp";
+
+  private static final String DELETE_STATUS_COLUMN = "deletestatus";
+
+  private CarbonFactHandler dataHandler;
+
+  private long retentionTimestamp;
+
+  /**
+   * part of the write step row every column of the flattened row is in
+   */
+  private int[] rowParts;
+
+  /**
+   * index of every column of the flattened row in its part
+   */
+  private int[] partIndexes;
+
+  /**
+   * whether the column is kept as byte array, null is then stored as the default member
+   */
+  private boolean[] byteArrayColumns;
+
+  private int dictionaryCount;
+
+  private int noDictionaryAndComplexCount;
+
+  private int measureCount;
+
+  private PrimaryKeyRowComparator keyComparator;
+
+  private int[] keyOrdinals;
+
+  private int[] colOrdinals;
+
+  private int versionIndex;
+
+  private int deleteStatusIndex;
+
+  /**
+   * whether the compaction covers every segment of the table, so no older version of a key is
+   * left outside the output
+   */
+  private boolean compactingAllSegments;
+
+  private Object[] currentKey;
+
+  // versions of the current key which are collapsed
+  private List<Object[]> keyRows = new ArrayList<>();
+
+  private List<Object[]> retainedRows = new ArrayList<>();
+
+  /**
+   * orders the versions of a key, at the same version an update is applied before a delete
+   */
+  private Comparator<Object[]> versionOrder = new Comparator<Object[]>() {
+    @Override public int compare(Object[] row1, Object[] row2) {
+      long version1 = (long) row1[versionIndex];
+      long version2 = (long) row2[versionIndex];
+      if (version1 != version2) {
+        return version1 < version2 ? -1 : 1;
+      }
+      return (isDelete(row1) ? 1 : 0) - (isDelete(row2) ? 1 : 0);
+    }
+  };
+
+  private long inputRowCount;
+
+  private long outputRowCount;
+
+  public PrimaryKeyCompactionFactHandler(CarbonFactHandler dataHandler,
+      SegmentProperties segmentProperties, long retentionTimestamp) {
+    this.dataHandler = dataHandler;
+    this.retentionTimestamp = retentionTimestamp;
+    List<CarbonColumn> columns = new ArrayList<>();
+    columns.addAll(segmentProperties.getDimensions());
+    columns.addAll(segmentProperties.getComplexDimensions());
+    columns.addAll(segmentProperties.getMeasures());
+    rowParts = new int[columns.size()];
+    partIndexes = new int[columns.size()];
+    byteArrayColumns = new boolean[columns.size()];
+    List<DataType> keyDataTypes = new ArrayList<>();
+    List<Integer> keyOrdinalList = new ArrayList<>();
+    List<Integer> colOrdinalList = new ArrayList<>();
+    deleteStatusIndex = -1;
+    versionIndex = -1;
+    for (int i = 0; i < columns.size(); i++) {
+      CarbonColumn column = columns.get(i);
+      DataType dataType = column.getDataType();
+      if (column.isMeasure()) {
+        rowParts[i] = WriteStepRowUtil.MEASURE;
+        partIndexes[i] = measureCount++;
+      } else if (column.hasEncoding(Encoding.DICTIONARY) && !column.isComplex()) {
+        rowParts[i] = WriteStepRowUtil.DICTIONARY_DIMENSION;
+        partIndexes[i] = dictionaryCount++;
+        // dictionary columns are compared on their surrogate key
+        dataType = DataTypes.INT;
+      } else {
+        rowParts[i] = WriteStepRowUtil.NO_DICTIONARY_AND_COMPLEX;
+        partIndexes[i] = noDictionaryAndComplexCount++;
+        byteArrayColumns[i] = column.isComplex() || !DataTypeUtil.isPrimitiveColumn(dataType);
+      }
+      if (column.getColumnSchema().isPrimaryKeyColumn()) {
+        keyDataTypes.add(dataType);
+        keyOrdinalList.add(i);
+      } else if (column.getColName().equalsIgnoreCase(VERSION_COLUMN)) {
+        versionIndex = i;
+      } else if (column.getColName().equalsIgnoreCase(DELETE_STATUS_COLUMN)) {
+        deleteStatusIndex = i;
+      } else {
+        colOrdinalList.add(i);
+      }
+    }
+    keyOrdinals = new int[keyOrdinalList.size()];
+    for (int i = 0; i < keyOrdinals.length; i++) {
+      keyOrdinals[i] = keyOrdinalList.get(i);
+    }
+    colOrdinals = new int[colOrdinalList.size()];
+    for (int i = 0; i < colOrdinals.length; i++) {
+      colOrdinals[i] = colOrdinalList.get(i);
+    }
+    keyComparator = new PrimaryKeyRowComparator(
+        keyDataTypes.toArray(new DataType[keyDataTypes.size()]), keyOrdinals);
+  }
+
+  /**
+   * Returns whether the versions of the table can be collapsed while compacting. The table needs
+   * the version and delete status columns, and the rows must be sorted on the primary key first,
+   * otherwise the versions of a key are not added together.
+   */
+  public static boolean isSupported(CarbonTable carbonTable, SegmentProperties segmentProperties) {
+    if (null == carbonTable.getTableInfo().getFactTable().getTableProperties()
+        .get(CarbonCommonConstants.PRIMARY_KEY_COLUMNS)) {
+      return false;
+    }
+    boolean hasVersion = false;
+    boolean hasDeleteStatus = false;
+    List<CarbonColumn> columns = new ArrayList<>();
+    columns.addAll(segmentProperties.getDimensions());
+    columns.addAll(segmentProperties.getMeasures());
+    for (CarbonColumn column : columns) {
+      hasVersion |= column.getColName().equalsIgnoreCase(VERSION_COLUMN);
+      hasDeleteStatus |= column.getColName().equalsIgnoreCase(DELETE_STATUS_COLUMN);
+    }
+    int keyCount = 0;
+    List<CarbonDimension> sortColumns = new ArrayList<>();
+    for (CarbonDimension dimension : segmentProperties.getDimensions()) {
+      if (dimension.getColumnSchema().isPrimaryKeyColumn()) {
+        keyCount++;
+      }
+      // sort columns come first in the dimensions, in sort order
+      if (dimension.isSortColumn()) {
+        sortColumns.add(dimension);
+      }
+    }
+    boolean keyIsSortPrefix = sortColumns.size() >= keyCount;
+    for (int i = 0; keyIsSortPrefix && i < keyCount; i++) {
+      keyIsSortPrefix = sortColumns.get(i).getColumnSchema().isPrimaryKeyColumn();
+    }
+    if (!hasVersion || !hasDeleteStatus || keyCount == 0 || !keyIsSortPrefix) {
+      LOGGER.warn("Versions of primary key table " + carbonTable.getTableUniqueName()
+          + " are not collapsed by compaction, it needs the " + VERSION_COLUMN + " and "
+          + DELETE_STATUS_COLUMN + " columns and the primary key as first sort columns");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the timestamp of the oldest version kept as it is by compaction
+   */
+  public static long getRetentionTimestamp() {
+    String retentionProperty = CarbonProperties.getInstance()
+        .getProperty(CarbonCommonConstants.CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS,
+            CarbonCommonConstants.CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS_DEFAULT);
+    long retention;
+    try {
+      retention = Long.parseLong(retentionProperty);
+    } catch (NumberFormatException e) {
+      LOGGER.warn("Configured value for property "
+          + CarbonCommonConstants.CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS
+          + " is wrong. Falling back to the default value "
+          + CarbonCommonConstants.CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS_DEFAULT);
+      retention =
+          Long.parseLong(CarbonCommonConstants.CARBON_PRIMARY_KEY_VERSION_RETENTION_MILLIS_DEFAULT);
+    }
+    if (retention <= 0) {
+      return Long.MAX_VALUE;
+    }
+    return System.currentTimeMillis() - retention;
+  }
+
+  /**
+   * Returns whether the segments are every segment of the table holding data, including the
+   * stream segments and the loads in progress. Segments outside the compaction may hold older
+   * versions of any key, whatever their load order, so tombstones must be kept for them.
+   */
+  public static boolean isCompactingAllSegments(CarbonTable carbonTable,
+      Collection<String> segmentIds) throws IOException {
+    SegmentStatusManager.ValidAndInvalidSegmentsInfo segments =
+        new SegmentStatusManager(carbonTable.getAbsoluteTableIdentifier())
+            .getValidAndInvalidSegments();
+    List<Segment> tableSegments = new ArrayList<>(segments.getValidSegments());
+    tableSegments.addAll(segments.getStreamSegments());
+    tableSegments.addAll(segments.getListOfInProgressSegments());
+    for (Segment segment : tableSegments) {
+      if (!segmentIds.contains(segment.getSegmentNo())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Sets whether the compaction writes every version of the table in this handler, deleted keys
+   * are then left out instead of being written as tombstones
+   */
+  public void setCompactingAllSegments(boolean compactingAllSegments) {
+    this.compactingAllSegments = compactingAllSegments;
+  }
+
+  @Override public void initialise() throws CarbonDataWriterException {
+    dataHandler.initialise();
+  }
+
+  @Override public void addDataToStore(CarbonRow row) throws CarbonDataWriterException {
+    Object[] flatRow = flatten(row);
+    inputRowCount++;
+    if (currentKey != null && keyComparator.compare(currentKey, flatRow) != 0) {
+      flushKey();
+    }
+    currentKey = flatRow;
+    if ((long) flatRow[versionIndex] > retentionTimestamp) {
+      retainedRows.add(flatRow);
+    } else {
+      keyRows.add(flatRow);
+    }
+  }
+
+  @Override public void finish() throws CarbonDataWriterException {
+    flushKey();
+    LOGGER.info("Collapsed " + inputRowCount + " primary key versions to " + outputRowCount
+        + " rows");
+    dataHandler.finish();
+  }
+
+  @Override public void closeHandler() throws CarbonDataWriterException {
+    dataHandler.closeHandler();
+  }
+
+  private void flushKey() throws CarbonDataWriterException {
+    if (!keyRows.isEmpty()) {
+      collapse();
+      keyRows.clear();
+    }
+    Collections.sort(retainedRows, versionOrder);
+    for (Object[] retainedRow : retainedRows) {
+      addRow(retainedRow);
+    }
+    retainedRows.clear();
+    currentKey = null;
+  }
+
+  /**
+   * Applies the versions of the key in version order. Every column ends up either set by an
+   * update, deleted by a delete or untouched, the columns of the two kinds are kept in separate
+   * rows so that a delete is still applied to the older versions outside the compaction.
+   */
+  private void collapse() throws CarbonDataWriterException {
+    Collections.sort(keyRows, versionOrder);
+    Object[] updateRow = null;
+    Object[] deleteRow = null;
+    for (Object[] row : keyRows) {
+      boolean isDelete = isDelete(row);
+      if (isDelete && deleteRow == null) {
+        deleteRow = newKeyRow(row);
+      } else if (!isDelete && updateRow == null) {
+        updateRow = newKeyRow(row);
+      }
+      Object[] target = isDelete ? deleteRow : updateRow;
+      Object[] other = isDelete ? updateRow : deleteRow;
+      for (int colOrdinal : colOrdinals) {
+        if (row[colOrdinal] != null) {
+          target[colOrdinal] = row[colOrdinal];
+          if (other != null) {
+            other[colOrdinal] = null;
+          }
+        }
+      }
+      target[versionIndex] = row[versionIndex];
+      target[deleteStatusIndex] = row[deleteStatusIndex];
+    }
+    Object[] lastRow = keyRows.get(keyRows.size() - 1);
+    boolean lastIsDelete = isDelete(lastRow);
+    if (compactingAllSegments) {
+      // there is no older version to delete from, only the updated columns are left
+      if (updateRow == null || (retainedRows.isEmpty() && isDeleted(updateRow, lastRow))) {
+        return;
+      }
+      updateRow[versionIndex] = lastRow[versionIndex];
+      updateRow[deleteStatusIndex] = 0L;
+      addRow(updateRow);
+      return;
+    }
+    // rows are written in version order, the update is applied before the delete of the same
+    // version as the merger does. A delete read first is taken as the row itself, so the deleted
+    // columns are written after the updated ones
+    if (lastIsDelete) {
+      if (updateRow != null) {
+        addRow(updateRow);
+      }
+      addRow(deleteRow);
+    } else {
+      if (deleteRow != null && hasColumnValue(deleteRow)) {
+        Object[] earlyUpdateRow = updateRow.clone();
+        earlyUpdateRow[versionIndex] = deleteRow[versionIndex];
+        earlyUpdateRow[deleteStatusIndex] = 0L;
+        addRow(earlyUpdateRow);
+        addRow(deleteRow);
+      }
+      addRow(updateRow);
+    }
+  }
+
+  private boolean isDelete(Object[] row) {
+    Object deleteStatus = row[deleteStatusIndex];
+    return deleteStatus != null && (long) deleteStatus > 0;
+  }
+
+  /**
+   * same as {@link PrimaryKeyMerger#isDeletedRow()} for the collapsed row
+   */
+  private boolean isDeleted(Object[] updateRow, Object[] lastRow) {
+    if (isDelete(lastRow) && (long) lastRow[deleteStatusIndex] == 2) {
+      return true;
+    }
+    return colOrdinals.length > 0 && !hasColumnValue(updateRow);
+  }
+
+  private boolean hasColumnValue(Object[] row) {
+    for (int colOrdinal : colOrdinals) {
+      if (row[colOrdinal] != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Object[] newKeyRow(Object[] row) {
+    Object[] keyRow = new Object[row.length];
+    for (int keyOrdinal : keyOrdinals) {
+      keyRow[keyOrdinal] = row[keyOrdinal];
+    }
+    return keyRow;
+  }
+
+  private void addRow(Object[] flatRow) throws CarbonDataWriterException {
+    int[] dictionaryDimensions = new int[dictionaryCount];
+    Object[] noDictionaryAndComplex = new Object[noDictionaryAndComplexCount];
+    Object[] measures = new Object[measureCount];
+    for (int i = 0; i < flatRow.length; i++) {
+      Object value = flatRow[i];
+      switch (rowParts[i]) {
+        case WriteStepRowUtil.DICTIONARY_DIMENSION:
+          dictionaryDimensions[partIndexes[i]] = value == null ?
+              CarbonCommonConstants.MEMBER_DEFAULT_VAL_SURROGATE_KEY :
+              (int) value;
+          break;
+        case WriteStepRowUtil.NO_DICTIONARY_AND_COMPLEX:
+          if (value == null && byteArrayColumns[i]) {
+            value = CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY;
+          }
+          noDictionaryAndComplex[partIndexes[i]] = value;
+          break;
+        default:
+          measures[partIndexes[i]] = value;
+      }
+    }
+    dataHandler.addDataToStore(
+        WriteStepRowUtil.fromColumnCategory(dictionaryDimensions, noDictionaryAndComplex,
+            measures));
+    outputRowCount++;
+  }
+
+  /**
+   * Converts the write step row to one value per column, null values are kept as null so that
+   * the merger does not take them over the values of other versions.
+   */
+  private Object[] flatten(CarbonRow row) {
+    int[] dictionaryDimensions = WriteStepRowUtil.getDictDimension(row);
+    Object[] noDictionaryAndComplex = WriteStepRowUtil.getNoDictAndComplexDimension(row);
+    Object[] measures = WriteStepRowUtil.getMeasure(row);
+    Object[] flatRow = new Object[rowParts.length];
+    for (int i = 0; i < flatRow.length; i++) {
+      switch (rowParts[i]) {
+        case WriteStepRowUtil.DICTIONARY_DIMENSION:
+          int surrogate = dictionaryDimensions[partIndexes[i]];
+          if (surrogate != CarbonCommonConstants.MEMBER_DEFAULT_VAL_SURROGATE_KEY) {
+            flatRow[i] = surrogate;
+          }
+          break;
+        case WriteStepRowUtil.NO_DICTIONARY_AND_COMPLEX:
+          Object value = noDictionaryAndComplex[partIndexes[i]];
+          if (byteArrayColumns[i] && value instanceof byte[] && isNullValue((byte[]) value)) {
+            value = null;
+          }
+          flatRow[i] = value;
+          break;
+        default:
+          flatRow[i] = measures[partIndexes[i]];
+      }
+    }
+    return flatRow;
+  }
+
+  private static boolean isNullValue(byte[] value) {
+    return value.length == 0
+        || Arrays.equals(value, CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY);
+  }
+}
@@ -92,6 +92,11 @@ public class RowResultMergerProcessor extends AbstractResultProcessor {
     carbonFactDataHandlerModel.setSegmentId(loadModel.getSegmentId());
     this.noDicAndComplexColumns = carbonFactDataHandlerModel.getNoDictAndComplexColumns();
     dataHandler = new CarbonFactDataHandlerColumnar(carbonFactDataHandlerModel);
+    if (PrimaryKeyCompactionFactHandler
+        .isSupported(loadModel.getCarbonDataLoadSchema().getCarbonTable(), segProp)) {
+      dataHandler = new PrimaryKeyCompactionFactHandler(dataHandler, segProp,
+          PrimaryKeyCompactionFactHandler.getRetentionTimestamp());
+    }
   }
 
   private void initRecordHolderHeap(List<RawResultIterator> rawResultIteratorList) {
@@ -110,6 +115,10 @@ public class RowResultMergerProcessor extends AbstractResultProcessor {
     finalIteratorList.addAll(sortedResultIteratorList);
 
     initRecordHolderHeap(finalIteratorList);
+    if (dataHandler instanceof PrimaryKeyCompactionFactHandler) {
+      ((PrimaryKeyCompactionFactHandler) dataHandler)
+          .setCompactingAllSegments(compactingAllSegments);
+    }
     boolean mergeStatus = false;
     int index = 0;
     boolean isDataPresent = false;
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.processing.loading.sort.unsafe.comparator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.apache.carbondata.core.memory.CarbonUnsafe;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.util.ByteUtil.UnsafeComparer;
+import org.apache.carbondata.processing.sort.sortdata.SortParameters;
+import org.apache.carbondata.processing.sort.sortdata.TableFieldStat;
+
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UnsafeRowKeyPrefixTest {
+
+  private static final int ROW_SIZE = 64;
+
+  private static final byte[] CHARS = new byte[] { 'a', 'b', (byte) 0xFF };
+
+  @Test public void testPrefixOrderOfDictionaryAndStringColumns() {
+    // dictionary int, no dictionary string
+    UnsafeRowKeyPrefix keyPrefix = createKeyPrefix(new boolean[] { false, true }, 1,
+        new DataType[] { DataTypes.STRING });
+    Assert.assertFalse(keyPrefix.isCompleteKey());
+    Random random = new Random(1);
+    int rowCount = 200;
+    int[] dictValues = new int[rowCount];
+    byte[][] strings = new byte[rowCount][];
+    byte[] data = new byte[rowCount * ROW_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < rowCount; i++) {
+      dictValues[i] = 1 + random.nextInt(3);
+      strings[i] = new byte[random.nextInt(6)];
+      for (int j = 0; j < strings[i].length; j++) {
+        strings[i][j] = CHARS[random.nextInt(CHARS.length)];
+      }
+      buffer.position(i * ROW_SIZE);
+      buffer.putInt(dictValues[i]);
+      buffer.putShort((short) strings[i].length);
+      buffer.put(strings[i]);
+    }
+    long[] prefixes = getPrefixes(keyPrefix, data, rowCount);
+    for (int i = 0; i < rowCount; i++) {
+      for (int j = 0; j < rowCount; j++) {
+        int expected = dictValues[i] - dictValues[j];
+        if (expected == 0) {
+          expected = UnsafeComparer.INSTANCE.compareTo(strings[i], strings[j]);
+        }
+        assertConsistent(prefixes[i], prefixes[j], expected, keyPrefix.isCompleteKey());
+      }
+    }
+  }
+
+  @Test public void testPrefixOrderOfPrimitiveColumns() {
+    // no dictionary short and dictionary int, which fit completely in the prefix
+    UnsafeRowKeyPrefix keyPrefix = createKeyPrefix(new boolean[] { true, false }, 1,
+        new DataType[] { DataTypes.SHORT });
+    Assert.assertTrue(keyPrefix.isCompleteKey());
+    Short[] shortValues =
+        new Short[] { null, Short.MIN_VALUE, -5, -1, 0, 3, Short.MAX_VALUE };
+    int rowCount = shortValues.length * 2;
+    byte[] data = new byte[rowCount * ROW_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < rowCount; i++) {
+      buffer.position(i * ROW_SIZE);
+      buffer.putInt(1 + i % 2);
+      Short value = shortValues[i / 2];
+      if (value == null) {
+        buffer.putShort((short) 0);
+      } else {
+        buffer.putShort((short) 2);
+        buffer.putShort(value);
+      }
+    }
+    long[] prefixes = getPrefixes(keyPrefix, data, rowCount);
+    for (int i = 0; i < rowCount; i++) {
+      for (int j = 0; j < rowCount; j++) {
+        // rows are written in the sort order
+        assertConsistent(prefixes[i], prefixes[j], i - j, keyPrefix.isCompleteKey());
+      }
+    }
+  }
+
+  @Test public void testPrefixOrderOfDoubleColumn() {
+    UnsafeRowKeyPrefix keyPrefix =
+        createKeyPrefix(new boolean[] { true }, 0, new DataType[] { DataTypes.DOUBLE });
+    double[] values = new double[] { Double.NEGATIVE_INFINITY, -2.5d, -1e-300d, -0.0d, 0.0d,
+        1e-300d, 2.5d, Double.POSITIVE_INFINITY, Double.NaN };
+    byte[] data = new byte[values.length * ROW_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < values.length; i++) {
+      buffer.position(i * ROW_SIZE);
+      buffer.putShort((short) 8);
+      buffer.putDouble(values[i]);
+    }
+    long[] prefixes = getPrefixes(keyPrefix, data, values.length);
+    for (int i = 0; i < values.length; i++) {
+      for (int j = 0; j < values.length; j++) {
+        assertConsistent(prefixes[i], prefixes[j], Double.compare(values[i], values[j]), false);
+      }
+    }
+  }
+
+  private static void assertConsistent(long prefixA, long prefixB, int expected,
+      boolean isCompleteKey) {
+    if (prefixA != prefixB) {
+      Assert.assertEquals(Integer.signum(expected), prefixA < prefixB ? -1 : 1);
+    } else if (isCompleteKey) {
+      Assert.assertEquals(0, expected);
+    }
+  }
+
+  private static long[] getPrefixes(UnsafeRowKeyPrefix keyPrefix, byte[] data, int rowCount) {
+    long[] prefixes = new long[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      prefixes[i] =
+          keyPrefix.getPrefix(data, CarbonUnsafe.BYTE_ARRAY_OFFSET + (long) i * ROW_SIZE);
+    }
+    return prefixes;
+  }
+
+  private static UnsafeRowKeyPrefix createKeyPrefix(final boolean[] isSortColNoDictFlags,
+      final int dictSortDimCnt, final DataType[] noDictDataTypes) {
+    new MockUp<TableFieldStat>() {
+      @Mock public void $init(SortParameters sortParameters) {
+      }
+
+      @Mock public boolean[] getIsSortColNoDictFlags() {
+        return isSortColNoDictFlags;
+      }
+
+      @Mock public int getDictSortDimCnt() {
+        return dictSortDimCnt;
+      }
+
+      @Mock public DataType[] getNoDictDataType() {
+        return noDictDataTypes;
+      }
+    };
+    return new UnsafeRowKeyPrefix(new TableFieldStat(null));
+  }
+}
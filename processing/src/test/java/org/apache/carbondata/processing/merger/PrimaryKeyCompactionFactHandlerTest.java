@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.processing.merger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.datastore.block.SegmentProperties;
+import org.apache.carbondata.core.datastore.row.CarbonRow;
+import org.apache.carbondata.core.datastore.row.WriteStepRowUtil;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyRowComparator;
+import org.apache.carbondata.core.scan.primarykey.merger.PrimaryKeyMerger;
+import org.apache.carbondata.processing.store.CarbonFactHandler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compacts versions of a key while an older version stays in a segment outside the compaction,
+ * the versions read after the compaction must merge to the same row as before.
+ */
+public class PrimaryKeyCompactionFactHandlerTest {
+
+  // columns of the flattened row: id, name, timestamp, deletestatus, amount
+  private static final int ID = 0;
+  private static final int NAME = 1;
+  private static final int VERSION = 2;
+  private static final int DELETE_STATUS = 3;
+  private static final int AMOUNT = 4;
+
+  private static final int[] COLUMNS = new int[] { NAME, AMOUNT };
+
+  // version in the segment which is not compacted
+  private static final Object[] OUTSIDE_ROW = put(1, 1, "a", 10L);
+
+  @Test public void testDeleteOfKeyInOtherSegment() throws Exception {
+    List<Object[]> rows = Arrays.asList(put(1, 2, "b", 20L), delete(1, 3, 2, null, null));
+    List<Object[]> compacted = compact(rows, false);
+    PrimaryKeyMerger merger = mergeWithOutsideRow(compacted);
+    Assert.assertTrue(merger.isDeletedRow());
+    assertSameRead(rows, compacted);
+  }
+
+  @Test public void testColumnDeleteOfKeyInOtherSegment() throws Exception {
+    List<Object[]> rows =
+        Arrays.asList(put(1, 2, "b", 20L), delete(1, 3, 1, null, 0L));
+    List<Object[]> compacted = compact(rows, false);
+    PrimaryKeyMerger merger = mergeWithOutsideRow(compacted);
+    Assert.assertFalse(merger.isDeletedRow());
+    Assert.assertEquals("b", merger.getMergedRow()[NAME]);
+    Assert.assertNull(merger.getMergedRow()[AMOUNT]);
+    assertSameRead(rows, compacted);
+  }
+
+  @Test public void testUpdateAfterColumnDeleteOfKeyInOtherSegment() throws Exception {
+    List<Object[]> rows = Arrays.asList(delete(1, 2, 1, "x", 0L), put(1, 3, null, 30L),
+        put(2, 2, "c", 5L));
+    List<Object[]> compacted = compact(rows, false);
+    PrimaryKeyMerger merger = mergeWithOutsideRow(compacted);
+    Assert.assertFalse(merger.isDeletedRow());
+    Assert.assertNull(merger.getMergedRow()[NAME]);
+    Assert.assertEquals(30L, merger.getMergedRow()[AMOUNT]);
+    Assert.assertEquals(0L, merger.getMergedRow()[DELETE_STATUS]);
+    assertSameRead(rows, compacted);
+  }
+
+  @Test public void testColumnDeleteBetweenUpdatesOfNewKey() throws Exception {
+    List<Object[]> rows = Arrays.asList(put(6, 2, "f", 60L), delete(6, 3, 1, "x", null),
+        put(6, 4, null, 61L));
+    List<Object[]> compacted = compact(rows, false);
+    // the first row read is an update, the values of the delete are not taken as the row
+    Assert.assertEquals(0L, compacted.get(0)[DELETE_STATUS]);
+    PrimaryKeyMerger merger = merge(null, compacted);
+    Assert.assertNull(merger.getMergedRow()[NAME]);
+    Assert.assertEquals(61L, merger.getMergedRow()[AMOUNT]);
+    assertSameRow(merge(null, rows), merger);
+  }
+
+  @Test public void testDeletedKeyIsDroppedWhenAllSegmentsAreCompacted() throws Exception {
+    List<Object[]> rows = Arrays.asList(put(1, 1, "a", 10L), put(1, 2, "b", 20L),
+        delete(1, 3, 2, null, null), put(2, 1, "c", 5L), delete(2, 2, 1, null, 0L));
+    List<Object[]> compacted = compact(rows, true);
+    Assert.assertEquals(1, compacted.size());
+    Object[] row = compacted.get(0);
+    Assert.assertEquals(2, row[ID]);
+    Assert.assertEquals("c", row[NAME]);
+    Assert.assertNull(row[AMOUNT]);
+    // the collapsed row is a full row, not a column delete
+    Assert.assertEquals(0L, row[DELETE_STATUS]);
+    Assert.assertEquals(2L, row[VERSION]);
+  }
+
+  /**
+   * A stream segment is handed off while an older columnar segment holds the keys, the handoff
+   * compacts only the stream segment
+   */
+  @Test public void testHandoffOfUpdatesAndDeletes() throws Exception {
+    List<Object[]> columnarRows = Arrays.asList(put(1, 1, "a", 10L), put(2, 1, "b", 20L),
+        put(3, 1, "c", 30L));
+    List<Object[]> streamRows = Arrays.asList(put(1, 2, "a2", null), put(1, 4, null, 11L),
+        delete(2, 3, 2, null, null), delete(3, 2, 1, "x", null), put(3, 3, null, 31L),
+        put(4, 2, "d", 40L), delete(4, 3, 2, null, null), put(5, 2, "e", 50L),
+        delete(5, 3, 1, null, 0L));
+    List<Object[]> handedOff = compact(streamRows, false);
+    for (int id = 1; id <= 5; id++) {
+      Object[] columnarRow = id <= columnarRows.size() ? columnarRows.get(id - 1) : null;
+      PrimaryKeyMerger expected = merge(columnarRow, keyRows(streamRows, id));
+      PrimaryKeyMerger actual = merge(columnarRow, keyRows(handedOff, id));
+      assertSameRow(expected, actual);
+    }
+    Assert.assertEquals("a2",
+        merge(columnarRows.get(0), keyRows(handedOff, 1)).getMergedRow()[NAME]);
+    Assert.assertTrue(merge(columnarRows.get(1), keyRows(handedOff, 2)).isDeletedRow());
+    Assert.assertNull(
+        merge(columnarRows.get(2), keyRows(handedOff, 3)).getMergedRow()[NAME]);
+    Assert.assertTrue(merge(null, keyRows(handedOff, 4)).isDeletedRow());
+    Assert.assertNull(merge(null, keyRows(handedOff, 5)).getMergedRow()[AMOUNT]);
+  }
+
+  /**
+   * reads the key from the outside segment and the versions, once as they were before and once
+   * as they are compacted
+   */
+  private static void assertSameRead(List<Object[]> rows, List<Object[]> compacted) {
+    int id = (int) OUTSIDE_ROW[ID];
+    assertSameRow(merge(OUTSIDE_ROW, keyRows(rows, id)),
+        merge(OUTSIDE_ROW, keyRows(compacted, id)));
+  }
+
+  private static void assertSameRow(PrimaryKeyMerger expected, PrimaryKeyMerger actual) {
+    Assert.assertEquals(expected.isDeletedRow(), actual.isDeletedRow());
+    if (!expected.isDeletedRow()) {
+      for (int column : COLUMNS) {
+        Assert.assertEquals(expected.getMergedRow()[column], actual.getMergedRow()[column]);
+      }
+    }
+  }
+
+  private static List<Object[]> keyRows(List<Object[]> rows, int id) {
+    List<Object[]> keyRows = new ArrayList<>();
+    for (Object[] row : rows) {
+      if (row[ID].equals(id)) {
+        keyRows.add(row);
+      }
+    }
+    return keyRows;
+  }
+
+  private static PrimaryKeyMerger mergeWithOutsideRow(List<Object[]> rows) {
+    return merge(OUTSIDE_ROW, keyRows(rows, (int) OUTSIDE_ROW[ID]));
+  }
+
+  /**
+   * merges the versions of a key the way a query reads them, the older row first
+   */
+  private static PrimaryKeyMerger merge(Object[] olderRow, List<Object[]> rows) {
+    PrimaryKeyMerger merger = new PrimaryKeyMerger(
+        new PrimaryKeyRowComparator(new DataType[] { DataTypes.INT }, new int[] { ID }), VERSION,
+        DELETE_STATUS, COLUMNS);
+    List<Object[]> versions = new ArrayList<>();
+    if (olderRow != null) {
+      versions.add(olderRow);
+    }
+    versions.addAll(rows);
+    for (int i = 0; i < versions.size(); i++) {
+      if (i == 0) {
+        merger.addFreshRow(versions.get(i).clone());
+      } else {
+        Assert.assertTrue(merger.mergeRow(versions.get(i).clone()));
+      }
+    }
+    return merger;
+  }
+
+  private static List<Object[]> compact(List<Object[]> rows, boolean compactingAllSegments)
+      throws Exception {
+    final List<Object[]> written = new ArrayList<>();
+    CarbonFactHandler dataHandler = new CarbonFactHandler() {
+      @Override public void initialise() {
+      }
+
+      @Override public void addDataToStore(CarbonRow row) {
+        written.add(toFlatRow(row));
+      }
+
+      @Override public void finish() {
+      }
+
+      @Override public void closeHandler() {
+      }
+    };
+    PrimaryKeyCompactionFactHandler handler =
+        new PrimaryKeyCompactionFactHandler(dataHandler, getSegmentProperties(), Long.MAX_VALUE);
+    handler.setCompactingAllSegments(compactingAllSegments);
+    handler.initialise();
+    for (Object[] row : rows) {
+      handler.addDataToStore(toWriteStepRow(row));
+    }
+    handler.finish();
+    handler.closeHandler();
+    return written;
+  }
+
+  private static Object[] put(int id, long version, String name, Long amount) {
+    return new Object[] { id, name, version, 0L, amount };
+  }
+
+  /**
+   * a delete of the given delete status, the columns which are not null are deleted
+   */
+  private static Object[] delete(int id, long version, long deleteStatus, String name,
+      Long amount) {
+    return new Object[] { id, name, version, deleteStatus, amount };
+  }
+
+  private static CarbonRow toWriteStepRow(Object[] row) {
+    byte[] name = row[NAME] == null ?
+        CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY :
+        ((String) row[NAME]).getBytes();
+    return WriteStepRowUtil.fromColumnCategory(new int[0], new Object[] { row[ID], name },
+        new Object[] { row[VERSION], row[DELETE_STATUS], row[AMOUNT] });
+  }
+
+  private static Object[] toFlatRow(CarbonRow row) {
+    Object[] noDictionary = WriteStepRowUtil.getNoDictAndComplexDimension(row);
+    Object[] measures = WriteStepRowUtil.getMeasure(row);
+    byte[] name = (byte[]) noDictionary[1];
+    return new Object[] { noDictionary[0],
+        Arrays.equals(name, CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY) ?
+            null :
+            new String(name), measures[0], measures[1], measures[2] };
+  }
+
+  private static SegmentProperties getSegmentProperties() {
+    List<ColumnSchema> columns = new ArrayList<>();
+    ColumnSchema id = getColumn("id", DataTypes.INT, true);
+    id.setPrimaryKeyColumn(true);
+    id.setSortColumn(true);
+    columns.add(id);
+    columns.add(getColumn("name", DataTypes.STRING, true));
+    columns.add(getColumn("timestamp", DataTypes.LONG, false));
+    columns.add(getColumn("deletestatus", DataTypes.LONG, false));
+    columns.add(getColumn("amount", DataTypes.LONG, false));
+    int[] cardinality = new int[columns.size()];
+    Arrays.fill(cardinality, -1);
+    return new SegmentProperties(columns, cardinality);
+  }
+
+  private static ColumnSchema getColumn(String name, DataType dataType, boolean isDimension) {
+    ColumnSchema column = new ColumnSchema();
+    column.setColumnName(name);
+    column.setColumnUniqueId(UUID.randomUUID().toString());
+    column.setDataType(dataType);
+    column.setDimensionColumn(isDimension);
+    column.setEncodingList(new ArrayList<Encoding>());
+    column.setNumberOfChild(0);
+    return column;
+  }
+}
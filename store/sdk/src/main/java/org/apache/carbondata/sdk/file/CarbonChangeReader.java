@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.sdk.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.carbondata.common.annotations.InterfaceAudience;
+import org.apache.carbondata.common.annotations.InterfaceStability;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyAsOfFilter;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyExternalSorter;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyLookup;
+import org.apache.carbondata.core.util.ByteUtil;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Reads the net changes of a primary key table between two versions. Every key with a version
+ * written in (fromVersion, toVersion] is returned once, tagged with the change from its state as
+ * of fromVersion to its state as of toVersion.
+ *
+ * The changed keys are found by a scan of the raw versions filtered on the version window, so
+ * only the blocklets whose version range intersects the window are read. The keys are sorted
+ * with bounded memory, spilling to local disk, and read back without duplicates. The state of
+ * the changed keys at both ends of the window is then looked up through the primary key merge,
+ * one reader per version for every batch of consecutive keys, pruned on the primary key, so the
+ * cost is proportional to the changes and not to the table.
+ */
+@InterfaceAudience.User
+@InterfaceStability.Evolving
+public class CarbonChangeReader {
+
+  /**
+   * Type of the net change of a key in the window
+   */
+  public enum ChangeType {
+    /**
+     * key not present as of fromVersion and present as of toVersion
+     */
+    INSERT,
+    /**
+     * key present at both versions and written in between
+     */
+    UPDATE,
+    /**
+     * key present as of fromVersion and deleted as of toVersion
+     */
+    DELETE
+  }
+
+  /**
+   * Net change of a key
+   */
+  public static class Change {
+
+    private ChangeType type;
+
+    private Object[] row;
+
+    Change(ChangeType type, Object[] row) {
+      this.type = type;
+      this.row = row;
+    }
+
+    public ChangeType getType() {
+      return type;
+    }
+
+    /**
+     * Returns the row as of toVersion, as of fromVersion for a delete. Values are in the order of
+     * {@link CarbonChangeReader#getColumnNames()}
+     */
+    public Object[] getRow() {
+      return row;
+    }
+  }
+
+  /**
+   * max number of keys looked up in one read of each version. The lookup filter is an IN of the
+   * leading key column and a hash set of the keys, so its size does not depend on the number of
+   * key columns.
+   */
+  private static final int LOOKUP_BATCH_SIZE = 32000;
+
+  /**
+   * max number of changed keys sorted in memory, the keys beyond it are spilled in sorted runs
+   */
+  private static final int KEY_SORT_ROW_LIMIT = 500000;
+
+  private static final Comparator<Object[]> KEY_COMPARATOR = new KeyComparator();
+
+  private String tablePath;
+
+  private String tableName;
+
+  private Configuration hadoopConf;
+
+  private CarbonTable table;
+
+  private long fromVersion;
+
+  private long toVersion;
+
+  private String[] columnNames;
+
+  private int[] keyIndexes;
+
+  private int lookupBatchSize = LOOKUP_BATCH_SIZE;
+
+  private PrimaryKeyExternalSorter keySorter;
+
+  private Iterator<Object[]> changedKeys;
+
+  private Object[] lastKey;
+
+  private Iterator<Change> changes;
+
+  CarbonChangeReader(String tablePath, String tableName, Configuration hadoopConf,
+      long fromVersion, long toVersion) {
+    if (fromVersion < 0 || toVersion <= fromVersion) {
+      throw new IllegalArgumentException(
+          "Invalid version window (" + fromVersion + ", " + toVersion + "]");
+    }
+    this.tablePath = tablePath;
+    this.tableName = tableName;
+    this.hadoopConf = hadoopConf;
+    this.fromVersion = fromVersion;
+    this.toVersion = toVersion;
+  }
+
+  /**
+   * Finds the keys changed in the window
+   */
+  void initialize() throws IOException, InterruptedException {
+    table = CarbonTable.buildTable(tablePath, tableName, hadoopConf);
+    List<CarbonColumn> columns = table.getCreateOrderColumn(table.getTableName());
+    List<CarbonColumn> keyColumns = PrimaryKeyLookup.getPrimaryKeyColumns(table);
+    String[] columnNames = new String[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      columnNames[i] = columns.get(i).getColName();
+    }
+    String[] keyColumnNames = new String[keyColumns.size()];
+    int[] keyIndexes = new int[keyColumns.size()];
+    for (int i = 0; i < keyColumns.size(); i++) {
+      keyColumnNames[i] = keyColumns.get(i).getColName();
+      keyIndexes[i] = Arrays.asList(columnNames).indexOf(keyColumnNames[i]);
+    }
+    initialize(columnNames, keyIndexes);
+    // the row reader returns every version without the primary key merge, so the keys whose only
+    // version in the window is a delete are found as well
+    CarbonReader<Object> reader = CarbonReader.builder(tablePath, tableName)
+        .withHadoopConf(hadoopConf)
+        .projection(keyColumnNames)
+        .filter(PrimaryKeyAsOfFilter.createWindowExpression(table, fromVersion, toVersion))
+        .withRowRecordReader()
+        .build();
+    try {
+      while (reader.hasNext()) {
+        addChangedKey((Object[]) reader.readNextRow());
+      }
+      sortChangedKeys();
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      close();
+      throw e;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @param columnNames names of the columns of the changed rows
+   * @param keyIndexes  indexes of the primary key columns in the changed rows
+   */
+  void initialize(String[] columnNames, int[] keyIndexes) {
+    this.columnNames = columnNames;
+    this.keyIndexes = keyIndexes;
+    this.keySorter = new PrimaryKeyExternalSorter(KEY_COMPARATOR, KEY_SORT_ROW_LIMIT,
+        PrimaryKeyExternalSorter.getTempLocations(hadoopConf));
+    this.changes = new ArrayList<Change>().iterator();
+  }
+
+  /**
+   * Adds a key written in the window, a key may be added once for each of its versions
+   */
+  void addChangedKey(Object[] key) throws IOException {
+    keySorter.addRow(key);
+  }
+
+  void sortChangedKeys() throws IOException {
+    changedKeys = keySorter.sort();
+  }
+
+  void setLookupBatchSize(int lookupBatchSize) {
+    this.lookupBatchSize = lookupBatchSize;
+  }
+
+  /**
+   * Returns the names of the columns of the changed rows, in the order of the table schema
+   */
+  public String[] getColumnNames() {
+    return columnNames;
+  }
+
+  public boolean hasNext() throws IOException, InterruptedException {
+    while (!changes.hasNext()) {
+      List<Object[]> batch = nextKeys();
+      if (batch.isEmpty()) {
+        return false;
+      }
+      changes = readChanges(batch).iterator();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the next batch of distinct changed keys, the keys are sorted so the versions of a key
+   * are adjacent
+   */
+  private List<Object[]> nextKeys() {
+    List<Object[]> batch = new ArrayList<>();
+    while (changedKeys.hasNext() && batch.size() < lookupBatchSize) {
+      Object[] key = changedKeys.next();
+      if (lastKey == null || KEY_COMPARATOR.compare(lastKey, key) != 0) {
+        batch.add(key);
+        lastKey = key;
+      }
+    }
+    return batch;
+  }
+
+  public Change next() throws IOException, InterruptedException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return changes.next();
+  }
+
+  /**
+   * Compares the state of the keys as of both versions
+   */
+  private List<Change> readChanges(List<Object[]> keys)
+      throws IOException, InterruptedException {
+    // both versions are read with the same filter
+    Expression lookupExpression = createLookupExpression(keys);
+    Map<List<Object>, Object[]> before = fromVersion == 0 ?
+        new HashMap<List<Object>, Object[]>() :
+        lookup(keys, lookupExpression, fromVersion);
+    Map<List<Object>, Object[]> after = lookup(keys, lookupExpression, toVersion);
+    List<Change> batchChanges = new ArrayList<>(keys.size());
+    for (Object[] key : keys) {
+      Object[] oldRow = before.get(Arrays.asList(key));
+      Object[] newRow = after.get(Arrays.asList(key));
+      if (newRow != null) {
+        ChangeType type = oldRow == null ? ChangeType.INSERT : ChangeType.UPDATE;
+        batchChanges.add(new Change(type, newRow));
+      } else if (oldRow != null) {
+        batchChanges.add(new Change(ChangeType.DELETE, oldRow));
+      }
+      // a key inserted and deleted in the window has no net change
+    }
+    return batchChanges;
+  }
+
+  /**
+   * Returns the filter of the rows of the keys, see {@link CarbonReaderBuilder#lookup(List)}
+   */
+  Expression createLookupExpression(List<Object[]> keys) {
+    return PrimaryKeyLookup.createFilterExpression(table, keys);
+  }
+
+  /**
+   * Returns the rows of the keys present as of the version, deleted keys are not returned by the
+   * primary key merge
+   */
+  Map<List<Object>, Object[]> lookup(List<Object[]> keys, Expression lookupExpression,
+      long version) throws IOException, InterruptedException {
+    CarbonReader<Object> reader = CarbonReader.builder(tablePath, tableName)
+        .withHadoopConf(hadoopConf)
+        .projection(columnNames)
+        .filter(lookupExpression)
+        .asOf(version)
+        .build();
+    Map<List<Object>, Object[]> rows = new HashMap<>(keys.size());
+    try {
+      while (reader.hasNext()) {
+        Object[] row = (Object[]) reader.readNextRow();
+        Object[] key = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+          key[i] = row[keyIndexes[i]];
+        }
+        rows.put(Arrays.asList(key), row);
+      }
+    } finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  /**
+   * Releases the changes not read yet and deletes the spilled keys
+   */
+  public void close() {
+    if (keySorter != null) {
+      keySorter.close();
+      keySorter = null;
+    }
+    changedKeys = null;
+    changes = null;
+  }
+
+  /**
+   * Orders the keys returned by the row reader on their values
+   */
+  private static class KeyComparator implements Comparator<Object[]> {
+
+    @SuppressWarnings("unchecked")
+    @Override public int compare(Object[] key1, Object[] key2) {
+      for (int i = 0; i < key1.length; i++) {
+        Object value1 = key1[i];
+        Object value2 = key2[i];
+        int diff;
+        if (value1 == null || value2 == null) {
+          diff = value1 == null ? (value2 == null ? 0 : -1) : 1;
+        } else if (value1 instanceof byte[]) {
+          diff = ByteUtil.UnsafeComparer.INSTANCE.compareTo((byte[]) value1, (byte[]) value2);
+        } else {
+          diff = ((Comparable<Object>) value1).compareTo(value2);
+        }
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return 0;
+    }
+  }
+}
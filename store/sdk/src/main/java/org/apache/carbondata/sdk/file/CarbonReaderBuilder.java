@@ -29,8 +29,10 @@ import org.apache.carbondata.core.datamap.DataMapStoreManager;
 import org.apache.carbondata.core.datastore.impl.FileFactory;
 import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
 import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.expression.logical.AndExpression;
 import org.apache.carbondata.core.scan.model.ProjectionDimension;
 import org.apache.carbondata.core.scan.model.QueryModel;
+import org.apache.carbondata.core.scan.primarykey.PrimaryKeyLookup;
 import org.apache.carbondata.core.util.CarbonProperties;
 import org.apache.carbondata.core.util.CarbonSessionInfo;
 import org.apache.carbondata.core.util.CarbonUtil;
@@ -57,6 +59,8 @@ public class CarbonReaderBuilder {
   private String tableName;
   private Configuration hadoopConf;
   private boolean useVectorReader = true;
+  private List<Object[]> primaryKeys;
+  private long asOfTimestamp;
 
   /**
    * Construct a CarbonReaderBuilder with table path and table name
@@ -95,6 +99,37 @@ public class CarbonReaderBuilder {
     return this;
   }
 
+  /**
+   * Configure the reader to return only the rows of the given primary keys. The blocklets are
+   * pruned on the primary key and only the versions of these keys are merged, so a batch of keys
+   * is looked up without scanning the table.
+   *
+   * @param primaryKeys values of the primary key columns of every key, in the order of the
+   *                    primary key columns in the schema
+   * @return CarbonReaderBuilder object
+   */
+  public CarbonReaderBuilder lookup(List<Object[]> primaryKeys) {
+    Objects.requireNonNull(primaryKeys);
+    this.primaryKeys = primaryKeys;
+    return this;
+  }
+
+  /**
+   * Configure the reader to read the primary key table as of the given version. Every key is read
+   * at its latest version written at or before the timestamp, the blocklets written after it are
+   * not read.
+   *
+   * @param asOfTimestamp latest version to read
+   * @return CarbonReaderBuilder object
+   */
+  public CarbonReaderBuilder asOf(long asOfTimestamp) {
+    if (asOfTimestamp <= 0) {
+      throw new IllegalArgumentException("As-of timestamp must be positive: " + asOfTimestamp);
+    }
+    this.asOfTimestamp = asOfTimestamp;
+    return this;
+  }
+
   /**
    * To support hadoop configuration
    *
@@ -146,6 +181,32 @@ public class CarbonReaderBuilder {
     return this;
   }
 
+  /**
+   * Build a reader of the net changes of the primary key table between two versions. Only the
+   * table path, table name and hadoop configuration of this builder are used.
+   *
+   * @param fromVersion changes written after this version are read, 0 to read from the start
+   * @param toVersion   changes written at or before this version are read
+   * @return CarbonChangeReader
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public CarbonChangeReader buildChangeReader(long fromVersion, long toVersion)
+      throws IOException, InterruptedException {
+    if (projectionColumns != null || filterExpression != null || primaryKeys != null
+        || asOfTimestamp > 0) {
+      throw new UnsupportedOperationException(
+          "Projection, filter, lookup and as-of are not supported by the change reader");
+    }
+    if (hadoopConf == null) {
+      hadoopConf = FileFactory.getConfiguration();
+    }
+    CarbonChangeReader reader =
+        new CarbonChangeReader(tablePath, tableName, hadoopConf, fromVersion, toVersion);
+    reader.initialize();
+    return reader;
+  }
+
   /**
    * Build CarbonReader
    *
@@ -168,9 +229,19 @@ public class CarbonReaderBuilder {
     format.setTablePath(job.getConfiguration(), table.getTablePath());
     format.setTableName(job.getConfiguration(), table.getTableName());
     format.setDatabaseName(job.getConfiguration(), table.getDatabaseName());
-    if (filterExpression != null) {
-      format.setFilterPredicates(job.getConfiguration(), filterExpression);
+    Expression filter = filterExpression;
+    if (primaryKeys != null) {
+      Expression lookupExpression = PrimaryKeyLookup.createFilterExpression(table, primaryKeys);
+      filter = filter == null ? lookupExpression : new AndExpression(filter, lookupExpression);
+    }
+    if (filter != null) {
+      format.setFilterPredicates(job.getConfiguration(), filter);
+    }
+    if (asOfTimestamp > 0) {
+      // the input format adds the as-of filter to the filter predicates
+      format.setAsOfTimestamp(job.getConfiguration(), asOfTimestamp);
     }
+    boolean hasFilter = filter != null || asOfTimestamp > 0;
 
     if (projectionColumns != null) {
       // set the user projection
@@ -187,7 +258,7 @@ public class CarbonReaderBuilder {
 
     try {
 
-      if (filterExpression == null) {
+      if (!hasFilter) {
         job.getConfiguration().set("filter_blocks", "false");
       }
       List<InputSplit> splits =
@@ -206,7 +277,7 @@ public class CarbonReaderBuilder {
           }
         }
         if (useVectorReader && !hasComplex) {
-          queryModel.setDirectVectorFill(filterExpression == null);
+          queryModel.setDirectVectorFill(!hasFilter);
           reader = new CarbonVectorizedRecordReader(queryModel);
         } else {
           reader = format.createRecordReader(split, attempt);
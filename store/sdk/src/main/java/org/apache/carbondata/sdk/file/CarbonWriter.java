@@ -37,6 +37,14 @@ public abstract class CarbonWriter {
    */
   public abstract void write(Object object) throws IOException;
 
+  /**
+   * Write a row of typed values in the order of the schema, without the conversion of the values
+   * to string. Strings may be given as UTF-8 bytes, dates and timestamps as Date or milliseconds.
+   * Note: This API is not thread safe
+   */
+  public void writeTypedRow(Object[] row) throws IOException {
+    throw new UnsupportedOperationException("Typed row write is not supported by this writer");
+  }
 
   /**
    * Flushes the written data to disk
@@ -19,24 +19,17 @@ package org.apache.carbondata.sdk.file;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 import org.apache.carbondata.common.logging.LogServiceFactory;
 import org.apache.carbondata.core.constants.CarbonCommonConstants;
-import org.apache.carbondata.core.datamap.Segment;
 import org.apache.carbondata.core.datastore.filesystem.CarbonFile;
-import org.apache.carbondata.core.datastore.filesystem.CarbonFileFilter;
 import org.apache.carbondata.core.datastore.impl.FileFactory;
 import org.apache.carbondata.core.metadata.ColumnarFormatVersion;
 import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
-import org.apache.carbondata.core.metadata.datatype.DataType;
 import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
-import org.apache.carbondata.core.metadata.schema.table.column.CarbonMeasure;
-import org.apache.carbondata.core.stream.StreamFile;
-import org.apache.carbondata.core.stream.StreamPruner;
+import org.apache.carbondata.core.stream.StreamIndexJournal;
 import org.apache.carbondata.core.util.CarbonMetadataUtil;
 import org.apache.carbondata.core.util.path.CarbonTablePath;
 import org.apache.carbondata.core.writer.CarbonIndexFileWriter;
@@ -47,15 +40,15 @@ import org.apache.carbondata.processing.loading.model.CarbonLoadModel;
 import org.apache.carbondata.streaming.CarbonStreamOutputFormat;
 import org.apache.carbondata.streaming.CarbonStreamRecordWriter;
 import org.apache.carbondata.streaming.index.StreamFileIndex;
+import org.apache.carbondata.streaming.segment.StreamHandoffService;
 import org.apache.carbondata.streaming.segment.StreamSegment;
+import org.apache.carbondata.streaming.segment.StreamSegmentLease;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
 import org.apache.log4j.Logger;
 
-import static org.apache.carbondata.streaming.segment.StreamSegment.updateStreamFileIndex;
-
 public class RowFormatCarbonWriter extends CarbonWriter {
 
   private static final Logger LOGGER =
@@ -75,32 +68,63 @@ public class RowFormatCarbonWriter extends CarbonWriter {
 
   private long segmentMaxConfigSize;
 
+  // the stream segment is checked on every flush without reading the table status
+  private StreamSegmentLease segmentLease;
+
+  private long segmentSizeRefreshMillis;
+
+  private StreamSegmentSize segmentSize;
+
+  // length of the current file already added to the segment size
+  private long countedFileLen;
+
+  // index of the current file, written to the index file on the first blocklet and on close
+  private StreamFileIndex fileIndex;
+
+  // the other blocklets of the current file are appended to the journal of the index file
+  private StreamIndexJournal indexJournal;
+
+  private boolean journalUpdated;
+
   public RowFormatCarbonWriter(CarbonLoadModel loadModel, Configuration hadoopConf)
       throws IOException {
     this.loadModel = loadModel;
     this.hadoopConf = hadoopConf;
     segmentMaxConfigSize = Long.parseLong(
         hadoopConf.get("carbon.streamsegment.maxsize", String.valueOf((long) (100 * 1024 * 1024))));
-    createWriter(loadModel, hadoopConf);
+    segmentSizeRefreshMillis =
+        Long.parseLong(hadoopConf.get("carbon.streamsegment.size.refresh.ms", "30000"));
+    segmentLease =
+        StreamSegmentLease.acquire(loadModel.getCarbonDataLoadSchema().getCarbonTable());
+    try {
+      createWriter(loadModel, hadoopConf);
+    } catch (IOException e) {
+      segmentLease.release();
+      throw e;
+    }
   }
 
   private void createWriter(CarbonLoadModel loadModel, Configuration hadoopConf)
       throws IOException {
     CarbonTable carbonTable = loadModel.getCarbonDataLoadSchema().getCarbonTable();
-    String segmentId = StreamSegment.open(carbonTable);
+    String segmentId = segmentLease.getSegmentId();
     boolean createWriter = false;
     // Close the writer if the segment is changed.
     if (this.segmentId == null || !this.segmentId.equals(segmentId)) {
       createWriter = true;
       closeWriterAndCreateSegDir(carbonTable, segmentId);
     } else {
-      CarbonFile segmentDir = FileFactory
-          .getCarbonFile(CarbonTablePath.getSegmentPath(carbonTable.getTablePath(), segmentId));
       // If the segment size reaches limit then create new writer.
-      if (segmentDir.exists() && segmentMaxConfigSize <= getSegmentSize(segmentDir)) {
-        segmentId = StreamSegment.close(carbonTable, segmentId);
+      if (segmentMaxConfigSize <= segmentSize.getSize(segmentSizeRefreshMillis)) {
+        StreamSegmentSize
+            .remove(CarbonTablePath.getSegmentPath(carbonTable.getTablePath(), segmentId));
+        segmentId = segmentLease.rollover(segmentId);
         createWriter = true;
         closeWriterAndCreateSegDir(carbonTable, segmentId);
+        if (StreamHandoffService.isAutoHandoffEnabled()) {
+          // the finished segment is converted to columnar format in the background
+          StreamHandoffService.getInstance().submit(carbonTable);
+        }
       }
     }
 
@@ -113,6 +137,12 @@ public class RowFormatCarbonWriter extends CarbonWriter {
       recordWriter =
           new CarbonStreamRecordWriter(new TaskAttemptContextImpl(hadoopConf, new TaskAttemptID()),
               loadModel);
+      segmentSize = StreamSegmentSize
+          .get(CarbonTablePath.getSegmentPath(carbonTable.getTablePath(), segmentId));
+      countedFileLen = 0;
+      fileIndex = null;
+      indexJournal = new StreamIndexJournal(getIndexFilePath());
+      journalUpdated = false;
     }
   }
 
@@ -122,6 +152,7 @@ public class RowFormatCarbonWriter extends CarbonWriter {
     FileFactory.mkdirs(segmentPath, FileFactory.getFileType(segmentPath));
     if (recordWriter != null) {
       recordWriter.close(null);
+      checkpointIndexFile();
       CarbonFile carbonFile = FileFactory
           .getCarbonFile(recordWriter.getSegmentDir() + "/" + recordWriter.getFileName());
       System.out.println(carbonFile.getLength());
@@ -133,6 +164,11 @@ public class RowFormatCarbonWriter extends CarbonWriter {
     blockletRowCount++;
   }
 
+  @Override public void writeTypedRow(Object[] row) throws IOException {
+    recordWriter.writeTypedRow(row);
+    blockletRowCount++;
+  }
+
   @Override public void flushBatch() throws IOException {
     flush();
     // Just check if the segment size reaches limit and create writer if it so.
@@ -141,63 +177,82 @@ public class RowFormatCarbonWriter extends CarbonWriter {
 
   private void flush() throws IOException {
     if (recordWriter.appendBlockletToDataFile()) {
-      StreamFileIndex streamBlockIndex = createStreamBlockIndex(recordWriter.getFileName(),
-          recordWriter.getBatchMinMaxIndexWithoutMerge(), blockletRowCount,
-          recordWriter.getRunningFileLen());
-      CarbonTable carbonTable = loadModel.getCarbonDataLoadSchema().getCarbonTable();
-      List<CarbonMeasure> measures = carbonTable.getMeasures();
-      DataType[] msrDataTypes = new DataType[measures.size()];
-      for (int i = 0; i < measures.size(); i++) {
-        msrDataTypes[i] = measures.get(i).getDataType();
+      segmentSize.add(recordWriter.getRunningFileLen() - countedFileLen);
+      countedFileLen = recordWriter.getRunningFileLen();
+      List<BlockletMinMaxIndex> blockletMinMaxIndexes = recordWriter.takeBlockletMinMaxIndexes();
+      List<Long> blockletOffsets = recordWriter.takeBlockletOffsets();
+      if (fileIndex == null) {
+        fileIndex = createStreamBlockIndex(recordWriter.getFileName(),
+            recordWriter.getBatchMinMaxIndexWithoutMerge(), blockletRowCount,
+            recordWriter.getRunningFileLen());
+        fileIndex.setBlockletMinMaxIndexes(new ArrayList<>(blockletMinMaxIndexes));
+        fileIndex.setBlockletOffsets(new ArrayList<>(blockletOffsets));
+        // the index file is written on the first blocklet, so the readers list the file
+        writeIndexFile();
+      } else {
+        // the min/max of the record writer is of all the blocklets of the file
+        fileIndex.setMinMaxIndex(recordWriter.getBatchMinMaxIndexWithoutMerge());
+        fileIndex.setRowCount(fileIndex.getRowCount() + blockletRowCount);
+        fileIndex.setFileLen(recordWriter.getRunningFileLen());
+        if (fileIndex.getBlockletMinMaxIndexes() != null) {
+          fileIndex.getBlockletMinMaxIndexes().addAll(blockletMinMaxIndexes);
+        }
+        fileIndex.getBlockletOffsets().addAll(blockletOffsets);
+        appendIndexJournal(blockletMinMaxIndexes, blockletOffsets);
       }
-      // update data file info in index file
-      updateIndexFile(carbonTable.getTablePath(), streamBlockIndex, msrDataTypes);
       blockletRowCount = 0;
     }
   }
 
   @Override public void close() throws IOException {
-    flush();
-    recordWriter.close(null);
+    try {
+      flush();
+      recordWriter.close(null);
+      checkpointIndexFile();
+    } finally {
+      segmentLease.release();
+    }
+  }
+
+  private String getIndexFilePath() {
+    return CarbonTablePath.getCarbonIndexFilePath(
+        loadModel.getCarbonDataLoadSchema().getCarbonTable().getTablePath(),
+        loadModel.getTaskNo(), segmentId, "0", "0", ColumnarFormatVersion.R1);
   }
 
   /**
-   * TODO Optimize me
-   * Gets the segment size using index files, we cannot directly ask HDFS to give size as until
-   * file closes data length is not available to namenode.
-   *
-   * @param segmentDir
-   * @return
-   * @throws IOException
+   * Appends the record of the last blocklet to the index journal, the whole index file is
+   * written instead if the append fails, as the journal may end in a partial record
    */
-  private long getSegmentSize(CarbonFile segmentDir) throws IOException {
-    CarbonFile[] files = segmentDir.listFiles(new CarbonFileFilter() {
-      @Override public boolean accept(CarbonFile file) {
-        return file.getName().endsWith(CarbonTablePath.INDEX_FILE_EXT);
-      }
-    });
-    List<StreamFile> streamFiles = new ArrayList<>();
-    for (CarbonFile index : files) {
-      StreamPruner.readIndexAndgetStreamFiles(false, streamFiles, Segment.toSegment("0"),
-          segmentDir.getAbsolutePath(), index.getAbsolutePath());
+  private void appendIndexJournal(List<BlockletMinMaxIndex> blockletMinMaxIndexes,
+      List<Long> blockletOffsets) throws IOException {
+    StreamFileIndex blockletIndex = createStreamBlockIndex(fileIndex.getFileName(),
+        fileIndex.getMinMaxIndex(), blockletRowCount, fileIndex.getFileLen());
+    blockletIndex.setBlockletMinMaxIndexes(blockletMinMaxIndexes);
+    blockletIndex.setBlockletOffsets(blockletOffsets);
+    BlockIndex record = createBlockIndex(blockletIndex);
+    record.setOffset(blockletOffsets.get(0));
+    try {
+      indexJournal.append(record);
+      journalUpdated = true;
+    } catch (IOException e) {
+      LOGGER.warn("Failed to append to the index journal, writing the index file", e);
+      writeIndexFile();
     }
-    long size = 0;
-    for (StreamFile file : streamFiles) {
-      size += file.getFileSize();
+  }
+
+  /**
+   * Writes the blocklets in the index journal to the index file and deletes the journal
+   */
+  private void checkpointIndexFile() throws IOException {
+    if (journalUpdated) {
+      writeIndexFile();
     }
-    return size;
   }
 
-  private void updateIndexFile(String tablePath, StreamFileIndex fileIndex, DataType[] msrDataTypes)
-      throws IOException {
-    FileFactory.FileType fileType = FileFactory.getFileType(tablePath);
-    String filePath = CarbonTablePath
-        .getCarbonIndexFilePath(tablePath, loadModel.getTaskNo(), segmentId, "0", "0",
-            ColumnarFormatVersion.R1);
-    // update min/max index
-    Map<String, StreamFileIndex> indexMap = new HashMap<>();
-    indexMap.put(fileIndex.getFileName(), fileIndex);
-    updateStreamFileIndex(indexMap, filePath, fileType, msrDataTypes);
+  private void writeIndexFile() throws IOException {
+    String filePath = getIndexFilePath();
+    FileFactory.FileType fileType = FileFactory.getFileType(filePath);
     //    if (indexHeader == null) {
     //      CarbonTable carbonTable = loadModel.getCarbonDataLoadSchema().getCarbonTable();
     //      int[] cardinality =
@@ -215,26 +270,7 @@ public class RowFormatCarbonWriter extends CarbonWriter {
       //      if (false) {
       //        writer.writeThrift(indexHeader);
       //      }
-      BlockIndex blockIndex;
-      for (Map.Entry<String, StreamFileIndex> entry : indexMap.entrySet()) {
-        blockIndex = new BlockIndex();
-        blockIndex.setFile_name(entry.getKey());
-        blockIndex.setFile_size(entry.getValue().getFileLen());
-        blockIndex.setOffset(-1);
-        // set min/max index
-        BlockletIndex blockletIndex = new BlockletIndex();
-        blockIndex.setBlock_index(blockletIndex);
-        StreamFileIndex streamFileIndex = indexMap.get(blockIndex.getFile_name());
-        if (streamFileIndex != null) {
-          blockletIndex.setMin_max_index(
-              CarbonMetadataUtil.convertMinMaxIndex(streamFileIndex.getMinMaxIndex()));
-          blockIndex.setNum_rows(streamFileIndex.getRowCount());
-        } else {
-          blockIndex.setNum_rows(-1);
-        }
-        // write block index
-        writer.writeThrift(blockIndex);
-      }
+      writer.writeThrift(createBlockIndex(fileIndex));
       writer.close();
       CarbonFile tempFile = FileFactory.getCarbonFile(tempFilePath, fileType);
       if (!tempFile.renameForce(filePath)) {
@@ -249,6 +285,24 @@ public class RowFormatCarbonWriter extends CarbonWriter {
       }
       throw ex;
     }
+    // the journal records are in the index file now, a reader skips them if the delete fails
+    indexJournal.delete();
+    journalUpdated = false;
+  }
+
+  private static BlockIndex createBlockIndex(StreamFileIndex streamFileIndex) {
+    BlockIndex blockIndex = new BlockIndex();
+    blockIndex.setFile_name(streamFileIndex.getFileName());
+    blockIndex.setFile_size(streamFileIndex.getFileLen());
+    blockIndex.setOffset(-1);
+    // set min/max index
+    BlockletIndex blockletIndex = new BlockletIndex();
+    blockIndex.setBlock_index(blockletIndex);
+    blockletIndex.setMin_max_index(
+        CarbonMetadataUtil.convertMinMaxIndex(streamFileIndex.getMinMaxIndex()));
+    blockIndex.setNum_rows(streamFileIndex.getRowCount());
+    StreamSegment.setBlockletIndexes(blockIndex, streamFileIndex);
+    return blockIndex;
   }
 
   /**
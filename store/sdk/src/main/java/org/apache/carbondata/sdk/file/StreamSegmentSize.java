@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.sdk.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.carbondata.core.datamap.Segment;
+import org.apache.carbondata.core.datastore.filesystem.CarbonFile;
+import org.apache.carbondata.core.datastore.filesystem.CarbonFileFilter;
+import org.apache.carbondata.core.datastore.impl.FileFactory;
+import org.apache.carbondata.core.stream.StreamFile;
+import org.apache.carbondata.core.stream.StreamPruner;
+import org.apache.carbondata.core.util.path.CarbonTablePath;
+
+/**
+ * Size of the stream segments written by the row format writers of this process, shared by the
+ * writers of a segment. The size is read from the index files of the segment when it is first
+ * asked for and again once the refresh interval has passed, which adds the files written by other
+ * processes. In between the writers add the bytes they append, so a flush does not list and read
+ * the index files. The size is an estimate used to decide when the segment is full.
+ */
+final class StreamSegmentSize {
+
+  private static final ConcurrentMap<String, StreamSegmentSize> SEGMENTS =
+      new ConcurrentHashMap<>();
+
+  private final String segmentPath;
+
+  // size read from the index files
+  private long indexedSize = -1;
+
+  private long refreshTime;
+
+  // bytes appended by the writers of this process after the index files are read
+  private long appendedSize;
+
+  private StreamSegmentSize(String segmentPath) {
+    this.segmentPath = segmentPath;
+  }
+
+  static StreamSegmentSize get(String segmentPath) {
+    StreamSegmentSize size = SEGMENTS.get(segmentPath);
+    if (size == null) {
+      StreamSegmentSize newSize = new StreamSegmentSize(segmentPath);
+      size = SEGMENTS.putIfAbsent(segmentPath, newSize);
+      if (size == null) {
+        size = newSize;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Forgets the size of a segment which is not written anymore
+   */
+  static void remove(String segmentPath) {
+    SEGMENTS.remove(segmentPath);
+  }
+
+  /**
+   * Adds the bytes appended to a file of the segment
+   */
+  synchronized void add(long bytes) {
+    appendedSize += bytes;
+  }
+
+  /**
+   * Returns the size of the segment, the index files are read if the last read is older than the
+   * refresh interval
+   */
+  synchronized long getSize(long refreshIntervalMillis) throws IOException {
+    long now = System.currentTimeMillis();
+    if (indexedSize < 0 || now - refreshTime >= refreshIntervalMillis) {
+      indexedSize = readSize();
+      appendedSize = 0;
+      refreshTime = now;
+    }
+    return indexedSize + appendedSize;
+  }
+
+  /**
+   * Gets the segment size using index files, we cannot directly ask HDFS to give size as until
+   * file closes data length is not available to namenode.
+   */
+  private long readSize() throws IOException {
+    CarbonFile segmentDir = FileFactory.getCarbonFile(segmentPath);
+    if (!segmentDir.exists()) {
+      return 0;
+    }
+    CarbonFile[] files = segmentDir.listFiles(new CarbonFileFilter() {
+      @Override public boolean accept(CarbonFile file) {
+        return file.getName().endsWith(CarbonTablePath.INDEX_FILE_EXT);
+      }
+    });
+    List<StreamFile> streamFiles = new ArrayList<>();
+    for (CarbonFile index : files) {
+      StreamPruner.readIndexAndgetStreamFiles(false, streamFiles, Segment.toSegment("0"),
+          segmentDir.getAbsolutePath(), index);
+    }
+    long size = 0;
+    for (StreamFile file : streamFiles) {
+      size += file.getFileSize();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.sdk.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.scan.expression.Expression;
+import org.apache.carbondata.core.scan.expression.LiteralExpression;
+import org.apache.carbondata.sdk.file.CarbonChangeReader.Change;
+import org.apache.carbondata.sdk.file.CarbonChangeReader.ChangeType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CarbonChangeReaderTest {
+
+  // versions of the table: id, name, version, deleted
+  private static final Object[][] VERSIONS = new Object[][] {
+      // updated in the window
+      { 1, "a", 5L, false }, { 1, "b", 15L, false },
+      // inserted in the window
+      { 2, "c", 15L, false },
+      // deleted in the window
+      { 3, "d", 5L, false }, { 3, null, 18L, true },
+      // inserted and deleted in the window
+      { 4, "e", 12L, false }, { 4, null, 16L, true },
+      // not changed in the window
+      { 5, "f", 5L, false }, { 6, "g", 25L, false } };
+
+  @Test public void testNetChanges() throws Exception {
+    TestChangeReader reader = createReader(10, 20);
+    List<Change> changes = readAll(reader);
+    Assert.assertEquals(3, changes.size());
+    assertChange(changes.get(0), ChangeType.UPDATE, 1, "b");
+    assertChange(changes.get(1), ChangeType.INSERT, 2, "c");
+    assertChange(changes.get(2), ChangeType.DELETE, 3, "d");
+    // one lookup of each version, with the same filter
+    Assert.assertEquals(Arrays.asList(10L, 20L), reader.lookupVersions);
+    Assert.assertEquals(1, reader.lookupExpressions);
+  }
+
+  @Test public void testChangesFromStartAreInserts() throws Exception {
+    TestChangeReader reader = createReader(0, 16);
+    List<Change> changes = readAll(reader);
+    Assert.assertEquals(4, changes.size());
+    assertChange(changes.get(0), ChangeType.INSERT, 1, "b");
+    assertChange(changes.get(1), ChangeType.INSERT, 2, "c");
+    assertChange(changes.get(2), ChangeType.INSERT, 3, "d");
+    assertChange(changes.get(3), ChangeType.INSERT, 5, "f");
+    // nothing exists before the start
+    Assert.assertEquals(Arrays.asList(16L), reader.lookupVersions);
+  }
+
+  @Test public void testKeysAreLookedUpOnceAcrossBatches() throws Exception {
+    TestChangeReader reader = createReader(10, 20);
+    reader.setLookupBatchSize(2);
+    List<Change> changes = readAll(reader);
+    Assert.assertEquals(3, changes.size());
+    assertChange(changes.get(0), ChangeType.UPDATE, 1, "b");
+    assertChange(changes.get(1), ChangeType.INSERT, 2, "c");
+    assertChange(changes.get(2), ChangeType.DELETE, 3, "d");
+    // keys 1, 2 and 3, 4 in two batches, though every key is added twice
+    Assert.assertEquals(Arrays.asList(10L, 20L, 10L, 20L), reader.lookupVersions);
+    Assert.assertEquals(2, reader.lookupExpressions);
+    List<Object> lookedUpKeys = new ArrayList<>();
+    for (List<Object[]> keys : reader.lookupKeys) {
+      for (Object[] key : keys) {
+        lookedUpKeys.add(key[0]);
+      }
+    }
+    Assert.assertEquals(Arrays.<Object>asList(1, 2, 1, 2, 3, 4, 3, 4), lookedUpKeys);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidWindow() {
+    new TestChangeReader(20, 20);
+  }
+
+  private static TestChangeReader createReader(long fromVersion, long toVersion)
+      throws IOException {
+    TestChangeReader reader = new TestChangeReader(fromVersion, toVersion);
+    reader.initialize(new String[] { "id", "name" }, new int[] { 0 });
+    // in reverse order and twice, as the versions of a key can be in any block
+    for (int i = VERSIONS.length - 1; i >= 0; i--) {
+      long version = (long) VERSIONS[i][2];
+      if (version > fromVersion && version <= toVersion) {
+        reader.addChangedKey(new Object[] { VERSIONS[i][0] });
+        reader.addChangedKey(new Object[] { VERSIONS[i][0] });
+      }
+    }
+    reader.sortChangedKeys();
+    return reader;
+  }
+
+  private static List<Change> readAll(CarbonChangeReader reader) throws Exception {
+    List<Change> changes = new ArrayList<>();
+    try {
+      while (reader.hasNext()) {
+        changes.add(reader.next());
+      }
+    } finally {
+      reader.close();
+    }
+    return changes;
+  }
+
+  private static void assertChange(Change change, ChangeType type, int id, String name) {
+    Assert.assertEquals(type, change.getType());
+    Assert.assertArrayEquals(new Object[] { id, name }, change.getRow());
+  }
+
+  /**
+   * Looks up the state of the keys as of a version in {@link #VERSIONS}
+   */
+  private static class TestChangeReader extends CarbonChangeReader {
+
+    private List<Long> lookupVersions = new ArrayList<>();
+
+    private List<List<Object[]>> lookupKeys = new ArrayList<>();
+
+    private int lookupExpressions;
+
+    private Expression lookupExpression;
+
+    TestChangeReader(long fromVersion, long toVersion) {
+      super(null, null, null, fromVersion, toVersion);
+    }
+
+    @Override Expression createLookupExpression(List<Object[]> keys) {
+      lookupExpressions++;
+      lookupExpression = new LiteralExpression(true, DataTypes.BOOLEAN);
+      return lookupExpression;
+    }
+
+    @Override Map<List<Object>, Object[]> lookup(List<Object[]> keys, Expression lookupExpression,
+        long version) {
+      Assert.assertSame(this.lookupExpression, lookupExpression);
+      lookupVersions.add(version);
+      lookupKeys.add(keys);
+      Map<List<Object>, Object[]> rows = new HashMap<>();
+      for (Object[] key : keys) {
+        Object[] latest = null;
+        for (Object[] row : VERSIONS) {
+          if (row[0].equals(key[0]) && (long) row[2] <= version) {
+            latest = row;
+          }
+        }
+        if (latest != null && !(boolean) latest[3]) {
+          rows.put(Arrays.asList(key), new Object[] { latest[0], latest[1] });
+        }
+      }
+      return rows;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.sdk.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.carbondata.common.exceptions.sql.InvalidLoadOptionException;
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.datamap.DataMapStoreManager;
+import org.apache.carbondata.core.metadata.AbsoluteTableIdentifier;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.statusmanager.LoadMetadataDetails;
+import org.apache.carbondata.core.statusmanager.SegmentStatus;
+import org.apache.carbondata.core.statusmanager.SegmentStatusManager;
+import org.apache.carbondata.core.util.path.CarbonTablePath;
+import org.apache.carbondata.streaming.segment.StreamHandoffService;
+import org.apache.carbondata.streaming.segment.StreamSegment;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamHandoffTest {
+
+  private static final long INSERT = 0;
+
+  private static final long DELETE = 1;
+
+  private String path;
+
+  private Schema schema;
+
+  @Before public void setUp() throws IOException {
+    path = new File("./testStreamHandoff").getCanonicalPath();
+    FileUtils.deleteDirectory(new File(path));
+    Field[] fields = new Field[4];
+    fields[0] = new Field("id", DataTypes.STRING);
+    fields[1] = new Field("name", DataTypes.STRING);
+    fields[2] = new Field("timestamp", DataTypes.LONG);
+    fields[3] = new Field("deletestatus", DataTypes.LONG);
+    schema = new Schema(fields);
+  }
+
+  @After public void tearDown() throws IOException {
+    DataMapStoreManager.getInstance().clearDataMaps(AbsoluteTableIdentifier.from(path));
+    FileUtils.deleteDirectory(new File(path));
+  }
+
+  @Test public void testAutoHandoffIsDisabledByDefault() {
+    Assert.assertFalse(StreamHandoffService.isAutoHandoffEnabled());
+  }
+
+  @Test public void testHandoffCollapsesVersions() throws Exception {
+    write(new String[][] {
+        { "k1", "a1", "1", "0" },
+        { "k2", "b1", "1", "0" },
+        { "k3", "c1", "1", "0" },
+        { "k1", "a2", "2", "0" },
+        { "k2", "", "3", "1" } });
+    CarbonTable table = getTable();
+    StreamSegment.finishStreaming(table);
+    Assert.assertEquals(1, StreamHandoffService.handoffFinishedSegments(table));
+
+    LoadMetadataDetails streamSegment = getSegment("0");
+    Assert.assertEquals(SegmentStatus.COMPACTED, streamSegment.getSegmentStatus());
+    LoadMetadataDetails newSegment = getSegment(streamSegment.getMergedLoadName());
+    Assert.assertEquals(SegmentStatus.SUCCESS, newSegment.getSegmentStatus());
+    // nothing is left to hand off
+    Assert.assertEquals(0, StreamHandoffService.handoffFinishedSegments(table));
+
+    List<Object[]> rows = read(CarbonTablePath.getSegmentPath(path, newSegment.getLoadName()));
+    Assert.assertEquals(3, rows.size());
+    assertRow(rows.get(0), "k1", "a2", 2, INSERT);
+    // the delete is kept, older segments may hold the key
+    assertRow(rows.get(1), "k2", null, 3, DELETE);
+    assertRow(rows.get(2), "k3", "c1", 1, INSERT);
+  }
+
+  @Test public void testFailedHandoffRemovesNewSegment() throws Exception {
+    write(new String[][] { { "k1", "a1", "1", "0" } });
+    CarbonTable table = getTable();
+    StreamSegment.finishStreaming(table);
+    // the stream files can not be read
+    File[] files = new File(CarbonTablePath.getSegmentPath(path, "0")).listFiles();
+    Assert.assertNotNull(files);
+    for (File file : files) {
+      if (file.getName().endsWith(CarbonTablePath.CARBON_DATA_EXT)) {
+        byte[] bytes = new byte[(int) file.length()];
+        Arrays.fill(bytes, (byte) -1);
+        FileOutputStream stream = new FileOutputStream(file);
+        stream.write(bytes);
+        stream.close();
+      }
+    }
+    try {
+      StreamHandoffService.handoffFinishedSegments(table);
+      Assert.fail("the handoff should fail");
+    } catch (IOException e) {
+      // expected
+    }
+    LoadMetadataDetails[] details =
+        SegmentStatusManager.readLoadMetadata(CarbonTablePath.getMetadataPath(path));
+    for (LoadMetadataDetails detail : details) {
+      Assert.assertNotEquals(SegmentStatus.INSERT_IN_PROGRESS, detail.getSegmentStatus());
+      if (!detail.getLoadName().equals("0")) {
+        Assert.assertFalse(
+            new File(CarbonTablePath.getSegmentPath(path, detail.getLoadName())).exists());
+      }
+    }
+    // the stream segment is handed off again by the next handoff
+    Assert.assertEquals(SegmentStatus.STREAMING_FINISH, getSegment("0").getSegmentStatus());
+  }
+
+  private CarbonWriterBuilder createBuilder() {
+    Map<String, String> tableProperties = new HashMap<>();
+    tableProperties.put(CarbonCommonConstants.PRIMARY_KEY_COLUMNS, "id");
+    return CarbonWriter.builder().outputPath(path).withTableProperties(tableProperties)
+        .withRowFormat(schema).writtenBy(StreamHandoffTest.class.getSimpleName());
+  }
+
+  private void write(String[][] rows) throws IOException, InvalidLoadOptionException {
+    CarbonWriter writer = createBuilder().build();
+    for (String[] row : rows) {
+      writer.write(row);
+    }
+    writer.close();
+  }
+
+  private CarbonTable getTable() throws IOException, InvalidLoadOptionException {
+    return createBuilder().buildLoadModel(schema).getCarbonDataLoadSchema().getCarbonTable();
+  }
+
+  private LoadMetadataDetails getSegment(String segmentId) {
+    for (LoadMetadataDetails detail : SegmentStatusManager
+        .readLoadMetadata(CarbonTablePath.getMetadataPath(path))) {
+      if (detail.getLoadName().equals(segmentId)) {
+        return detail;
+      }
+    }
+    throw new AssertionError("segment " + segmentId + " is not in the table status");
+  }
+
+  private static List<Object[]> read(String segmentPath) throws Exception {
+    // the row reader returns the delete rows too
+    CarbonReader reader = CarbonReader.builder(segmentPath, "_temp")
+        .projection(new String[] { "id", "name", "timestamp", "deletestatus" })
+        .withRowRecordReader().build();
+    List<Object[]> rows = new ArrayList<>();
+    while (reader.hasNext()) {
+      rows.add((Object[]) reader.readNextRow());
+    }
+    reader.close();
+    return rows;
+  }
+
+  private static void assertRow(Object[] row, String id, String name, long version,
+      long deleteStatus) {
+    Assert.assertEquals(id, row[0]);
+    if (name != null) {
+      Assert.assertEquals(name, row[1]);
+    }
+    Assert.assertEquals(version, row[2]);
+    Assert.assertEquals(deleteStatus, row[3]);
+  }
+}
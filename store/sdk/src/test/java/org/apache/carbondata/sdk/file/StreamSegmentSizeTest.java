@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.sdk.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamSegmentSizeTest {
+
+  private String path = new File("./testStreamSegmentSize/Segment_0").getAbsolutePath();
+
+  @Test
+  public void testAppendedBytesAreCountedUntilRefresh() throws IOException {
+    StreamSegmentSize size = StreamSegmentSize.get(path);
+    Assert.assertSame(size, StreamSegmentSize.get(path));
+    Assert.assertEquals(0, size.getSize(Long.MAX_VALUE));
+    size.add(100);
+    size.add(50);
+    Assert.assertEquals(150, size.getSize(Long.MAX_VALUE));
+    // the refresh reads the size from the index files, the segment has none
+    Assert.assertEquals(0, size.getSize(0));
+    StreamSegmentSize.remove(path);
+    Assert.assertNotSame(size, StreamSegmentSize.get(path));
+    StreamSegmentSize.remove(path);
+  }
+}
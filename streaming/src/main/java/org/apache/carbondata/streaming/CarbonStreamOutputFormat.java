@@ -49,6 +49,13 @@ public class CarbonStreamOutputFormat extends FileOutputFormat<Void, Object> {
 
   public static final int CARBON_STREAM_CACHE_SIZE_DEFAULT = 32 * 1024 * 1024;
 
+  /**
+   * whether the rows of a blocklet of a primary key table are sorted on the primary key
+   */
+  public static final String CARBON_STREAM_BLOCKLET_SORT = "carbon.stream.blocklet.sort";
+
+  public static final boolean CARBON_STREAM_BLOCKLET_SORT_DEFAULT = true;
+
   private static final String LOAD_Model = "mapreduce.output.carbon.load.model";
 
   private static final String SEGMENT_ID = "carbon.segment.id";
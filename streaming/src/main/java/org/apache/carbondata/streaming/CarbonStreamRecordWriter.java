@@ -84,6 +84,7 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
   private RowParser rowParser;
   private BadRecordsLogger badRecordLogger;
   private RowConverter converter;
+  private StreamTypedRowConverter typedConverter;
   private CarbonRow currentRow = new CarbonRow(null);
 
   // encoder
@@ -103,8 +104,13 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
   private boolean isFirstRow = true;
   private boolean hasException = false;
 
+  // primary key dimensions in key order, null if the blocklets are not sorted
+  private int[] primaryKeyDimensions;
+
   // batch level stats collector
   private BlockletMinMaxIndex batchMinMaxIndex;
+  private List<BlockletMinMaxIndex> blockletMinMaxIndexes = new ArrayList<>();
+  private List<Long> blockletOffsets = new ArrayList<>();
   private boolean isClosed = false;
 
   private long runningFileLen;
@@ -160,6 +166,39 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
       measureDataTypes[i] =
           dataFields[dimensionWithComplexCount + i].getColumn().getDataType();
     }
+    if (hadoopConf.getBoolean(CarbonStreamOutputFormat.CARBON_STREAM_BLOCKLET_SORT,
+        CarbonStreamOutputFormat.CARBON_STREAM_BLOCKLET_SORT_DEFAULT)) {
+      primaryKeyDimensions = getPrimaryKeyDimensions();
+    }
+  }
+
+  /**
+   * Returns the index of the primary key columns in the primitive dimensions, null if the table
+   * has no primary key or a primary key column is not a primitive dimension
+   */
+  private int[] getPrimaryKeyDimensions() {
+    String primaryKeyColumns = carbonTable.getTableInfo().getFactTable().getTableProperties()
+        .get(CarbonCommonConstants.PRIMARY_KEY_COLUMNS);
+    if (primaryKeyColumns == null || primaryKeyColumns.trim().isEmpty()) {
+      return null;
+    }
+    String[] columnNames = primaryKeyColumns.split(",");
+    int[] keyDimensions = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      keyDimensions[i] = -1;
+      for (int j = 0; j < isNoDictionaryDimensionColumn.length; j++) {
+        if (dataFields[j].getColumn().getColName().equalsIgnoreCase(columnNames[i].trim())) {
+          keyDimensions[i] = j;
+          break;
+        }
+      }
+      if (keyDimensions[i] < 0) {
+        LOGGER.warn("Primary key column " + columnNames[i]
+            + " is not a primitive dimension, stream blocklets are not sorted");
+        return null;
+      }
+    }
+    return keyDimensions;
   }
 
   private void initializeAtFirstRow() throws IOException {
@@ -205,6 +244,9 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
     output = new StreamBlockletWriter(maxCacheSize, maxRowNums, rowBufferSize,
         isNoDictionaryDimensionColumn.length, measureCount,
         measureDataTypes, compressorName);
+    if (primaryKeyDimensions != null) {
+      output.enableSort();
+    }
 
     isFirstRow = false;
   }
@@ -224,88 +266,136 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
       output.skipRow();
       currentRow.clearData();
     } else {
-      for (int i = 0; i < dataFields.length; i++) {
-        if (null == currentRow.getObject(i)) {
-          nullBitSet.set(i);
-        }
-      }
-      output.nextRow();
-      byte[] b = nullBitSet.toByteArray();
-      output.writeShort(b.length);
-      if (b.length > 0) {
-        output.writeBytes(b);
-      }
-      int dimCount = 0;
-      Object columnValue;
-      // primitive type dimension
-      for (; dimCount < isNoDictionaryDimensionColumn.length; dimCount++) {
-        columnValue = currentRow.getObject(dimCount);
-        if (null != columnValue) {
-          if (isNoDictionaryDimensionColumn[dimCount]) {
-            byte[] col = (byte[]) columnValue;
-            output.writeShort(col.length);
-            output.writeBytes(col);
-            output.dimStatsCollectors[dimCount].update(col);
-          } else {
-            output.writeInt((int) columnValue);
-            output.dimStatsCollectors[dimCount].update(ByteUtil.toBytes((int) columnValue));
-          }
-        } else {
-          output.dimStatsCollectors[dimCount].updateNull(0);
-        }
+      writeConvertedRow();
+    }
+
+    if (output.isFull()) {
+      appendBlockletToDataFile();
+    }
+  }
+
+  /**
+   * Writes a row of typed values in the input order of the load model, the values are encoded
+   * directly without the string conversion of {@link #write(Void, Object)}. Bad records are not
+   * handled, a value which can not be converted fails the write.
+   */
+  public void writeTypedRow(Object[] value) throws IOException {
+    if (isFirstRow) {
+      initializeAtFirstRow();
+    }
+    if (typedConverter == null) {
+      typedConverter = new StreamTypedRowConverter(dataFields,
+          isNoDictionaryDimensionColumn.length, dimensionWithComplexCount);
+    }
+    nullBitSet.clear();
+    currentRow.setRawData(value);
+    Object[] data = rowParser.parseRow(value);
+    typedConverter.convert(data);
+    currentRow.setData(data);
+    writeConvertedRow();
+
+    if (output.isFull()) {
+      appendBlockletToDataFile();
+    }
+  }
+
+  private void writeConvertedRow() throws IOException {
+    for (int i = 0; i < dataFields.length; i++) {
+      if (null == currentRow.getObject(i)) {
+        nullBitSet.set(i);
       }
-      // complex type dimension
-      for (; dimCount < dimensionWithComplexCount; dimCount++) {
-        columnValue = currentRow.getObject(dimCount);
-        if (null != columnValue) {
+    }
+    output.nextRow();
+    byte[] b = nullBitSet.toByteArray();
+    output.writeShort(b.length);
+    if (b.length > 0) {
+      output.writeBytes(b);
+    }
+    int dimCount = 0;
+    Object columnValue;
+    // primitive type dimension
+    for (; dimCount < isNoDictionaryDimensionColumn.length; dimCount++) {
+      columnValue = currentRow.getObject(dimCount);
+      if (null != columnValue) {
+        if (isNoDictionaryDimensionColumn[dimCount]) {
           byte[] col = (byte[]) columnValue;
           output.writeShort(col.length);
           output.writeBytes(col);
+          output.dimStatsCollectors[dimCount].update(col);
+        } else {
+          output.writeInt((int) columnValue);
+          output.dimStatsCollectors[dimCount].update(ByteUtil.toBytes((int) columnValue));
         }
+      } else {
+        output.dimStatsCollectors[dimCount].updateNull(0);
+      }
+    }
+    if (output.isSortRows()) {
+      output.setRowKey(getPrimaryKey());
+    }
+    // complex type dimension
+    for (; dimCount < dimensionWithComplexCount; dimCount++) {
+      columnValue = currentRow.getObject(dimCount);
+      if (null != columnValue) {
+        byte[] col = (byte[]) columnValue;
+        output.writeShort(col.length);
+        output.writeBytes(col);
       }
-      // measure
-      DataType dataType;
-      for (int msrCount = 0; msrCount < measureCount; msrCount++) {
-        columnValue = currentRow.getObject(dimCount + msrCount);
-        if (null != columnValue) {
-          dataType = measureDataTypes[msrCount];
-          if (dataType == DataTypes.BOOLEAN) {
-            output.writeBoolean((boolean) columnValue);
-            output.msrStatsCollectors[msrCount].update((byte) ((boolean) columnValue ? 1 : 0));
-          } else if (dataType == DataTypes.SHORT) {
-            output.writeShort((short) columnValue);
-            output.msrStatsCollectors[msrCount].update((short) columnValue);
-          } else if (dataType == DataTypes.INT) {
-            output.writeInt((int) columnValue);
-            output.msrStatsCollectors[msrCount].update((int) columnValue);
-          } else if (dataType == DataTypes.LONG) {
-            output.writeLong((long) columnValue);
-            output.msrStatsCollectors[msrCount].update((long) columnValue);
-          } else if (dataType == DataTypes.DOUBLE) {
-            output.writeDouble((double) columnValue);
-            output.msrStatsCollectors[msrCount].update((double) columnValue);
-          } else if (DataTypes.isDecimal(dataType)) {
-            BigDecimal val = (BigDecimal) columnValue;
-            byte[] bigDecimalInBytes = DataTypeUtil.bigDecimalToByte(val);
-            output.writeShort(bigDecimalInBytes.length);
-            output.writeBytes(bigDecimalInBytes);
-            output.msrStatsCollectors[msrCount].update((BigDecimal) columnValue);
-          } else {
-            String msg =
-                "unsupported data type:" + dataFields[dimCount + msrCount].getColumn().getDataType()
-                .getName();
-            LOGGER.error(msg);
-            throw new IOException(msg);
-          }
+    }
+    // measure
+    DataType dataType;
+    for (int msrCount = 0; msrCount < measureCount; msrCount++) {
+      columnValue = currentRow.getObject(dimCount + msrCount);
+      if (null != columnValue) {
+        dataType = measureDataTypes[msrCount];
+        if (dataType == DataTypes.BOOLEAN) {
+          output.writeBoolean((boolean) columnValue);
+          output.msrStatsCollectors[msrCount].update((byte) ((boolean) columnValue ? 1 : 0));
+        } else if (dataType == DataTypes.SHORT) {
+          output.writeShort((short) columnValue);
+          output.msrStatsCollectors[msrCount].update((short) columnValue);
+        } else if (dataType == DataTypes.INT) {
+          output.writeInt((int) columnValue);
+          output.msrStatsCollectors[msrCount].update((int) columnValue);
+        } else if (dataType == DataTypes.LONG) {
+          output.writeLong((long) columnValue);
+          output.msrStatsCollectors[msrCount].update((long) columnValue);
+        } else if (dataType == DataTypes.DOUBLE) {
+          output.writeDouble((double) columnValue);
+          output.msrStatsCollectors[msrCount].update((double) columnValue);
+        } else if (DataTypes.isDecimal(dataType)) {
+          BigDecimal val = (BigDecimal) columnValue;
+          byte[] bigDecimalInBytes = DataTypeUtil.bigDecimalToByte(val);
+          output.writeShort(bigDecimalInBytes.length);
+          output.writeBytes(bigDecimalInBytes);
+          output.msrStatsCollectors[msrCount].update((BigDecimal) columnValue);
         } else {
-          output.msrStatsCollectors[msrCount].updateNull(0);
+          String msg =
+              "unsupported data type:" + dataFields[dimCount + msrCount].getColumn().getDataType()
+              .getName();
+          LOGGER.error(msg);
+          throw new IOException(msg);
         }
+      } else {
+        output.msrStatsCollectors[msrCount].updateNull(0);
       }
     }
+  }
 
-    if (output.isFull()) {
-      appendBlockletToDataFile();
+  /**
+   * Returns the byte comparable primary key of the current row
+   */
+  private byte[][] getPrimaryKey() {
+    byte[][] key = new byte[primaryKeyDimensions.length][];
+    for (int i = 0; i < primaryKeyDimensions.length; i++) {
+      Object columnValue = currentRow.getObject(primaryKeyDimensions[i]);
+      if (null != columnValue) {
+        key[i] = isNoDictionaryDimensionColumn[primaryKeyDimensions[i]] ?
+            (byte[]) columnValue :
+            ByteUtil.toBytes((int) columnValue);
+      }
     }
+    return key;
   }
 
   private void writeFileHeader() throws IOException {
@@ -340,11 +430,13 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
     if (output == null || output.getRowIndex() == -1) {
       return false;
     }
+    blockletOffsets.add(runningFileLen);
     runningFileLen += output.apppendBlocklet(outputStream);
     outputStream.flush();
     if (outputStream instanceof FSDataOutputStream) {
       ((FSDataOutputStream)outputStream).hflush();
     }
+    blockletMinMaxIndexes.add(output.generateBlockletMinMax());
     if (!isClosed) {
       batchMinMaxIndex = StreamSegment.mergeBlockletMinMax(
           batchMinMaxIndex, output.generateBlockletMinMax(), measureDataTypes);
@@ -363,6 +455,32 @@ public class CarbonStreamRecordWriter extends RecordWriter<Void, Object> {
         batchMinMaxIndex, output.generateBlockletMinMax(), measureDataTypes);
   }
 
+  /**
+   * Returns the min/max of the blocklets appended since the last call, and of the buffered
+   * blocklet which is appended on close
+   */
+  public List<BlockletMinMaxIndex> takeBlockletMinMaxIndexes() {
+    List<BlockletMinMaxIndex> minMaxIndexes = blockletMinMaxIndexes;
+    if (output != null && output.getRowIndex() != -1) {
+      minMaxIndexes.add(output.generateBlockletMinMax());
+    }
+    blockletMinMaxIndexes = new ArrayList<>();
+    return minMaxIndexes;
+  }
+
+  /**
+   * Returns the start offsets of the blocklets appended since the last call, and of the buffered
+   * blocklet which is appended on close
+   */
+  public List<Long> takeBlockletOffsets() {
+    List<Long> offsets = blockletOffsets;
+    if (output != null && output.getRowIndex() != -1) {
+      offsets.add(runningFileLen);
+    }
+    blockletOffsets = new ArrayList<>();
+    return offsets;
+  }
+
   public long getRunningFileLen() {
     return runningFileLen;
   }
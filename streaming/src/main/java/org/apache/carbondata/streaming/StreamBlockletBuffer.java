@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import org.apache.carbondata.core.memory.CarbonUnsafe;
+import org.apache.carbondata.core.memory.MemoryBlock;
+import org.apache.carbondata.core.memory.UnsafeMemoryManager;
+
+/**
+ * Buffer of a stream blocklet, either an off-heap memory block of the unsafe working memory or
+ * a byte array. The values are accessed through unsafe with the base object and offset, which
+ * works for both.
+ *
+ * Released off-heap blocks are pooled and reused by the next blocklets and writers of the
+ * process, the pool keeps at most 1/8 of the working memory.
+ */
+class StreamBlockletBuffer {
+
+  private static final String POOL_TASK_ID = "StreamBlockletBufferPool";
+
+  private static final Deque<MemoryBlock> POOL = new ArrayDeque<>();
+
+  private static long pooledSize = 0;
+
+  private MemoryBlock memoryBlock;
+
+  private byte[] bytes;
+
+  private final Object baseObject;
+
+  private final long baseOffset;
+
+  private final int capacity;
+
+  private StreamBlockletBuffer(MemoryBlock memoryBlock) {
+    this.memoryBlock = memoryBlock;
+    this.baseObject = memoryBlock.getBaseObject();
+    this.baseOffset = memoryBlock.getBaseOffset();
+    this.capacity = (int) memoryBlock.size();
+  }
+
+  private StreamBlockletBuffer(byte[] bytes) {
+    this.bytes = bytes;
+    this.baseObject = bytes;
+    this.baseOffset = CarbonUnsafe.BYTE_ARRAY_OFFSET;
+    this.capacity = bytes.length;
+  }
+
+  /**
+   * Allocates a buffer of the size at least, off-heap if requested and the working memory has
+   * space, otherwise on heap
+   */
+  static StreamBlockletBuffer allocate(int size, boolean offHeap) {
+    if (offHeap) {
+      MemoryBlock block = takeFromPool(size);
+      if (block == null) {
+        block = UnsafeMemoryManager.INSTANCE.allocateOffHeapIfAvailable(POOL_TASK_ID, size);
+      }
+      if (block != null) {
+        return new StreamBlockletBuffer(block);
+      }
+      // the working memory is full, the compressor reads an on-heap buffer as a byte array
+    }
+    return new StreamBlockletBuffer(new byte[size]);
+  }
+
+  private static MemoryBlock takeFromPool(int size) {
+    synchronized (POOL) {
+      Iterator<MemoryBlock> iterator = POOL.iterator();
+      while (iterator.hasNext()) {
+        MemoryBlock block = iterator.next();
+        if (block.size() >= size) {
+          iterator.remove();
+          pooledSize -= block.size();
+          return block;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the off-heap block to the pool, or frees it if the pool is full
+   */
+  void release() {
+    if (memoryBlock == null) {
+      return;
+    }
+    MemoryBlock block = memoryBlock;
+    memoryBlock = null;
+    synchronized (POOL) {
+      if (pooledSize + block.size() <= UnsafeMemoryManager.INSTANCE.getUsableMemory() / 8) {
+        POOL.push(block);
+        pooledSize += block.size();
+        return;
+      }
+    }
+    UnsafeMemoryManager.INSTANCE.freeMemory(POOL_TASK_ID, block);
+  }
+
+  boolean isOffHeap() {
+    return memoryBlock != null;
+  }
+
+  /**
+   * the byte array of an on-heap buffer
+   */
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  Object getBaseObject() {
+    return baseObject;
+  }
+
+  long getBaseOffset() {
+    return baseOffset;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
@@ -19,6 +19,8 @@ package org.apache.carbondata.streaming;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import org.apache.carbondata.core.datastore.compression.Compressor;
 import org.apache.carbondata.core.datastore.compression.CompressorFactory;
@@ -26,9 +28,12 @@ import org.apache.carbondata.core.datastore.page.statistics.ColumnPageStatsColle
 import org.apache.carbondata.core.datastore.page.statistics.KeyPageStatsCollector;
 import org.apache.carbondata.core.datastore.page.statistics.PrimitivePageStatsCollector;
 import org.apache.carbondata.core.datastore.page.statistics.SimpleStatsResult;
+import org.apache.carbondata.core.memory.CarbonUnsafe;
+import org.apache.carbondata.core.memory.UnsafeMemoryManager;
 import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
 import org.apache.carbondata.core.metadata.datatype.DataType;
 import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.util.ByteUtil;
 import org.apache.carbondata.core.util.CarbonMetadataUtil;
 import org.apache.carbondata.core.util.CarbonUtil;
 import org.apache.carbondata.format.BlockletHeader;
@@ -41,7 +46,13 @@ import org.apache.carbondata.streaming.segment.StreamSegment;
  * stream blocklet writer
  */
 public class StreamBlockletWriter {
-  private byte[] buffer;
+  // rows of the blocklet, off-heap if the compressor can compress from an address
+  private StreamBlockletBuffer buffer;
+  private boolean offHeap;
+  // reused by the blocklets of the writer
+  private StreamBlockletBuffer sortBuffer;
+  private StreamBlockletBuffer compressBuffer;
+  private byte[] outputBytes;
   private int maxSize;
   private int maxRowNum;
   private int rowSize;
@@ -59,9 +70,13 @@ public class StreamBlockletWriter {
   // blocklet level Min/Max
   private BlockletMinMaxIndex blockletMinMaxIndex;
 
+  // start offset and primary key of every row, only when the rows are sorted
+  private boolean sortRows;
+  private int[] rowOffsets;
+  private byte[][][] rowKeys;
+
   StreamBlockletWriter(int maxSize, int maxRowNum, int rowSize, int dimCountWithoutComplex,
       int measureCount, DataType[] measureDataTypes, String compressorName) {
-    buffer = new byte[maxSize];
     this.maxSize = maxSize;
     this.maxRowNum = maxRowNum;
     this.rowSize = rowSize;
@@ -69,6 +84,8 @@ public class StreamBlockletWriter {
     this.measureCount = measureCount;
     this.measureDataTypes = measureDataTypes;
     this.compressor = CompressorFactory.getInstance().getCompressor(compressorName);
+    this.offHeap = UnsafeMemoryManager.isOffHeap() && compressor.supportUnsafe();
+    this.buffer = StreamBlockletBuffer.allocate(maxSize, offHeap);
     initializeStatsCollector();
   }
 
@@ -95,13 +112,29 @@ public class StreamBlockletWriter {
 
   private void ensureCapacity(int space) {
     int newcount = space + count;
-    if (newcount > buffer.length) {
-      byte[] newbuf = new byte[Math.max(newcount, buffer.length + rowSize)];
-      System.arraycopy(buffer, 0, newbuf, 0, count);
+    if (newcount > buffer.capacity()) {
+      StreamBlockletBuffer newbuf = StreamBlockletBuffer
+          .allocate(Math.max(newcount, buffer.capacity() + rowSize), offHeap);
+      CarbonUnsafe.getUnsafe().copyMemory(buffer.getBaseObject(), buffer.getBaseOffset(),
+          newbuf.getBaseObject(), newbuf.getBaseOffset(), count);
+      buffer.release();
       buffer = newbuf;
     }
   }
 
+  /**
+   * Sorts the rows of every blocklet on the primary key before it is compressed
+   */
+  void enableSort() {
+    sortRows = true;
+    rowOffsets = new int[Math.max(16, Math.min(maxRowNum + 1, 1024))];
+    rowKeys = new byte[rowOffsets.length][][];
+  }
+
+  boolean isSortRows() {
+    return sortRows;
+  }
+
   void reset() {
     count = 0;
     rowIndex = -1;
@@ -109,10 +142,6 @@ public class StreamBlockletWriter {
     blockletMinMaxIndex = null;
   }
 
-  byte[] getBytes() {
-    return buffer;
-  }
-
   int getCount() {
     return count;
   }
@@ -123,6 +152,21 @@ public class StreamBlockletWriter {
 
   void nextRow() {
     rowIndex++;
+    if (sortRows) {
+      if (rowIndex == rowOffsets.length) {
+        rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length * 2);
+        rowKeys = Arrays.copyOf(rowKeys, rowOffsets.length);
+      }
+      rowOffsets[rowIndex] = count;
+    }
+  }
+
+  /**
+   * Sets the primary key of the current row. Every value is byte comparable, null values are
+   * sorted first.
+   */
+  void setRowKey(byte[][] key) {
+    rowKeys[rowIndex] = key;
   }
 
   void skipRow() {
@@ -136,36 +180,31 @@ public class StreamBlockletWriter {
 
   void writeBoolean(boolean val) {
     ensureCapacity(1);
-    buffer[count] = (byte) (val ? 1 : 0);
+    CarbonUnsafe.getUnsafe().putByte(buffer.getBaseObject(), buffer.getBaseOffset() + count,
+        (byte) (val ? 1 : 0));
     count += 1;
   }
 
+  // the values are written in big endian
   void writeShort(int val) {
     ensureCapacity(2);
-    buffer[count + 1] = (byte) (val);
-    buffer[count] = (byte) (val >>> 8);
+    short v = (short) val;
+    CarbonUnsafe.getUnsafe().putShort(buffer.getBaseObject(), buffer.getBaseOffset() + count,
+        CarbonUnsafe.ISLITTLEENDIAN ? Short.reverseBytes(v) : v);
     count += 2;
   }
 
   void writeInt(int val) {
     ensureCapacity(4);
-    buffer[count + 3] = (byte) (val);
-    buffer[count + 2] = (byte) (val >>> 8);
-    buffer[count + 1] = (byte) (val >>> 16);
-    buffer[count] = (byte) (val >>> 24);
+    CarbonUnsafe.getUnsafe().putInt(buffer.getBaseObject(), buffer.getBaseOffset() + count,
+        CarbonUnsafe.ISLITTLEENDIAN ? Integer.reverseBytes(val) : val);
     count += 4;
   }
 
   void writeLong(long val) {
     ensureCapacity(8);
-    buffer[count + 7] = (byte) (val);
-    buffer[count + 6] = (byte) (val >>> 8);
-    buffer[count + 5] = (byte) (val >>> 16);
-    buffer[count + 4] = (byte) (val >>> 24);
-    buffer[count + 3] = (byte) (val >>> 32);
-    buffer[count + 2] = (byte) (val >>> 40);
-    buffer[count + 1] = (byte) (val >>> 48);
-    buffer[count] = (byte) (val >>> 56);
+    CarbonUnsafe.getUnsafe().putLong(buffer.getBaseObject(), buffer.getBaseOffset() + count,
+        CarbonUnsafe.ISLITTLEENDIAN ? Long.reverseBytes(val) : val);
     count += 8;
   }
 
@@ -179,7 +218,8 @@ public class StreamBlockletWriter {
 
   void writeBytes(byte[] b, int off, int len) {
     ensureCapacity(len);
-    System.arraycopy(b, off, buffer, count, len);
+    CarbonUnsafe.getUnsafe().copyMemory(b, CarbonUnsafe.BYTE_ARRAY_OFFSET + off,
+        buffer.getBaseObject(), buffer.getBaseOffset() + count, len);
     count += len;
   }
 
@@ -213,7 +253,67 @@ public class StreamBlockletWriter {
     return blockletMinMaxIndex;
   }
 
+  /**
+   * Reorders the rows of the buffer on the primary key, the stats do not depend on the order
+   */
+  private void sortRows() {
+    int rowCount = rowIndex + 1;
+    Integer[] order = new Integer[rowCount];
+    boolean sorted = true;
+    for (int i = 0; i < rowCount; i++) {
+      order[i] = i;
+      if (sorted && i > 0 && compareKeys(rowKeys[i - 1], rowKeys[i]) > 0) {
+        sorted = false;
+      }
+    }
+    if (sorted) {
+      return;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override public int compare(Integer o1, Integer o2) {
+        return compareKeys(rowKeys[o1], rowKeys[o2]);
+      }
+    });
+    if (sortBuffer == null || sortBuffer.capacity() < count) {
+      if (sortBuffer != null) {
+        sortBuffer.release();
+      }
+      sortBuffer = StreamBlockletBuffer.allocate(buffer.capacity(), offHeap);
+    }
+    long offset = sortBuffer.getBaseOffset();
+    for (int i = 0; i < rowCount; i++) {
+      int row = order[i];
+      int end = row == rowIndex ? count : rowOffsets[row + 1];
+      CarbonUnsafe.getUnsafe().copyMemory(buffer.getBaseObject(),
+          buffer.getBaseOffset() + rowOffsets[row], sortBuffer.getBaseObject(), offset,
+          end - rowOffsets[row]);
+      offset += end - rowOffsets[row];
+    }
+    StreamBlockletBuffer sortedBuffer = sortBuffer;
+    sortBuffer = buffer;
+    buffer = sortedBuffer;
+  }
+
+  private static int compareKeys(byte[][] key1, byte[][] key2) {
+    for (int i = 0; i < key1.length; i++) {
+      if (key1[i] == null || key2[i] == null) {
+        if (key1[i] != key2[i]) {
+          return key1[i] == null ? -1 : 1;
+        }
+        continue;
+      }
+      int compare = ByteUtil.UnsafeComparer.INSTANCE.compareTo(key1[i], key2[i]);
+      if (compare != 0) {
+        return compare;
+      }
+    }
+    return 0;
+  }
+
   int apppendBlocklet(DataOutputStream outputStream) throws IOException {
+    if (sortRows && rowIndex > 0) {
+      sortRows();
+    }
     int len = 0;
     outputStream.write(CarbonStreamOutputFormat.CARBON_SYNC_MARKER);
     len += CarbonStreamOutputFormat.CARBON_SYNC_MARKER.length;
@@ -236,14 +336,68 @@ public class StreamBlockletWriter {
     outputStream.write(headerBytes);
     len += headerBytes.length;
 
-    byte[] compressed = compressor.compressByte(getBytes(), getCount());
-    outputStream.writeInt(compressed.length);
+    int compressedLength = compress();
+    outputStream.writeInt(compressedLength);
     len += 4;
-    outputStream.write(compressed);
-    len += compressed.length;
+    outputStream.write(outputBytes, 0, compressedLength);
+    len += compressedLength;
     return len;
   }
 
+  /**
+   * Compresses the rows into outputBytes and returns the compressed length. An off-heap buffer
+   * is compressed from its address into a reused off-heap buffer, so a blocklet allocates
+   * nothing once the buffers are large enough.
+   */
+  private int compress() throws IOException {
+    if (!buffer.isOffHeap()) {
+      byte[] compressed = compressor.compressByte(buffer.getBytes(), count);
+      outputBytes = compressed;
+      return compressed.length;
+    }
+    int maxLength = (int) compressor.maxCompressedLength(count);
+    if (compressBuffer == null || compressBuffer.capacity() < maxLength) {
+      if (compressBuffer != null) {
+        compressBuffer.release();
+      }
+      compressBuffer = StreamBlockletBuffer.allocate(maxLength, true);
+    }
+    int compressedLength;
+    if (compressBuffer.isOffHeap()) {
+      compressedLength = (int) compressor.rawCompress(buffer.getBaseOffset(), count,
+          compressBuffer.getBaseOffset());
+      ensureOutputCapacity(compressedLength);
+      CarbonUnsafe.getUnsafe().copyMemory(null, compressBuffer.getBaseOffset(), outputBytes,
+          CarbonUnsafe.BYTE_ARRAY_OFFSET, compressedLength);
+    } else {
+      // the working memory is full
+      ensureOutputCapacity(count);
+      CarbonUnsafe.getUnsafe().copyMemory(null, buffer.getBaseOffset(), outputBytes,
+          CarbonUnsafe.BYTE_ARRAY_OFFSET, count);
+      outputBytes = compressor.compressByte(outputBytes, count);
+      compressedLength = outputBytes.length;
+    }
+    return compressedLength;
+  }
+
+  private void ensureOutputCapacity(int length) {
+    if (outputBytes == null || outputBytes.length < length) {
+      outputBytes = new byte[length];
+    }
+  }
+
+  /**
+   * Releases the buffers to the pool, the writer can not be used after it
+   */
   void close() {
+    buffer.release();
+    if (sortBuffer != null) {
+      sortBuffer.release();
+      sortBuffer = null;
+    }
+    if (compressBuffer != null) {
+      compressBuffer.release();
+      compressBuffer = null;
+    }
   }
 }
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Date;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryGenerator;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryKeyGeneratorFactory;
+import org.apache.carbondata.core.keygenerator.directdictionary.timestamp.DateDirectDictionaryGenerator;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.util.ByteUtil;
+import org.apache.carbondata.core.util.DataTypeUtil;
+import org.apache.carbondata.processing.loading.DataField;
+import org.apache.carbondata.processing.loading.exception.CarbonDataLoadingException;
+
+/**
+ * Converts the typed values of a row to the values encoded by the stream writer, without the
+ * string parsing of the row converter. The conversion of every column is chosen once from its
+ * data type.
+ *
+ * Accepted values are the java types of the column data type, any Number for the numeric types,
+ * String or UTF-8 bytes for string columns, and for date and timestamp columns a Date, the
+ * milliseconds as a Long, or for date columns the days since epoch as an Integer.
+ */
+public class StreamTypedRowConverter {
+
+  private static final int NO_DICTIONARY = 0;
+
+  private static final int DIRECT_DICTIONARY = 1;
+
+  private static final int MEASURE = 2;
+
+  private DataType[] dataTypes;
+
+  private int[] kinds;
+
+  private DirectDictionaryGenerator[] generators;
+
+  private int[] scales;
+
+  private int[] precisions;
+
+  public StreamTypedRowConverter(DataField[] dataFields, int noDictionaryMappingLength,
+      int dimensionWithComplexCount) {
+    dataTypes = new DataType[dataFields.length];
+    kinds = new int[dataFields.length];
+    generators = new DirectDictionaryGenerator[dataFields.length];
+    scales = new int[dataFields.length];
+    precisions = new int[dataFields.length];
+    for (int i = 0; i < dataFields.length; i++) {
+      CarbonColumn column = dataFields[i].getColumn();
+      dataTypes[i] = column.getDataType();
+      scales[i] = column.getColumnSchema().getScale();
+      precisions[i] = column.getColumnSchema().getPrecision();
+      if (i >= noDictionaryMappingLength && i < dimensionWithComplexCount) {
+        throw new UnsupportedOperationException(
+            "Complex column " + column.getColName() + " is not supported by the typed row write");
+      }
+      if (i >= dimensionWithComplexCount) {
+        kinds[i] = MEASURE;
+      } else if (column.hasEncoding(Encoding.DIRECT_DICTIONARY)) {
+        kinds[i] = DIRECT_DICTIONARY;
+        generators[i] =
+            DirectDictionaryKeyGeneratorFactory.getDirectDictionaryGenerator(dataTypes[i]);
+      } else if (column.hasEncoding(Encoding.DICTIONARY)) {
+        throw new UnsupportedOperationException("Dictionary column " + column.getColName()
+            + " is not supported by the typed row write");
+      } else {
+        kinds[i] = NO_DICTIONARY;
+      }
+    }
+  }
+
+  /**
+   * Converts the row in place, the values are in the order of the data fields
+   */
+  public void convert(Object[] row) {
+    for (int i = 0; i < row.length; i++) {
+      switch (kinds[i]) {
+        case NO_DICTIONARY:
+          row[i] = convertNoDictionary(row[i], dataTypes[i], scales[i], precisions[i]);
+          break;
+        case DIRECT_DICTIONARY:
+          row[i] = row[i] == null ?
+              CarbonCommonConstants.DIRECT_DICT_VALUE_NULL :
+              generators[i].generateKey(toMillis(row[i], dataTypes[i]));
+          break;
+        default:
+          row[i] = convertMeasure(row[i], dataTypes[i], scales[i], precisions[i]);
+      }
+    }
+  }
+
+  private static byte[] convertNoDictionary(Object value, DataType dataType, int scale,
+      int precision) {
+    if (value == null) {
+      // same as the null value of the row converter
+      return dataType == DataTypes.STRING ?
+          CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY :
+          CarbonCommonConstants.EMPTY_BYTE_ARRAY;
+    }
+    if (dataType == DataTypes.STRING || dataType == DataTypes.VARCHAR) {
+      byte[] bytes = value instanceof byte[] ? (byte[]) value : ByteUtil.toBytes(value.toString());
+      if (dataType == DataTypes.STRING
+          && bytes.length > CarbonCommonConstants.MAX_CHARS_PER_COLUMN_DEFAULT) {
+        throw new CarbonDataLoadingException(String.format(
+            "Dataload failed, String size cannot exceed %d bytes,"
+                + " please consider long string data type",
+            CarbonCommonConstants.MAX_CHARS_PER_COLUMN_DEFAULT));
+      }
+      return bytes;
+    } else if (dataType == DataTypes.BOOLEAN) {
+      return ByteUtil.toBytes((Boolean) value);
+    } else if (dataType == DataTypes.SHORT) {
+      return ByteUtil.toXorBytes(((Number) value).shortValue());
+    } else if (dataType == DataTypes.INT) {
+      return ByteUtil.toXorBytes(((Number) value).intValue());
+    } else if (dataType == DataTypes.LONG) {
+      return ByteUtil.toXorBytes(((Number) value).longValue());
+    } else if (dataType == DataTypes.DOUBLE) {
+      return ByteUtil.toXorBytes(((Number) value).doubleValue());
+    } else if (dataType == DataTypes.FLOAT) {
+      return ByteUtil.toXorBytes(((Number) value).floatValue());
+    } else if (dataType == DataTypes.BYTE) {
+      return new byte[] { ((Number) value).byteValue() };
+    } else if (dataType == DataTypes.TIMESTAMP) {
+      return ByteUtil.toXorBytes(toMillis(value, dataType));
+    } else if (DataTypes.isDecimal(dataType)) {
+      BigDecimal decimal = toDecimal(value, scale, precision);
+      return decimal == null ?
+          CarbonCommonConstants.EMPTY_BYTE_ARRAY :
+          DataTypeUtil.bigDecimalToByte(decimal);
+    }
+    throw new UnsupportedOperationException(
+        "Data type " + dataType.getName() + " is not supported by the typed row write");
+  }
+
+  private static Object convertMeasure(Object value, DataType dataType, int scale,
+      int precision) {
+    if (value == null) {
+      return null;
+    }
+    if (dataType == DataTypes.BOOLEAN) {
+      return (Boolean) value;
+    } else if (dataType == DataTypes.SHORT) {
+      return ((Number) value).shortValue();
+    } else if (dataType == DataTypes.INT) {
+      return ((Number) value).intValue();
+    } else if (dataType == DataTypes.LONG) {
+      return ((Number) value).longValue();
+    } else if (DataTypes.isDecimal(dataType)) {
+      return toDecimal(value, scale, precision);
+    } else {
+      double doubleValue = ((Number) value).doubleValue();
+      if (Double.isInfinite(doubleValue) || Double.isNaN(doubleValue)) {
+        return null;
+      }
+      return doubleValue;
+    }
+  }
+
+  /**
+   * Returns the decimal with the scale of the column, null if it exceeds the precision
+   */
+  private static BigDecimal toDecimal(Object value, int scale, int precision) {
+    BigDecimal decimal = value instanceof BigDecimal ?
+        (BigDecimal) value :
+        new BigDecimal(value.toString());
+    decimal = decimal.setScale(scale, RoundingMode.HALF_UP);
+    return decimal.precision() > precision ? null : decimal;
+  }
+
+  private static long toMillis(Object value, DataType dataType) {
+    if (value instanceof Date) {
+      return ((Date) value).getTime();
+    } else if (dataType == DataTypes.DATE && value instanceof Integer) {
+      return (Integer) value * DateDirectDictionaryGenerator.MILLIS_PER_DAY;
+    }
+    return ((Number) value).longValue();
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.carbondata.streaming.index;
 
 import java.io.Serializable;
+import java.util.List;
 
 import org.apache.carbondata.common.annotations.InterfaceAudience;
 import org.apache.carbondata.core.metadata.blocklet.index.BlockletMinMaxIndex;
@@ -36,6 +37,16 @@ public class StreamFileIndex implements Serializable {
 
   private long fileLen;
 
+  /**
+   * min/max of every blocklet of the file in file order, null if not known for all blocklets
+   */
+  private List<BlockletMinMaxIndex> blockletMinMaxIndexes;
+
+  /**
+   * start offset of every blocklet of the file in file order, null if not known for all blocklets
+   */
+  private List<Long> blockletOffsets;
+
   public StreamFileIndex(String fileName, BlockletMinMaxIndex minMaxIndex, long rowCount) {
     this.fileName = fileName;
     this.minMaxIndex = minMaxIndex;
@@ -73,4 +84,20 @@ public class StreamFileIndex implements Serializable {
   public void setFileLen(long fileLen) {
     this.fileLen = fileLen;
   }
+
+  public List<BlockletMinMaxIndex> getBlockletMinMaxIndexes() {
+    return blockletMinMaxIndexes;
+  }
+
+  public void setBlockletMinMaxIndexes(List<BlockletMinMaxIndex> blockletMinMaxIndexes) {
+    this.blockletMinMaxIndexes = blockletMinMaxIndexes;
+  }
+
+  public List<Long> getBlockletOffsets() {
+    return blockletOffsets;
+  }
+
+  public void setBlockletOffsets(List<Long> blockletOffsets) {
+    this.blockletOffsets = blockletOffsets;
+  }
 }
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.carbondata.common.exceptions.sql.InvalidLoadOptionException;
+import org.apache.carbondata.common.logging.LogServiceFactory;
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.datamap.Segment;
+import org.apache.carbondata.core.datastore.block.SegmentProperties;
+import org.apache.carbondata.core.datastore.impl.FileFactory;
+import org.apache.carbondata.core.locks.CarbonLockFactory;
+import org.apache.carbondata.core.locks.ICarbonLock;
+import org.apache.carbondata.core.locks.LockUsage;
+import org.apache.carbondata.core.metadata.AbsoluteTableIdentifier;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonColumn;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.scan.result.iterator.RawResultIterator;
+import org.apache.carbondata.core.statusmanager.LoadMetadataDetails;
+import org.apache.carbondata.core.statusmanager.SegmentStatus;
+import org.apache.carbondata.core.statusmanager.SegmentStatusManager;
+import org.apache.carbondata.core.util.CarbonProperties;
+import org.apache.carbondata.core.util.CarbonUtil;
+import org.apache.carbondata.core.util.path.CarbonTablePath;
+import org.apache.carbondata.hadoop.api.CarbonInputFormat;
+import org.apache.carbondata.hadoop.api.CarbonTableInputFormat;
+import org.apache.carbondata.hadoop.stream.StreamRecordReader;
+import org.apache.carbondata.processing.loading.model.CarbonLoadModel;
+import org.apache.carbondata.processing.loading.model.CarbonLoadModelBuilder;
+import org.apache.carbondata.processing.merger.CompactionResultSortProcessor;
+import org.apache.carbondata.processing.merger.CompactionType;
+import org.apache.carbondata.processing.util.CarbonDataProcessorUtil;
+import org.apache.carbondata.processing.util.CarbonLoaderUtil;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.log4j.Logger;
+
+/**
+ * Hands off the finished stream segments of a table to columnar segments without spark. The rows
+ * of all the files of a stream segment are read raw and written by one
+ * {@link CompactionResultSortProcessor}, which sorts them and, for a primary key table, collapses
+ * the versions of every key, so the new segment has one sorted block range. The older segments may
+ * hold the same keys, so the deletes of the stream segment are kept in the new segment. The new
+ * segment is marked success and the stream segment compacted in one write of the table status.
+ *
+ * Background handoffs run on a single thread, a table already waiting for handoff is not queued
+ * again. They run the handoff delay after the request and skip the segments finished less than
+ * the delay ago, so the other writers of a segment have switched to the new stream segment. The
+ * handoff lock keeps handoffs of the same table from other processes apart.
+ */
+public class StreamHandoffService {
+
+  private static final Logger LOGGER =
+      LogServiceFactory.getLogService(StreamHandoffService.class.getName());
+
+  private static final StreamHandoffService INSTANCE = new StreamHandoffService();
+
+  private final ScheduledExecutorService executor;
+
+  // paths of the tables waiting for handoff
+  private final Set<String> pendingTables =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private StreamHandoffService() {
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "StreamHandoffService");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public static StreamHandoffService getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Whether the sdk writers hand off the finished stream segments automatically, disabled by
+   * default so the writer processes do not compact unless asked to
+   */
+  public static boolean isAutoHandoffEnabled() {
+    return Boolean.parseBoolean(CarbonProperties.getInstance()
+        .getProperty(CarbonCommonConstants.ENABLE_SDK_AUTO_HANDOFF,
+            CarbonCommonConstants.ENABLE_SDK_AUTO_HANDOFF_DEFAULT));
+  }
+
+  private static long getHandoffDelayMillis() {
+    return Long.parseLong(CarbonProperties.getInstance()
+        .getProperty(CarbonCommonConstants.CARBON_STREAMING_HANDOFF_DELAY_MILLIS,
+            CarbonCommonConstants.CARBON_STREAMING_HANDOFF_DELAY_MILLIS_DEFAULT));
+  }
+
+  /**
+   * Hands off the finished stream segments of the table in the background
+   */
+  public void submit(final CarbonTable table) {
+    final String tablePath = table.getTablePath();
+    if (!pendingTables.add(tablePath)) {
+      return;
+    }
+    final long delayMillis = getHandoffDelayMillis();
+    executor.schedule(new Runnable() {
+      @Override public void run() {
+        // removed first, so a segment finished during the handoff triggers another one
+        pendingTables.remove(tablePath);
+        try {
+          handoffFinishedSegments(table, System.currentTimeMillis() - delayMillis);
+          if (getFinishedStreamSegment(table.getAbsoluteTableIdentifier(), Long.MAX_VALUE)
+              != null) {
+            // finished within the delay, or the handoff lock is held by another process
+            submit(table);
+          }
+        } catch (Throwable e) {
+          LOGGER.error("Handoff failed for table " + table.getDatabaseName() + "."
+              + table.getTableName(), e);
+        }
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Hands off all the finished stream segments of the table one by one. Returns the number of
+   * segments handed off, 0 also when another handoff of the table holds the handoff lock.
+   */
+  public static int handoffFinishedSegments(CarbonTable table) throws IOException {
+    return handoffFinishedSegments(table, Long.MAX_VALUE);
+  }
+
+  /**
+   * Hands off the stream segments finished before the given time
+   */
+  private static int handoffFinishedSegments(CarbonTable table, long finishedBefore)
+      throws IOException {
+    AbsoluteTableIdentifier identifier = table.getAbsoluteTableIdentifier();
+    ICarbonLock lock = CarbonLockFactory.getCarbonLockObj(identifier, LockUsage.HANDOFF_LOCK);
+    int count = 0;
+    try {
+      if (!lock.lockWithRetries()) {
+        LOGGER.info("Handoff of table " + table.getDatabaseName() + "." + table.getTableName()
+            + " is running elsewhere");
+        return count;
+      }
+      LOGGER.info("Acquired the handoff lock for table " + table.getDatabaseName() + "."
+          + table.getTableName());
+      String segmentId;
+      while ((segmentId = getFinishedStreamSegment(identifier, finishedBefore)) != null) {
+        handoffSegment(table, segmentId);
+        count++;
+      }
+    } finally {
+      lock.unlock();
+    }
+    return count;
+  }
+
+  private static String getFinishedStreamSegment(AbsoluteTableIdentifier identifier,
+      long finishedBefore) {
+    SegmentStatusManager segmentStatusManager = new SegmentStatusManager(identifier);
+    ICarbonLock statusLock = segmentStatusManager.getTableStatusLock();
+    LoadMetadataDetails[] details = null;
+    try {
+      if (statusLock.lockWithRetries()) {
+        details = SegmentStatusManager.readLoadMetadata(
+            CarbonTablePath.getMetadataPath(identifier.getTablePath()));
+      }
+    } finally {
+      statusLock.unlock();
+    }
+    if (details != null) {
+      for (LoadMetadataDetails detail : details) {
+        if (detail.getSegmentStatus() == SegmentStatus.STREAMING_FINISH
+            && detail.getLoadEndTime() < finishedBefore) {
+          return detail.getLoadName();
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes the stream segment to a new columnar segment and swaps them in the table status
+   */
+  private static void handoffSegment(CarbonTable table, String streamSegmentId)
+      throws IOException {
+    CarbonLoadModel loadModel = createLoadModel(table);
+    LoadMetadataDetails newMetaEntry = new LoadMetadataDetails();
+    CarbonLoaderUtil.populateNewLoadMetaEntry(newMetaEntry, SegmentStatus.INSERT_IN_PROGRESS,
+        loadModel.getFactTimeStamp(), false);
+    // sets the id of the new segment in the load model
+    if (!CarbonLoaderUtil.recordNewLoadMetadata(newMetaEntry, loadModel, true, false)) {
+      throw new IOException("Handoff failed to add a segment to the table status");
+    }
+    LOGGER.info("Handing off stream segment " + streamSegmentId + " of table "
+        + table.getDatabaseName() + "." + table.getTableName() + " to segment "
+        + loadModel.getSegmentId());
+    String tempLocationKey = CarbonDataProcessorUtil.getTempStoreLocationKey(
+        table.getDatabaseName(), table.getTableName(), loadModel.getSegmentId(),
+        loadModel.getTaskNo(), true, false);
+    boolean success = false;
+    try {
+      CarbonProperties.getInstance().addProperty(tempLocationKey,
+          System.getProperty("java.io.tmpdir") + File.separator + "carbon" + System.nanoTime()
+              + CarbonCommonConstants.UNDERSCORE + loadModel.getTaskNo());
+      CompactionResultSortProcessor processor = new CompactionResultSortProcessor(loadModel,
+          table, getSegmentProperties(table), CompactionType.STREAMING, table.getTableName(),
+          null);
+      // only the stream segment is written, deleted keys are kept as tombstones
+      processor.setCompactingAllSegments(false);
+      success = processor.execute(createIterators(table, streamSegmentId), null);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Handoff failed on stream segment " + streamSegmentId, e);
+    } finally {
+      CarbonProperties.getInstance().removeProperty(tempLocationKey);
+      if (!success) {
+        CarbonLoaderUtil.updateTableStatusForFailure(loadModel);
+        CarbonLoaderUtil.deleteSegment(loadModel, Integer.parseInt(loadModel.getSegmentId()));
+      }
+    }
+    if (!updateLoadMetadata(table, streamSegmentId, loadModel.getSegmentId())) {
+      CarbonLoaderUtil.updateTableStatusForFailure(loadModel);
+      CarbonLoaderUtil.deleteSegment(loadModel, Integer.parseInt(loadModel.getSegmentId()));
+      throw new IOException("Handoff failed due to failure in table status updation");
+    }
+  }
+
+  private static CarbonLoadModel createLoadModel(CarbonTable table) throws IOException {
+    CarbonLoadModel loadModel;
+    try {
+      loadModel = new CarbonLoadModelBuilder(table)
+          .build(new HashMap<String, String>(), System.currentTimeMillis(), "0");
+    } catch (InvalidLoadOptionException e) {
+      throw new IOException(e);
+    }
+    // the sdk tables are not transactional, but their stream segments are in the table status,
+    // so the new segment is recorded there and written to its own segment folder
+    loadModel.setCarbonTransactionalTable(true);
+    return loadModel;
+  }
+
+  /**
+   * Segment properties of the raw stream rows, the cardinality of the dictionary columns is
+   * unknown
+   */
+  private static SegmentProperties getSegmentProperties(CarbonTable table) {
+    List<ColumnSchema> columnSchemas = CarbonUtil.getColumnSchemaList(
+        table.getDimensionByTableName(table.getTableName()),
+        table.getMeasureByTableName(table.getTableName()));
+    int[] dimLensWithComplex = new int[columnSchemas.size()];
+    for (int i = 0; i < dimLensWithComplex.length; i++) {
+      dimLensWithComplex[i] = Integer.MAX_VALUE;
+    }
+    return new SegmentProperties(columnSchemas,
+        CarbonUtil.getFormattedCardinality(dimLensWithComplex, columnSchemas));
+  }
+
+  /**
+   * Raw row iterators of all the files of the stream segment, a file is opened on the first read
+   */
+  private static List<RawResultIterator> createIterators(CarbonTable table,
+      String streamSegmentId) throws IOException {
+    Configuration hadoopConf = new Configuration(FileFactory.getConfiguration());
+    CarbonInputFormat.setDatabaseName(hadoopConf, table.getDatabaseName());
+    CarbonInputFormat.setTableName(hadoopConf, table.getTableName());
+    CarbonInputFormat.setTablePath(hadoopConf, table.getTablePath());
+    CarbonInputFormat.setTableInfo(hadoopConf, table.getTableInfo());
+    List<CarbonColumn> columns = table.getStreamStorageOrderColumn(table.getTableName());
+    String[] projection = new String[columns.size()];
+    for (int i = 0; i < projection.length; i++) {
+      projection[i] = columns.get(i).getColName();
+    }
+    CarbonInputFormat.setColumnProjection(hadoopConf, projection);
+    CarbonTableInputFormat<Object[]> format = new CarbonTableInputFormat<>();
+    List<Segment> segments = new ArrayList<>(1);
+    segments.add(Segment.toSegment(streamSegmentId, null));
+    List<InputSplit> splits =
+        format.getSplitsOfStreaming(Job.getInstance(hadoopConf), segments, table);
+    List<RawResultIterator> iterators = new ArrayList<>(splits.size());
+    for (InputSplit split : splits) {
+      iterators.add(new StreamingRawResultIterator(format, split,
+          new TaskAttemptContextImpl(hadoopConf, new TaskAttemptID())));
+    }
+    return iterators;
+  }
+
+  /**
+   * Marks the new segment success and the stream segment compacted into it
+   */
+  private static boolean updateLoadMetadata(CarbonTable table, String streamSegmentId,
+      String newSegmentId) throws IOException {
+    AbsoluteTableIdentifier identifier = table.getAbsoluteTableIdentifier();
+    SegmentStatusManager segmentStatusManager = new SegmentStatusManager(identifier);
+    ICarbonLock statusLock = segmentStatusManager.getTableStatusLock();
+    try {
+      if (!statusLock.lockWithRetries()) {
+        LOGGER.error("Not able to acquire the lock for Table status updation for table "
+            + table.getDatabaseName() + "." + table.getTableName());
+        return false;
+      }
+      LoadMetadataDetails[] details =
+          SegmentStatusManager.readLoadMetadata(table.getMetadataPath());
+      LoadMetadataDetails newSegment = null;
+      LoadMetadataDetails streamSegment = null;
+      for (LoadMetadataDetails detail : details) {
+        if (detail.getLoadName().equals(newSegmentId)) {
+          newSegment = detail;
+        } else if (detail.getLoadName().equals(streamSegmentId)) {
+          streamSegment = detail;
+        }
+      }
+      if (newSegment == null || streamSegment == null) {
+        LOGGER.error("Failed to find segment " + newSegmentId + " or stream segment "
+            + streamSegmentId + " in the table status");
+        return false;
+      }
+      newSegment.setSegmentStatus(SegmentStatus.SUCCESS);
+      newSegment.setLoadEndTime(System.currentTimeMillis());
+      CarbonLoaderUtil.addDataIndexSizeIntoMetaEntry(newSegment, newSegmentId, table);
+      streamSegment.setSegmentStatus(SegmentStatus.COMPACTED);
+      streamSegment.setMergedLoadName(newSegmentId);
+      SegmentStatusManager.writeLoadDetailsIntoFile(
+          CarbonTablePath.getTableStatusFilePath(identifier.getTablePath()), details);
+      return true;
+    } finally {
+      statusLock.unlock();
+    }
+  }
+
+  /**
+   * Raw rows of a stream file, in the stream storage order of the columns
+   */
+  private static class StreamingRawResultIterator extends RawResultIterator {
+
+    private CarbonTableInputFormat<Object[]> format;
+
+    private InputSplit split;
+
+    private TaskAttemptContext context;
+
+    private StreamRecordReader reader;
+
+    StreamingRawResultIterator(CarbonTableInputFormat<Object[]> format, InputSplit split,
+        TaskAttemptContext context) {
+      super(null, null, null, true);
+      this.format = format;
+      this.split = split;
+      this.context = context;
+    }
+
+    @Override public boolean hasNext() {
+      try {
+        if (reader == null) {
+          reader = new StreamRecordReader(format.createQueryModel(split, context), true);
+          reader.initialize(split, context);
+        }
+        return reader.nextKeyValue();
+      } catch (IOException | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override public Object[] next() {
+      try {
+        Object[] row = (Object[]) reader.getCurrentValue();
+        // the reader reuses the row
+        Object[] copy = new Object[row.length];
+        System.arraycopy(row, 0, copy, 0, row.length);
+        return copy;
+      } catch (IOException | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override public void close() {
+      super.close();
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          LOGGER.error(e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming.segment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of the recovery of a stream segment, updated by the recovery threads
+ */
+public class StreamRecoveryProgress {
+
+  private final String segmentDir;
+
+  private final long startTime = System.currentTimeMillis();
+
+  private int totalFiles;
+
+  private final AtomicInteger checkedFiles = new AtomicInteger();
+
+  // files of the same length as in the index, not opened
+  private final AtomicInteger skippedFiles = new AtomicInteger();
+
+  private final AtomicInteger truncatedFiles = new AtomicInteger();
+
+  private final AtomicInteger deletedFiles = new AtomicInteger();
+
+  StreamRecoveryProgress(String segmentDir) {
+    this.segmentDir = segmentDir;
+  }
+
+  void setTotalFiles(int totalFiles) {
+    this.totalFiles = totalFiles;
+  }
+
+  void fileSkipped() {
+    skippedFiles.incrementAndGet();
+    checkedFiles.incrementAndGet();
+  }
+
+  void fileTruncated() {
+    truncatedFiles.incrementAndGet();
+    checkedFiles.incrementAndGet();
+  }
+
+  void fileDeleted() {
+    deletedFiles.incrementAndGet();
+    checkedFiles.incrementAndGet();
+  }
+
+  public String getSegmentDir() {
+    return segmentDir;
+  }
+
+  public int getTotalFiles() {
+    return totalFiles;
+  }
+
+  public int getCheckedFiles() {
+    return checkedFiles.get();
+  }
+
+  public int getSkippedFiles() {
+    return skippedFiles.get();
+  }
+
+  public int getTruncatedFiles() {
+    return truncatedFiles.get();
+  }
+
+  public int getDeletedFiles() {
+    return deletedFiles.get();
+  }
+
+  public long getElapsedMillis() {
+    return System.currentTimeMillis() - startTime;
+  }
+
+  @Override public String toString() {
+    return "recovery of " + segmentDir + ": checked " + getCheckedFiles() + " of " + totalFiles
+        + " files, skipped " + getSkippedFiles() + ", truncated " + getTruncatedFiles()
+        + ", deleted " + getDeletedFiles() + " in " + getElapsedMillis() + " ms";
+  }
+}
@@ -24,6 +24,11 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.carbondata.common.CarbonIterator;
 import org.apache.carbondata.common.logging.LogServiceFactory;
@@ -43,8 +48,11 @@ import org.apache.carbondata.core.statusmanager.FileFormat;
 import org.apache.carbondata.core.statusmanager.LoadMetadataDetails;
 import org.apache.carbondata.core.statusmanager.SegmentStatus;
 import org.apache.carbondata.core.statusmanager.SegmentStatusManager;
+import org.apache.carbondata.core.stream.StreamIndexJournal;
 import org.apache.carbondata.core.util.ByteUtil;
 import org.apache.carbondata.core.util.CarbonMetadataUtil;
+import org.apache.carbondata.core.util.CarbonProperties;
+import org.apache.carbondata.core.util.CarbonThreadFactory;
 import org.apache.carbondata.core.util.CarbonUtil;
 import org.apache.carbondata.core.util.DataTypeUtil;
 import org.apache.carbondata.core.util.comparator.Comparator;
@@ -149,6 +157,20 @@ public class StreamSegment {
    */
   public static String close(CarbonTable table, String segmentId)
       throws IOException {
+    return close(table, segmentId, false);
+  }
+
+  /**
+   * finish the stream segment and create new stream segment, only if the segment is still the
+   * stream segment in the table status. A writer holding a stale segment id gets the current
+   * stream segment, so two writers rolling over the same segment create one new stream segment.
+   */
+  public static String rollover(CarbonTable table, String segmentId) throws IOException {
+    return close(table, segmentId, true);
+  }
+
+  private static String close(CarbonTable table, String segmentId, boolean onlyIfStreaming)
+      throws IOException {
     SegmentStatusManager segmentStatusManager =
         new SegmentStatusManager(table.getAbsoluteTableIdentifier());
     ICarbonLock carbonLock = segmentStatusManager.getTableStatusLock();
@@ -161,10 +183,19 @@ public class StreamSegment {
         LoadMetadataDetails[] details =
             SegmentStatusManager.readLoadMetadata(
                 CarbonTablePath.getMetadataPath(table.getTablePath()));
+        if (onlyIfStreaming) {
+          LoadMetadataDetails streamSegment = getStreamSegment(details);
+          if (null != streamSegment && !segmentId.equals(streamSegment.getLoadName())) {
+            // rolled over by another writer already
+            return streamSegment.getLoadName();
+          }
+        }
         for (LoadMetadataDetails detail : details) {
           if (segmentId.equals(detail.getLoadName())) {
-            detail.setLoadEndTime(System.currentTimeMillis());
-            detail.setSegmentStatus(SegmentStatus.STREAMING_FINISH);
+            if (!onlyIfStreaming || SegmentStatus.STREAMING == detail.getSegmentStatus()) {
+              detail.setLoadEndTime(System.currentTimeMillis());
+              detail.setSegmentStatus(SegmentStatus.STREAMING_FINISH);
+            }
             break;
           }
         }
@@ -308,8 +339,11 @@ public class StreamSegment {
       }
       inputIterators.close();
 
-      return createStreamBlockIndex(writer.getFileName(), writer.getBatchMinMaxIndex(),
-          blockletRowCount);
+      StreamFileIndex fileIndex = createStreamBlockIndex(writer.getFileName(),
+          writer.getBatchMinMaxIndex(), blockletRowCount);
+      fileIndex.setBlockletMinMaxIndexes(writer.takeBlockletMinMaxIndexes());
+      fileIndex.setBlockletOffsets(writer.takeBlockletOffsets());
+      return fileIndex;
     } catch (Throwable ex) {
       if (writer != null) {
         LOGGER.error("Failed to append batch data to stream segment: " +
@@ -330,47 +364,105 @@ public class StreamSegment {
    * 1. at the begin of the streaming (StreamSinkFactory.getStreamSegmentId)
    * 2. after job failed (CarbonAppendableStreamSink.writeDataFileJob)
    */
-  public static void recoverSegmentIfRequired(String segmentDir) throws IOException {
+  public static StreamRecoveryProgress recoverSegmentIfRequired(String segmentDir)
+      throws IOException {
     FileFactory.FileType fileType = FileFactory.getFileType(segmentDir);
-    if (FileFactory.isFileExist(segmentDir, fileType)) {
-      String indexName = CarbonTablePath.getCarbonStreamIndexFileName();
-      String indexPath = segmentDir + File.separator + indexName;
-      CarbonFile index = FileFactory.getCarbonFile(indexPath, fileType);
-      CarbonFile[] files = listDataFiles(segmentDir, fileType);
-      // TODO better to check backup index at first
-      // index file exists
-      if (index.exists()) {
-        // data file exists
-        if (files.length > 0) {
-          CarbonIndexFileReader indexReader = new CarbonIndexFileReader();
-          try {
-            // map block index
-            indexReader.openThriftReader(indexPath);
-            Map<String, Long> tableSizeMap = new HashMap<>();
-            while (indexReader.hasNext()) {
-              BlockIndex blockIndex = indexReader.readBlockIndexInfo();
-              tableSizeMap.put(blockIndex.getFile_name(), blockIndex.getFile_size());
-            }
-            // recover each file
-            for (CarbonFile file : files) {
-              Long size = tableSizeMap.get(file.getName());
-              if (null == size || size == 0) {
-                file.delete();
-              } else if (size < file.getSize()) {
-                FileFactory.truncateFile(file.getCanonicalPath(), fileType, size);
-              }
-            }
-          } finally {
-            indexReader.closeThriftReader();
-          }
-        }
+    StreamRecoveryProgress progress = new StreamRecoveryProgress(segmentDir);
+    if (!FileFactory.isFileExist(segmentDir, fileType)) {
+      return progress;
+    }
+    String indexPath =
+        segmentDir + File.separator + CarbonTablePath.getCarbonStreamIndexFileName();
+    CarbonFile index = FileFactory.getCarbonFile(indexPath, fileType);
+    CarbonFile[] files = listDataFiles(segmentDir, fileType);
+    progress.setTotalFiles(files.length);
+    if (files.length == 0) {
+      return progress;
+    }
+    // TODO better to check backup index at first
+    // without index file, all data files are deleted
+    Map<String, Long> fileSizeMap = new HashMap<>();
+    if (index.exists()) {
+      for (BlockIndex blockIndex : readIndexFile(indexPath, fileType)) {
+        fileSizeMap.put(blockIndex.getFile_name(), blockIndex.getFile_size());
+      }
+    }
+    // the files with the length in the index are healthy, only the others are recovered
+    List<CarbonFile> faultFiles = new ArrayList<>();
+    for (CarbonFile file : files) {
+      Long size = fileSizeMap.get(file.getName());
+      if (null != size && size != 0 && size >= file.getSize()) {
+        progress.fileSkipped();
       } else {
-        if (files.length > 0) {
-          for (CarbonFile file : files) {
-            file.delete();
+        faultFiles.add(file);
+      }
+    }
+    if (!faultFiles.isEmpty()) {
+      recoverFiles(faultFiles, fileSizeMap, fileType, progress);
+      LOGGER.info("Finished the " + progress);
+    }
+    return progress;
+  }
+
+  /**
+   * deletes or truncates the files on a bounded pool, the progress is logged every tenth
+   */
+  private static void recoverFiles(List<CarbonFile> files, final Map<String, Long> fileSizeMap,
+      final FileFactory.FileType fileType, final StreamRecoveryProgress progress)
+      throws IOException {
+    int numOfThreads = Math.min(files.size(), Integer.parseInt(CarbonProperties.getInstance()
+        .getProperty(CarbonCommonConstants.CARBON_STREAMING_RECOVERY_THREADS,
+            CarbonCommonConstants.CARBON_STREAMING_RECOVERY_THREADS_DEFAULT)));
+    if (numOfThreads <= 1) {
+      for (CarbonFile file : files) {
+        recoverFile(file, fileSizeMap.get(file.getName()), fileType, progress);
+      }
+      return;
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(numOfThreads,
+        new CarbonThreadFactory("StreamSegmentRecoveryPool"));
+    try {
+      List<Future<Void>> results = new ArrayList<>(files.size());
+      for (final CarbonFile file : files) {
+        results.add(executorService.submit(new Callable<Void>() {
+          @Override public Void call() throws IOException {
+            recoverFile(file, fileSizeMap.get(file.getName()), fileType, progress);
+            return null;
           }
+        }));
+      }
+      int step = Math.max(1, results.size() / 10);
+      for (int i = 0; i < results.size(); i++) {
+        results.get(i).get();
+        if ((i + 1) % step == 0 && i + 1 < results.size()) {
+          LOGGER.info("Progress of the " + progress);
         }
       }
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted in the " + progress, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * deletes the file if it is not in the index, or truncates it to the length in the index
+   */
+  private static void recoverFile(CarbonFile file, Long size, FileFactory.FileType fileType,
+      StreamRecoveryProgress progress) throws IOException {
+    if (null == size || size == 0) {
+      file.delete();
+      progress.fileDeleted();
+    } else if (size < file.getSize()) {
+      FileFactory.truncateFile(file.getCanonicalPath(), fileType, size);
+      progress.fileTruncated();
+    } else {
+      progress.fileSkipped();
     }
   }
 
@@ -388,24 +480,13 @@ public class StreamSegment {
     String filePath = segmentDir + File.separator + fileName;
     CarbonFile file = FileFactory.getCarbonFile(filePath, fileType);
     String indexPath = segmentDir + File.separator + indexName;
-    CarbonFile index = FileFactory.getCarbonFile(indexPath, fileType);
-    if (file.exists() && index.exists()) {
-      CarbonIndexFileReader indexReader = new CarbonIndexFileReader();
-      try {
-        indexReader.openThriftReader(indexPath);
-        while (indexReader.hasNext()) {
-          BlockIndex blockIndex = indexReader.readBlockIndexInfo();
-          if (blockIndex.getFile_name().equals(fileName)) {
-            if (blockIndex.getFile_size() == 0) {
-              file.delete();
-            } else if (blockIndex.getFile_size() < file.getSize()) {
-              FileFactory.truncateFile(filePath, fileType, blockIndex.getFile_size());
-            }
-            break;
-          }
+    if (file.exists()) {
+      for (BlockIndex blockIndex : readIndexFile(indexPath, fileType)) {
+        if (blockIndex.getFile_name().equals(fileName)) {
+          recoverFile(file, blockIndex.getFile_size(), fileType,
+              new StreamRecoveryProgress(segmentDir));
+          break;
         }
-      } finally {
-        indexReader.closeThriftReader();
       }
     }
   }
@@ -432,25 +513,16 @@ public class StreamSegment {
    *
    * @param indexPath path of the index file
    * @param fileType  file type of the index file
-   * @return the list of BlockIndex in the index file
+   * @return the list of BlockIndex in the index file and its journal
    * @throws IOException
    */
   public static List<BlockIndex> readIndexFile(String indexPath, FileFactory.FileType fileType)
       throws IOException {
-    List<BlockIndex> blockIndexList = new ArrayList<>();
     CarbonFile index = FileFactory.getCarbonFile(indexPath, fileType);
     if (index.exists()) {
-      CarbonIndexFileReader indexReader = new CarbonIndexFileReader();
-      try {
-        indexReader.openThriftReader(indexPath);
-        while (indexReader.hasNext()) {
-          blockIndexList.add(indexReader.readBlockIndexInfo());
-        }
-      } finally {
-        indexReader.closeThriftReader();
-      }
+      return StreamIndexJournal.readIndex(indexPath);
     }
-    return blockIndexList;
+    return new ArrayList<>();
   }
 
   /**
@@ -611,15 +683,78 @@ public class StreamSegment {
       BlockletMinMaxIndex fileIndex = CarbonMetadataUtil
           .convertExternalMinMaxIndex(blockIndex.getBlock_index().getMin_max_index());
       StreamFileIndex blockletIndex = indexMap.get(blockIndex.getFile_name());
+      List<BlockletMinMaxIndex> blockletMinMaxIndexes = getBlockletMinMaxIndexes(blockIndex);
+      List<Long> blockletOffsets = getBlockletOffsets(blockIndex);
       if (blockletIndex == null) {
         // should index all stream file
-        indexMap.put(blockIndex.getFile_name(),
-            new StreamFileIndex(blockIndex.getFile_name(), fileIndex, blockIndex.getNum_rows()));
+        StreamFileIndex streamFileIndex =
+            new StreamFileIndex(blockIndex.getFile_name(), fileIndex, blockIndex.getNum_rows());
+        streamFileIndex.setBlockletMinMaxIndexes(blockletMinMaxIndexes);
+        streamFileIndex.setBlockletOffsets(blockletOffsets);
+        indexMap.put(blockIndex.getFile_name(), streamFileIndex);
       } else {
         // merge minMaxIndex into StreamBlockIndex
         blockletIndex.setRowCount(blockletIndex.getRowCount() + blockIndex.getNum_rows());
         mergeBatchMinMax(blockletIndex, fileIndex, msrDataTypes);
+        if (blockletMinMaxIndexes == null || blockletIndex.getBlockletMinMaxIndexes() == null) {
+          blockletIndex.setBlockletMinMaxIndexes(null);
+        } else {
+          blockletMinMaxIndexes.addAll(blockletIndex.getBlockletMinMaxIndexes());
+          blockletIndex.setBlockletMinMaxIndexes(blockletMinMaxIndexes);
+        }
+        if (blockletOffsets == null || blockletIndex.getBlockletOffsets() == null) {
+          blockletIndex.setBlockletOffsets(null);
+        } else {
+          blockletOffsets.addAll(blockletIndex.getBlockletOffsets());
+          blockletIndex.setBlockletOffsets(blockletOffsets);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the min/max of the blocklets of a stream file in file order, null if the index file
+   * was written without them
+   */
+  private static List<BlockletMinMaxIndex> getBlockletMinMaxIndexes(BlockIndex blockIndex) {
+    if (!blockIndex.isSetBlocklet_min_max_index()) {
+      return blockIndex.getNum_rows() == 0 ? new ArrayList<BlockletMinMaxIndex>() : null;
+    }
+    List<BlockletMinMaxIndex> minMaxIndexes =
+        new ArrayList<>(blockIndex.getBlocklet_min_max_index().size());
+    for (org.apache.carbondata.format.BlockletMinMaxIndex minMaxIndex : blockIndex
+        .getBlocklet_min_max_index()) {
+      minMaxIndexes.add(CarbonMetadataUtil.convertExternalMinMaxIndex(minMaxIndex));
+    }
+    return minMaxIndexes;
+  }
+
+  /**
+   * Returns the start offsets of the blocklets of a stream file in file order, null if the index
+   * file was written without them
+   */
+  private static List<Long> getBlockletOffsets(BlockIndex blockIndex) {
+    if (!blockIndex.isSetBlocklet_offsets()) {
+      return blockIndex.getNum_rows() == 0 ? new ArrayList<Long>() : null;
+    }
+    return new ArrayList<>(blockIndex.getBlocklet_offsets());
+  }
+
+  /**
+   * Sets the min/max and the offsets of the blocklets of the stream file in the block index
+   */
+  public static void setBlockletIndexes(BlockIndex blockIndex, StreamFileIndex streamFileIndex) {
+    if (streamFileIndex.getBlockletMinMaxIndexes() != null && !streamFileIndex
+        .getBlockletMinMaxIndexes().contains(null)) {
+      List<org.apache.carbondata.format.BlockletMinMaxIndex> minMaxIndexes =
+          new ArrayList<>(streamFileIndex.getBlockletMinMaxIndexes().size());
+      for (BlockletMinMaxIndex minMaxIndex : streamFileIndex.getBlockletMinMaxIndexes()) {
+        minMaxIndexes.add(CarbonMetadataUtil.convertMinMaxIndex(minMaxIndex));
       }
+      blockIndex.setBlocklet_min_max_index(minMaxIndexes);
+    }
+    if (streamFileIndex.getBlockletOffsets() != null) {
+      blockIndex.setBlocklet_offsets(new ArrayList<>(streamFileIndex.getBlockletOffsets()));
     }
   }
 
@@ -656,6 +791,7 @@ public class StreamSegment {
           blockletIndex.setMin_max_index(
               CarbonMetadataUtil.convertMinMaxIndex(streamFileIndex.getMinMaxIndex()));
           blockIndex.setNum_rows(streamFileIndex.getRowCount());
+          setBlockletIndexes(blockIndex, streamFileIndex);
         } else {
           blockIndex.setNum_rows(-1);
         }
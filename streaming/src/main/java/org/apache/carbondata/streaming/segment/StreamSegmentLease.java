@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming.segment;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.carbondata.common.logging.LogServiceFactory;
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.util.CarbonProperties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lease on the stream segment of a table, shared by the stream writers of this process. The
+ * segment is read from the table status when the lease is acquired and renewed in the background
+ * every half lease, so a writer checks its segment without reading the table status or taking the
+ * table status lock. Only a rollover of the segment and a renewal of an expired lease read the
+ * table status in the writer thread.
+ *
+ * The segment and its expire time are published together by an atomic swap, the table status is
+ * read outside any lock. A renewal which read the table status before a rollover is dropped, so
+ * it can not move the lease back to the finished segment.
+ *
+ * A writer of another process which rolls over the segment is seen on the next renewal, so the
+ * lease has to be shorter than the handoff delay of the finished segments.
+ */
+public class StreamSegmentLease {
+
+  private static final Logger LOGGER =
+      LogServiceFactory.getLogService(StreamSegmentLease.class.getName());
+
+  // leases by table path
+  private static final Map<String, StreamSegmentLease> LEASES = new HashMap<>();
+
+  private static final ScheduledExecutorService RENEWER =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "StreamSegmentLease");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final CarbonTable table;
+
+  private final long leaseMillis;
+
+  // segment of the lease, null until it is read the first time
+  private final AtomicReference<LeasedSegment> segment = new AtomicReference<>();
+
+  private int holders;
+
+  private ScheduledFuture<?> renewal;
+
+  private StreamSegmentLease(CarbonTable table, long leaseMillis) {
+    this.table = table;
+    this.leaseMillis = leaseMillis;
+  }
+
+  /**
+   * Acquires the lease on the stream segment of the table, the stream segment is created if the
+   * table has none. The lease is released by {@link #release()}.
+   */
+  public static StreamSegmentLease acquire(CarbonTable table) throws IOException {
+    StreamSegmentLease lease;
+    synchronized (LEASES) {
+      lease = LEASES.get(table.getTablePath());
+      if (lease == null) {
+        lease = new StreamSegmentLease(table, getLeaseMillis());
+        LEASES.put(table.getTablePath(), lease);
+      }
+      lease.holders++;
+    }
+    try {
+      if (lease.segment.get() == null) {
+        lease.renew();
+      }
+      lease.scheduleRenewal();
+    } catch (IOException e) {
+      lease.release();
+      throw e;
+    }
+    return lease;
+  }
+
+  private static long getLeaseMillis() {
+    return Long.parseLong(CarbonProperties.getInstance()
+        .getProperty(CarbonCommonConstants.CARBON_STREAMING_SEGMENT_LEASE_MILLIS,
+            CarbonCommonConstants.CARBON_STREAMING_SEGMENT_LEASE_MILLIS_DEFAULT));
+  }
+
+  private synchronized void scheduleRenewal() {
+    if (renewal == null) {
+      renewal = RENEWER.scheduleWithFixedDelay(new Runnable() {
+        @Override public void run() {
+          try {
+            renew();
+          } catch (Throwable e) {
+            LOGGER.error("Failed to renew the stream segment lease of table "
+                + table.getDatabaseName() + "." + table.getTableName(), e);
+          }
+        }
+      }, leaseMillis / 2, leaseMillis / 2, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Reads the stream segment from the table status and publishes it unless the lease was changed
+   * during the read. Returns the segment of the lease.
+   */
+  private String renew() throws IOException {
+    LeasedSegment current = segment.get();
+    long now = System.currentTimeMillis();
+    String newSegmentId = StreamSegment.open(table);
+    LeasedSegment renewed = new LeasedSegment(newSegmentId, now + leaseMillis);
+    if (!segment.compareAndSet(current, renewed)) {
+      // renewed or rolled over concurrently, which read the table status later
+      return segment.get().segmentId;
+    }
+    if (current != null && !current.segmentId.equals(newSegmentId)) {
+      LOGGER.info("Stream segment of table " + table.getDatabaseName() + "."
+          + table.getTableName() + " changed from " + current.segmentId + " to " + newSegmentId);
+    }
+    return newSegmentId;
+  }
+
+  /**
+   * Returns the stream segment, the table status is read only if the lease has expired
+   */
+  public String getSegmentId() throws IOException {
+    LeasedSegment current = segment.get();
+    if (current == null || System.currentTimeMillis() >= current.expireTime) {
+      return renew();
+    }
+    return current.segmentId;
+  }
+
+  /**
+   * Finishes the full stream segment and moves the lease to a new stream segment. Returns the new
+   * segment, or the current one if another writer has rolled the segment over already. The lease
+   * may be stale after a rollover of another process, so the segment is finished only if it is
+   * still the stream segment in the table status.
+   */
+  public String rollover(String fullSegmentId) throws IOException {
+    // the writers of this process roll over one at a time, so a segment is finished once
+    synchronized (this) {
+      LeasedSegment current = segment.get();
+      if (current != null && fullSegmentId.equals(current.segmentId)) {
+        long now = System.currentTimeMillis();
+        String newSegmentId = StreamSegment.rollover(table, fullSegmentId);
+        segment.set(new LeasedSegment(newSegmentId, now + leaseMillis));
+        return newSegmentId;
+      }
+    }
+    return getSegmentId();
+  }
+
+  /**
+   * Releases the lease of a writer, the renewal stops when the last writer releases it
+   */
+  public void release() {
+    synchronized (LEASES) {
+      holders--;
+      if (holders > 0) {
+        return;
+      }
+      LEASES.remove(table.getTablePath());
+    }
+    synchronized (this) {
+      if (renewal != null) {
+        renewal.cancel(false);
+        renewal = null;
+      }
+    }
+  }
+
+  /**
+   * Stream segment of the lease and the time the lease of it expires
+   */
+  private static class LeasedSegment {
+
+    private final String segmentId;
+
+    private final long expireTime;
+
+    private LeasedSegment(String segmentId, long expireTime) {
+      this.segmentId = segmentId;
+      this.expireTime = expireTime;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.carbondata.core.datastore.compression.CompressorFactory;
+import org.apache.carbondata.core.memory.UnsafeMemoryManager;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.util.ByteUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamBlockletWriterTest {
+
+  @Test public void testRowsAreSortedOnPrimaryKey() throws IOException {
+    StreamBlockletWriter writer = createWriter();
+    writer.enableSort();
+    int[] keys = new int[] { 30, 10, 20, 10 };
+    for (int i = 0; i < keys.length; i++) {
+      writer.nextRow();
+      // rows of different length, the key and the arrival order
+      writer.writeInt(keys[i]);
+      writer.writeShort(i + 1);
+      for (int j = 0; j <= i; j++) {
+        writer.writeBoolean(true);
+      }
+      writer.setRowKey(new byte[][] { ByteUtil.toBytes(keys[i]) });
+    }
+    DataInputStream rows = readBlocklet(writer);
+    int[] expectedKeys = new int[] { 10, 10, 20, 30 };
+    int previousKey = Integer.MIN_VALUE;
+    for (int expectedKey : expectedKeys) {
+      int key = rows.readInt();
+      Assert.assertEquals(expectedKey, key);
+      Assert.assertTrue(key >= previousKey);
+      previousKey = key;
+      int length = rows.readShort();
+      for (int j = 0; j < length; j++) {
+        Assert.assertTrue(rows.readBoolean());
+      }
+    }
+    Assert.assertEquals(0, rows.available());
+  }
+
+  @Test public void testNullKeysAreSortedFirst() throws IOException {
+    StreamBlockletWriter writer = createWriter();
+    writer.enableSort();
+    writer.nextRow();
+    writer.writeInt(1);
+    writer.setRowKey(new byte[][] { ByteUtil.toBytes(1) });
+    writer.nextRow();
+    writer.writeInt(-1);
+    writer.setRowKey(new byte[][] { null });
+    DataInputStream rows = readBlocklet(writer);
+    Assert.assertEquals(-1, rows.readInt());
+    Assert.assertEquals(1, rows.readInt());
+  }
+
+  @Test public void testBufferGrowsAndIsReusedByBlocklets() throws IOException {
+    StreamBlockletWriter writer = createWriter();
+    for (int blocklet = 0; blocklet < 2; blocklet++) {
+      // more than the initial buffer size of 1024 bytes
+      for (int i = 0; i < 300; i++) {
+        writer.nextRow();
+        writer.writeInt(i + blocklet);
+        writer.writeLong(-i);
+      }
+      DataInputStream rows = readBlocklet(writer);
+      for (int i = 0; i < 300; i++) {
+        Assert.assertEquals(i + blocklet, rows.readInt());
+        Assert.assertEquals(-i, rows.readLong());
+      }
+      writer.reset();
+    }
+    writer.close();
+    // a new writer takes the released buffer
+    writer = createWriter();
+    writer.nextRow();
+    writer.writeBytes(new byte[] { 1, 2, 3 }, 1, 2);
+    writer.writeDouble(1.5);
+    DataInputStream rows = readBlocklet(writer);
+    Assert.assertEquals(2, rows.readByte());
+    Assert.assertEquals(3, rows.readByte());
+    Assert.assertEquals(1.5, rows.readDouble(), 0);
+    writer.close();
+  }
+
+  @Test public void testBufferIsOnHeapWhenWorkingMemoryIsFull() {
+    String taskId = "testBufferIsOnHeapWhenWorkingMemoryIsFull";
+    UnsafeMemoryManager memoryManager = UnsafeMemoryManager.INSTANCE;
+    // larger than any pooled buffer
+    int size = (int) (memoryManager.getUsableMemory() / 8 + 1);
+    try {
+      while (memoryManager.allocateOffHeapIfAvailable(taskId, size) != null) {
+        // fills the working memory
+      }
+      StreamBlockletBuffer buffer = StreamBlockletBuffer.allocate(size, true);
+      Assert.assertFalse(buffer.isOffHeap());
+      Assert.assertEquals(size, buffer.getBytes().length);
+      Assert.assertSame(buffer.getBytes(), buffer.getBaseObject());
+    } finally {
+      memoryManager.freeMemoryAll(taskId);
+    }
+  }
+
+  private StreamBlockletWriter createWriter() {
+    return new StreamBlockletWriter(1024, 100, 64, 0, 0, new DataType[0],
+        CompressorFactory.getInstance().getCompressor().getName());
+  }
+
+  private DataInputStream readBlocklet(StreamBlockletWriter writer) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writer.apppendBlocklet(new DataOutputStream(bytes));
+    DataInputStream stream = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    stream.skipBytes(CarbonStreamOutputFormat.CARBON_SYNC_MARKER.length);
+    stream.skipBytes(stream.readInt());
+    byte[] compressed = new byte[stream.readInt()];
+    stream.readFully(compressed);
+    byte[] rows = CompressorFactory.getInstance().getCompressor().unCompressByte(compressed);
+    return new DataInputStream(new ByteArrayInputStream(rows, 0, writer.getCount()));
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryGenerator;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryKeyGeneratorFactory;
+import org.apache.carbondata.core.keygenerator.directdictionary.timestamp.DateDirectDictionaryGenerator;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonMeasure;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.util.DataTypeUtil;
+import org.apache.carbondata.processing.loading.DataField;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamTypedRowConverterTest {
+
+  private static final DataType DECIMAL = DataTypes.createDecimalType(10, 2);
+
+  // no dictionary dimensions of every data type
+  private static final DataType[] NO_DICTIONARY_TYPES = new DataType[] { DataTypes.STRING,
+      DataTypes.VARCHAR, DataTypes.BOOLEAN, DataTypes.SHORT, DataTypes.INT, DataTypes.LONG,
+      DataTypes.DOUBLE, DataTypes.FLOAT, DataTypes.BYTE, DECIMAL, DataTypes.TIMESTAMP };
+
+  private static final DataType[] MEASURE_TYPES = new DataType[] { DataTypes.BOOLEAN,
+      DataTypes.SHORT, DataTypes.INT, DataTypes.LONG, DataTypes.DOUBLE, DECIMAL };
+
+  private static final long DAY = DateDirectDictionaryGenerator.MILLIS_PER_DAY;
+
+  @Test public void testNoDictionaryRoundTrip() {
+    Object[] values = new Object[] { "a\u00e9\u4e2d", "long string", true, (short) -12, -34,
+        1L << 40, -1.5d, 2.25f, (byte) -7, new BigDecimal("12345678.91"), 1546300800123L };
+    Object[] row = convert(createDimensions(NO_DICTIONARY_TYPES), values.clone());
+    for (int i = 0; i < values.length; i++) {
+      Assert.assertEquals(NO_DICTIONARY_TYPES[i].getName(), values[i],
+          decode((byte[]) row[i], NO_DICTIONARY_TYPES[i]));
+    }
+  }
+
+  @Test public void testNoDictionaryNumbersOfOtherTypes() {
+    // any number is accepted and the string of a string column can be given as bytes
+    Object[] values = new Object[] { "abc".getBytes(CarbonCommonConstants.DEFAULT_CHARSET_CLASS),
+        "def", false, 12, 34L, (short) 56, 7, 8d, 9, 10.125d, new Date(1546300800123L) };
+    Object[] expected = new Object[] { "abc", "def", false, (short) 12, 34, 56L, 7d, 8f, (byte) 9,
+        new BigDecimal("10.13"), 1546300800123L };
+    Object[] row = convert(createDimensions(NO_DICTIONARY_TYPES), values);
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertEquals(NO_DICTIONARY_TYPES[i].getName(), expected[i],
+          decode((byte[]) row[i], NO_DICTIONARY_TYPES[i]));
+    }
+  }
+
+  @Test public void testNoDictionaryNulls() {
+    Object[] row = convert(createDimensions(NO_DICTIONARY_TYPES),
+        new Object[NO_DICTIONARY_TYPES.length]);
+    // the same null values as the row converter
+    Assert.assertArrayEquals(CarbonCommonConstants.MEMBER_DEFAULT_VAL_ARRAY, (byte[]) row[0]);
+    for (int i = 1; i < row.length; i++) {
+      Assert.assertArrayEquals(NO_DICTIONARY_TYPES[i].getName(),
+          CarbonCommonConstants.EMPTY_BYTE_ARRAY, (byte[]) row[i]);
+    }
+    Assert.assertNull(decode((byte[]) row[0], DataTypes.STRING));
+    for (int i = 3; i < row.length; i++) {
+      Assert.assertNull(NO_DICTIONARY_TYPES[i].getName(),
+          decode((byte[]) row[i], NO_DICTIONARY_TYPES[i]));
+    }
+  }
+
+  @Test public void testDecimalExceedingPrecisionIsNull() {
+    Object[] row = convert(createDimensions(DECIMAL), new Object[] { new BigDecimal("1E10") });
+    Assert.assertArrayEquals(CarbonCommonConstants.EMPTY_BYTE_ARRAY, (byte[]) row[0]);
+  }
+
+  @Test public void testDirectDictionaryRoundTrip() {
+    DataType[] dataTypes = new DataType[] { DataTypes.DATE, DataTypes.DATE, DataTypes.DATE,
+        DataTypes.TIMESTAMP, DataTypes.TIMESTAMP };
+    int days = 17897;
+    long millis = 1546300800000L;
+    // days as an Integer, milliseconds as a Long or a Date
+    Object[] row = convert(createDirectDictionaryDimensions(dataTypes),
+        new Object[] { days, days * DAY, new Date(days * DAY), millis, new Date(millis) });
+    DirectDictionaryGenerator date =
+        DirectDictionaryKeyGeneratorFactory.getDirectDictionaryGenerator(DataTypes.DATE);
+    DirectDictionaryGenerator timestamp =
+        DirectDictionaryKeyGeneratorFactory.getDirectDictionaryGenerator(DataTypes.TIMESTAMP);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(days, date.getValueFromSurrogate((int) row[i]));
+    }
+    for (int i = 3; i < 5; i++) {
+      // the timestamp is read in microseconds
+      Assert.assertEquals(millis * 1000L, timestamp.getValueFromSurrogate((int) row[i]));
+    }
+  }
+
+  @Test public void testDirectDictionaryNulls() {
+    Object[] row = convert(createDirectDictionaryDimensions(DataTypes.DATE, DataTypes.TIMESTAMP),
+        new Object[2]);
+    Assert.assertEquals(CarbonCommonConstants.DIRECT_DICT_VALUE_NULL, row[0]);
+    Assert.assertEquals(CarbonCommonConstants.DIRECT_DICT_VALUE_NULL, row[1]);
+  }
+
+  @Test public void testMeasures() {
+    Object[] row = convert(createMeasures(MEASURE_TYPES),
+        new Object[] { true, 1, (short) 2, 3, 4.5f, 6.789d });
+    Assert.assertArrayEquals(
+        new Object[] { true, (short) 1, 2, 3L, 4.5d, new BigDecimal("6.79") }, row);
+  }
+
+  @Test public void testMeasureNulls() {
+    Object[] row = convert(createMeasures(MEASURE_TYPES), new Object[MEASURE_TYPES.length]);
+    Assert.assertArrayEquals(new Object[MEASURE_TYPES.length], row);
+    // values which can not be stored are null as in the row converter
+    row = convert(createMeasures(DataTypes.DOUBLE, DataTypes.DOUBLE, DECIMAL),
+        new Object[] { Double.NaN, Double.POSITIVE_INFINITY, new BigDecimal("1E10") });
+    Assert.assertArrayEquals(new Object[3], row);
+  }
+
+  @Test public void testDimensionsAndMeasures() {
+    List<DataField> fields = new ArrayList<>();
+    fields.addAll(Arrays.asList(createDimensions(DataTypes.STRING)));
+    fields.addAll(Arrays.asList(createDirectDictionaryDimensions(DataTypes.DATE)));
+    fields.addAll(Arrays.asList(createMeasures(DataTypes.INT)));
+    StreamTypedRowConverter converter =
+        new StreamTypedRowConverter(fields.toArray(new DataField[0]), 2, 2);
+    Object[] row = new Object[] { "a", 1, 2L };
+    converter.convert(row);
+    Assert.assertEquals("a", decode((byte[]) row[0], DataTypes.STRING));
+    Assert.assertEquals(1, DirectDictionaryKeyGeneratorFactory
+        .getDirectDictionaryGenerator(DataTypes.DATE).getValueFromSurrogate((int) row[1]));
+    Assert.assertEquals(2, row[2]);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testDictionaryColumnIsNotSupported() {
+    ColumnSchema columnSchema = createColumnSchema("c0", DataTypes.STRING);
+    columnSchema.setEncodingList(Arrays.asList(Encoding.DICTIONARY));
+    new StreamTypedRowConverter(
+        new DataField[] { new DataField(new CarbonDimension(columnSchema, 0, 0, 0)) }, 1, 1);
+  }
+
+  private static Object[] convert(DataField[] fields, Object[] row) {
+    boolean measures = fields.length > 0 && fields[0].getColumn().isMeasure();
+    int dimensionCount = measures ? 0 : fields.length;
+    new StreamTypedRowConverter(fields, dimensionCount, dimensionCount).convert(row);
+    return row;
+  }
+
+  private static Object decode(byte[] value, DataType dataType) {
+    return DataTypeUtil.getDataBasedOnDataTypeForNoDictionaryColumn(value, dataType, false,
+        DataTypeUtil.getDataTypeConverter());
+  }
+
+  private static DataField[] createDimensions(DataType... dataTypes) {
+    DataField[] fields = new DataField[dataTypes.length];
+    for (int i = 0; i < dataTypes.length; i++) {
+      ColumnSchema columnSchema = createColumnSchema("d" + i, dataTypes[i]);
+      columnSchema.setEncodingList(new ArrayList<Encoding>());
+      fields[i] = new DataField(new CarbonDimension(columnSchema, i, -1, i));
+    }
+    return fields;
+  }
+
+  private static DataField[] createDirectDictionaryDimensions(DataType... dataTypes) {
+    DataField[] fields = new DataField[dataTypes.length];
+    for (int i = 0; i < dataTypes.length; i++) {
+      ColumnSchema columnSchema = createColumnSchema("d" + i, dataTypes[i]);
+      columnSchema.setEncodingList(Arrays.asList(Encoding.DICTIONARY, Encoding.DIRECT_DICTIONARY));
+      fields[i] = new DataField(new CarbonDimension(columnSchema, i, i, i));
+    }
+    return fields;
+  }
+
+  private static DataField[] createMeasures(DataType... dataTypes) {
+    DataField[] fields = new DataField[dataTypes.length];
+    for (int i = 0; i < dataTypes.length; i++) {
+      ColumnSchema columnSchema = createColumnSchema("m" + i, dataTypes[i]);
+      columnSchema.setDimensionColumn(false);
+      columnSchema.setEncodingList(new ArrayList<Encoding>());
+      fields[i] = new DataField(new CarbonMeasure(columnSchema, i, i));
+    }
+    return fields;
+  }
+
+  private static ColumnSchema createColumnSchema(String name, DataType dataType) {
+    ColumnSchema columnSchema = new ColumnSchema();
+    columnSchema.setColumnName(name);
+    columnSchema.setColumnUniqueId(name);
+    columnSchema.setDataType(dataType);
+    columnSchema.setDimensionColumn(true);
+    if (DataTypes.isDecimal(dataType)) {
+      columnSchema.setPrecision(10);
+      columnSchema.setScale(2);
+    }
+    return columnSchema;
+  }
+}
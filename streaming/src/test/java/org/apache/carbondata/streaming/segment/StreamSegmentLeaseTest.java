@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.metadata.AbsoluteTableIdentifier;
+import org.apache.carbondata.core.metadata.CarbonTableIdentifier;
+import org.apache.carbondata.core.metadata.schema.table.CarbonTable;
+import org.apache.carbondata.core.statusmanager.LoadMetadataDetails;
+import org.apache.carbondata.core.statusmanager.SegmentStatus;
+import org.apache.carbondata.core.statusmanager.SegmentStatusManager;
+import org.apache.carbondata.core.util.CarbonProperties;
+import org.apache.carbondata.core.util.CarbonUtil;
+import org.apache.carbondata.core.util.path.CarbonTablePath;
+import org.apache.carbondata.hadoop.testutil.StoreCreator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamSegmentLeaseTest {
+
+  private String tablePath;
+
+  private CarbonTable table;
+
+  @Before public void setUp() throws IOException {
+    tablePath = new File("target/stream_segment_lease").getCanonicalPath();
+    AbsoluteTableIdentifier identifier = AbsoluteTableIdentifier.from(tablePath,
+        new CarbonTableIdentifier("default", "stream_segment_lease",
+            UUID.randomUUID().toString()));
+    table = new StoreCreator(new File("target/store").getAbsolutePath(),
+        new File("../hadoop/src/test/resources/data.csv").getCanonicalPath())
+        .createTable(identifier);
+  }
+
+  @After public void tearDown() throws Exception {
+    CarbonProperties.getInstance().addProperty(
+        CarbonCommonConstants.CARBON_STREAMING_SEGMENT_LEASE_MILLIS,
+        CarbonCommonConstants.CARBON_STREAMING_SEGMENT_LEASE_MILLIS_DEFAULT);
+    CarbonUtil.deleteFoldersAndFiles(new File(tablePath));
+  }
+
+  @Test public void testAcquireCreatesStreamSegment() throws IOException {
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    try {
+      Assert.assertEquals("0", lease.getSegmentId());
+      LoadMetadataDetails[] details = readLoadMetadata();
+      Assert.assertEquals(1, details.length);
+      Assert.assertEquals(SegmentStatus.STREAMING, details[0].getSegmentStatus());
+    } finally {
+      lease.release();
+    }
+  }
+
+  @Test public void testLeaseIsSharedUntilReleased() throws IOException {
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    StreamSegmentLease other = StreamSegmentLease.acquire(table);
+    Assert.assertSame(lease, other);
+    other.release();
+    // released by one writer only
+    StreamSegmentLease third = StreamSegmentLease.acquire(table);
+    Assert.assertSame(lease, third);
+    third.release();
+    lease.release();
+    // released by all the writers
+    StreamSegmentLease next = StreamSegmentLease.acquire(table);
+    try {
+      Assert.assertNotSame(lease, next);
+      Assert.assertEquals("0", next.getSegmentId());
+    } finally {
+      next.release();
+    }
+  }
+
+  @Test public void testRollover() throws IOException {
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    try {
+      Assert.assertEquals("1", lease.rollover("0"));
+      Assert.assertEquals("1", lease.getSegmentId());
+      // another writer rolling over the finished segment gets the current one
+      Assert.assertEquals("1", lease.rollover("0"));
+      LoadMetadataDetails[] details = readLoadMetadata();
+      Assert.assertEquals(2, details.length);
+      Assert.assertEquals(SegmentStatus.STREAMING_FINISH, details[0].getSegmentStatus());
+      Assert.assertEquals(SegmentStatus.STREAMING, details[1].getSegmentStatus());
+    } finally {
+      lease.release();
+    }
+  }
+
+  @Test public void testLeaseSeesRolloverOfOtherProcess() throws Exception {
+    CarbonProperties.getInstance()
+        .addProperty(CarbonCommonConstants.CARBON_STREAMING_SEGMENT_LEASE_MILLIS, "200");
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    try {
+      Assert.assertEquals("0", lease.getSegmentId());
+      // a writer of another process rolls the segment over
+      Assert.assertEquals("1", StreamSegment.close(table, "0"));
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!"1".equals(lease.getSegmentId()) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      Assert.assertEquals("1", lease.getSegmentId());
+    } finally {
+      lease.release();
+    }
+  }
+
+  @Test public void testExpiredLeaseIsRenewedByReader() throws Exception {
+    CarbonProperties.getInstance()
+        .addProperty(CarbonCommonConstants.CARBON_STREAMING_SEGMENT_LEASE_MILLIS, "200");
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    // the background renewal is stopped, so only the reader renews the lease
+    lease.release();
+    Assert.assertEquals("1", StreamSegment.close(table, "0"));
+    Thread.sleep(300);
+    Assert.assertEquals("1", lease.getSegmentId());
+  }
+
+  @Test public void testRolloverOfStaleLease() throws IOException {
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    try {
+      Assert.assertEquals("0", lease.getSegmentId());
+      // a writer of another process rolls the segment over, the lease is not renewed yet
+      Assert.assertEquals("1", StreamSegment.close(table, "0"));
+      long finishTime = readLoadMetadata()[0].getLoadEndTime();
+      Assert.assertEquals("0", lease.getSegmentId());
+      // the finished segment is not finished again and no other stream segment is created
+      Assert.assertEquals("1", lease.rollover("0"));
+      Assert.assertEquals("1", lease.getSegmentId());
+      LoadMetadataDetails[] details = readLoadMetadata();
+      Assert.assertEquals(2, details.length);
+      Assert.assertEquals(SegmentStatus.STREAMING_FINISH, details[0].getSegmentStatus());
+      Assert.assertEquals(finishTime, details[0].getLoadEndTime());
+      Assert.assertEquals(SegmentStatus.STREAMING, details[1].getSegmentStatus());
+    } finally {
+      lease.release();
+    }
+  }
+
+  @Test public void testConcurrentRollover() throws Exception {
+    final StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Assert.assertEquals("0", lease.getSegmentId());
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<String>> rollovers = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        final boolean otherProcess = i == 0;
+        rollovers.add(executor.submit(new Callable<String>() {
+          @Override public String call() throws Exception {
+            start.await();
+            // a writer of another process rolls over without the lease of this process
+            return otherProcess ? StreamSegment.rollover(table, "0") : lease.rollover("0");
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<String> rollover : rollovers) {
+        Assert.assertEquals("1", rollover.get(60, TimeUnit.SECONDS));
+      }
+      LoadMetadataDetails[] details = readLoadMetadata();
+      Assert.assertEquals(2, details.length);
+      Assert.assertEquals(SegmentStatus.STREAMING_FINISH, details[0].getSegmentStatus());
+      Assert.assertEquals(SegmentStatus.STREAMING, details[1].getSegmentStatus());
+    } finally {
+      executor.shutdownNow();
+      lease.release();
+    }
+  }
+
+  @Test public void testRolloverWithoutStreamSegment() throws IOException {
+    Assert.assertEquals("0", StreamSegment.open(table));
+    StreamSegment.finishStreaming(table);
+    // the finished segment is kept and a new stream segment is created
+    Assert.assertEquals("1", StreamSegment.rollover(table, "0"));
+    LoadMetadataDetails[] details = readLoadMetadata();
+    Assert.assertEquals(2, details.length);
+    Assert.assertEquals(SegmentStatus.STREAMING_FINISH, details[0].getSegmentStatus());
+    Assert.assertEquals(SegmentStatus.STREAMING, details[1].getSegmentStatus());
+  }
+
+  @Test public void testReleasedLeaseReadsTableStatus() throws IOException {
+    StreamSegmentLease lease = StreamSegmentLease.acquire(table);
+    StreamSegmentLease other = StreamSegmentLease.acquire(table);
+    Assert.assertEquals("0", lease.getSegmentId());
+    lease.release();
+    Assert.assertEquals("1", StreamSegment.close(table, "0"));
+    // still held by the other writer, which sees the rollover on the next renewal only
+    Assert.assertSame(other, StreamSegmentLease.acquire(table));
+    other.release();
+    Assert.assertEquals("0", other.getSegmentId());
+    other.release();
+    // released by all the writers, the next lease reads the table status
+    StreamSegmentLease next = StreamSegmentLease.acquire(table);
+    try {
+      Assert.assertEquals("1", next.getSegmentId());
+    } finally {
+      next.release();
+    }
+  }
+
+  private LoadMetadataDetails[] readLoadMetadata() {
+    return SegmentStatusManager.readLoadMetadata(CarbonTablePath.getMetadataPath(tablePath));
+  }
+}
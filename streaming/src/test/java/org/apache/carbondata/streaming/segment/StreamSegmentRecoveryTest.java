@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.carbondata.streaming.segment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.carbondata.core.util.path.CarbonTablePath;
+import org.apache.carbondata.core.writer.CarbonIndexFileWriter;
+import org.apache.carbondata.format.BlockIndex;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamSegmentRecoveryTest {
+
+  private File segmentDir;
+
+  @Before public void setUp() {
+    segmentDir = new File("./testStreamSegmentRecovery/Segment_0").getAbsoluteFile();
+    segmentDir.mkdirs();
+  }
+
+  @After public void tearDown() {
+    File[] files = segmentDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    segmentDir.delete();
+    segmentDir.getParentFile().delete();
+  }
+
+  @Test public void testFaultFilesAreRecovered() throws IOException {
+    writeFile("part-0-1.carbondata", 20);
+    writeFile("part-0-2.carbondata", 5);
+    writeFile("part-0-3.carbondata", 8);
+    String indexPath =
+        segmentDir.getPath() + File.separator + CarbonTablePath.getCarbonStreamIndexFileName();
+    CarbonIndexFileWriter writer = new CarbonIndexFileWriter();
+    writer.openThriftWriter(indexPath);
+    writer.writeThrift(createBlockIndex("part-0-1.carbondata", 10));
+    writer.writeThrift(createBlockIndex("part-0-2.carbondata", 5));
+    writer.close();
+
+    StreamRecoveryProgress progress =
+        StreamSegment.recoverSegmentIfRequired(segmentDir.getPath());
+    Assert.assertEquals(3, progress.getTotalFiles());
+    Assert.assertEquals(3, progress.getCheckedFiles());
+    Assert.assertEquals(1, progress.getSkippedFiles());
+    Assert.assertEquals(1, progress.getTruncatedFiles());
+    Assert.assertEquals(1, progress.getDeletedFiles());
+    Assert.assertEquals(10, new File(segmentDir, "part-0-1.carbondata").length());
+    Assert.assertEquals(5, new File(segmentDir, "part-0-2.carbondata").length());
+    Assert.assertFalse(new File(segmentDir, "part-0-3.carbondata").exists());
+  }
+
+  private void writeFile(String name, int length) throws IOException {
+    FileOutputStream stream = new FileOutputStream(new File(segmentDir, name));
+    stream.write(new byte[length]);
+    stream.close();
+  }
+
+  private static BlockIndex createBlockIndex(String fileName, long fileSize) {
+    BlockIndex blockIndex = new BlockIndex();
+    blockIndex.setFile_name(fileName);
+    blockIndex.setOffset(-1);
+    blockIndex.setFile_size(fileSize);
+    blockIndex.setNum_rows(1);
+    return blockIndex;
+  }
+}
@@ -1,5 +1,6 @@
 package org.apache.hadoop.hbase.coprocessor;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,14 +30,56 @@ public class CarbonHbaseMeta {
 
   private int deleteStatusMap = -1;
 
-  private QualifierArray temp = new QualifierArray();
+  // lookup key of the column mapping, the meta is shared by the replication threads
+  private ThreadLocal<QualifierArray> temp = ThreadLocal.withInitial(QualifierArray::new);
 
   private String primaryKeyColumns;
 
+  // typed value written to the mapped columns of deleted cells
+  private Object[] deleteMarkers;
+
+  // typed values of the delete status column, indexed by the status
+  private Object[] deleteStatusValues;
+
   public CarbonHbaseMeta(Schema schema, Map<String, String> tblProperties) {
     this.schema = schema;
     this.tblProperties = tblProperties;
     createSchemaMapping();
+    deleteMarkers = new Object[schema.getFieldsLength()];
+    for (int i = 0; i < deleteMarkers.length; i++) {
+      deleteMarkers[i] = toTypedValue(1, schema.getFields()[i].getDataType());
+    }
+    DataType statusType = schema.getFields()[deleteStatusMap].getDataType();
+    deleteStatusValues = new Object[] { toTypedValue(0, statusType),
+        toTypedValue(1, statusType), toTypedValue(2, statusType) };
+  }
+
+  /**
+   * Returns the typed value the row converter derives from the string of the number, null if
+   * the string is not a valid value of the data type
+   */
+  private static Object toTypedValue(int number, DataType dataType) {
+    int id = dataType.getId();
+    if (id == DataTypes.STRING.getId() || id == DataTypes.VARCHAR.getId()) {
+      return Bytes.toBytes(String.valueOf(number));
+    } else if (id == DataTypes.INT.getId()) {
+      return number;
+    } else if (id == DataTypes.SHORT.getId()) {
+      return (short) number;
+    } else if (id == DataTypes.LONG.getId()) {
+      return (long) number;
+    } else if (id == DataTypes.DOUBLE.getId()) {
+      return (double) number;
+    } else if (id == DataTypes.FLOAT.getId()) {
+      return (float) number;
+    } else if (id == DataTypes.BYTE.getId()) {
+      return (byte) number;
+    } else if (DataTypes.isDecimal(dataType)) {
+      return BigDecimal.valueOf(number);
+    } else {
+      // boolean, date and timestamp do not parse from a number
+      return null;
+    }
   }
 
   private void createSchemaMapping() {
@@ -98,8 +141,9 @@ public class CarbonHbaseMeta {
 
   public int getSchemaIndexOfColumn(byte[] cf, int cfOffset, int cfLen, byte[] qual, int qualOffset,
       int qualLen) {
-    temp.set(cf, cfOffset, cfLen, qual, qualOffset, qualLen);
-    Integer integer = schemaMapping.get(temp);
+    QualifierArray qualifier = temp.get();
+    qualifier.set(cf, cfOffset, cfLen, qual, qualOffset, qualLen);
+    Integer integer = schemaMapping.get(qualifier);
     if (integer == null) {
       return -1;
     } else {
@@ -136,6 +180,48 @@ public class CarbonHbaseMeta {
     return primaryKeyColumns;
   }
 
+  public Object getDeleteMarker(int schemaIndex) {
+    return deleteMarkers[schemaIndex];
+  }
+
+  /**
+   * Returns the typed value of the delete status, 0 for insert, 1 for delete and 2 for delete
+   * family
+   */
+  public Object getDeleteStatusValue(int status) {
+    return deleteStatusValues[status];
+  }
+
+  /**
+   * Decodes the cell bytes to the typed value of the column, strings are kept as UTF-8 bytes
+   */
+  public Object decodeData(byte[] value, int offset, int len, int schemaIndex) {
+    DataType dataType = schema.getFields()[schemaIndex].getDataType();
+    int id = dataType.getId();
+    if (id == DataTypes.BOOLEAN.getId()) {
+      return value[offset] != (byte) 0;
+    } else if (id == DataTypes.STRING.getId() || id == DataTypes.VARCHAR.getId()) {
+      return Bytes.copy(value, offset, len);
+    } else if (id == DataTypes.INT.getId() || id == DataTypes.DATE.getId()) {
+      return Bytes.toInt(value, offset, len);
+    } else if (id == DataTypes.SHORT.getId()) {
+      return Bytes.toShort(value, offset, len);
+    } else if (id == DataTypes.LONG.getId() || id == DataTypes.TIMESTAMP.getId()) {
+      return Bytes.toLong(value, offset, len);
+    } else if (id == DataTypes.DOUBLE.getId()) {
+      return Bytes.toDouble(value, offset);
+    } else if (DataTypes.isDecimal(dataType)) {
+      return Bytes.toBigDecimal(value, offset, len);
+    } else if (id == DataTypes.FLOAT.getId()) {
+      return Bytes.toFloat(value, offset);
+    } else if (id == DataTypes.BYTE.getId()) {
+      return value[offset];
+    } else {
+      throw new UnsupportedOperationException(
+          "Provided datatype " + dataType + " is not supported");
+    }
+  }
+
   public String convertData(byte[] value, int offset, int len, int schemaIndex) {
     DataType dataType = schema.getFields()[schemaIndex].getDataType();
     int id = dataType.getId();
@@ -30,6 +30,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -39,6 +41,7 @@ import org.apache.carbondata.sdk.file.CarbonSchemaWriter;
 import org.apache.carbondata.sdk.file.CarbonWriter;
 import org.apache.carbondata.sdk.file.CarbonWriterBuilder;
 import org.apache.carbondata.sdk.file.Schema;
+import org.apache.carbondata.streaming.CarbonStreamOutputFormat;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
@@ -61,9 +64,35 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
 
   private static final String CARBON_APPEND_BATCH = "hbase.carbon.append.batch";
 
-  private static String DELETE = String.valueOf(1);
-  private static String DELETEFAMILY = String.valueOf(2);
-  private static String INSERT = String.valueOf(0);
+  // unflushed bytes of a region after which the region writer is flushed
+  private static final String CARBON_FLUSH_SIZE = "hbase.carbon.flush.size";
+
+  private static final long CARBON_FLUSH_SIZE_DEFAULT = 64L * 1024 * 1024;
+
+  // max time the writes of a region stay unflushed
+  private static final String CARBON_FLUSH_INTERVAL = "hbase.carbon.flush.interval.ms";
+
+  private static final long CARBON_FLUSH_INTERVAL_DEFAULT = 5000L;
+
+  // bytes queued in front of a region writer before the replication blocks
+  private static final String CARBON_WRITE_QUEUE_SIZE = "hbase.carbon.write.queue.size";
+
+  private static final long CARBON_WRITE_QUEUE_SIZE_DEFAULT = 128L * 1024 * 1024;
+
+  // max number of region writers kept open
+  private static final String CARBON_WRITER_POOL_SIZE = "hbase.carbon.writer.pool.size";
+
+  private static final int CARBON_WRITER_POOL_SIZE_DEFAULT = 256;
+
+  // memory of all the region writers after which writers are closed or flushed
+  private static final String CARBON_WRITER_POOL_MEMORY = "hbase.carbon.writer.pool.memory";
+
+  private static final long CARBON_WRITER_POOL_MEMORY_DEFAULT = 1024L * 1024 * 1024;
+
+  // time after which an unused region writer is closed
+  private static final String CARBON_WRITER_IDLE_TIMEOUT = "hbase.carbon.writer.idle.timeout.ms";
+
+  private static final long CARBON_WRITER_IDLE_TIMEOUT_DEFAULT = 10 * 60 * 1000L;
 
   private Configuration conf;
   // Size limit for replication RPCs, in bytes
@@ -72,6 +101,18 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
   // Thread pool executor to write the table into carbon file format
   private ThreadPoolExecutor exec;
 
+  // Thread pool executor to write the queued rows of the regions
+  private ThreadPoolExecutor writeExec;
+
+  // Flushes the region writes older than the flush interval
+  private ScheduledExecutorService flushTimer;
+
+  private long flushSize;
+
+  private long flushInterval;
+
+  private long writeQueueSize;
+
   private int maxThreads;
 
   // HBase table descriptors
@@ -80,8 +121,8 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
   // Map of table and pair of table schema and properties
   private Map<TableName, CarbonHbaseMeta> tableSchemaMap = Maps.newConcurrentMap();
 
-  // Map of regions and carbon writer
-  private Map<String, CarbonWriter> regionsWriterMap = Maps.newConcurrentMap();
+  // Pool of the write pipelines of the region carbon writers
+  private RegionWriterPool writerPool;
 
   private boolean appendBatch;
 
@@ -99,6 +140,10 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
 
   @Override public void stop() {
     closeCarbonWriters();
+    if (flushTimer != null) {
+      flushTimer.shutdownNow();
+      writeExec.shutdown();
+    }
     stopAsync();
   }
 
@@ -123,6 +168,52 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
     this.exec = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
         new LinkedBlockingQueue<>());
     this.exec.allowCoreThreadTimeOut(true);
+    this.flushSize = conf.getLong(CARBON_FLUSH_SIZE, CARBON_FLUSH_SIZE_DEFAULT);
+    this.flushInterval = conf.getLong(CARBON_FLUSH_INTERVAL, CARBON_FLUSH_INTERVAL_DEFAULT);
+    this.writeQueueSize = conf.getLong(CARBON_WRITE_QUEUE_SIZE, CARBON_WRITE_QUEUE_SIZE_DEFAULT);
+    this.writeExec = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>());
+    this.writeExec.allowCoreThreadTimeOut(true);
+    this.flushTimer = new ScheduledThreadPoolExecutor(1);
+    // every open writer allocates a blocklet buffer of the stream cache size, the evicted writers
+    // are closed by the flush timer
+    this.writerPool = new RegionWriterPool(
+        conf.getInt(CARBON_WRITER_POOL_SIZE, CARBON_WRITER_POOL_SIZE_DEFAULT),
+        conf.getLong(CARBON_WRITER_POOL_MEMORY, CARBON_WRITER_POOL_MEMORY_DEFAULT),
+        conf.getInt(CarbonStreamOutputFormat.CARBON_STREAM_CACHE_SIZE,
+            CarbonStreamOutputFormat.CARBON_STREAM_CACHE_SIZE_DEFAULT),
+        conf.getLong(CARBON_WRITER_IDLE_TIMEOUT, CARBON_WRITER_IDLE_TIMEOUT_DEFAULT), flushTimer);
+    long period = Math.max(1, flushInterval / 2);
+    this.flushTimer.scheduleAtFixedRate(() -> {
+      for (RegionWritePipeline pipeline : writerPool.getPipelines()) {
+        pipeline.flushIfExpired();
+      }
+      writerPool.evictIdle();
+      LOG.debug("Carbon writer pool: {} open writers, {} bytes buffered, {} evictions",
+          getOpenWriters(), getBufferedBytes(), getWriterEvictions());
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the number of open region writers
+   */
+  public int getOpenWriters() {
+    return writerPool.getOpenWriters();
+  }
+
+  /**
+   * Returns the memory of all the region writers, their blocklet buffers and the bytes queued or
+   * written and not flushed
+   */
+  public long getBufferedBytes() {
+    return writerPool.getBufferedBytes();
+  }
+
+  /**
+   * Returns the number of region writers closed by the pool
+   */
+  public long getWriterEvictions() {
+    return writerPool.getEvictions();
   }
 
   @Override public boolean replicate(ReplicateContext replicateContext) {
@@ -139,9 +230,6 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
           break;
         }
       }
-      // TODO: Move this logic, can be done while writing to the file
-      // Initialize and cache the carbon writer for each region
-      initCarbonWriters(batches);
       // Replicate the entries concurrently based on batches
       parallelReplicate(pool, replicateContext, batches);
     } catch (Exception e) {
@@ -232,21 +320,49 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
     return () -> serialReplicateRegionEntries(entries, batchIndex);
   }
 
+  /**
+   * Queues the rows of the entries of a region to its writer and waits until they are flushed,
+   * so the entries are acknowledged only once they are durable. The flush is requested once all
+   * the batches of the call are queued, so they share one flush at the queue drain.
+   */
   private int serialReplicateRegionEntries(List<Entry> entries, int batchIndex) throws IOException {
     int batchSize = 0, index = 0;
-    List<Entry> batch = new ArrayList<>();
-    for (Entry entry : entries) {
-      int entrySize = getEstimatedEntrySize(entry);
-      if (batchSize > 0 && batchSize + entrySize > replicationRpcLimit) {
-        writeToCarbonFile(batch, index++);
-        batch.clear();
-        batchSize = 0;
+    long sequence = 0;
+    String regionName = Bytes.toString(entries.get(0).getKey().getEncodedRegionName());
+    RegionWritePipeline pipeline = null;
+    try {
+      TableName tableName = entries.get(0).getKey().getTableName();
+      pipeline = writerPool.acquire(regionName, region -> createWritePipeline(tableName, region));
+      List<Entry> batch = new ArrayList<>();
+      for (Entry entry : entries) {
+        int entrySize = getEstimatedEntrySize(entry);
+        if (batchSize > 0 && batchSize + entrySize > replicationRpcLimit) {
+          sequence = pipeline.submit(convertToRows(batch), batchSize);
+          index++;
+          batch.clear();
+          batchSize = 0;
+        }
+        batch.add(entry);
+        batchSize += entrySize;
+      }
+      if (batchSize > 0) {
+        sequence = pipeline.submit(convertToRows(batch), batchSize);
+      }
+      // the next entries are shipped only once this call returns, so the group flush of the
+      // flush size or interval would stall the replication
+      pipeline.requestFlush();
+      pipeline.awaitDurable(sequence);
+    } catch (Exception e) {
+      LOG.error("Exception occured while writing batch " + index + " of region " + regionName, e);
+      // the entries are shipped again, so the writer is recreated
+      if (pipeline != null) {
+        discardWritePipeline(regionName, pipeline);
+      }
+      throw e instanceof IOException ? (IOException) e : new IOException(e);
+    } finally {
+      if (pipeline != null) {
+        writerPool.release(pipeline);
       }
-      batch.add(entry);
-      batchSize += entrySize;
-    }
-    if (batchSize > 0) {
-      writeToCarbonFile(batch, index);
     }
     return batchIndex;
   }
@@ -266,29 +382,26 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
     return ctx.getReplicationPeer().isPeerEnabled();
   }
 
-  private void initCarbonWriters(List<List<Entry>> batches) {
-    for (List<Entry> entry : batches) {
-      if (entry.isEmpty()) {
-        continue;
-      }
+  private RegionWritePipeline createWritePipeline(TableName tableName, String regionName)
+      throws IOException {
+    try {
+      return new RegionWritePipeline(regionName, createCarbonWriter(tableName), writeExec,
+          writeQueueSize, flushSize, flushInterval);
+    } catch (InvalidLoadOptionException e) {
+      throw new IOException(e);
+    }
+  }
 
-      for (Entry walEntry : entry) {
-        // Create carbon writer for each region with the specific path
-        String regionName = Bytes.toString(walEntry.getKey().getEncodedRegionName());
-        if (regionsWriterMap.get(regionName) == null) {
-          try {
-            TableName tableName = walEntry.getKey().getTableName();
-            createCarbonWriter(tableName, regionName);
-          } catch (Exception e) {
-            LOG.error("Exception occured while initializing carbon writer for region " + regionName,
-                e);
-          }
-        }
-      }
+  private void discardWritePipeline(String regionName, RegionWritePipeline pipeline) {
+    writerPool.remove(regionName, pipeline);
+    try {
+      pipeline.close();
+    } catch (Exception e) {
+      LOG.warn("Exception occured while closing the carbon writer of region " + regionName, e);
     }
   }
 
-  private void createCarbonWriter(TableName tableName, String regionName)
+  protected CarbonWriter createCarbonWriter(TableName tableName)
       throws IOException, InvalidLoadOptionException {
 
     Schema tableSchema = null;
@@ -317,15 +430,12 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
         CarbonWriter.builder().outputPath(path).withTableProperties(clonedProps)
             .withRowFormat(tableSchema).writtenBy(CarbonReplicationEndpoint.class.getSimpleName())
             .withHadoopConf(new Configuration(conf));
-    regionsWriterMap.put(regionName, builder.build());
+    return builder.build();
   }
 
   private void closeCarbonWriters() {
     try {
-      for (CarbonWriter writer : regionsWriterMap.values()) {
-        writer.close();
-      }
-      regionsWriterMap.clear();
+      writerPool.closeAll();
     } catch (Exception e) {
       LOG.error("Exception occured while closing the carbon writer", e);
     }
@@ -342,94 +452,15 @@ public class CarbonReplicationEndpoint extends BaseReplicationEndpoint {
   // �hbase_mapping�:"key=ID,cf1.name=name,cf1.dept=department,cf2.sal=salary",
   // �path�:"dlc://user.bucket1/customer"}
   // }
-  private void writeToCarbonFile(List<Entry> batch, int index) {
-    String regionName = Bytes.toString(batch.get(0).getKey().getEncodedRegionName());
-    try {
-      // Check and create the write if not exist
-      TableName tName = batch.get(index).getKey().getTableName();
-      CarbonWriter carbonWriter = regionsWriterMap.get(regionName);
-      if (carbonWriter == null) {
-        createCarbonWriter(tName, regionName);
-        carbonWriter = regionsWriterMap.get(regionName);
-      }
-      CarbonHbaseMeta hbaseMeta = tableSchemaMap.get(tName);
-      // Check the keys in sequence order and if the keys are same then merge to the same carbon row.
-      ByteArrayWrapper rowKey = null;
-      String[] row = null;
-      for (Entry entry : batch) {
-        for (Cell cell : entry.getEdit().getCells()) {
-          ByteArrayWrapper tmpKey =
-              new ByteArrayWrapper(cell.getRowArray(), cell.getRowOffset(),
-                  cell.getRowLength(), cell.getType());
-          boolean deleteFamily = cell.getType() == Cell.Type.DeleteFamily;
-          boolean delete = cell.getType() == Cell.Type.Delete;
-          boolean merge = false;
-          if (rowKey != null) {
-            if (rowKey.equals(tmpKey)) {
-              merge = true;
-            }
-          }
-
-          if (merge) {
-            if (deleteFamily) {
-              fillCellDeleteFamily(row, hbaseMeta);
-            } else {
-              fillCell(row, cell, hbaseMeta, delete);
-            }
-          } else {
-            if (row != null) {
-              carbonWriter.write(row);
-            }
-            row = new String[hbaseMeta.getSchema().getFieldsLength()];
-            int keyColumnIndex = hbaseMeta.getKeyColumnIndex();
-            row[keyColumnIndex] = hbaseMeta
-                .convertData(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength(),
-                    keyColumnIndex);
-            row[hbaseMeta.getTimestampMapIndex()] = String.valueOf(cell.getTimestamp());
-            if (deleteFamily) {
-              fillCellDeleteFamily(row, hbaseMeta);
-            } else {
-              fillCell(row, cell, hbaseMeta, delete);
-            }
-
-            if (delete ) {
-              row[hbaseMeta.getDeleteStatusMap()] = DELETE;
-            } else if (deleteFamily) {
-              row[hbaseMeta.getDeleteStatusMap()] = DELETEFAMILY;
-            } else {
-              row[hbaseMeta.getDeleteStatusMap()] = INSERT;
-            }
-          }
-          rowKey = tmpKey;
-        }
-      }
-      if (row != null) {
-        carbonWriter.write(row);
+  private List<Object[]> convertToRows(List<Entry> batch) {
+    TableName tName = batch.get(0).getKey().getTableName();
+    // Collapse all the cells of a row key in the batch to one row, sorted on the row key
+    RowAssembler assembler = new RowAssembler(tableSchemaMap.get(tName));
+    for (Entry entry : batch) {
+      for (Cell cell : entry.getEdit().getCells()) {
+        assembler.add(cell);
       }
-      carbonWriter.flushBatch();
-    } catch (Exception e) {
-      LOG.error("Exception occured while performing writer flush", e);
-    }
-  }
-
-  private static void fillCellDeleteFamily(String[] row, CarbonHbaseMeta meta) {
-
-    for (Integer index : meta.getSchemaMapping().values()) {
-      row[index] = DELETE;
-    }
-  }
-
-  private static void fillCell(String[] row, Cell cell, CarbonHbaseMeta meta, boolean delete) {
-
-    int index = meta.getSchemaIndexOfColumn(cell.getFamilyArray(), cell.getFamilyOffset(),
-        cell.getFamilyLength(), cell.getQualifierArray(), cell.getQualifierOffset(),
-        cell.getQualifierLength());
-    if (!delete) {
-      String data =
-          meta.convertData(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength(), index);
-      row[index] = data;
-    } else {
-      row[index] = DELETE;
     }
+    return assembler.finish();
   }
 }
@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.carbondata.sdk.file.CarbonWriter;
+
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous writer of a region. Row batches are queued in a queue bounded by bytes, which
+ * blocks the producer when it is full, and are written by a task on a shared executor, so the
+ * decoding of the WAL entries overlaps with the file writes. The writes are flushed in groups,
+ * when the unflushed bytes reach the flush size or when the oldest unflushed write is older than
+ * the flush interval, or once the queue is drained after a flush is requested or the pipeline
+ * is closed.
+ *
+ * Every batch gets a sequence number, {@link #awaitDurable(long)} waits for the group flush
+ * which covers the batch, so the callers waiting together share one flush. After a failure the
+ * pipeline rejects all batches and must be discarded.
+ */
+@InterfaceAudience.Private
+public class RegionWritePipeline {
+  private static final Logger LOG = LoggerFactory.getLogger(RegionWritePipeline.class);
+
+  private final String regionName;
+
+  private final CarbonWriter writer;
+
+  private final Executor executor;
+
+  private final long maxQueuedBytes;
+
+  private final long flushSize;
+
+  private final long flushIntervalMillis;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notFull = lock.newCondition();
+
+  private final Condition durable = lock.newCondition();
+
+  private final ArrayDeque<Batch> queue = new ArrayDeque<>();
+
+  private long queuedBytes;
+
+  private long nextSequence;
+
+  // sequence of the last batch written to the writer
+  private long writtenSequence;
+
+  private long unflushedBytes;
+
+  private long firstUnflushedTime;
+
+  private long flushedSequence;
+
+  private long syncSequence;
+
+  private boolean scheduled;
+
+  private boolean closed;
+
+  // the closing caller was interrupted, the drain task closes the writer once it ends
+  private boolean closeWriterOnDrain;
+
+  private IOException failure;
+
+  private volatile long lastAccessTime = System.currentTimeMillis();
+
+  private final Runnable drainTask = this::drain;
+
+  public RegionWritePipeline(String regionName, CarbonWriter writer, Executor executor,
+      long maxQueuedBytes, long flushSize, long flushIntervalMillis) {
+    this.regionName = regionName;
+    this.writer = writer;
+    this.executor = executor;
+    this.maxQueuedBytes = maxQueuedBytes;
+    this.flushSize = flushSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  /**
+   * Queues the rows of a batch, blocks while the queue is full. Returns the sequence number of
+   * the batch.
+   */
+  public long submit(List<Object[]> rows, long bytes) throws IOException {
+    lastAccessTime = System.currentTimeMillis();
+    lock.lock();
+    try {
+      // an empty queue always admits a batch, so a batch larger than the queue can not block
+      while (failure == null && !closed && !queue.isEmpty()
+          && queuedBytes + bytes > maxQueuedBytes) {
+        await(notFull, Long.MAX_VALUE);
+      }
+      checkState();
+      long sequence = ++nextSequence;
+      queue.add(new Batch(rows, bytes, sequence));
+      queuedBytes += bytes;
+      schedule();
+      return sequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the batch of the sequence number is flushed. The wait does not force a flush,
+   * the batch is flushed with the group of the flush size or at the latest once the flush
+   * interval of the oldest unflushed write expires.
+   */
+  public void awaitDurable(long sequence) throws IOException {
+    lock.lock();
+    try {
+      while (failure == null && flushedSequence < sequence) {
+        long delay = firstUnflushedTime + flushIntervalMillis - System.currentTimeMillis();
+        if (writtenSequence > flushedSequence && delay > 0) {
+          await(durable, TimeUnit.MILLISECONDS.toNanos(delay));
+        } else if (scheduled || writtenSequence == flushedSequence) {
+          // the drain task signals once the queued batches are written or flushed
+          await(durable, Long.MAX_VALUE);
+        } else {
+          // the flush interval expired, the drain task flushes the written batches
+          schedule();
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flushes the writes older than the flush interval, called periodically
+   */
+  public void flushIfExpired() {
+    lock.lock();
+    try {
+      if (failure == null && writtenSequence > flushedSequence
+          && System.currentTimeMillis() - firstUnflushedTime >= flushIntervalMillis) {
+        schedule();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flushes the batches queued so far without waiting for it
+   */
+  public void requestFlush() {
+    lock.lock();
+    try {
+      if (failure == null && syncSequence < nextSequence) {
+        syncSequence = nextSequence;
+        schedule();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public String getRegionName() {
+    return regionName;
+  }
+
+  /**
+   * Returns the bytes queued or written and not flushed yet
+   */
+  public long getBufferedBytes() {
+    lock.lock();
+    try {
+      return queuedBytes + unflushedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getLastAccessTime() {
+    return lastAccessTime;
+  }
+
+  /**
+   * Flushes the queued batches and closes the writer. If the caller is interrupted the queued
+   * batches are dropped.
+   */
+  public void close() throws IOException {
+    long sequence;
+    lock.lock();
+    try {
+      sequence = nextSequence;
+      closed = true;
+      notFull.signalAll();
+      // the closed pipeline is flushed once the queue is drained
+      schedule();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      awaitDurable(sequence);
+    } catch (InterruptedIOException e) {
+      abandonWriter(e);
+      throw e;
+    } catch (IOException e) {
+      closeWriter();
+      throw e;
+    }
+    closeWriter();
+  }
+
+  /**
+   * Closes the writer once the drain task is finished
+   */
+  private void closeWriter() throws IOException {
+    lock.lock();
+    try {
+      while (scheduled) {
+        try {
+          durable.await();
+        } catch (InterruptedException e) {
+          InterruptedIOException exception = new InterruptedIOException(
+              "Interrupted while closing the writer of region " + regionName);
+          abandonWriter(exception);
+          throw exception;
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    writer.close();
+  }
+
+  /**
+   * Drops the queued batches of an interrupted close. The writer is closed by the drain task
+   * once the batch it writes is done, or at once if the drain task is not running.
+   */
+  private void abandonWriter(InterruptedIOException e) throws IOException {
+    boolean closeNow;
+    lock.lock();
+    try {
+      fail(e);
+      closeWriterOnDrain = scheduled;
+      closeNow = !scheduled;
+    } finally {
+      lock.unlock();
+    }
+    if (closeNow) {
+      writer.close();
+    }
+  }
+
+  private void checkState() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    if (closed) {
+      throw new IOException("Writer pipeline of region " + regionName + " is closed");
+    }
+  }
+
+  /**
+   * Waits on the condition at most the given time, called with the lock held
+   */
+  private void await(Condition condition, long nanos) throws InterruptedIOException {
+    try {
+      condition.awaitNanos(nanos);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException(
+          "Interrupted while waiting for the writer of region " + regionName);
+    }
+  }
+
+  /**
+   * Schedules the drain task if it is not running, called with the lock held
+   */
+  private void schedule() {
+    if (!scheduled) {
+      scheduled = true;
+      try {
+        executor.execute(drainTask);
+      } catch (RuntimeException e) {
+        scheduled = false;
+        fail(new IOException("Failed to schedule the writer of region " + regionName, e));
+      }
+    }
+  }
+
+  private void drain() {
+    boolean closeWriter = false;
+    try {
+      while (true) {
+        Batch batch;
+        lock.lock();
+        try {
+          batch = queue.poll();
+          if (batch != null) {
+            queuedBytes -= batch.bytes;
+            notFull.signalAll();
+          } else if (!isFlushDue()) {
+            scheduled = false;
+            closeWriter = closeWriterOnDrain;
+            durable.signalAll();
+            break;
+          }
+        } finally {
+          lock.unlock();
+        }
+        if (batch != null) {
+          for (Object[] row : batch.rows) {
+            writer.writeTypedRow(row);
+          }
+          boolean flush;
+          lock.lock();
+          try {
+            if (writtenSequence == flushedSequence) {
+              firstUnflushedTime = System.currentTimeMillis();
+            }
+            writtenSequence = batch.sequence;
+            unflushedBytes += batch.bytes;
+            flush = failure == null && unflushedBytes >= flushSize;
+          } finally {
+            lock.unlock();
+          }
+          if (flush) {
+            flush();
+          }
+        } else {
+          flush();
+        }
+      }
+    } catch (Throwable e) {
+      LOG.error("Exception occured while writing region " + regionName, e);
+      lock.lock();
+      try {
+        fail(e instanceof IOException ? (IOException) e : new IOException(e));
+        scheduled = false;
+        closeWriter = closeWriterOnDrain;
+        durable.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+    if (closeWriter) {
+      try {
+        writer.close();
+      } catch (Throwable e) {
+        LOG.error("Exception occured while closing the writer of region " + regionName, e);
+      }
+    }
+  }
+
+  /**
+   * Whether the written batches should be flushed once the queue is drained, called with the
+   * lock held
+   */
+  private boolean isFlushDue() {
+    if (failure != null || writtenSequence == flushedSequence) {
+      return false;
+    }
+    return syncSequence > flushedSequence || closed
+        || System.currentTimeMillis() - firstUnflushedTime >= flushIntervalMillis;
+  }
+
+  private void flush() throws IOException {
+    long sequence;
+    lock.lock();
+    try {
+      sequence = writtenSequence;
+    } finally {
+      lock.unlock();
+    }
+    writer.flushBatch();
+    lock.lock();
+    try {
+      flushedSequence = sequence;
+      unflushedBytes = 0;
+      durable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Marks the pipeline failed and releases the waiting callers, called with the lock held
+   */
+  private void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    queue.clear();
+    queuedBytes = 0;
+    notFull.signalAll();
+    durable.signalAll();
+  }
+
+  private static class Batch {
+
+    private final List<Object[]> rows;
+
+    private final long bytes;
+
+    private final long sequence;
+
+    Batch(List<Object[]> rows, long bytes, long sequence) {
+      this.rows = rows;
+      this.bytes = bytes;
+      this.sequence = sequence;
+    }
+  }
+}
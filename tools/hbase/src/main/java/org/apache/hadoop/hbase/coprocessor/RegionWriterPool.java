@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of the region write pipelines. The pipelines are kept in least recently used
+ * order and a pipeline not in use is closed, which flushes it, when the pool exceeds the max
+ * number of writers, when the memory of all the pipelines exceeds the memory budget, or when it
+ * is idle longer than the idle timeout. The memory of a pipeline is the blocklet buffer its
+ * writer allocates when it is opened and the bytes it buffers. If the budget is still exceeded
+ * the pipelines in use with the most buffered bytes are asked to flush. The evicted pipelines are
+ * closed by the close executor, so the callers of {@link #acquire} do not wait for their flush.
+ */
+@InterfaceAudience.Private
+public class RegionWriterPool {
+  private static final Logger LOG = LoggerFactory.getLogger(RegionWriterPool.class);
+
+  /**
+   * Creates the pipeline of a region
+   */
+  public interface PipelineFactory {
+    RegionWritePipeline create(String regionName) throws IOException;
+  }
+
+  private final int maxWriters;
+
+  private final long maxBufferedBytes;
+
+  // bytes of the blocklet buffer held by every open writer, even an idle one
+  private final long writerBufferBytes;
+
+  private final long idleTimeoutMillis;
+
+  private final Executor closeExecutor;
+
+  // pipelines in access order
+  private final LinkedHashMap<String, RegionWritePipeline> pipelines =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  // number of callers using a pipeline, a pipeline in use is not evicted
+  private final Map<RegionWritePipeline, Integer> usages = new HashMap<>();
+
+  // regions whose pipeline is being created, the callers of the region wait for it
+  private final Set<String> creating = new HashSet<>();
+
+  // evicted pipelines not closed yet
+  private final List<RegionWritePipeline> closing = new ArrayList<>();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param closeExecutor executor closing the evicted pipelines, it must not be the executor of
+   *                      the drain tasks of the pipelines, as a close waits for its drain task
+   */
+  public RegionWriterPool(int maxWriters, long maxBufferedBytes, long writerBufferBytes,
+      long idleTimeoutMillis, Executor closeExecutor) {
+    this.maxWriters = Math.max(1, maxWriters);
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.writerBufferBytes = writerBufferBytes;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.closeExecutor = closeExecutor;
+  }
+
+  /**
+   * Returns the pipeline of the region, created by the factory if it is not open. The pipeline
+   * is created outside the lock of the pool, so the other regions are not blocked by the file
+   * system. The pipeline must be released by {@link #release(RegionWritePipeline)}.
+   */
+  public RegionWritePipeline acquire(String regionName, PipelineFactory factory)
+      throws IOException {
+    RegionWritePipeline pipeline;
+    synchronized (this) {
+      try {
+        while ((pipeline = pipelines.get(regionName)) == null && creating.contains(regionName)) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException(
+            "Interrupted while waiting for the carbon writer of region " + regionName);
+      }
+      if (pipeline != null) {
+        usages.merge(pipeline, 1, Integer::sum);
+      } else {
+        creating.add(regionName);
+      }
+    }
+    if (pipeline == null) {
+      try {
+        pipeline = factory.create(regionName);
+      } finally {
+        synchronized (this) {
+          creating.remove(regionName);
+          if (pipeline != null) {
+            pipelines.put(regionName, pipeline);
+            usages.merge(pipeline, 1, Integer::sum);
+          }
+          notifyAll();
+        }
+      }
+    }
+    evict(System.currentTimeMillis(), false);
+    return pipeline;
+  }
+
+  public synchronized void release(RegionWritePipeline pipeline) {
+    Integer usage = usages.get(pipeline);
+    if (usage != null) {
+      if (usage <= 1) {
+        usages.remove(pipeline);
+      } else {
+        usages.put(pipeline, usage - 1);
+      }
+    }
+  }
+
+  /**
+   * Removes the pipeline from the pool without closing it, used for a failed pipeline
+   */
+  public synchronized void remove(String regionName, RegionWritePipeline pipeline) {
+    pipelines.remove(regionName, pipeline);
+  }
+
+  /**
+   * Closes the idle pipelines and the pipelines over the limits of the pool, called periodically
+   */
+  public void evictIdle() {
+    evict(System.currentTimeMillis(), true);
+  }
+
+  public synchronized List<RegionWritePipeline> getPipelines() {
+    return new ArrayList<>(pipelines.values());
+  }
+
+  public synchronized int getOpenWriters() {
+    return pipelines.size();
+  }
+
+  /**
+   * Returns the memory of the open pipelines, their blocklet buffers and their buffered bytes
+   */
+  public long getBufferedBytes() {
+    List<RegionWritePipeline> open = getPipelines();
+    long bytes = open.size() * writerBufferBytes;
+    for (RegionWritePipeline pipeline : open) {
+      bytes += pipeline.getBufferedBytes();
+    }
+    return bytes;
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Closes all the pipelines, the evicted ones not closed yet as well
+   */
+  public void closeAll() throws IOException {
+    List<RegionWritePipeline> open;
+    synchronized (this) {
+      open = new ArrayList<>(pipelines.values());
+      pipelines.clear();
+    }
+    closeEvicted();
+    IOException exception = null;
+    for (RegionWritePipeline pipeline : open) {
+      try {
+        pipeline.close();
+      } catch (IOException e) {
+        LOG.error("Exception occured while closing the carbon writer of region "
+            + pipeline.getRegionName(), e);
+        exception = e;
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  private void evict(long now, boolean checkIdle) {
+    List<RegionWritePipeline> evicted = new ArrayList<>();
+    List<RegionWritePipeline> flushed = new ArrayList<>();
+    synchronized (this) {
+      long bufferedBytes = pipelines.size() * writerBufferBytes;
+      for (RegionWritePipeline pipeline : pipelines.values()) {
+        bufferedBytes += pipeline.getBufferedBytes();
+      }
+      int openWriters = pipelines.size();
+      // least recently used first
+      Iterator<RegionWritePipeline> iterator = pipelines.values().iterator();
+      while (iterator.hasNext()) {
+        RegionWritePipeline pipeline = iterator.next();
+        boolean overLimit = openWriters > maxWriters || bufferedBytes > maxBufferedBytes;
+        boolean idle = checkIdle && now - pipeline.getLastAccessTime() >= idleTimeoutMillis;
+        if (!overLimit && !idle) {
+          if (!checkIdle) {
+            break;
+          }
+          continue;
+        }
+        if (usages.containsKey(pipeline)) {
+          continue;
+        }
+        iterator.remove();
+        evicted.add(pipeline);
+        openWriters--;
+        bufferedBytes -= writerBufferBytes + pipeline.getBufferedBytes();
+      }
+      if (bufferedBytes > maxBufferedBytes) {
+        // the buffered bytes change concurrently, so they are sorted on a snapshot
+        Map<RegionWritePipeline, Long> inUse = new HashMap<>();
+        for (RegionWritePipeline pipeline : usages.keySet()) {
+          inUse.put(pipeline, pipeline.getBufferedBytes());
+        }
+        List<RegionWritePipeline> largestFirst = new ArrayList<>(inUse.keySet());
+        largestFirst.sort((p1, p2) -> Long.compare(inUse.get(p2), inUse.get(p1)));
+        for (RegionWritePipeline pipeline : largestFirst) {
+          if (bufferedBytes <= maxBufferedBytes) {
+            break;
+          }
+          flushed.add(pipeline);
+          bufferedBytes -= inUse.get(pipeline);
+        }
+      }
+    }
+    for (RegionWritePipeline pipeline : flushed) {
+      pipeline.requestFlush();
+    }
+    if (!evicted.isEmpty()) {
+      evictions.addAndGet(evicted.size());
+      synchronized (this) {
+        closing.addAll(evicted);
+      }
+      closeExecutor.execute(this::closeEvicted);
+    }
+  }
+
+  /**
+   * Closes the evicted pipelines, which flushes them
+   */
+  private void closeEvicted() {
+    List<RegionWritePipeline> evicted;
+    synchronized (this) {
+      evicted = new ArrayList<>(closing);
+      closing.clear();
+    }
+    for (RegionWritePipeline pipeline : evicted) {
+      LOG.debug("Evicting carbon writer of region {}", pipeline.getRegionName());
+      try {
+        pipeline.close();
+      } catch (IOException e) {
+        // the unflushed rows are not acknowledged, so they are replicated again
+        LOG.error("Exception occured while closing the carbon writer of region "
+            + pipeline.getRegionName(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Assembles the cells of a replication batch into carbon rows. All the cells of a row key are
+ * collapsed, whatever their order in the batch, into at most two rows: a delete row with the
+ * column or family deletes and an insert row with the newest value of every put column. The
+ * columns of the two rows are kept disjoint, or the delete row is older than the insert row, so
+ * the primary key merge of the readers gives the same result as applying the cells one by one.
+ *
+ * The rows are found by an open addressing hash map keyed on the row key bytes, and are emitted
+ * sorted on the row key so the stream blocklets are written mostly sorted.
+ */
+@InterfaceAudience.Private
+public class RowAssembler {
+
+  private static final int INSERT = 0;
+  private static final int DELETE = 1;
+  private static final int DELETEFAMILY = 2;
+
+  private static final long NO_VERSION = Long.MIN_VALUE;
+
+  private final CarbonHbaseMeta meta;
+
+  private final int fieldCount;
+
+  private final int[] mappedColumns;
+
+  // open addressing table of the row states, linear probing, the capacity is a power of 2
+  private RowState[] table;
+
+  private int size;
+
+  public RowAssembler(CarbonHbaseMeta meta) {
+    this.meta = meta;
+    this.fieldCount = meta.getSchema().getFieldsLength();
+    this.mappedColumns = meta.getSchemaMapping().values().stream().mapToInt(i -> i).toArray();
+    this.table = new RowState[64];
+  }
+
+  /**
+   * Adds the cell to the row of its key
+   */
+  public void add(Cell cell) {
+    Cell.Type type = cell.getType();
+    if (type == Cell.Type.DeleteFamily) {
+      getRowState(cell).deleteFamily(cell.getTimestamp());
+      return;
+    }
+    int index = meta.getSchemaIndexOfColumn(cell.getFamilyArray(), cell.getFamilyOffset(),
+        cell.getFamilyLength(), cell.getQualifierArray(), cell.getQualifierOffset(),
+        cell.getQualifierLength());
+    if (index < 0) {
+      // the column is not mapped to the carbon table
+      return;
+    }
+    if (type == Cell.Type.Delete || type == Cell.Type.DeleteColumn) {
+      getRowState(cell).deleteColumn(index, cell.getTimestamp());
+    } else {
+      getRowState(cell).put(index, cell.getTimestamp(), meta
+          .decodeData(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength(), index));
+    }
+  }
+
+  public int getRowKeyCount() {
+    return size;
+  }
+
+  /**
+   * Returns the rows sorted on the row key, the delete row of a key before its insert row, and
+   * clears the assembler for the next batch
+   */
+  public List<Object[]> finish() {
+    RowState[] states = new RowState[size];
+    int count = 0;
+    for (RowState state : table) {
+      if (state != null) {
+        states[count++] = state;
+      }
+    }
+    Arrays.sort(states, (s1, s2) -> Bytes.compareTo(s1.key, s2.key));
+    List<Object[]> rows = new ArrayList<>(size);
+    int keyIndex = meta.getKeyColumnIndex();
+    for (RowState state : states) {
+      Object key = null;
+      if (state.hasDeletes()) {
+        key = meta.decodeData(state.key, 0, state.key.length, keyIndex);
+        rows.add(state.toRow(state.deleteRow, key, state.deleteVersion, state.deleteStatus));
+      }
+      if (state.insertCount > 0) {
+        if (key == null) {
+          key = meta.decodeData(state.key, 0, state.key.length, keyIndex);
+        }
+        rows.add(state.toRow(state.insertRow, key, state.insertVersion, INSERT));
+      }
+    }
+    Arrays.fill(table, null);
+    size = 0;
+    return rows;
+  }
+
+  private RowState getRowState(Cell cell) {
+    byte[] array = cell.getRowArray();
+    int offset = cell.getRowOffset();
+    int length = cell.getRowLength();
+    int hash = Bytes.hashCode(array, offset, length);
+    int mask = table.length - 1;
+    int slot = mix(hash) & mask;
+    while (table[slot] != null) {
+      RowState state = table[slot];
+      if (state.hash == hash
+          && Bytes.equals(state.key, 0, state.key.length, array, offset, length)) {
+        return state;
+      }
+      slot = (slot + 1) & mask;
+    }
+    RowState state = new RowState(Bytes.copy(array, offset, length), hash);
+    table[slot] = state;
+    if (++size * 2 > table.length) {
+      resize();
+    }
+    return state;
+  }
+
+  private void resize() {
+    RowState[] oldTable = table;
+    table = new RowState[oldTable.length * 2];
+    int mask = table.length - 1;
+    for (RowState state : oldTable) {
+      if (state != null) {
+        int slot = mix(state.hash) & mask;
+        while (table[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = state;
+      }
+    }
+  }
+
+  /**
+   * Spreads the bits of the hash, the row keys often differ only in the last bytes
+   */
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Cells of a row key
+   */
+  private class RowState {
+
+    private final byte[] key;
+
+    private final int hash;
+
+    private Object[] insertRow;
+
+    // timestamp of every put column of the insert row
+    private long[] putVersions;
+
+    private int insertCount;
+
+    private long insertVersion = NO_VERSION;
+
+    private Object[] deleteRow;
+
+    // timestamp of every column delete of the delete row
+    private long[] deleteVersions;
+
+    private long deleteVersion = NO_VERSION;
+
+    private int deleteStatus;
+
+    RowState(byte[] key, int hash) {
+      this.key = key;
+      this.hash = hash;
+    }
+
+    void put(int index, long timestamp, Object value) {
+      if (deleteRow != null) {
+        long maskVersion = deleteStatus == DELETEFAMILY ? deleteVersion : deleteVersions[index];
+        if (timestamp <= maskVersion) {
+          // masked by the delete
+          return;
+        }
+      }
+      if (insertRow == null) {
+        insertRow = new Object[fieldCount];
+        putVersions = newVersions();
+      }
+      if (putVersions[index] == NO_VERSION) {
+        insertCount++;
+      }
+      if (timestamp >= putVersions[index]) {
+        insertRow[index] = value;
+        putVersions[index] = timestamp;
+        insertVersion = Math.max(insertVersion, timestamp);
+      }
+      // the put overwrites the older values, so the column delete is not needed and would hide
+      // the put if the delete row is newer than the insert row
+      if (deleteStatus == DELETE && deleteRow[index] != null) {
+        deleteRow[index] = null;
+      }
+    }
+
+    void deleteColumn(int index, long timestamp) {
+      if (insertRow != null && putVersions[index] != NO_VERSION
+          && putVersions[index] <= timestamp) {
+        removeInsertColumn(index);
+      }
+      if (insertRow != null && putVersions[index] != NO_VERSION) {
+        // a newer put of the column survives the delete
+        return;
+      }
+      if (deleteStatus == DELETEFAMILY) {
+        // the column is deleted by the family delete
+        return;
+      }
+      if (deleteRow == null) {
+        deleteRow = new Object[fieldCount];
+        deleteVersions = newVersions();
+        deleteStatus = DELETE;
+      }
+      deleteRow[index] = meta.getDeleteMarker(index);
+      deleteVersions[index] = Math.max(deleteVersions[index], timestamp);
+      deleteVersion = Math.max(deleteVersion, timestamp);
+    }
+
+    void deleteFamily(long timestamp) {
+      if (insertRow != null) {
+        for (int i = 0; i < fieldCount; i++) {
+          if (putVersions[i] != NO_VERSION && putVersions[i] <= timestamp) {
+            removeInsertColumn(i);
+          }
+        }
+      }
+      if (deleteRow == null) {
+        deleteRow = new Object[fieldCount];
+        deleteVersions = newVersions();
+      }
+      for (int index : mappedColumns) {
+        deleteRow[index] = meta.getDeleteMarker(index);
+      }
+      if (deleteStatus != DELETEFAMILY) {
+        // the version of a family delete must stay older than the puts which survive it
+        deleteVersion = NO_VERSION;
+      }
+      deleteStatus = DELETEFAMILY;
+      deleteVersion = Math.max(deleteVersion, timestamp);
+    }
+
+    /**
+     * Whether the delete row deletes any column, the column deletes are dropped by newer puts
+     */
+    boolean hasDeletes() {
+      if (deleteRow == null) {
+        return false;
+      }
+      if (deleteStatus == DELETEFAMILY) {
+        return true;
+      }
+      for (int index : mappedColumns) {
+        if (deleteRow[index] != null) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void removeInsertColumn(int index) {
+      insertRow[index] = null;
+      putVersions[index] = NO_VERSION;
+      insertCount--;
+      if (insertCount == 0) {
+        insertVersion = NO_VERSION;
+      }
+    }
+
+    private long[] newVersions() {
+      long[] versions = new long[fieldCount];
+      Arrays.fill(versions, NO_VERSION);
+      return versions;
+    }
+
+    Object[] toRow(Object[] values, Object key, long version, int status) {
+      Object[] row = Arrays.copyOf(values, values.length);
+      row[meta.getKeyColumnIndex()] = key;
+      row[meta.getTimestampMapIndex()] = version;
+      row[meta.getDeleteStatusMap()] = meta.getDeleteStatusValue(status);
+      return row;
+    }
+  }
+}
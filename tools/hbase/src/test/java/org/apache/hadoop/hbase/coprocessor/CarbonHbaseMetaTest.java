@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.carbondata.core.constants.CarbonCommonConstants;
+import org.apache.carbondata.core.keygenerator.directdictionary.DirectDictionaryKeyGeneratorFactory;
+import org.apache.carbondata.core.metadata.datatype.DataType;
+import org.apache.carbondata.core.metadata.datatype.DataTypes;
+import org.apache.carbondata.core.metadata.encoder.Encoding;
+import org.apache.carbondata.core.metadata.schema.table.column.CarbonDimension;
+import org.apache.carbondata.core.metadata.schema.table.column.ColumnSchema;
+import org.apache.carbondata.core.util.DataTypeUtil;
+import org.apache.carbondata.processing.loading.DataField;
+import org.apache.carbondata.sdk.file.CarbonSchemaWriter;
+import org.apache.carbondata.sdk.file.Schema;
+import org.apache.carbondata.streaming.StreamTypedRowConverter;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CarbonHbaseMetaTest {
+
+  private static final String SCHEMA = "{\"id\":\"string\", \"name\":\"varchar\","
+      + " \"flag\":\"boolean\", \"small\":\"short\", \"num\":\"int\", \"big\":\"long\","
+      + " \"salary\":\"double\", \"rate\":\"float\", \"tiny\":\"byte\", \"amount\":\"decimal\","
+      + " \"day\":\"date\", \"ts\":\"timestamp\", \"status\":\"int\", \"tblproperties\":"
+      + " {\"sort_columns\":\"id\", \"hbase_mapping\":\"key=id,cf1:name=name,cf1:flag=flag,"
+      + "cf1:small=small,cf1:num=num,cf1:big=big,cf1:salary=salary,cf1:rate=rate,"
+      + "cf1:tiny=tiny,cf1:amount=amount,cf1:day=day,timestamp=ts,deletestatus=status\"}}";
+
+  private static final int DAY = 11;
+
+  // the cells are not at the start of the value array in hbase
+  private static final int OFFSET = 3;
+
+  private CarbonHbaseMeta meta;
+
+  @Before public void setUp() throws IOException {
+    Map<String, String> tblProperties = new HashMap<>();
+    Schema schema = CarbonSchemaWriter.convertToSchemaFromJSON(SCHEMA, tblProperties);
+    meta = new CarbonHbaseMeta(schema, tblProperties);
+  }
+
+  @Test public void testMapping() {
+    Assert.assertEquals(0, meta.getKeyColumnIndex());
+    Assert.assertEquals(11, meta.getTimestampMapIndex());
+    Assert.assertEquals(12, meta.getDeleteStatusMap());
+    byte[] family = Bytes.toBytes("cf1");
+    byte[] qualifier = Bytes.toBytes("salary");
+    Assert.assertEquals(6, meta.getSchemaIndexOfColumn(family, 0, family.length, qualifier, 0,
+        qualifier.length));
+    byte[] unknown = Bytes.toBytes("unknown");
+    Assert.assertEquals(-1, meta.getSchemaIndexOfColumn(family, 0, family.length, unknown, 0,
+        unknown.length));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testDeleteStatusMappingIsMandatory() throws IOException {
+    Map<String, String> tblProperties = new HashMap<>();
+    Schema schema = CarbonSchemaWriter.convertToSchemaFromJSON(
+        SCHEMA.replace(",deletestatus=status", ""), tblProperties);
+    new CarbonHbaseMeta(schema, tblProperties);
+  }
+
+  @Test public void testDecodeEveryType() {
+    Object[] values = createValues();
+    for (int i = 0; i < values.length; i++) {
+      Object decoded = decode(values[i], i);
+      if (values[i] instanceof String) {
+        Assert.assertArrayEquals(Bytes.toBytes((String) values[i]), (byte[]) decoded);
+      } else {
+        Assert.assertEquals(meta.getSchema().getFields()[i].getFieldName(), values[i], decoded);
+      }
+    }
+  }
+
+  @Test public void testDecodedRowRoundTripsThroughTypedRowConverter() {
+    Object[] values = createValues();
+    Object[] row = new Object[values.length];
+    for (int i = 0; i < values.length; i++) {
+      row[i] = decode(values[i], i);
+    }
+    // the name is not in the cells of the row
+    row[1] = null;
+    DataField[] fields = createDataFields();
+    new StreamTypedRowConverter(fields, fields.length, fields.length).convert(row);
+    for (int i = 0; i < values.length; i++) {
+      DataType dataType = fields[i].getColumn().getDataType();
+      Object value;
+      if (dataType == DataTypes.DATE) {
+        value = DirectDictionaryKeyGeneratorFactory.getDirectDictionaryGenerator(dataType)
+            .getValueFromSurrogate((int) row[i]);
+      } else {
+        value = DataTypeUtil.getDataBasedOnDataTypeForNoDictionaryColumn((byte[]) row[i],
+            dataType, false, DataTypeUtil.getDataTypeConverter());
+      }
+      if (i == 1) {
+        // null varchar is empty as in the row converter
+        Assert.assertArrayEquals(CarbonCommonConstants.EMPTY_BYTE_ARRAY, (byte[]) row[i]);
+      } else {
+        Assert.assertEquals(fields[i].getColumn().getColName(), values[i], value);
+      }
+    }
+  }
+
+  @Test public void testDeleteValues() {
+    // delete status is an int column
+    Assert.assertEquals(0, meta.getDeleteStatusValue(0));
+    Assert.assertEquals(1, meta.getDeleteStatusValue(1));
+    Assert.assertEquals(2, meta.getDeleteStatusValue(2));
+    Assert.assertArrayEquals(Bytes.toBytes("1"), (byte[]) meta.getDeleteMarker(0));
+    Assert.assertEquals(1L, meta.getDeleteMarker(5));
+    Assert.assertEquals(BigDecimal.valueOf(1), meta.getDeleteMarker(9));
+    // boolean, date and timestamp have no value of the number
+    Assert.assertNull(meta.getDeleteMarker(2));
+    Assert.assertNull(meta.getDeleteMarker(10));
+    Assert.assertNull(meta.getDeleteMarker(11));
+  }
+
+  private static Object[] createValues() {
+    return new Object[] { "key1", "name\u00e9", true, (short) -2, 3, 1L << 40, -1.25d, 2.5f,
+        (byte) 7, new BigDecimal("1234567890"), DAY, 1546300800123L, 0 };
+  }
+
+  /**
+   * Encodes the value as the hbase client does and decodes it from the middle of a cell array
+   */
+  private Object decode(Object value, int schemaIndex) {
+    byte[] bytes;
+    if (value instanceof String) {
+      bytes = Bytes.toBytes((String) value);
+    } else if (value instanceof Boolean) {
+      bytes = Bytes.toBytes((Boolean) value);
+    } else if (value instanceof Short) {
+      bytes = Bytes.toBytes((Short) value);
+    } else if (value instanceof Integer) {
+      bytes = Bytes.toBytes((Integer) value);
+    } else if (value instanceof Long) {
+      bytes = Bytes.toBytes((Long) value);
+    } else if (value instanceof Double) {
+      bytes = Bytes.toBytes((Double) value);
+    } else if (value instanceof Float) {
+      bytes = Bytes.toBytes((Float) value);
+    } else if (value instanceof Byte) {
+      bytes = new byte[] { (Byte) value };
+    } else {
+      bytes = Bytes.toBytes((BigDecimal) value);
+    }
+    byte[] cell = new byte[OFFSET + bytes.length + 2];
+    Arrays.fill(cell, (byte) -1);
+    System.arraycopy(bytes, 0, cell, OFFSET, bytes.length);
+    return meta.decodeData(cell, OFFSET, bytes.length, schemaIndex);
+  }
+
+  private DataField[] createDataFields() {
+    DataField[] fields = new DataField[meta.getSchema().getFieldsLength()];
+    for (int i = 0; i < fields.length; i++) {
+      DataType dataType = meta.getSchema().getFields()[i].getDataType();
+      ColumnSchema columnSchema = new ColumnSchema();
+      columnSchema.setColumnName(meta.getSchema().getFields()[i].getFieldName());
+      columnSchema.setDataType(dataType);
+      columnSchema.setDimensionColumn(true);
+      columnSchema.setEncodingList(dataType == DataTypes.DATE ?
+          Arrays.asList(Encoding.DICTIONARY, Encoding.DIRECT_DICTIONARY) :
+          new ArrayList<Encoding>());
+      if (DataTypes.isDecimal(dataType)) {
+        columnSchema.setPrecision(10);
+        columnSchema.setScale(0);
+      }
+      fields[i] = new DataField(new CarbonDimension(columnSchema, i, -1, i));
+    }
+    return fields;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.carbondata.common.exceptions.sql.InvalidLoadOptionException;
+import org.apache.carbondata.sdk.file.CarbonWriter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.ipc.RpcServer;
+import org.apache.hadoop.hbase.replication.ReplicationEndpoint;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSTableDescriptors;
+import org.apache.hadoop.hbase.wal.WAL.Entry;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALKeyImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CarbonReplicationEndpointTest {
+
+  private static final byte[] FAMILY = Bytes.toBytes("cf1");
+
+  private static final TableName TABLE = TableName.valueOf("replication_endpoint_test");
+
+  private static final int REGIONS = 2;
+
+  // longer than the test, the replicate calls must not wait for it
+  private static final long FLUSH_INTERVAL = 600000;
+
+  private final AtomicInteger flushes = new AtomicInteger();
+
+  private String path;
+
+  private CarbonReplicationEndpoint endpoint;
+
+  @Before public void setUp() throws IOException {
+    path = new File("target/replication_endpoint_test").getCanonicalPath();
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(HConstants.HBASE_DIR, path + File.separator + "hbase");
+    conf.setLong("hbase.carbon.flush.interval.ms", FLUSH_INTERVAL);
+    // the entries of a region are queued in several batches
+    conf.setLong(RpcServer.MAX_REQUEST_SIZE, 2000);
+    FileSystem fs = FileSystem.getLocal(conf);
+    fs.delete(new Path(path), true);
+    FSTableDescriptors tableDescriptors = new FSTableDescriptors(conf);
+    tableDescriptors.createTableDescriptor(TableDescriptorBuilder.newBuilder(TABLE)
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+        .setValue(CarbonMasterObserver.CARBON_SCHEMA_DESC, "{\"ID\":\"long\",\"c0\":\"string\","
+            + "\"timestamp\":\"long\",\"deletestatus\":\"long\",\"tblproperties\":"
+            + "{\"sort_columns\":\"ID,timestamp\",\"hbase_mapping\":"
+            + "\"key=ID,cf1:c0=c0,timestamp=timestamp,deletestatus=deletestatus\","
+            + "\"path\":\"" + path + File.separator + "carbon\"}}")
+        .build());
+    endpoint = new CarbonReplicationEndpoint() {
+      @Override protected boolean isPeerEnabled() {
+        return true;
+      }
+
+      @Override protected CarbonWriter createCarbonWriter(TableName table)
+          throws IOException, InvalidLoadOptionException {
+        return new CountingCarbonWriter(super.createCarbonWriter(table));
+      }
+    };
+    endpoint.init(new ReplicationEndpoint.Context(conf, conf, fs, "test", UUID.randomUUID(),
+        null, null, tableDescriptors, null));
+    endpoint.start();
+  }
+
+  @After public void tearDown() throws IOException {
+    endpoint.stop();
+    FileSystem.getLocal(new Configuration()).delete(new Path(path), true);
+  }
+
+  @Test public void testReplicateDoesNotWaitForFlushInterval() throws IOException {
+    for (int call = 0; call < 3; call++) {
+      long start = System.currentTimeMillis();
+      Assert.assertTrue(endpoint.replicate(new ReplicationEndpoint.ReplicateContext()
+          .setEntries(createEntries(call * 100, 100)).setSize(10000)));
+      Assert.assertTrue(System.currentTimeMillis() - start < FLUSH_INTERVAL / 10);
+      // the batches of a region in the call share one flush
+      Assert.assertEquals((call + 1) * REGIONS, flushes.get());
+    }
+    Assert.assertEquals(REGIONS, endpoint.getOpenWriters());
+  }
+
+  private static List<Entry> createEntries(int firstKey, int count) {
+    List<Entry> entries = new ArrayList<>();
+    for (int i = firstKey; i < firstKey + count; i++) {
+      long timestamp = System.currentTimeMillis();
+      WALEdit edit = new WALEdit();
+      edit.add(new KeyValue(Bytes.toBytes((long) i), FAMILY, Bytes.toBytes("c0"), timestamp,
+          Bytes.toBytes("value" + i)));
+      WALKeyImpl walKey = new WALKeyImpl(Bytes.toBytes("region" + (i % REGIONS)), TABLE, i,
+          timestamp, HConstants.DEFAULT_CLUSTER_ID);
+      entries.add(new Entry(walKey, edit));
+    }
+    return entries;
+  }
+
+  /**
+   * Counts the flushes of the region writers
+   */
+  private class CountingCarbonWriter extends CarbonWriter {
+
+    private final CarbonWriter writer;
+
+    CountingCarbonWriter(CarbonWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override public void write(Object object) throws IOException {
+      writer.write(object);
+    }
+
+    @Override public void writeTypedRow(Object[] row) throws IOException {
+      writer.writeTypedRow(row);
+    }
+
+    @Override public void flushBatch() throws IOException {
+      writer.flushBatch();
+      flushes.incrementAndGet();
+    }
+
+    @Override public void close() throws IOException {
+      writer.close();
+    }
+  }
+}
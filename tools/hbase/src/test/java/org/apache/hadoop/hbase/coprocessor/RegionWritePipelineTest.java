@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.carbondata.sdk.file.CarbonWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RegionWritePipelineTest {
+
+  private static final long NO_LIMIT = Long.MAX_VALUE / 2;
+
+  private final TestWriter writer = new TestWriter();
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After public void tearDown() {
+    writer.writing.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test public void testFlushesAreGroupedBySize() throws IOException {
+    // the batches are written by the caller
+    RegionWritePipeline pipeline = createPipeline(Runnable::run, NO_LIMIT, 250, NO_LIMIT);
+    long first = submit(pipeline, 100);
+    submit(pipeline, 100);
+    Assert.assertEquals(0, writer.flushes.get());
+    Assert.assertEquals(200, pipeline.getBufferedBytes());
+    long third = submit(pipeline, 100);
+    Assert.assertEquals(1, writer.flushes.get());
+    Assert.assertEquals(0, pipeline.getBufferedBytes());
+    // the flushed batches are durable without another flush
+    pipeline.awaitDurable(first);
+    pipeline.awaitDurable(third);
+    Assert.assertEquals(1, writer.flushes.get());
+    Assert.assertEquals(3, writer.rows.get());
+  }
+
+  @Test public void testWaitersShareIntervalFlush() throws Exception {
+    RegionWritePipeline pipeline = createPipeline(executor, NO_LIMIT, NO_LIMIT, 300);
+    List<Future<?>> waiters = new ArrayList<>();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 4; i++) {
+      long sequence = submit(pipeline, 100);
+      waiters.add(executor.submit(() -> {
+        pipeline.awaitDurable(sequence);
+        return null;
+      }));
+    }
+    Thread.sleep(100);
+    // waiting for the batches does not flush them before the flush interval
+    Assert.assertEquals(0, writer.flushes.get());
+    for (Future<?> waiter : waiters) {
+      Assert.assertFalse(waiter.isDone());
+    }
+    for (Future<?> waiter : waiters) {
+      waiter.get(10, TimeUnit.SECONDS);
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+    Assert.assertEquals(1, writer.flushes.get());
+    Assert.assertEquals(4, writer.rows.get());
+  }
+
+  @Test public void testAwaitFlushesExpiredWrites() throws IOException {
+    RegionWritePipeline pipeline = createPipeline(Runnable::run, NO_LIMIT, NO_LIMIT, 100);
+    long sequence = submit(pipeline, 100);
+    // the batch is written and flushed once the flush interval expires
+    Assert.assertEquals(0, writer.flushes.get());
+    pipeline.awaitDurable(sequence);
+    Assert.assertEquals(1, writer.flushes.get());
+  }
+
+  @Test public void testRequestFlush() throws IOException {
+    RegionWritePipeline pipeline = createPipeline(Runnable::run, NO_LIMIT, NO_LIMIT, NO_LIMIT);
+    long sequence = submit(pipeline, 100);
+    pipeline.requestFlush();
+    Assert.assertEquals(1, writer.flushes.get());
+    pipeline.awaitDurable(sequence);
+    // nothing is left to flush
+    pipeline.requestFlush();
+    Assert.assertEquals(1, writer.flushes.get());
+  }
+
+  @Test public void testCloseFlushesWrites() throws IOException {
+    RegionWritePipeline pipeline = createPipeline(executor, NO_LIMIT, NO_LIMIT, NO_LIMIT);
+    submit(pipeline, 100);
+    submit(pipeline, 100);
+    pipeline.close();
+    Assert.assertEquals(2, writer.rows.get());
+    Assert.assertEquals(1, writer.flushes.get());
+    Assert.assertTrue(writer.closed);
+    try {
+      submit(pipeline, 100);
+      Assert.fail("the closed pipeline should reject the batch");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("closed"));
+    }
+  }
+
+  @Test public void testAwaitIsInterruptible() throws IOException {
+    RegionWritePipeline pipeline = createPipeline(Runnable::run, NO_LIMIT, NO_LIMIT, NO_LIMIT);
+    long sequence = submit(pipeline, 100);
+    Thread.currentThread().interrupt();
+    try {
+      pipeline.awaitDurable(sequence);
+      Assert.fail("the wait should be interrupted");
+    } catch (InterruptedIOException e) {
+      Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+    // the pipeline is still usable
+    pipeline.close();
+    Assert.assertEquals(1, writer.flushes.get());
+  }
+
+  @Test public void testSubmitIsInterruptible() throws Exception {
+    writer.writing = new CountDownLatch(1);
+    RegionWritePipeline pipeline = createPipeline(executor, 100, NO_LIMIT, NO_LIMIT);
+    // the first batch is taken by the drain task, which blocks writing it
+    submit(pipeline, 100);
+    Assert.assertTrue(writer.started.await(10, TimeUnit.SECONDS));
+    submit(pipeline, 100);
+    CountDownLatch submitting = new CountDownLatch(1);
+    Future<?> blocked = executor.submit(() -> {
+      submitting.countDown();
+      return submit(pipeline, 100);
+    });
+    Assert.assertTrue(submitting.await(10, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    Assert.assertFalse(blocked.isDone());
+    blocked.cancel(true);
+    writer.writing.countDown();
+    pipeline.close();
+    Assert.assertEquals(2, writer.rows.get());
+  }
+
+  @Test public void testInterruptedCloseLeavesWriterToDrainTask() throws Exception {
+    writer.writing = new CountDownLatch(1);
+    RegionWritePipeline pipeline = createPipeline(executor, NO_LIMIT, NO_LIMIT, NO_LIMIT);
+    submit(pipeline, 100);
+    Assert.assertTrue(writer.started.await(10, TimeUnit.SECONDS));
+    submit(pipeline, 100);
+    Thread.currentThread().interrupt();
+    try {
+      pipeline.close();
+      Assert.fail("the close should be interrupted");
+    } catch (InterruptedIOException e) {
+      // the drain task is still writing the first batch
+      Assert.assertFalse(writer.closed);
+    }
+    writer.writing.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!writer.closed && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(writer.closed);
+    // the queued batch is dropped and the written one is not flushed
+    Assert.assertEquals(1, writer.rows.get());
+    Assert.assertEquals(0, writer.flushes.get());
+  }
+
+  @Test public void testFailedWriteFailsPipeline() throws IOException {
+    writer.failure = new IOException("failed");
+    RegionWritePipeline pipeline = createPipeline(Runnable::run, NO_LIMIT, NO_LIMIT, NO_LIMIT);
+    long sequence = submit(pipeline, 100);
+    try {
+      pipeline.awaitDurable(sequence);
+      Assert.fail("the write should fail");
+    } catch (IOException e) {
+      Assert.assertSame(writer.failure, e);
+    }
+    try {
+      submit(pipeline, 100);
+      Assert.fail("the failed pipeline should reject the batch");
+    } catch (IOException e) {
+      Assert.assertSame(writer.failure, e);
+    }
+  }
+
+  private RegionWritePipeline createPipeline(Executor executor, long maxQueuedBytes,
+      long flushSize, long flushIntervalMillis) {
+    return new RegionWritePipeline("r1", writer, executor, maxQueuedBytes, flushSize,
+        flushIntervalMillis);
+  }
+
+  private static long submit(RegionWritePipeline pipeline, long bytes) throws IOException {
+    return pipeline.submit(Collections.singletonList(new Object[0]), bytes);
+  }
+
+  private static class TestWriter extends CarbonWriter {
+
+    private final AtomicInteger rows = new AtomicInteger();
+
+    private final AtomicInteger flushes = new AtomicInteger();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    // blocks the writes until it is counted down
+    private volatile CountDownLatch writing = new CountDownLatch(0);
+
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+    @Override public void write(Object object) {
+    }
+
+    @Override public void writeTypedRow(Object[] row) throws IOException {
+      started.countDown();
+      try {
+        writing.await();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      rows.incrementAndGet();
+    }
+
+    @Override public void flushBatch() {
+      flushes.incrementAndGet();
+    }
+
+    @Override public void close() {
+      closed = true;
+    }
+  }
+}
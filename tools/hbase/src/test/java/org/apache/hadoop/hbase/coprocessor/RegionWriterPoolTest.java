@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.carbondata.sdk.file.CarbonWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RegionWriterPoolTest {
+
+  private static final long NO_LIMIT = Long.MAX_VALUE / 2;
+
+  // writers of the created pipelines by region
+  private final Map<String, TestWriter> writers = new ConcurrentHashMap<>();
+
+  private final RegionWriterPool.PipelineFactory factory = this::createPipeline;
+
+  @Test public void testLeastRecentlyUsedWriterIsEvicted() throws IOException {
+    RegionWriterPool pool = new RegionWriterPool(2, NO_LIMIT, 0, NO_LIMIT, Runnable::run);
+    use(pool, "r1");
+    use(pool, "r2");
+    // r1 is used again, so r2 is the least recently used
+    use(pool, "r1");
+    use(pool, "r3");
+    Assert.assertEquals(2, pool.getOpenWriters());
+    Assert.assertEquals(1, pool.getEvictions());
+    Assert.assertTrue(writers.get("r2").closed);
+    Assert.assertFalse(writers.get("r1").closed);
+    Assert.assertFalse(writers.get("r3").closed);
+  }
+
+  @Test public void testEvictedWriterIsClosedByCloseExecutor() throws IOException {
+    List<Runnable> closeTasks = new ArrayList<>();
+    RegionWriterPool pool = new RegionWriterPool(1, NO_LIMIT, 0, NO_LIMIT, closeTasks::add);
+    use(pool, "r1");
+    use(pool, "r2");
+    // r1 is evicted, but not closed by the caller
+    Assert.assertEquals(1, pool.getOpenWriters());
+    Assert.assertEquals(1, pool.getEvictions());
+    Assert.assertFalse(writers.get("r1").closed);
+    Assert.assertEquals(1, closeTasks.size());
+    closeTasks.get(0).run();
+    Assert.assertTrue(writers.get("r1").closed);
+    use(pool, "r3");
+    // the evicted writers not closed yet are closed with the pool
+    pool.closeAll();
+    Assert.assertTrue(writers.get("r2").closed);
+    Assert.assertTrue(writers.get("r3").closed);
+  }
+
+  @Test public void testWriterInUseIsNotEvicted() throws IOException {
+    RegionWriterPool pool = new RegionWriterPool(1, NO_LIMIT, 0, NO_LIMIT, Runnable::run);
+    RegionWritePipeline r1 = pool.acquire("r1", factory);
+    use(pool, "r2");
+    Assert.assertEquals(2, pool.getOpenWriters());
+    Assert.assertFalse(writers.get("r1").closed);
+    pool.release(r1);
+    // r2 is more recently used than r1
+    pool.evictIdle();
+    Assert.assertEquals(1, pool.getOpenWriters());
+    Assert.assertTrue(writers.get("r1").closed);
+    Assert.assertFalse(writers.get("r2").closed);
+  }
+
+  @Test public void testBlockletBuffersOfIdleWritersCountInBudget() throws IOException {
+    RegionWriterPool pool = new RegionWriterPool(10, 250, 100, NO_LIMIT, Runnable::run);
+    use(pool, "r1");
+    use(pool, "r2");
+    // nothing is buffered, but every open writer holds its blocklet buffer
+    Assert.assertEquals(200, pool.getBufferedBytes());
+    use(pool, "r3");
+    Assert.assertEquals(2, pool.getOpenWriters());
+    Assert.assertEquals(200, pool.getBufferedBytes());
+    Assert.assertTrue(writers.get("r1").closed);
+  }
+
+  @Test public void testBufferedBytesCountInBudget() throws IOException {
+    RegionWriterPool pool = new RegionWriterPool(10, 250, 100, NO_LIMIT, Runnable::run);
+    RegionWritePipeline r1 = pool.acquire("r1", factory);
+    r1.submit(Collections.singletonList(new Object[0]), 100);
+    pool.release(r1);
+    Assert.assertEquals(200, pool.getBufferedBytes());
+    use(pool, "r2");
+    // r1 is closed, which flushes its rows
+    Assert.assertEquals(1, pool.getOpenWriters());
+    Assert.assertTrue(writers.get("r1").closed);
+    Assert.assertEquals(1, writers.get("r1").flushes);
+  }
+
+  @Test public void testWritersInUseAreFlushedOverBudget() throws IOException {
+    RegionWriterPool pool = new RegionWriterPool(10, 250, 0, NO_LIMIT, Runnable::run);
+    RegionWritePipeline r1 = pool.acquire("r1", factory);
+    r1.submit(Collections.singletonList(new Object[0]), 100);
+    RegionWritePipeline r2 = pool.acquire("r2", factory);
+    r2.submit(Collections.singletonList(new Object[0]), 200);
+    // the budget is exceeded at the next acquire, the largest writer in use is flushed
+    use(pool, "r3");
+    Assert.assertEquals(3, pool.getOpenWriters());
+    Assert.assertEquals(0, writers.get("r1").flushes);
+    Assert.assertEquals(1, writers.get("r2").flushes);
+    Assert.assertEquals(100, pool.getBufferedBytes());
+    pool.release(r1);
+    pool.release(r2);
+  }
+
+  @Test public void testIdleWriterIsEvicted() throws Exception {
+    RegionWriterPool pool = new RegionWriterPool(10, NO_LIMIT, 0, 1, Runnable::run);
+    use(pool, "r1");
+    Thread.sleep(10);
+    pool.evictIdle();
+    Assert.assertEquals(0, pool.getOpenWriters());
+    Assert.assertTrue(writers.get("r1").closed);
+  }
+
+  @Test public void testWriterIsCreatedOutsideLock() throws Exception {
+    final RegionWriterPool pool = new RegionWriterPool(10, NO_LIMIT, 0, NO_LIMIT, Runnable::run);
+    final CountDownLatch creating = new CountDownLatch(1);
+    final CountDownLatch created = new CountDownLatch(1);
+    final AtomicInteger creations = new AtomicInteger();
+    final RegionWriterPool.PipelineFactory slowFactory = region -> {
+      creations.incrementAndGet();
+      creating.countDown();
+      try {
+        created.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return createPipeline(region);
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<RegionWritePipeline> first = executor.submit(() -> pool.acquire("r1", slowFactory));
+      Assert.assertTrue(creating.await(10, TimeUnit.SECONDS));
+      Future<RegionWritePipeline> second = executor.submit(() -> pool.acquire("r1", slowFactory));
+      // other regions are not blocked by the creation
+      use(pool, "r2");
+      Assert.assertFalse(first.isDone());
+      Assert.assertFalse(second.isDone());
+      created.countDown();
+      // the callers of the region share one writer
+      Assert.assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+      Assert.assertEquals(1, creations.get());
+    } finally {
+      created.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test public void testFailedCreationIsNotPooled() throws IOException {
+    RegionWriterPool pool = new RegionWriterPool(10, NO_LIMIT, 0, NO_LIMIT, Runnable::run);
+    try {
+      pool.acquire("r1", region -> {
+        throw new IOException("failed");
+      });
+      Assert.fail("the creation should fail");
+    } catch (IOException e) {
+      Assert.assertEquals("failed", e.getMessage());
+    }
+    Assert.assertEquals(0, pool.getOpenWriters());
+    // the region is created again by the next caller
+    use(pool, "r1");
+    Assert.assertEquals(1, pool.getOpenWriters());
+  }
+
+  private void use(RegionWriterPool pool, String regionName) throws IOException {
+    pool.release(pool.acquire(regionName, factory));
+  }
+
+  private RegionWritePipeline createPipeline(String regionName) {
+    TestWriter writer = new TestWriter();
+    writers.put(regionName, writer);
+    // the batches are written by the caller
+    return new RegionWritePipeline(regionName, writer, Runnable::run, NO_LIMIT, NO_LIMIT,
+        NO_LIMIT);
+  }
+
+  private static class TestWriter extends CarbonWriter {
+
+    private volatile int flushes;
+
+    private volatile boolean closed;
+
+    @Override public void write(Object object) {
+    }
+
+    @Override public void writeTypedRow(Object[] row) {
+    }
+
+    @Override public void flushBatch() {
+      flushes++;
+    }
+
+    @Override public void close() {
+      closed = true;
+    }
+  }
+}
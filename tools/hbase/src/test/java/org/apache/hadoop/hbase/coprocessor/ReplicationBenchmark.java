@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.carbondata.common.exceptions.sql.InvalidLoadOptionException;
+import org.apache.carbondata.sdk.file.CarbonWriter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.replication.ReplicationEndpoint;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSTableDescriptors;
+import org.apache.hadoop.hbase.wal.WAL.Entry;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALKeyImpl;
+
+/**
+ * Benchmark of the replication path from WAL entries to carbon stream files, without an HBase
+ * cluster. It drives {@link CarbonReplicationEndpoint#replicate} with synthetic WAL entry batches
+ * of one table on the local filesystem and prints the entries and bytes per second, the
+ * percentiles of the replicate call and of the writer flush latency, and the allocation rate.
+ *
+ * Every entry is a row of the table, a put of all the value columns or, by the delete ratio, a
+ * column or family delete. The batches are generated before the run and replayed, so only the
+ * replication path is measured. Options are passed as key=value arguments, see the defaults
+ * below, arguments starting with hbase. are set in the endpoint configuration.
+ *
+ * Run it as a java application from the test classpath, or with the benchmark profile of this
+ * module, which runs it with small parameters after the tests.
+ */
+public class ReplicationBenchmark {
+
+  private static final byte[] FAMILY = Bytes.toBytes("cf1");
+
+  private final Map<String, String> options = new HashMap<>();
+
+  private final List<Long> flushNanos = new ArrayList<>();
+
+  private ReplicationBenchmark(String[] args) {
+    options.put("path", System.getProperty("java.io.tmpdir") + File.separator
+        + "carbon-replication-benchmark");
+    options.put("regions", "4");
+    options.put("keys", "1000000");
+    options.put("batches", "200");
+    options.put("warmup", "20");
+    options.put("distinct_batches", "16");
+    options.put("batch_entries", "1000");
+    options.put("cells", "5");
+    options.put("value_size", "16");
+    options.put("delete_ratio", "0.1");
+    for (String arg : args) {
+      String[] split = arg.split("=", 2);
+      options.put(split[0].toLowerCase(), split[1]);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new ReplicationBenchmark(args).run();
+  }
+
+  private void run() throws Exception {
+    String path = options.get("path");
+    int cells = getInt("cells");
+    Configuration conf = HBaseConfiguration.create();
+    for (Map.Entry<String, String> option : options.entrySet()) {
+      if (option.getKey().startsWith("hbase.")) {
+        conf.set(option.getKey(), option.getValue());
+      }
+    }
+    conf.set(HConstants.HBASE_DIR, path + File.separator + "hbase");
+    FileSystem fs = FileSystem.getLocal(conf);
+    fs.delete(new Path(path), true);
+
+    TableName tableName = TableName.valueOf("replication_benchmark");
+    FSTableDescriptors tableDescriptors = new FSTableDescriptors(conf);
+    tableDescriptors.createTableDescriptor(TableDescriptorBuilder.newBuilder(tableName)
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+        .setValue(CarbonMasterObserver.CARBON_SCHEMA_DESC,
+            createSchema(cells, path + File.separator + "carbon"))
+        .build());
+
+    CarbonReplicationEndpoint endpoint = new CarbonReplicationEndpoint() {
+      @Override protected boolean isPeerEnabled() {
+        return true;
+      }
+
+      @Override protected CarbonWriter createCarbonWriter(TableName table)
+          throws IOException, InvalidLoadOptionException {
+        return new TimedCarbonWriter(super.createCarbonWriter(table));
+      }
+    };
+    endpoint.init(new ReplicationEndpoint.Context(conf, conf, fs, "benchmark", UUID.randomUUID(),
+        null, null, tableDescriptors, null));
+    endpoint.start();
+
+    List<List<Entry>> batches = new ArrayList<>();
+    List<Long> batchBytes = new ArrayList<>();
+    Random random = new Random(0);
+    for (int i = 0; i < getInt("distinct_batches"); i++) {
+      List<Entry> batch = createBatch(tableName, random);
+      long bytes = 0;
+      for (Entry entry : batch) {
+        bytes += entry.getKey().estimatedSerializedSizeOf()
+            + entry.getEdit().estimatedSerializedSizeOf();
+      }
+      batches.add(batch);
+      batchBytes.add(bytes);
+    }
+
+    int warmup = getInt("warmup");
+    int measured = getInt("batches");
+    long[] callNanos = new long[measured];
+    long entries = 0;
+    long bytes = 0;
+    long startTime = 0;
+    long startAllocated = 0;
+    for (int i = 0; i < warmup + measured; i++) {
+      if (i == warmup) {
+        synchronized (flushNanos) {
+          flushNanos.clear();
+        }
+        startAllocated = getAllocatedBytes();
+        startTime = System.nanoTime();
+      }
+      List<Entry> batch = batches.get(i % batches.size());
+      long callStart = System.nanoTime();
+      if (!endpoint.replicate(new ReplicationEndpoint.ReplicateContext().setEntries(batch)
+          .setSize(batchBytes.get(i % batches.size()).intValue()))) {
+        throw new IOException("Replication failed, see the log");
+      }
+      if (i >= warmup) {
+        callNanos[i - warmup] = System.nanoTime() - callStart;
+        entries += batch.size();
+        bytes += batchBytes.get(i % batches.size());
+      }
+    }
+    long elapsedNanos = System.nanoTime() - startTime;
+    long allocated = getAllocatedBytes() - startAllocated;
+    endpoint.stop();
+
+    double seconds = elapsedNanos / 1e9;
+    System.out.println(options);
+    System.out.println(String.format("entries/sec %.0f, MB/sec %.2f, allocated MB/sec %.2f",
+        entries / seconds, bytes / seconds / 1024 / 1024, allocated / seconds / 1024 / 1024));
+    System.out.println("replicate ms " + percentiles(callNanos));
+    long[] flushes;
+    synchronized (flushNanos) {
+      flushes = new long[flushNanos.size()];
+      for (int i = 0; i < flushes.length; i++) {
+        flushes[i] = flushNanos.get(i);
+      }
+    }
+    System.out.println("flush ms " + percentiles(flushes) + ", " + flushes.length + " flushes");
+  }
+
+  private String createSchema(int cells, String path) {
+    StringBuilder schema = new StringBuilder("{\"ID\":\"long\"");
+    StringBuilder mapping = new StringBuilder("key=ID");
+    for (int i = 0; i < cells; i++) {
+      schema.append(",\"c").append(i).append("\":\"string\"");
+      mapping.append(",cf1:c").append(i).append("=c").append(i);
+    }
+    schema.append(",\"timestamp\":\"long\",\"deletestatus\":\"long\"");
+    mapping.append(",timestamp=timestamp,deletestatus=deletestatus");
+    return schema.append(",\"tblproperties\":{\"sort_columns\":\"ID,timestamp\",")
+        .append("\"hbase_mapping\":\"").append(mapping).append("\",")
+        .append("\"path\":\"").append(path).append("\"}}").toString();
+  }
+
+  private List<Entry> createBatch(TableName tableName, Random random) {
+    int regions = getInt("regions");
+    int keys = getInt("keys");
+    int cells = getInt("cells");
+    int valueSize = getInt("value_size");
+    double deleteRatio = Double.parseDouble(options.get("delete_ratio"));
+    byte[][] regionNames = new byte[regions][];
+    for (int i = 0; i < regions; i++) {
+      regionNames[i] = Bytes.toBytes("region" + i);
+    }
+    List<Entry> batch = new ArrayList<>();
+    for (int i = 0; i < getInt("batch_entries"); i++) {
+      long key = random.nextInt(keys);
+      byte[] row = Bytes.toBytes(key);
+      long timestamp = System.currentTimeMillis();
+      WALEdit edit = new WALEdit();
+      if (random.nextDouble() < deleteRatio) {
+        if (random.nextBoolean()) {
+          edit.add(new KeyValue(row, FAMILY, null, timestamp, KeyValue.Type.DeleteFamily));
+        } else {
+          edit.add(new KeyValue(row, FAMILY, Bytes.toBytes("c" + random.nextInt(cells)),
+              timestamp, KeyValue.Type.DeleteColumn));
+        }
+      } else {
+        for (int j = 0; j < cells; j++) {
+          byte[] value = new byte[valueSize];
+          for (int k = 0; k < valueSize; k++) {
+            value[k] = (byte) ('a' + random.nextInt(26));
+          }
+          edit.add(new KeyValue(row, FAMILY, Bytes.toBytes("c" + j), timestamp, value));
+        }
+      }
+      WALKeyImpl walKey = new WALKeyImpl(regionNames[(int) (key % regions)], tableName, i,
+          timestamp, HConstants.DEFAULT_CLUSTER_ID);
+      batch.add(new Entry(walKey, edit));
+    }
+    return batch;
+  }
+
+  private int getInt(String option) {
+    return Integer.parseInt(options.get(option));
+  }
+
+  /**
+   * Bytes allocated by all the live threads, the threads ended during the run are not counted
+   */
+  private static long getAllocatedBytes() {
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long bytes = 0;
+    for (long allocated : threadBean
+        .getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+      if (allocated > 0) {
+        bytes += allocated;
+      }
+    }
+    return bytes;
+  }
+
+  private static String percentiles(long[] nanos) {
+    if (nanos.length == 0) {
+      return "n/a";
+    }
+    long[] sorted = Arrays.copyOf(nanos, nanos.length);
+    Arrays.sort(sorted);
+    String[] names = new String[] { "p50", "p90", "p99", "max" };
+    double[] percentiles = new double[] { 0.5, 0.9, 0.99, 1.0 };
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < names.length; i++) {
+      int index = Math.max(0, (int) Math.ceil(percentiles[i] * sorted.length) - 1);
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(String.format("%s %.2f", names[i], sorted[index] / 1e6));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Records the flush latency of the region writers
+   */
+  private class TimedCarbonWriter extends CarbonWriter {
+
+    private final CarbonWriter writer;
+
+    TimedCarbonWriter(CarbonWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override public void write(Object object) throws IOException {
+      writer.write(object);
+    }
+
+    @Override public void writeTypedRow(Object[] row) throws IOException {
+      writer.writeTypedRow(row);
+    }
+
+    @Override public void flushBatch() throws IOException {
+      long start = System.nanoTime();
+      writer.flushBatch();
+      long nanos = System.nanoTime() - start;
+      synchronized (flushNanos) {
+        flushNanos.add(nanos);
+      }
+    }
+
+    @Override public void close() throws IOException {
+      writer.close();
+    }
+  }
+}
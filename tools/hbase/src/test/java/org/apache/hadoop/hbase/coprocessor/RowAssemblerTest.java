@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.coprocessor;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.carbondata.sdk.file.CarbonSchemaWriter;
+import org.apache.carbondata.sdk.file.Schema;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RowAssemblerTest {
+
+  private static final String SCHEMA = "{\"id\":\"string\", \"c1\":\"int\", \"c2\":\"long\","
+      + " \"ts\":\"long\", \"status\":\"int\", \"tblproperties\": {\"sort_columns\":\"id\","
+      + " \"hbase_mapping\":\"key=id,cf1:c1=c1,cf1:c2=c2,timestamp=ts,deletestatus=status\"}}";
+
+  private static final byte[] FAMILY = Bytes.toBytes("cf1");
+
+  private static final byte[] C1 = Bytes.toBytes("c1");
+
+  private static final byte[] C2 = Bytes.toBytes("c2");
+
+  private static final byte[] UNMAPPED = Bytes.toBytes("c3");
+
+  private static final byte[] ROW = Bytes.toBytes("row1");
+
+  private static final int INSERT = 0;
+
+  private static final int DELETE = 1;
+
+  private static final int DELETEFAMILY = 2;
+
+  private CarbonHbaseMeta meta;
+
+  private RowAssembler assembler;
+
+  @Before public void setUp() throws IOException {
+    Map<String, String> tblProperties = new HashMap<>();
+    Schema schema = CarbonSchemaWriter.convertToSchemaFromJSON(SCHEMA, tblProperties);
+    meta = new CarbonHbaseMeta(schema, tblProperties);
+    assembler = new RowAssembler(meta);
+  }
+
+  @Test public void testPutsOfRowAreCollapsed() {
+    assembler.add(put(ROW, C1, 10, 1));
+    assembler.add(put(ROW, C2, 10, 2L));
+    // the newest value of a column is kept whatever the order of the cells
+    assembler.add(put(ROW, C1, 30, 3));
+    assembler.add(put(ROW, C1, 20, 4));
+    assembler.add(put(ROW, UNMAPPED, 40, 5));
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(1, rows.size());
+    assertRow(rows.get(0), ROW, 3, 2L, 30, INSERT);
+  }
+
+  @Test public void testPutAfterDelete() {
+    assembler.add(delete(ROW, C1, 10));
+    assembler.add(put(ROW, C1, 20, 1));
+    // the newer put drops the column delete
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(1, rows.size());
+    assertRow(rows.get(0), ROW, 1, null, 20, INSERT);
+  }
+
+  @Test public void testPutMaskedByDelete() {
+    assembler.add(delete(ROW, C1, 20));
+    assembler.add(put(ROW, C1, 10, 1));
+    assembler.add(put(ROW, C2, 10, 2L));
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(2, rows.size());
+    assertRow(rows.get(0), ROW, meta.getDeleteMarker(1), null, 20, DELETE);
+    assertRow(rows.get(1), ROW, null, 2L, 10, INSERT);
+  }
+
+  @Test public void testDeleteAfterPut() {
+    assembler.add(put(ROW, C1, 10, 1));
+    assembler.add(put(ROW, C2, 10, 2L));
+    assembler.add(delete(ROW, C1, 20));
+    // the delete row is newer than the insert row, but their columns are disjoint
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(2, rows.size());
+    assertRow(rows.get(0), ROW, meta.getDeleteMarker(1), null, 20, DELETE);
+    assertRow(rows.get(1), ROW, null, 2L, 10, INSERT);
+  }
+
+  @Test public void testOlderDeleteAfterPut() {
+    assembler.add(put(ROW, C1, 20, 1));
+    assembler.add(delete(ROW, C1, 10));
+    // the put survives the older delete
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(1, rows.size());
+    assertRow(rows.get(0), ROW, 1, null, 20, INSERT);
+  }
+
+  @Test public void testDeleteOfUnmappedColumnIsIgnored() {
+    assembler.add(delete(ROW, UNMAPPED, 10));
+    Assert.assertEquals(0, assembler.getRowKeyCount());
+    Assert.assertTrue(assembler.finish().isEmpty());
+  }
+
+  @Test public void testFamilyDelete() {
+    assembler.add(put(ROW, C1, 10, 1));
+    assembler.add(put(ROW, C2, 30, 2L));
+    assembler.add(delete(ROW, C1, 5));
+    assembler.add(deleteFamily(ROW, 20));
+    // masked by the family delete
+    assembler.add(put(ROW, C1, 15, 3));
+    assembler.add(delete(ROW, C2, 25));
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(2, rows.size());
+    // the family delete stays older than the put which survives it
+    assertRow(rows.get(0), ROW, meta.getDeleteMarker(1), meta.getDeleteMarker(2), 20,
+        DELETEFAMILY);
+    assertRow(rows.get(1), ROW, null, 2L, 30, INSERT);
+  }
+
+  @Test public void testPutAfterFamilyDelete() {
+    assembler.add(deleteFamily(ROW, 20));
+    assembler.add(put(ROW, C1, 30, 1));
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(2, rows.size());
+    assertRow(rows.get(0), ROW, meta.getDeleteMarker(1), meta.getDeleteMarker(2), 20,
+        DELETEFAMILY);
+    assertRow(rows.get(1), ROW, 1, null, 30, INSERT);
+  }
+
+  @Test public void testRowsAreSortedAfterRehash() {
+    int count = 1000;
+    // the keys are added in reverse order, and every key is looked up again after the rehashes
+    for (int i = count - 1; i >= 0; i--) {
+      assembler.add(put(rowKey(i), C1, 10, i));
+    }
+    for (int i = 0; i < count; i++) {
+      assembler.add(put(rowKey(i), C2, 20, (long) -i));
+    }
+    Assert.assertEquals(count, assembler.getRowKeyCount());
+    List<Object[]> rows = assembler.finish();
+    Assert.assertEquals(count, rows.size());
+    for (int i = 0; i < count; i++) {
+      assertRow(rows.get(i), rowKey(i), i, (long) -i, 20, INSERT);
+    }
+    // the assembler is cleared for the next batch
+    Assert.assertEquals(0, assembler.getRowKeyCount());
+    assembler.add(put(rowKey(1), C1, 10, 1));
+    rows = assembler.finish();
+    Assert.assertEquals(1, rows.size());
+    assertRow(rows.get(0), rowKey(1), 1, null, 10, INSERT);
+  }
+
+  private void assertRow(Object[] row, byte[] key, Object c1, Object c2, long version,
+      int status) {
+    Assert.assertEquals(5, row.length);
+    Assert.assertArrayEquals(key, (byte[]) row[0]);
+    if (c1 instanceof byte[]) {
+      Assert.assertArrayEquals((byte[]) c1, (byte[]) row[1]);
+    } else {
+      Assert.assertEquals(c1, row[1]);
+    }
+    Assert.assertEquals(c2, row[2]);
+    Assert.assertEquals(version, row[3]);
+    Assert.assertEquals(meta.getDeleteStatusValue(status), row[4]);
+  }
+
+  private static byte[] rowKey(int i) {
+    return Bytes.toBytes(String.format("row%04d", i));
+  }
+
+  private static KeyValue put(byte[] row, byte[] qualifier, long timestamp, int value) {
+    return new KeyValue(row, FAMILY, qualifier, timestamp, Bytes.toBytes(value));
+  }
+
+  private static KeyValue put(byte[] row, byte[] qualifier, long timestamp, long value) {
+    return new KeyValue(row, FAMILY, qualifier, timestamp, Bytes.toBytes(value));
+  }
+
+  private static KeyValue delete(byte[] row, byte[] qualifier, long timestamp) {
+    return new KeyValue(row, FAMILY, qualifier, timestamp, KeyValue.Type.DeleteColumn);
+  }
+
+  private static KeyValue deleteFamily(byte[] row, long timestamp) {
+    return new KeyValue(row, FAMILY, null, timestamp, KeyValue.Type.DeleteFamily);
+  }
+}